@@ -0,0 +1,83 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.services.EntityMappings;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the entity-DTO transformations of the account service and the payment engines, including
+ * the conversion of the DTO's amount into {@link Money}. Run with 'gradle jmh'.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityMappingBenchmark {
+
+  private AccountDto accountDto;
+  private Account account;
+  private PaymentRequest paymentRequest;
+  private Payment payment;
+  private Instant timestamp;
+
+  @Setup
+  public void createObjects() {
+    accountDto = new AccountDto();
+    accountDto.setName("Benchmark Account");
+    accountDto.setBalance(new BigDecimal("100.00"));
+
+    account = EntityMappings.toEntity(accountDto, Money.of(accountDto.getBalance()));
+    account.setId(1L);
+    account.setVersion(0L);
+
+    paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(1L);
+    paymentRequest.setReceiverAccountId(2L);
+    paymentRequest.setAmount(new BigDecimal("12.50"));
+
+    timestamp = Instant.parse("2020-10-01T08:00:00Z");
+    payment = EntityMappings.toEntity(paymentRequest, Money.of(paymentRequest.getAmount()),
+        timestamp);
+    payment.setId(1L);
+  }
+
+  @Benchmark
+  public Account accountDtoToEntity() {
+    return EntityMappings.toEntity(accountDto, Money.of(accountDto.getBalance()));
+  }
+
+  @Benchmark
+  public AccountDto accountEntityToDto() {
+    return EntityMappings.toDto(account);
+  }
+
+  @Benchmark
+  public Payment paymentRequestToEntity() {
+    return EntityMappings.toEntity(paymentRequest, Money.of(paymentRequest.getAmount()),
+        timestamp);
+  }
+
+  @Benchmark
+  public PaymentDto paymentEntityToDto() {
+    return EntityMappings.toDto(payment);
+  }
+}
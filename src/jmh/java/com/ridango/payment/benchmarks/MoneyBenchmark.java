@@ -0,0 +1,80 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.money.Money;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the balance arithmetic of a payment, checking the sender's balance against the amount,
+ * debiting the sender and crediting the receiver, with {@link BigDecimal}s and with {@link Money}.
+ * JMH's '-prof gc' profiler shows what each allocates. Run with 'gradle jmh'.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+  // Fields rather than constants, so that the arithmetic is not folded away
+  private BigDecimal senderBalance = new BigDecimal("1000000.00");
+  private BigDecimal receiverBalance = new BigDecimal("250.00");
+  private BigDecimal amount = new BigDecimal("12.50");
+
+  private Money senderMoney = Money.of(senderBalance);
+  private Money receiverMoney = Money.of(receiverBalance);
+  private Money amountMoney = Money.of(amount);
+
+  private long[] senderCell = {senderMoney.getCents()};
+  private long[] receiverCell = {receiverMoney.getCents()};
+
+  @Benchmark
+  public boolean bigDecimalTransfer() {
+    if (amount.compareTo(senderBalance) > 0) {
+      return false;
+    }
+    senderBalance = senderBalance.subtract(amount);
+    receiverBalance = receiverBalance.add(amount);
+    senderBalance = senderBalance.add(amount); // Paid back, so that the balance never runs out
+    receiverBalance = receiverBalance.subtract(amount);
+    return true;
+  }
+
+  @Benchmark
+  public boolean moneyTransfer() {
+    if (amountMoney.exceeds(senderMoney)) {
+      return false;
+    }
+    senderMoney = senderMoney.minus(amountMoney);
+    receiverMoney = receiverMoney.plus(amountMoney);
+    senderMoney = senderMoney.plus(amountMoney);
+    receiverMoney = receiverMoney.minus(amountMoney);
+    return true;
+  }
+
+  /**
+   * The ledger's and the batches' running balances: cents in cells updated in place
+   */
+  @Benchmark
+  public boolean centsInCellsTransfer() {
+    var cents = amountMoney.getCents();
+    if (cents > senderCell[0]) {
+      return false;
+    }
+    senderCell[0] -= cents;
+    receiverCell[0] += cents;
+    senderCell[0] += cents;
+    receiverCell[0] -= cents;
+    return true;
+  }
+}
@@ -0,0 +1,87 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.journal.JournalProperties;
+import com.rindago.payment.journal.PaymentJournal;
+import com.rindago.payment.money.Money;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Measures the throughput of payment records appended to the journal, in a temporary directory,
+ * without waiting for the disk and waiting for the sync shared by all records of a sync interval.
+ * A run appends tens of millions of records across 64MB segments. Run with 'gradle jmh'.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaymentJournalBenchmark {
+
+  @Param({"false", "true"})
+  public boolean awaitSync;
+
+  private Path directory;
+  private PaymentJournal journal;
+  private Payment payment;
+
+  @Setup
+  public void openJournal() throws IOException {
+    directory = Files.createTempDirectory("jmh-journal");
+    var journalProperties = new JournalProperties();
+    journalProperties.setDirectory(directory);
+    journalProperties.setAwaitSync(awaitSync);
+    journal = new PaymentJournal(journalProperties);
+    journal.open();
+
+    payment = new Payment();
+    payment.setId(1L);
+    payment.setSenderAccountId(1L);
+    payment.setReceiverAccountId(2L);
+    payment.setAmount(Money.ofCents(100));
+    payment.setTimestamp(Instant.now());
+  }
+
+  @TearDown
+  public void deleteJournal() throws Exception {
+    journal.close();
+    FileSystemUtils.deleteRecursively(directory);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public long append() {
+    return appendPayment();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public long appendConcurrently() {
+    return appendPayment();
+  }
+
+  private long appendPayment() {
+    var sequence = journal.appendPayment(payment, null);
+    journal.awaitSync();
+    return sequence;
+  }
+}
@@ -0,0 +1,67 @@
+package com.ridango.payment.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Measures the JSON deserialization of a payment request and the serialization of a payment, the
+ * body conversions of POST /payment. The object mapper is configured like Spring Boot's. Run with
+ * 'gradle jmh'.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentJsonBenchmark {
+
+  private ObjectReader paymentRequestReader;
+  private ObjectWriter paymentDtoWriter;
+  private byte[] paymentRequestJson;
+  private PaymentDto paymentDto;
+
+  @Setup
+  public void createObjectMapper() {
+    ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .build();
+    paymentRequestReader = objectMapper.readerFor(PaymentRequest.class);
+    paymentDtoWriter = objectMapper.writerFor(PaymentDto.class);
+
+    paymentRequestJson = ("{\"senderAccountId\": \"1\", \"receiverAccountId\": \"2\", "
+        + "\"amount\": \"100.00\"}").getBytes(StandardCharsets.UTF_8);
+    paymentDto = new PaymentDto(1L, 1L, 2L, new BigDecimal("100.00"),
+        Instant.parse("2020-10-01T08:00:00.123456Z"));
+  }
+
+  @Benchmark
+  public PaymentRequest readPaymentRequest() throws IOException {
+    return paymentRequestReader.readValue(paymentRequestJson);
+  }
+
+  @Benchmark
+  public byte[] writePaymentDto() throws IOException {
+    return paymentDtoWriter.writeValueAsBytes(paymentDto);
+  }
+}
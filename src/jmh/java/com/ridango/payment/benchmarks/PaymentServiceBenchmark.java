@@ -0,0 +1,88 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Measures the latency of PaymentService.makePayment() between random accounts, with each payment
+ * engine and the in-memory H2 database. Run with 'gradle jmh'.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaymentServiceBenchmark {
+
+  private static final int ACCOUNTS = 1_000;
+
+  @Param({"jpa", "ledger"})
+  public String engine;
+
+  private ConfigurableApplicationContext context;
+  private PaymentService paymentService;
+  private Long[] accountIds;
+
+  @Setup
+  public void startApplication() {
+    context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run("--payment.engine=" + engine,
+            "--spring.datasource.url=jdbc:h2:mem:jmh-payment-service-" + engine);
+    paymentService = context.getBean(PaymentService.class);
+
+    var accounts = new ArrayList<Account>(ACCOUNTS);
+    for (var i = 0; i < ACCOUNTS; i++) {
+      var account = new Account();
+      account.setName("Benchmark Account " + i);
+      account.setBalance(Money.of(new BigDecimal("1000000000.00"))); // Never runs out during a run
+      accounts.add(account);
+    }
+    context.getBean(AccountRepository.class).saveAll(accounts);
+    accountIds = accounts.stream().map(Account::getId).toArray(Long[]::new);
+  }
+
+  @TearDown
+  public void stopApplication() {
+    context.close();
+  }
+
+  @Benchmark
+  public PaymentDto makePayment() {
+    var random = ThreadLocalRandom.current();
+    var sender = random.nextInt(ACCOUNTS);
+    var receiver = (sender + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(accountIds[sender]);
+    paymentRequest.setReceiverAccountId(accountIds[receiver]);
+    paymentRequest.setAmount(new BigDecimal("0.01"));
+    return paymentService.makePayment(paymentRequest);
+  }
+}
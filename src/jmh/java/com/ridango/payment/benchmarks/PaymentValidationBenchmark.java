@@ -0,0 +1,64 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.services.PaymentRequirements;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the requirement checks of a payment on their own: the scale() and compareTo() checks of
+ * the amount, the sender and receiver check, and the balance check, for a valid payment and for
+ * rejected ones. Run with 'gradle jmh'.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentValidationBenchmark {
+
+  // Fields rather than constants, so that the checks are not folded away
+  private BigDecimal validAmount = new BigDecimal("12.50");
+  private BigDecimal threeDecimalPlaces = new BigDecimal("12.505");
+  private BigDecimal negativeAmount = new BigDecimal("-12.50");
+  private Money senderBalance = Money.ofCents(100_00);
+  private Long senderAccountId = 1L;
+  private Long receiverAccountId = 2L;
+
+  @Benchmark
+  public boolean validPayment() {
+    var amount = PaymentRequirements.checkAmount(validAmount);
+    PaymentRequirements.checkAccounts(senderAccountId, receiverAccountId);
+    return amount.exceeds(senderBalance);
+  }
+
+  @Benchmark
+  public RequirementException moreThanTwoDecimalPlaces() {
+    return rejection(threeDecimalPlaces);
+  }
+
+  @Benchmark
+  public RequirementException notPositiveAmount() {
+    return rejection(negativeAmount);
+  }
+
+  private static RequirementException rejection(BigDecimal amount) {
+    try {
+      PaymentRequirements.checkAmount(amount);
+      return null;
+    } catch (RequirementException e) {
+      return e;
+    }
+  }
+}
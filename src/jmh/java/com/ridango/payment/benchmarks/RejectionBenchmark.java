@@ -0,0 +1,101 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.exceptionhandlers.ExceptionProcessor;
+import com.rindago.payment.exceptions.ExceptionResponse;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Measures the cost of a rejected payment, from PaymentService.makePayment() to the error response
+ * prepared by the ExceptionProcessor, with the JPA payment engine. The log is written to
+ * build/jmh-rejection.log as it would be in production, rather than to the console captured by
+ * JMH. Run with 'gradle jmh'.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RejectionBenchmark {
+
+  /**
+   * 'zero' and 'scale' are rejected for their amount alone, 'overdraft' only once the sender's
+   * balance has been read
+   */
+  @Param({"zero", "scale", "overdraft"})
+  public String rejection;
+
+  private ConfigurableApplicationContext context;
+  private PaymentService paymentService;
+  private ExceptionProcessor exceptionProcessor;
+  private PaymentRequest paymentRequest;
+
+  @Setup
+  public void startApplication() {
+    context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off",
+            "logging.threshold.console=OFF", "logging.file.name=build/jmh-rejection.log")
+        .run("--payment.engine=jpa",
+            "--spring.datasource.url=jdbc:h2:mem:jmh-rejection-" + rejection);
+    paymentService = context.getBean(PaymentService.class);
+    exceptionProcessor = context.getBean(ExceptionProcessor.class);
+
+    var sender = new Account();
+    sender.setName("Benchmark Sender");
+    sender.setBalance(Money.of(new BigDecimal("1.00")));
+    var receiver = new Account();
+    receiver.setName("Benchmark Receiver");
+    receiver.setBalance(Money.ZERO);
+    context.getBean(AccountRepository.class).saveAll(List.of(sender, receiver));
+
+    paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(sender.getId());
+    paymentRequest.setReceiverAccountId(receiver.getId());
+    paymentRequest.setAmount(new BigDecimal(switch (rejection) {
+      case "zero" -> "0.00";
+      case "scale" -> "0.001";
+      case "overdraft" -> "1.01";
+      default -> throw new IllegalArgumentException(rejection);
+    }));
+  }
+
+  @TearDown
+  public void stopApplication() {
+    context.close();
+  }
+
+  @Benchmark
+  public ExceptionResponse rejectPayment() {
+    try {
+      paymentService.makePayment(paymentRequest);
+    } catch (RequirementException requirementException) {
+      return exceptionProcessor.handleRequirementException(requirementException);
+    }
+    throw new IllegalStateException("The payment has not been rejected");
+  }
+}
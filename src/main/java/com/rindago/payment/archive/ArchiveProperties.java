@@ -0,0 +1,39 @@
+package com.rindago.payment.archive;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the payment archive, bound from 'payment.archive.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.archive")
+public class ArchiveProperties {
+
+  /**
+   * Whether the payments of past days are moved from the payment table to archive segments
+   */
+  private boolean enabled = false;
+
+  /**
+   * Directory of the archive segments, one file per day (UTC)
+   */
+  private Path directory = Path.of("archive");
+
+  /**
+   * How long payments stay in the payment table. A day is archived once it ended this long ago.
+   */
+  private Duration hotRetention = Duration.ofDays(1);
+
+  /**
+   * Delay between two checks for days to archive
+   */
+  private Duration interval = Duration.ofMinutes(10);
+
+  /**
+   * Number of payments compressed together in a block of a segment, the unit read from it
+   */
+  private int blockSize = 4096;
+}
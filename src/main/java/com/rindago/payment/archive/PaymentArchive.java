@@ -0,0 +1,370 @@
+package com.rindago.payment.archive;
+
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.services.EntityMappings;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps the payment table to the payments of the last days, and the payments of older days in
+ * archive segments, one per day (UTC). Once a day ended longer ago than the hot retention, its
+ * payments are written to a segment, which is added to the archive before they are deleted from
+ * the table. So a reader which reads the table first and then the archive sees every payment, and
+ * at worst sees one twice, which it skips by its ID.
+ *
+ * <p>The table holds only the payments of the days not archived yet, and since payments are
+ * timestamped when they are made, nothing is inserted into an archived day afterwards.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.archive.enabled", havingValue = "true")
+@DependsOn("entityManagerFactory") // The schema must be in place before it is read.
+@RequiredArgsConstructor
+public class PaymentArchive {
+
+  private static final String SEGMENT_PREFIX = "payments-";
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final int BATCH_SIZE = 10_000;
+  private static final int PAYMENT_ID_BLOCK = 50; // allocationSize of payment_seq
+  private static final String SELECT_DAY = "SELECT id, sender_account_id, receiver_account_id, "
+      + "amount, timestamp FROM payment WHERE timestamp >= ? AND timestamp < ? ORDER BY id";
+  private static final Comparator<PaymentDto> HISTORY_ORDER =
+      Comparator.comparing(PaymentDto::getTimestamp).thenComparing(PaymentDto::getId);
+
+  private final Logger logger = LoggerFactory.getLogger(PaymentArchive.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final ArchiveProperties archiveProperties;
+  private final Environment environment;
+
+  private final ConcurrentSkipListMap<LocalDate, PaymentSegment> segments =
+      new ConcurrentSkipListMap<>();
+
+  /**
+   * Opens the segments of the archive directory, and moves the payment ID sequence past their
+   * payments
+   */
+  @PostConstruct
+  public void open() throws IOException {
+    // The sharded engine keeps the payments on its shards.
+    if ("sharded".equals(environment.getProperty("payment.engine"))) {
+      throw new IllegalStateException(
+          "payment.archive.enabled is not supported with payment.engine=sharded");
+    }
+    var directory = archiveProperties.getDirectory();
+    Files.createDirectories(directory);
+    try (var files = Files.list(directory)) {
+      for (var path : files.toList()) {
+        var name = path.getFileName().toString();
+        if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX + ".tmp")) {
+          Files.delete(path); // Left by an interrupted archiving
+        } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+          var segment = PaymentSegment.open(path);
+          segments.put(segment.getDay(), segment);
+        }
+      }
+    }
+    var lastPaymentId = getLastPaymentId();
+    if (lastPaymentId > 0) {
+      // The pooled optimizer hands out the block of IDs below the value it reads from payment_seq.
+      jdbcTemplate.execute("ALTER SEQUENCE payment_seq RESTART WITH "
+          + (Math.max(lastPaymentId, jdbcTemplate.queryForObject(
+              "SELECT COALESCE(MAX(id), 0) FROM payment", Long.class))
+              + PAYMENT_ID_BLOCK + 1));
+    }
+  }
+
+  /**
+   * @return The greatest ID of the archived payments, or 0 if none is archived
+   */
+  public long getLastPaymentId() {
+    return segments.values().stream().mapToLong(PaymentSegment::getLastId).max().orElse(0);
+  }
+
+  /**
+   * @return The end of the last archived day, before which every payment is archived
+   */
+  public Instant getArchivedBefore() {
+    var last = segments.lastEntry();
+    return last == null ? Instant.EPOCH
+        : last.getKey().plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+  }
+
+  /**
+   * @return The archive segments, by day
+   */
+  public List<PaymentSegment> getSegments() {
+    return List.copyOf(segments.values());
+  }
+
+  /**
+   * Archives the payments of the days which ended longer ago than the hot retention, oldest
+   * first, and deletes them from the payment table
+   * @return Number of days archived
+   */
+  @Scheduled(fixedDelayString = "${payment.archive.interval:PT10M}")
+  public synchronized int archive() throws IOException {
+    var cutoff = LocalDate.ofInstant(Instant.now().minus(archiveProperties.getHotRetention()),
+        ZoneOffset.UTC).atStartOfDay(ZoneOffset.UTC).toInstant();
+    var archived = 0;
+    Timestamp oldest;
+    while ((oldest = jdbcTemplate.queryForObject(
+        "SELECT MIN(timestamp) FROM payment WHERE timestamp < ?", Timestamp.class,
+        Timestamp.from(cutoff))) != null) {
+      archive(LocalDate.ofInstant(oldest.toInstant(), ZoneOffset.UTC));
+      archived++;
+    }
+    return archived;
+  }
+
+  /**
+   * Reads the archived payments sent or received by an account after the given (timestamp, ID)
+   * position, in (timestamp, ID) order
+   * @param limit Maximum number of payments read
+   * @throws UncheckedIOException If a segment cannot be read
+   */
+  public List<PaymentDto> findPayments(long accountId, Instant timestamp, long id, int limit) {
+    var payments = new ArrayList<PaymentDto>();
+    var fromDay = LocalDate.ofInstant(timestamp, ZoneOffset.UTC);
+    try {
+      for (var segment : segments.tailMap(fromDay, true).values()) {
+        payments.addAll(findPayments(segment, accountId, timestamp, id, limit - payments.size()));
+        if (payments.size() == limit) {
+          break; // The payments of the next days are later.
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return payments;
+  }
+
+  /**
+   * Starts reading the archived payments of a time range after an ID, in ID order. Segments are
+   * read one block at a time, and only those whose IDs overlap are read at the same time.
+   * @param from Start of the time range (inclusive), or null for no lower bound
+   * @param to End of the time range (exclusive), or null for no upper bound
+   * @param afterId Only payments with a greater ID are read
+   * @return The scan, whose methods throw UncheckedIOException if a segment cannot be read
+   */
+  public Scan scan(Instant from, Instant to, long afterId) {
+    var fromDay = from == null ? LocalDate.MIN : LocalDate.ofInstant(from, ZoneOffset.UTC);
+    var toDay = to == null ? LocalDate.MAX : LocalDate.ofInstant(to, ZoneOffset.UTC);
+    var scanned = segments.subMap(fromDay, true, toDay, true).values().stream()
+        .filter(segment -> segment.getLastId() > afterId)
+        .sorted(Comparator.comparingLong(PaymentSegment::getFirstId))
+        .toList();
+    return new Scan(scanned, from == null ? Instant.MIN : from, to == null ? Instant.MAX : to,
+        afterId);
+  }
+
+  private void archive(LocalDate day) throws IOException {
+    var start = System.nanoTime();
+    var from = Timestamp.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+    var to = Timestamp.from(day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+    // A segment is already there if the payments were not deleted after it was written.
+    if (!segments.containsKey(day)) {
+      var path = archiveProperties.getDirectory()
+          .resolve(SEGMENT_PREFIX + day + SEGMENT_SUFFIX);
+      try (var writer = PaymentSegment.create(path, day, archiveProperties.getBlockSize())) {
+        jdbcTemplate.query(SELECT_DAY, resultSet -> {
+          try {
+            writer.write(payment(resultSet));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }, from, to);
+        writer.commit();
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      segments.put(day, PaymentSegment.open(path));
+    }
+
+    var deleted = 0;
+    List<Long> ids;
+    do {
+      ids = jdbcTemplate.queryForList("SELECT id FROM payment WHERE timestamp >= ? "
+          + "AND timestamp < ? FETCH FIRST " + BATCH_SIZE + " ROWS ONLY", Long.class, from, to);
+      var batch = ids;
+      transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+          "DELETE FROM payment WHERE id = ?", batch, batch.size(),
+          (statement, paymentId) -> statement.setLong(1, paymentId)));
+      deleted += ids.size();
+    } while (ids.size() == BATCH_SIZE);
+    logger.info("ARCHIVE: {} payments of {} archived in {} ms", deleted, day,
+        (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Reads the payments of an account in a segment after a position, in the order of the blocks'
+   * earliest payment, and stops at the first block starting after the last payment kept
+   */
+  private static List<PaymentDto> findPayments(PaymentSegment segment, long accountId,
+      Instant timestamp, long id, int limit) throws IOException {
+    var blocks = segment.getBlocks(accountId);
+    var byStart = new ArrayList<Integer>(blocks.length);
+    for (var block : blocks) {
+      if (!segment.getEnd(block).isBefore(timestamp)) {
+        byStart.add(block);
+      }
+    }
+    byStart.sort(Comparator.comparing(segment::getStart));
+    var payments = new ArrayList<PaymentDto>();
+    for (var block : byStart) {
+      if (payments.size() == limit
+          && segment.getStart(block).isAfter(payments.get(limit - 1).getTimestamp())) {
+        break;
+      }
+      for (var payment : segment.readBlock(block)) {
+        if ((payment.getSenderAccountId() == accountId
+            || payment.getReceiverAccountId() == accountId)
+            && (payment.getTimestamp().isAfter(timestamp)
+            || payment.getTimestamp().equals(timestamp) && payment.getId() > id)) {
+          payments.add(EntityMappings.toDto(payment));
+        }
+      }
+      payments.sort(HISTORY_ORDER);
+      if (payments.size() > limit) {
+        payments.subList(limit, payments.size()).clear();
+      }
+    }
+    return payments;
+  }
+
+  private static Payment payment(ResultSet resultSet) throws SQLException {
+    var payment = new Payment();
+    payment.setId(resultSet.getLong(1));
+    payment.setSenderAccountId(resultSet.getLong(2));
+    payment.setReceiverAccountId(resultSet.getLong(3));
+    payment.setAmount(Money.of(resultSet.getBigDecimal(4)));
+    payment.setTimestamp(resultSet.getTimestamp(5).toInstant());
+    return payment;
+  }
+
+  /**
+   * The archived payments of a time range after an ID, in ID order. A segment is opened once the
+   * scan reaches its first ID, so only the segments whose IDs overlap are read at the same time.
+   */
+  public static final class Scan implements Iterator<Payment> {
+
+    private final ArrayDeque<PaymentSegment> unopened;
+    private final PriorityQueue<SegmentScan> open =
+        new PriorityQueue<>(Comparator.comparingLong(SegmentScan::peekId));
+    private final Instant from;
+    private final Instant to;
+    private final long afterId;
+
+    private Scan(List<PaymentSegment> segments, Instant from, Instant to, long afterId) {
+      this.unopened = new ArrayDeque<>(segments);
+      this.from = from;
+      this.to = to;
+      this.afterId = afterId;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return peek() != null;
+    }
+
+    @Override
+    public Payment next() {
+      var payment = peek();
+      if (payment == null) {
+        throw new NoSuchElementException();
+      }
+      var segmentScan = open.poll();
+      segmentScan.advance();
+      if (segmentScan.peek() != null) {
+        open.add(segmentScan);
+      }
+      return payment;
+    }
+
+    /**
+     * @return The next payment, or null if there is none
+     */
+    public Payment peek() {
+      while (!unopened.isEmpty() && (open.isEmpty()
+          || unopened.peekFirst().getFirstId() <= open.peek().peekId())) {
+        var segmentScan = new SegmentScan(unopened.pollFirst());
+        if (segmentScan.peek() != null) {
+          open.add(segmentScan);
+        }
+      }
+      return open.isEmpty() ? null : open.peek().peek();
+    }
+
+    /**
+     * The payments of one segment in the time range after the ID, one block at a time
+     */
+    private final class SegmentScan {
+
+      private final PaymentSegment segment;
+      private int block = -1;
+      private List<Payment> payments = List.of();
+      private int index;
+
+      SegmentScan(PaymentSegment segment) {
+        this.segment = segment;
+        advance();
+      }
+
+      Payment peek() {
+        return index < payments.size() ? payments.get(index) : null;
+      }
+
+      long peekId() {
+        return payments.get(index).getId();
+      }
+
+      void advance() {
+        index++;
+        while (index >= payments.size() && ++block < segment.getBlockCount()) {
+          if (segment.getLastId(block) <= afterId || segment.getEnd(block).isBefore(from)
+              || !segment.getStart(block).isBefore(to)) {
+            continue;
+          }
+          try {
+            payments = segment.readBlock(block).stream()
+                .filter(payment -> payment.getId() > afterId
+                    && !payment.getTimestamp().isBefore(from)
+                    && payment.getTimestamp().isBefore(to))
+                .toList();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          index = 0;
+        }
+      }
+    }
+  }
+}
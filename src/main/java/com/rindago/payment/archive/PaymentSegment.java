@@ -0,0 +1,483 @@
+package com.rindago.payment.archive;
+
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.money.Money;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An immutable archive segment: the payments of one day (UTC) in ascending ID order, in blocks
+ * compressed one by one, followed by a small index of the blocks of every account and of the ID
+ * and time range of every block. It is laid out as follows, with variable-length longs of 7 bits
+ * per byte:
+ * <pre>
+ * int magic        "PSEG"
+ * int version      1
+ * long day         epoch day of the payments
+ * blocks, each one deflated; per payment:
+ *   varlong        ID minus the previous ID of the block, or the ID itself for the first one
+ *   varlong        sender account ID
+ *   varlong        receiver account ID
+ *   varlong        amount in cents
+ *   varlong        nanosecond of the day minus the previous one of the block, zigzag-encoded
+ * postings, per account: varlong block numbers, each one minus the previous one
+ * per account, in ascending ID order (20 bytes):
+ *   long ID, long offset of its postings, int length of its postings
+ * per block (56 bytes):
+ *   long first ID, long last ID, long first and long last nanosecond of the day,
+ *   long offset, int length, int uncompressed length, int payments, int CRC32C of the block
+ * footer (44 bytes):
+ *   long offset of the postings, long offset and int number of the block entries,
+ *   long offset and int number of the account entries, long number of payments,
+ *   int CRC32C of all the bytes from the postings to it
+ * </pre>
+ * A segment is written to a temporary file which becomes the segment once complete. It is read
+ * through a read-only memory mapping, so only the blocks read are loaded, and it can be read by
+ * several threads at once.
+ */
+public final class PaymentSegment {
+
+  private static final int MAGIC = 0x50534547;
+  private static final int VERSION = 1;
+  private static final int ACCOUNT_ENTRY_SIZE = 20;
+  private static final int BLOCK_ENTRY_SIZE = 56;
+  private static final int FOOTER_SIZE = 44;
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+  private static final long NANOS_PER_DAY = 86_400 * NANOS_PER_SECOND;
+
+  private final Path path;
+  private final LocalDate day;
+  private final long dayStartSecond;
+  private final ByteBuffer buffer;
+  private final int blockIndexOffset;
+  private final int blockCount;
+  private final int accountIndexOffset;
+  private final int accountCount;
+  private final long paymentCount;
+
+  private PaymentSegment(Path path, ByteBuffer buffer) throws IOException {
+    this.path = path;
+    this.buffer = buffer;
+    var size = buffer.capacity();
+    if (size < 16 + FOOTER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException(path + " is not a payment segment of version " + VERSION);
+    }
+    this.day = LocalDate.ofEpochDay(buffer.getLong(8));
+    this.dayStartSecond = day.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+    var footer = size - FOOTER_SIZE;
+    var postingsOffset = buffer.getLong(footer);
+    if (postingsOffset < 16 || postingsOffset > footer) {
+      throw new IOException("Payment segment " + path + " is corrupt");
+    }
+    var checksum = new CRC32C();
+    checksum.update(buffer.slice((int) postingsOffset, size - 4 - (int) postingsOffset));
+    if ((int) checksum.getValue() != buffer.getInt(size - 4)) {
+      throw new IOException("Payment segment " + path + " is corrupt");
+    }
+    this.blockIndexOffset = (int) buffer.getLong(footer + 8);
+    this.blockCount = buffer.getInt(footer + 16);
+    this.accountIndexOffset = (int) buffer.getLong(footer + 20);
+    this.accountCount = buffer.getInt(footer + 28);
+    this.paymentCount = buffer.getLong(footer + 32);
+  }
+
+  /**
+   * Starts writing a segment
+   * @param path File of the segment, created by {@link Writer#commit()}
+   * @param day Day (UTC) of the payments
+   * @param blockSize Number of payments per block
+   */
+  public static Writer create(Path path, LocalDate day, int blockSize) throws IOException {
+    return new Writer(path, day, blockSize);
+  }
+
+  /**
+   * Opens a segment, whose index is checked against its checksum
+   */
+  public static PaymentSegment open(Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Payment segment " + path + " is larger than 2GB");
+      }
+      // The mapping stays valid once the channel is closed.
+      return new PaymentSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size()));
+    }
+  }
+
+  public LocalDate getDay() {
+    return day;
+  }
+
+  public long getPaymentCount() {
+    return paymentCount;
+  }
+
+  /**
+   * @return The smallest payment ID of the segment, or 0 if it is empty
+   */
+  public long getFirstId() {
+    return blockCount == 0 ? 0 : getFirstId(0);
+  }
+
+  /**
+   * @return The greatest payment ID of the segment, or 0 if it is empty
+   */
+  public long getLastId() {
+    return blockCount == 0 ? 0 : getLastId(blockCount - 1);
+  }
+
+  int getBlockCount() {
+    return blockCount;
+  }
+
+  long getFirstId(int block) {
+    return buffer.getLong(blockEntry(block));
+  }
+
+  long getLastId(int block) {
+    return buffer.getLong(blockEntry(block) + 8);
+  }
+
+  /**
+   * @return The timestamp of the earliest payment of the block
+   */
+  Instant getStart(int block) {
+    return timestamp(buffer.getLong(blockEntry(block) + 16));
+  }
+
+  /**
+   * @return The timestamp of the latest payment of the block
+   */
+  Instant getEnd(int block) {
+    return timestamp(buffer.getLong(blockEntry(block) + 24));
+  }
+
+  /**
+   * @return The numbers of the blocks holding payments sent or received by the account, in
+   *     ascending order
+   */
+  int[] getBlocks(long accountId) throws IOException {
+    var low = 0;
+    var high = accountCount - 1;
+    while (low <= high) {
+      var middle = (low + high) >>> 1;
+      var entry = accountIndexOffset + middle * ACCOUNT_ENTRY_SIZE;
+      var middleId = buffer.getLong(entry);
+      if (middleId < accountId) {
+        low = middle + 1;
+      } else if (middleId > accountId) {
+        high = middle - 1;
+      } else {
+        var postings = buffer.slice((int) buffer.getLong(entry + 8), buffer.getInt(entry + 16));
+        var blocks = new int[8];
+        var count = 0;
+        var block = 0L;
+        while (postings.hasRemaining()) {
+          block += readVarLong(postings);
+          if (count == blocks.length) {
+            blocks = Arrays.copyOf(blocks, 2 * count);
+          }
+          blocks[count++] = (int) block;
+        }
+        return Arrays.copyOf(blocks, count);
+      }
+    }
+    return new int[0];
+  }
+
+  /**
+   * Reads the payments of a block, in ascending ID order
+   * @throws IOException If the block does not match its checksum
+   */
+  List<Payment> readBlock(int block) throws IOException {
+    var entry = blockEntry(block);
+    var compressed = buffer.slice((int) buffer.getLong(entry + 32), buffer.getInt(entry + 40));
+    var checksum = new CRC32C();
+    checksum.update(compressed.duplicate());
+    if ((int) checksum.getValue() != buffer.getInt(entry + 52)) {
+      throw new IOException("Block " + block + " of payment segment " + path + " is corrupt");
+    }
+    var bytes = new byte[buffer.getInt(entry + 44)];
+    var inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      if (inflater.inflate(bytes) != bytes.length || !inflater.finished()) {
+        throw new IOException("Block " + block + " of payment segment " + path + " is corrupt");
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Block " + block + " of payment segment " + path + " is corrupt", e);
+    } finally {
+      inflater.end();
+    }
+
+    var records = ByteBuffer.wrap(bytes);
+    var count = buffer.getInt(entry + 48);
+    var payments = new ArrayList<Payment>(count);
+    var id = 0L;
+    var nanos = 0L;
+    for (var i = 0; i < count; i++) {
+      id += readVarLong(records);
+      var payment = new Payment();
+      payment.setId(id);
+      payment.setSenderAccountId(readVarLong(records));
+      payment.setReceiverAccountId(readVarLong(records));
+      payment.setAmount(Money.ofCents(readVarLong(records)));
+      var zigzag = readVarLong(records);
+      nanos += (zigzag >>> 1) ^ -(zigzag & 1);
+      payment.setTimestamp(timestamp(nanos));
+      payments.add(payment);
+    }
+    return payments;
+  }
+
+  private int blockEntry(int block) {
+    return blockIndexOffset + block * BLOCK_ENTRY_SIZE;
+  }
+
+  private Instant timestamp(long nanosOfDay) {
+    return Instant.ofEpochSecond(dayStartSecond, nanosOfDay);
+  }
+
+  /**
+   * Writes the payments of a segment to a temporary file. Closing it without a commit deletes the
+   * temporary file.
+   */
+  public static final class Writer implements Closeable {
+
+    private final Path path;
+    private final Path temporaryPath;
+    private final LocalDate day;
+    private final long dayStartSecond;
+    private final int blockSize;
+    private final FileOutputStream file;
+    private final DataOutputStream output;
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream blockEntries = new ByteArrayOutputStream();
+    private final Deflater deflater = new Deflater();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private byte[] compressed = new byte[1 << 16];
+    private long position;
+    private int blockCount;
+    private int blockPayments;
+    private long blockFirstId;
+    private long blockFirstNanos;
+    private long blockLastNanos;
+    private long previousNanos;
+    private long lastId;
+    private long paymentCount;
+    private boolean committed;
+
+    private Writer(Path path, LocalDate day, int blockSize) throws IOException {
+      this.path = path;
+      this.temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+      this.day = day;
+      this.dayStartSecond = day.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+      this.blockSize = blockSize;
+      this.file = new FileOutputStream(temporaryPath.toFile());
+      this.output = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(day.toEpochDay());
+      position = 16;
+    }
+
+    /**
+     * Writes a payment of the day, whose ID must be greater than the ID of the previous one
+     */
+    public void write(Payment payment) throws IOException {
+      var id = payment.getId();
+      if (id <= lastId) {
+        throw new IllegalArgumentException("Payments must be written in ascending ID order");
+      }
+      var timestamp = payment.getTimestamp();
+      var nanos = (timestamp.getEpochSecond() - dayStartSecond) * NANOS_PER_SECOND
+          + timestamp.getNano();
+      if (nanos < 0 || nanos >= NANOS_PER_DAY) {
+        throw new IllegalArgumentException("Payment " + id + " is not of " + day);
+      }
+      if (blockPayments == 0) {
+        blockFirstId = id;
+        blockFirstNanos = nanos;
+        blockLastNanos = nanos;
+        previousNanos = 0;
+        writeVarLong(block, id);
+      } else {
+        writeVarLong(block, id - lastId);
+      }
+      writeVarLong(block, payment.getSenderAccountId());
+      writeVarLong(block, payment.getReceiverAccountId());
+      writeVarLong(block, payment.getAmount().getCents());
+      var delta = nanos - previousNanos;
+      writeVarLong(block, (delta << 1) ^ (delta >> 63));
+      previousNanos = nanos;
+      blockFirstNanos = Math.min(blockFirstNanos, nanos);
+      blockLastNanos = Math.max(blockLastNanos, nanos);
+      postings.computeIfAbsent(payment.getSenderAccountId(), accountId -> new Postings())
+          .add(blockCount);
+      postings.computeIfAbsent(payment.getReceiverAccountId(), accountId -> new Postings())
+          .add(blockCount);
+      lastId = id;
+      paymentCount++;
+      if (++blockPayments == blockSize) {
+        writeBlock();
+      }
+    }
+
+    /**
+     * Ends the segment, forces it to disk and moves it to its path
+     */
+    public void commit() throws IOException {
+      if (blockPayments > 0) {
+        writeBlock();
+      }
+      var index = new ByteArrayOutputStream();
+      var accountIds = postings.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+      var accountIndex = new ByteArrayOutputStream(accountIds.length * ACCOUNT_ENTRY_SIZE);
+      var accountEntries = new DataOutputStream(accountIndex);
+      for (var accountId : accountIds) {
+        var offset = position + index.size();
+        postings.get(accountId).writeTo(index);
+        accountEntries.writeLong(accountId);
+        accountEntries.writeLong(offset);
+        accountEntries.writeInt((int) (position + index.size() - offset));
+      }
+      var postingsOffset = position;
+      var accountIndexOffset = position + index.size();
+      accountIndex.writeTo(index);
+      var blockIndexOffset = position + index.size();
+      blockEntries.writeTo(index);
+      var footer = new DataOutputStream(index);
+      footer.writeLong(postingsOffset);
+      footer.writeLong(blockIndexOffset);
+      footer.writeInt(blockCount);
+      footer.writeLong(accountIndexOffset);
+      footer.writeInt(accountIds.length);
+      footer.writeLong(paymentCount);
+      var checksum = new CRC32C();
+      checksum.update(index.toByteArray());
+      footer.writeInt((int) checksum.getValue());
+      if (position + index.size() > Integer.MAX_VALUE) {
+        throw new IOException("Payment segment of " + day + " is larger than 2GB");
+      }
+
+      index.writeTo(output);
+      output.flush();
+      file.getFD().sync();
+      output.close();
+      Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      deflater.end();
+      if (!committed) {
+        output.close();
+        Files.deleteIfExists(temporaryPath);
+      }
+    }
+
+    private void writeBlock() throws IOException {
+      var raw = block.toByteArray();
+      deflater.reset();
+      deflater.setInput(raw);
+      deflater.finish();
+      var length = 0;
+      while (!deflater.finished()) {
+        if (length == compressed.length) {
+          compressed = Arrays.copyOf(compressed, 2 * length);
+        }
+        length += deflater.deflate(compressed, length, compressed.length - length);
+      }
+      output.write(compressed, 0, length);
+      var checksum = new CRC32C();
+      checksum.update(compressed, 0, length);
+
+      var entry = new DataOutputStream(blockEntries);
+      entry.writeLong(blockFirstId);
+      entry.writeLong(lastId);
+      entry.writeLong(blockFirstNanos);
+      entry.writeLong(blockLastNanos);
+      entry.writeLong(position);
+      entry.writeInt(length);
+      entry.writeInt(raw.length);
+      entry.writeInt(blockPayments);
+      entry.writeInt((int) checksum.getValue());
+      position += length;
+      blockCount++;
+      blockPayments = 0;
+      block.reset();
+    }
+  }
+
+  /**
+   * The numbers of the blocks holding payments of an account, in ascending order
+   */
+  private static final class Postings {
+
+    private int[] blocks = new int[4];
+    private int count;
+
+    void add(int block) {
+      if (count > 0 && blocks[count - 1] == block) {
+        return;
+      }
+      if (count == blocks.length) {
+        blocks = Arrays.copyOf(blocks, 2 * count);
+      }
+      blocks[count++] = block;
+    }
+
+    void writeTo(ByteArrayOutputStream output) {
+      var previous = 0;
+      for (var i = 0; i < count; i++) {
+        writeVarLong(output, blocks[i] - previous);
+        previous = blocks[i];
+      }
+    }
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream output, long value) {
+    while ((value & ~0x7FL) != 0) {
+      output.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+
+  private static long readVarLong(ByteBuffer input) throws IOException {
+    var value = 0L;
+    for (var shift = 0; shift < Long.SIZE; shift += 7) {
+      var b = input.get() & 0xFF;
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable-length long");
+  }
+}
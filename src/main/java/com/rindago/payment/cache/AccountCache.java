@@ -0,0 +1,120 @@
+package com.rindago.payment.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rindago.payment.dtos.AccountCacheStatisticsDto;
+import com.rindago.payment.dtos.AccountDto;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A bounded read-through cache of accounts, evicting by size and by time to live. Writers never put
+ * values into it: they invalidate the accounts they change once their transaction has committed,
+ * and the next read loads the committed balance. A read cannot cache a balance which is not
+ * committed yet, and a load which has read the old balance cannot put it back after the
+ * invalidation: the invalidation removes the pending load, whose result is then discarded.
+ *
+ * <p>Loads run on the reading thread outside of the cache's internal locks, so that a virtual
+ * thread waiting for the database is not pinned to its carrier thread by a synchronized block.
+ *
+ * <p>Accounts which do not exist are not cached, so creating an account needs no invalidation.
+ */
+@Component
+public class AccountCache {
+
+  private final AccountCacheProperties accountCacheProperties;
+  private final AsyncCache<Long, AccountDto> cache;
+  private final LongAdder invalidations = new LongAdder();
+
+  public AccountCache(AccountCacheProperties accountCacheProperties) {
+    this.accountCacheProperties = accountCacheProperties;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(accountCacheProperties.getMaximumSize())
+        .expireAfterWrite(accountCacheProperties.getTimeToLive())
+        .executor(Runnable::run) // Evictions run on the calling thread, not on the common pool.
+        .recordStats()
+        .buildAsync();
+  }
+
+  /**
+   * Reads an account from the cache, or loads it and caches it if it is missing. The returned DTO
+   * is shared with other readers and must not be modified.
+   * @param accountId ID of the account
+   * @param loader Loads the committed state of the account, or null if it does not exist
+   * @return The account, or empty if it does not exist
+   */
+  public Optional<AccountDto> get(Long accountId, Function<Long, AccountDto> loader) {
+    if (!accountCacheProperties.isEnabled()) {
+      return Optional.ofNullable(loader.apply(accountId));
+    }
+    var load = new CompletableFuture<AccountDto>();
+    var account = cache.get(accountId, (id, executor) -> load);
+    if (account == load) { // Missing, so this reader loads it; concurrent readers wait for it.
+      try {
+        load.complete(loader.apply(accountId)); // A null account is removed from the cache.
+      } catch (RuntimeException e) {
+        load.completeExceptionally(e);
+        throw e;
+      }
+    }
+    return Optional.ofNullable(account.join());
+  }
+
+  /**
+   * Invalidates the given accounts once the current transaction has committed, or right away if no
+   * transaction is active. Nothing is invalidated if the transaction rolls back, since the cached
+   * balances are still the committed ones.
+   * @param accountIds IDs of the accounts changed by the transaction
+   */
+  public void invalidateAfterCommit(Collection<Long> accountIds) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      invalidate(accountIds);
+      return;
+    }
+    var changedAccountIds = List.copyOf(accountIds);
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            invalidate(changedAccountIds);
+          }
+        });
+  }
+
+  /**
+   * Invalidates all accounts, for when the accounts have been changed outside the application
+   */
+  public void invalidateAll() {
+    invalidations.add(cache.synchronous().estimatedSize());
+    cache.synchronous().invalidateAll();
+  }
+
+  private void invalidate(Collection<Long> accountIds) {
+    cache.synchronous().invalidateAll(accountIds);
+    invalidations.add(accountIds.size());
+  }
+
+  /**
+   * @return Hit, miss, eviction and invalidation counts of the cache since the application started
+   */
+  public AccountCacheStatisticsDto getStatistics() {
+    cache.synchronous().cleanUp(); // Pending evictions are counted.
+    var stats = cache.synchronous().stats();
+    var statistics = new AccountCacheStatisticsDto();
+    statistics.setEnabled(accountCacheProperties.isEnabled());
+    statistics.setSize(cache.synchronous().estimatedSize());
+    statistics.setHits(stats.hitCount());
+    statistics.setMisses(stats.missCount());
+    statistics.setHitRate(stats.hitRate());
+    statistics.setEvictions(stats.evictionCount());
+    statistics.setInvalidations(invalidations.sum());
+    return statistics;
+  }
+}
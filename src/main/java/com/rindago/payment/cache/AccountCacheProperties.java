@@ -0,0 +1,28 @@
+package com.rindago.payment.cache;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the account read cache, bound from 'payment.account-cache.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.account-cache")
+public class AccountCacheProperties {
+
+  /**
+   * Whether account reads are served from the cache; when off, every read goes to the database
+   */
+  private boolean enabled = true;
+
+  /**
+   * Maximum number of cached accounts, beyond which the least likely to be read again are evicted
+   */
+  private long maximumSize = 100_000;
+
+  /**
+   * Time after which a cached account is evicted, counted from when it was loaded
+   */
+  private Duration timeToLive = Duration.ofMinutes(5);
+}
@@ -1,16 +1,34 @@
 package com.rindago.payment.controllers;
 
 import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.AccountImportSummary;
 import com.rindago.payment.dtos.AccountRequest;
+import com.rindago.payment.dtos.PaymentHistoryPage;
+import com.rindago.payment.engines.PaymentEngine;
+import com.rindago.payment.services.AccountImportFormat;
+import com.rindago.payment.services.AccountImportService;
 import com.rindago.payment.services.AccountService;
+import com.rindago.payment.services.PaymentHistoryService;
+import com.rindago.payment.snapshot.AccountSnapshotService;
+import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
-import javax.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping(value = "/account", consumes = "application/json", produces = "application/json")
@@ -18,6 +36,10 @@ import org.springframework.web.bind.annotation.RestController;
 public class AccountController {
 
   private final AccountService accountService;
+  private final AccountImportService accountImportService;
+  private final PaymentHistoryService paymentHistoryService;
+  private final AccountSnapshotService accountSnapshotService;
+  private final PaymentEngine paymentEngine;
 
   /**
    * An endpoint to create an account
@@ -30,4 +52,62 @@ public class AccountController {
     return ResponseEntity.ok(accountService.createAccount(accountRequest));
   }
 
+  /**
+   * An endpoint to write a binary snapshot of all the accounts with their current balances,
+   * which another instance can load at startup with 'payment.warm-start.snapshot'
+   * @return Stream of the snapshot, or 501 with an engine which keeps the balances elsewhere, such
+   *     as the sharded engine on its shards
+   */
+  @GetMapping(value = "/snapshot", consumes = MediaType.ALL_VALUE,
+      produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+  public ResponseEntity<StreamingResponseBody> getSnapshot() {
+    if (!paymentEngine.supportsAccountSnapshots()) {
+      throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED,
+          "Account snapshots are not supported by the configured payment engine");
+    }
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM)
+        .body(accountSnapshotService::write);
+  }
+
+  /**
+   * An endpoint to read an account with its current balance, served from the account cache
+   * @param id ID of the account
+   * @return The account, or 404 if it does not exist
+   */
+  @GetMapping(value = "/{id}", consumes = MediaType.ALL_VALUE) // A GET request has no body.
+  public ResponseEntity<AccountDto> getAccount(@PathVariable Long id) {
+    return ResponseEntity.of(accountService.getAccount(id));
+  }
+
+  /**
+   * An endpoint to read the payments sent and received by an account, oldest first, page by page
+   * @param id ID of the account
+   * @param cursor 'nextCursor' of the previous page, or none for the first page
+   * @param size Maximum number of payments of the page, from 1 to 1000
+   * @return The page of payments, or 404 if the account does not exist
+   */
+  @GetMapping(value = "/{id}/payments", consumes = MediaType.ALL_VALUE)
+  public ResponseEntity<PaymentHistoryPage> getPayments(@PathVariable Long id,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "50") int size) {
+    return ResponseEntity.of(paymentHistoryService.getPayments(id, cursor, size));
+  }
+
+  /**
+   * An endpoint to import a large number of accounts from a stream of NDJSON records
+   * ('{"name": "...", "balance": ...}' per line) or CSV records ('name,balance' per line)
+   * @param contentType 'application/x-ndjson' or 'text/csv'
+   * @param body Stream of account records
+   * @return Summary of the import
+   * @throws IOException If the request body cannot be read
+   */
+  @PostMapping(value = "/import", consumes = {"application/x-ndjson", "text/csv"})
+  public ResponseEntity<AccountImportSummary> importAccounts(
+      @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body)
+      throws IOException {
+    var format = MediaType.valueOf("text/csv").isCompatibleWith(contentType)
+        ? AccountImportFormat.CSV : AccountImportFormat.NDJSON;
+    return ResponseEntity.ok(accountImportService.importAccounts(body, format));
+  }
+
 }
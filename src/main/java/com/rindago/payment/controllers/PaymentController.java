@@ -1,30 +1,133 @@
 package com.rindago.payment.controllers;
 
-import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentBatchRequest;
+import com.rindago.payment.dtos.PaymentBatchResponse;
 import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.dtos.PaymentSubmission;
+import com.rindago.payment.services.PaymentBatchService;
+import com.rindago.payment.services.PaymentExportFormat;
+import com.rindago.payment.services.PaymentExportService;
 import com.rindago.payment.services.PaymentService;
-import javax.validation.Valid;
+import com.rindago.payment.services.PaymentSubmissionProperties;
+import com.rindago.payment.services.PaymentSubmissionService;
+import jakarta.validation.Valid;
+import java.net.URI;
+import java.time.Instant;
+import java.util.zip.GZIPOutputStream;
 import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @AllArgsConstructor
 public class PaymentController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final PaymentService paymentService;
+    private final ObjectProvider<PaymentBatchService> paymentBatchService;
+    private final ObjectProvider<PaymentExportService> paymentExportService;
+    private final PaymentSubmissionService paymentSubmissionService;
+    private final PaymentSubmissionProperties paymentSubmissionProperties;
 
     /**
      * THIS '/payment' ENDPOINT IS THE MAIN EXPECTED ENDPOINT IN THE ASSIGNMENT.
      *
-     * An endpoint to make a payment
+     * An endpoint to make a payment. In asynchronous mode, the payment is queued to be settled and
+     * the response is 202 Accepted with the submission, to be polled at '/payment/{id}', or 503 if
+     * the queue is full.
      * @param paymentRequest A DTO to transfer information of the payment to be made
-     * @return The payment that has been made
+     * @param idempotencyKey Optional key, the same for all retries of the payment, so that it is
+     *                       made at most once and every retry returns the same payment
+     * @return The payment that has been made, or the pending submission in asynchronous mode
      */
     @PostMapping("/payment")
-    public ResponseEntity<PaymentDto> doPayment(@Valid @RequestBody PaymentRequest paymentRequest) {
-        return ResponseEntity.ok().body(paymentService.makePayment(paymentRequest));
+    public ResponseEntity<?> doPayment(@Valid @RequestBody PaymentRequest paymentRequest,
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        if (paymentSubmissionProperties.isEnabled()) {
+            var submission = paymentSubmissionService.submit(paymentRequest, idempotencyKey);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/payment/" + submission.getId()))
+                    .body(submission);
+        }
+        return ResponseEntity.ok().body(paymentService.makePayment(paymentRequest, idempotencyKey));
+    }
+
+    /**
+     * An endpoint to poll a payment submitted in asynchronous mode
+     * @param id Handle of the submission, as returned by '/payment'
+     * @return The submission with its status, and the payment once it has been made, or 404 if it
+     * is unknown or its outcome has expired
+     */
+    @GetMapping("/payment/{id}")
+    public ResponseEntity<PaymentSubmission> getPayment(@PathVariable String id) {
+        return ResponseEntity.of(paymentSubmissionService.getSubmission(id));
+    }
+
+    /**
+     * An endpoint to make many payments at once, e.g. for a settlement upload
+     * @param paymentBatchRequest A DTO to transfer information of the payments to be made
+     * @return The outcome of each payment of the batch
+     */
+    @PostMapping("/payments/batch")
+    public ResponseEntity<PaymentBatchResponse> doPayments(
+            @Valid @RequestBody PaymentBatchRequest paymentBatchRequest) {
+        var batchService = paymentBatchService.getIfAvailable(() -> {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED,
+                    "Payment batches are not supported by the configured payment engine");
+        });
+        return ResponseEntity.ok().body(batchService.makePayments(paymentBatchRequest));
+    }
+
+    /**
+     * An endpoint to export payments for reconciliation, streamed in ID order as NDJSON or CSV,
+     * gzip-compressed if the client accepts it
+     * @param from Start of the time range (inclusive, ISO-8601), or none for no lower bound
+     * @param to End of the time range (exclusive, ISO-8601), or none for no upper bound
+     * @param afterId ID of the last payment received by an interrupted export, to resume it
+     * @param format 'NDJSON' (default) or 'CSV'
+     * @param acceptEncoding The client's accepted encodings
+     * @return Stream of payment records
+     */
+    @GetMapping("/payments/export")
+    public ResponseEntity<StreamingResponseBody> exportPayments(
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "NDJSON") PaymentExportFormat format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                    String acceptEncoding) {
+        var exportService = paymentExportService.getIfAvailable(() -> {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED,
+                    "Payment exports are not supported by the configured payment engine");
+        });
+        var gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        var response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getMediaType()))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(output -> {
+            if (gzip) {
+                var gzipOutput = new GZIPOutputStream(output, 64 * 1024);
+                exportService.export(from, to, afterId, format, gzipOutput);
+                gzipOutput.finish();
+            } else {
+                exportService.export(from, to, afterId, format, output);
+            }
+        });
     }
 }
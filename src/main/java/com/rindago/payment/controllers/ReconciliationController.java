@@ -0,0 +1,30 @@
+package com.rindago.payment.controllers;
+
+import com.rindago.payment.dtos.ReconciliationReport;
+import com.rindago.payment.reconciliation.BalanceReconciler;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping(value = "/reconciliation", produces = "application/json")
+@AllArgsConstructor
+public class ReconciliationController {
+
+  private final ObjectProvider<BalanceReconciler> balanceReconciler;
+
+  /**
+   * An endpoint to read the outcome of the last balance reconciliation, with the accounts whose
+   * balance does not match their opening balance and payments
+   * @return Report of the last reconciliation, or 404 if it is disabled or has not run yet
+   */
+  @GetMapping
+  public ResponseEntity<ReconciliationReport> getLastReport() {
+    var reconciler = balanceReconciler.getIfAvailable();
+    return reconciler == null ? ResponseEntity.notFound().build()
+        : ResponseEntity.of(reconciler.getLastReport());
+  }
+}
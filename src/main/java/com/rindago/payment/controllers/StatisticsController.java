@@ -0,0 +1,38 @@
+package com.rindago.payment.controllers;
+
+import com.rindago.payment.cache.AccountCache;
+import com.rindago.payment.dtos.AccountCacheStatisticsDto;
+import com.rindago.payment.dtos.LockStatisticsDto;
+import com.rindago.payment.locks.AccountLockManager;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping(value = "/statistics", produces = "application/json")
+@AllArgsConstructor
+public class StatisticsController {
+
+  private final AccountLockManager accountLockManager;
+  private final AccountCache accountCache;
+
+  /**
+   * An endpoint to read lock-wait statistics of payments on the same accounts
+   * @return Statistics of the account lock manager
+   */
+  @GetMapping("/locks")
+  public ResponseEntity<LockStatisticsDto> getLockStatistics() {
+    return ResponseEntity.ok(accountLockManager.getStatistics());
+  }
+
+  /**
+   * An endpoint to read hit, miss, eviction and invalidation statistics of the account cache
+   * @return Statistics of the account cache
+   */
+  @GetMapping("/account-cache")
+  public ResponseEntity<AccountCacheStatisticsDto> getAccountCacheStatistics() {
+    return ResponseEntity.ok(accountCache.getStatistics());
+  }
+}
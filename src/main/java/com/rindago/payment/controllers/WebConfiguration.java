@@ -0,0 +1,19 @@
+package com.rindago.payment.controllers;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.PathMatchConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Web MVC settings kept from Spring Boot 2, so that clients calling e.g. '/payment/' with a trailing
+ * slash still reach their endpoints
+ */
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer {
+
+  @Override
+  @SuppressWarnings("deprecation") // No longer the default since Spring 6, but still supported
+  public void configurePathMatch(PathMatchConfigurer configurer) {
+    configurer.setUseTrailingSlashMatch(true);
+  }
+}
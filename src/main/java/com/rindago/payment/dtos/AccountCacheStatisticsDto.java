@@ -0,0 +1,20 @@
+package com.rindago.payment.dtos;
+
+import lombok.Data;
+
+/**
+ * A DTO transferring statistics of the account read cache: whether it is enabled, the number of
+ * cached accounts, hits and misses of account reads, evictions by size or time to live, and
+ * invalidations by committed payments
+ */
+@Data
+public class AccountCacheStatisticsDto {
+
+  private boolean enabled;
+  private long size;
+  private long hits;
+  private long misses;
+  private double hitRate;
+  private long evictions;
+  private long invalidations;
+}
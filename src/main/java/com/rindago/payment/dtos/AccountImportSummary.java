@@ -0,0 +1,19 @@
+package com.rindago.payment.dtos;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+
+/**
+ * A DTO transferring the outcome of an account import: the number of created and rejected accounts,
+ * the lowest and highest ID of the created accounts, and the line numbers of the rejected records
+ */
+@Data
+public class AccountImportSummary {
+
+  private long created;
+  private long rejected;
+  private Long firstCreatedId;
+  private Long lastCreatedId;
+  private List<Long> rejectedLines = new ArrayList<>();
+}
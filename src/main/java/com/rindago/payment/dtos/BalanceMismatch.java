@@ -0,0 +1,16 @@
+package com.rindago.payment.dtos;
+
+import java.math.BigDecimal;
+import lombok.Data;
+
+/**
+ * A DTO transferring an account whose balance differs from its opening balance plus the payments
+ * it has received minus the payments it has sent
+ */
+@Data
+public class BalanceMismatch {
+
+  private Long accountId;
+  private BigDecimal balance;
+  private BigDecimal expectedBalance;
+}
@@ -0,0 +1,17 @@
+package com.rindago.payment.dtos;
+
+import lombok.Data;
+
+/**
+ * A DTO transferring lock-wait statistics of the account lock manager: the number of lock
+ * acquisitions, how many of them had to wait for another payment, and the average and maximum
+ * waiting times in microseconds
+ */
+@Data
+public class LockStatisticsDto {
+
+  private long acquisitions;
+  private long contendedAcquisitions;
+  private long averageWaitMicros;
+  private long maxWaitMicros;
+}
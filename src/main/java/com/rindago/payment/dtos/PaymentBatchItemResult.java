@@ -0,0 +1,17 @@
+package com.rindago.payment.dtos;
+
+import lombok.Data;
+
+/**
+ * A DTO transferring the outcome of a single payment in a batch: its index in the request, its
+ * status, the payment made if it is completed, or the error code and message if it is rejected
+ */
+@Data
+public class PaymentBatchItemResult {
+
+  private int index;
+  private PaymentBatchItemStatus status;
+  private PaymentDto payment;
+  private String errorCode;
+  private String errorMessage;
+}
@@ -0,0 +1,20 @@
+package com.rindago.payment.dtos;
+
+/**
+ * Outcome of a single payment in a payment batch
+ */
+public enum PaymentBatchItemStatus {
+  /**
+   * The payment has been made.
+   */
+  COMPLETED,
+  /**
+   * The payment violates a requirement and has not been made.
+   */
+  REJECTED,
+  /**
+   * The payment is valid but has not been made because another payment of an all-or-nothing batch
+   * has been rejected.
+   */
+  NOT_APPLIED
+}
@@ -0,0 +1,15 @@
+package com.rindago.payment.dtos;
+
+/**
+ * How a payment batch treats rejected payments
+ */
+public enum PaymentBatchMode {
+  /**
+   * If any payment of the batch is rejected, none of them is made.
+   */
+  ALL_OR_NOTHING,
+  /**
+   * Rejected payments are skipped, all others are made.
+   */
+  BEST_EFFORT
+}
@@ -0,0 +1,23 @@
+package com.rindago.payment.dtos;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+import lombok.Data;
+
+/**
+ * A DTO to transfer information of payments to be made together as requested: the batch mode and
+ * the payments, which are checked against account balances in the given order
+ */
+@Data
+public class PaymentBatchRequest {
+
+  @NotNull
+  private PaymentBatchMode mode = PaymentBatchMode.ALL_OR_NOTHING;
+
+  @NotNull
+  @Size(min = 1, max = 10_000)
+  @Valid
+  private List<PaymentRequest> payments;
+}
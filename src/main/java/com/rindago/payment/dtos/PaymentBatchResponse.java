@@ -0,0 +1,17 @@
+package com.rindago.payment.dtos;
+
+import java.util.List;
+import lombok.Data;
+
+/**
+ * A DTO transferring the outcome of a payment batch: the batch mode, the number of completed and
+ * rejected payments, and the outcome of each payment in the order of the request
+ */
+@Data
+public class PaymentBatchResponse {
+
+  private PaymentBatchMode mode;
+  private int completed;
+  private int rejected;
+  private List<PaymentBatchItemResult> results;
+}
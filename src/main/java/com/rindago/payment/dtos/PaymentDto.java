@@ -1,8 +1,11 @@
 package com.rindago.payment.dtos;
 
+import com.rindago.payment.money.Money;
 import java.math.BigDecimal;
 import java.time.Instant;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 /**
  * A DTO covering and transferring information of a payment to be made from/to entity:
@@ -10,10 +13,20 @@ import lombok.Data;
  * the amount to be transferred, and the timestamp of the transaction
  */
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class PaymentDto {
   private Long id;
   private Long senderAccountId;
   private Long receiverAccountId;
   private BigDecimal amount;
   private Instant timestamp;
+
+  /**
+   * For JPQL projections and stored payments, whose amount is read through its converter
+   */
+  public PaymentDto(Long id, Long senderAccountId, Long receiverAccountId, Money amount,
+      Instant timestamp) {
+    this(id, senderAccountId, receiverAccountId, amount.toBigDecimal(), timestamp);
+  }
 }
@@ -0,0 +1,15 @@
+package com.rindago.payment.dtos;
+
+import java.util.List;
+import lombok.Data;
+
+/**
+ * A DTO transferring a page of an account's payment history: the sent and received payments in
+ * (timestamp, ID) order, and the cursor of the next page, which is null on the last page
+ */
+@Data
+public class PaymentHistoryPage {
+
+  private List<PaymentDto> payments;
+  private String nextCursor;
+}
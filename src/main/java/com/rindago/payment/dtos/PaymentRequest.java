@@ -1,7 +1,7 @@
 package com.rindago.payment.dtos;
 
+import jakarta.validation.constraints.NotNull;
 import java.math.BigDecimal;
-import javax.validation.constraints.NotNull;
 import lombok.Data;
 
 /**
@@ -0,0 +1,20 @@
+package com.rindago.payment.dtos;
+
+import java.time.Instant;
+import lombok.Data;
+
+/**
+ * A DTO transferring the state of a payment submitted for asynchronous settlement: the handle ID to
+ * poll it with, its status, the payment made if it is completed, or the error code and message if
+ * it is rejected or has failed
+ */
+@Data
+public class PaymentSubmission {
+
+  private String id;
+  private PaymentSubmissionStatus status;
+  private Instant submittedAt;
+  private PaymentDto payment;
+  private String errorCode;
+  private String errorMessage;
+}
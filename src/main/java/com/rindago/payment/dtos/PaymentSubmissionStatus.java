@@ -0,0 +1,24 @@
+package com.rindago.payment.dtos;
+
+/**
+ * State of a payment submitted for asynchronous settlement
+ */
+public enum PaymentSubmissionStatus {
+  /**
+   * The payment is queued or being settled.
+   */
+  PENDING,
+  /**
+   * The payment has been made.
+   */
+  COMPLETED,
+  /**
+   * The payment violates a requirement and has not been made.
+   */
+  REJECTED,
+  /**
+   * The payment could not be settled, e.g. because of concurrent payments, and has not been made.
+   * It can be submitted again.
+   */
+  FAILED
+}
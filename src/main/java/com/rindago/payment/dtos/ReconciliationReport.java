@@ -0,0 +1,25 @@
+package com.rindago.payment.dtos;
+
+import java.time.Instant;
+import java.util.List;
+import lombok.Data;
+
+/**
+ * A DTO transferring the outcome of a balance reconciliation: up to which payment the balances
+ * were reconciled, how many accounts and new payments it covered, how many accounts were
+ * recounted from all their payments, how long it paused for the latency of '/payment', and the
+ * accounts whose balance does not match, the first 1000 of them by ID
+ */
+@Data
+public class ReconciliationReport {
+
+  private long lastPaymentId;
+  private Instant startedAt;
+  private long durationMillis;
+  private long accounts;
+  private long payments;
+  private long recountedAccounts;
+  private long throttledMillis;
+  private long mismatchCount;
+  private List<BalanceMismatch> mismatches;
+}
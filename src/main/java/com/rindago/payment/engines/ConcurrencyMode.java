@@ -0,0 +1,16 @@
+package com.rindago.payment.engines;
+
+/**
+ * How the JPA payment engine keeps concurrent payments on the same account consistent
+ */
+public enum ConcurrencyMode {
+  /**
+   * Payments on the same account wait for each other on the account lock manager.
+   */
+  PESSIMISTIC,
+  /**
+   * Payments run without locks; a payment whose accounts have been changed by a concurrent payment
+   * fails on the account version check and is retried with backoff.
+   */
+  OPTIMISTIC
+}
@@ -0,0 +1,63 @@
+package com.rindago.payment.engines;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the JPA payment engine, bound from 'payment.jpa.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.jpa")
+public class JpaEngineProperties {
+
+  private ConcurrencyMode concurrency = ConcurrencyMode.PESSIMISTIC;
+
+  /**
+   * Whether payments debit and credit the accounts with guarded UPDATE statements instead of
+   * loading and saving the account entities. The database serializes such payments on the account
+   * rows, so the concurrency mode does not apply to them.
+   */
+  private boolean guardedUpdates = false;
+
+  /**
+   * Maximum number of attempts of a payment in optimistic mode or with guarded updates, the first
+   * one included
+   */
+  private int maxAttempts = 8;
+
+  /**
+   * Upper bound of the backoff before the first retry; it doubles with each further retry
+   */
+  private Duration initialBackoff = Duration.ofMillis(1);
+
+  /**
+   * Upper bound of the backoff before any retry
+   */
+  private Duration maxBackoff = Duration.ofMillis(50);
+
+  /**
+   * Whether concurrent payments are gathered into groups, each made in one transaction by the group
+   * committer, instead of each payment committing its own transaction. Takes precedence over the
+   * concurrency mode and guarded updates, except for payments involving a hot account or made
+   * within the caller's transaction.
+   */
+  private boolean groupCommit = false;
+
+  /**
+   * Maximum number of payments made in one group commit transaction
+   */
+  private int groupCommitMaxSize = 64;
+
+  /**
+   * Maximum time the committer waits for further payments once it has taken the first one of a
+   * group. With zero, a group only gathers the payments queued while the previous group committed.
+   */
+  private Duration groupCommitMaxWait = Duration.ofMillis(2);
+
+  /**
+   * Maximum time a caller waits for the committer to take its payment into a group, after which
+   * it makes the payment alone. Once taken, the payment is waited for until its group has ended.
+   */
+  private Duration groupCommitTimeout = Duration.ofSeconds(5);
+}
@@ -0,0 +1,350 @@
+package com.rindago.payment.engines;
+
+import com.rindago.payment.cache.AccountCache;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.locks.AccountLockManager;
+import com.rindago.payment.metrics.PaymentMetrics;
+import com.rindago.payment.metrics.PaymentStage;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.repositories.IdempotencyKeyRepository;
+import com.rindago.payment.repositories.PaymentRepository;
+import com.rindago.payment.services.EntityMappings;
+import com.rindago.payment.services.HotAccountService;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * The default payment engine which loads and updates account entities through JPA
+ * and saves the payment within the same database transaction. Depending on the concurrency mode,
+ * payments touching the same account are either serialized by the account lock manager before their
+ * transactions open, or run concurrently and retried when the account version check fails.
+ * With guarded updates switched on, the accounts are debited and credited by single UPDATE
+ * statements instead, without loading the entities. With group commit switched on, concurrent
+ * payments are made together by the {@link PaymentGroupCommitter}, one transaction per group.
+ * The stages of a payment made alone are timed by {@link PaymentMetrics}.
+ */
+@Service
+@ConditionalOnProperty(name = "payment.engine", havingValue = "jpa", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JpaPaymentEngine implements PaymentEngine {
+
+  private final PaymentRepository paymentRepository;
+  private final AccountRepository accountRepository;
+  private final AccountLockManager accountLockManager;
+  private final TransactionTemplate transactionTemplate;
+  private final JpaEngineProperties jpaEngineProperties;
+  private final HotAccountService hotAccountService;
+  private final AccountCache accountCache;
+  private final IdempotencyKeyRepository idempotencyKeyRepository;
+  private final PaymentGroupCommitter paymentGroupCommitter;
+  private final PaymentMetrics paymentMetrics;
+
+  @Override
+  public PaymentDto makePayment(PaymentRequest paymentRequest, Money amount,
+      String idempotencyKey) {
+    var stageStart = paymentMetrics.startStages();
+    // A payment within the caller's transaction, or involving a hot account, is made alone.
+    if (jpaEngineProperties.isGroupCommit()
+        && !TransactionSynchronizationManager.isActualTransactionActive()
+        && !hotAccountService.isHot(paymentRequest.getSenderAccountId())
+        && !hotAccountService.isHot(paymentRequest.getReceiverAccountId())) {
+      var groupPayment = paymentGroupCommitter.makePayment(paymentRequest, amount,
+          idempotencyKey);
+      if (groupPayment.isPresent()) {
+        return groupPayment.get();
+      }
+      // The group's transaction has failed as a whole, so the payment is made alone.
+    }
+    var stagedPayment = new StagedPayment(paymentRequest, amount, idempotencyKey,
+        stageStart);
+    if (jpaEngineProperties.isGuardedUpdates()) {
+      // No account lock is needed; a lock wait on an account row which has timed out is retried.
+      return retryOnConflict(stagedPayment);
+    }
+    if (jpaEngineProperties.getConcurrency() == ConcurrencyMode.OPTIMISTIC) {
+      return retryOnConflict(stagedPayment);
+    }
+
+    // The locks are held until the transaction has committed, so the next payment on the same
+    // account reads the balance written by this one. A hot receiver is not locked since its row is
+    // not updated; its credit is appended as a balance delta.
+    var receiverToLock = hotAccountService.isHot(paymentRequest.getReceiverAccountId())
+        ? paymentRequest.getSenderAccountId() : paymentRequest.getReceiverAccountId();
+    return accountLockManager.callLocked(paymentRequest.getSenderAccountId(), receiverToLock,
+        () -> {
+          stagedPayment.endStage(PaymentStage.LOCK_WAIT);
+          return stagedPayment.commit();
+        });
+  }
+
+  private PaymentDto retryOnConflict(StagedPayment stagedPayment) {
+    for (var attempt = 1; ; attempt++) {
+      try {
+        return stagedPayment.commit();
+      } catch (ConcurrencyFailureException e) {
+        if (attempt >= jpaEngineProperties.getMaxAttempts()) {
+          throw e; // The retry budget is used up.
+        }
+        backOff(attempt, e);
+        stagedPayment.restart(); // The failed attempt and the back-off are not in any stage.
+      }
+    }
+  }
+
+  /**
+   * Sleeps for a random time up to the exponentially growing bound of the given retry ("full
+   * jitter"), so that conflicting payments do not collide again at the same moment
+   */
+  private void backOff(int retry, ConcurrencyFailureException failure) {
+    var initialNanos = jpaEngineProperties.getInitialBackoff().toNanos();
+    var maxNanos = jpaEngineProperties.getMaxBackoff().toNanos();
+    var boundNanos = Math.min(maxNanos, initialNanos << Math.min(retry - 1, 30));
+    try {
+      TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(boundNanos + 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw failure;
+    }
+  }
+
+  private PaymentDto transfer(StagedPayment stagedPayment) {
+    var paymentRequest = stagedPayment.paymentRequest;
+    var amount = stagedPayment.amount;
+    stagedPayment.endStage(PaymentStage.TRANSACTION_BEGIN);
+
+    // ---
+    // Requirements are checked in the following block and exception is thrown if inputs are problematic.
+    var sender = accountRepository.findById(paymentRequest.getSenderAccountId())
+        .orElseThrow(() -> RequirementException.of(ExceptionCode.SENDER_ACCOUNT_NOT_FOUND));
+
+    var receiver = accountRepository.findById(paymentRequest.getReceiverAccountId())
+        .orElseThrow(() -> RequirementException.of(ExceptionCode.RECEIVER_ACCOUNT_NOT_FOUND));
+
+    if (sender.getId().equals(receiver.getId())) {
+      throw RequirementException.of(ExceptionCode.SENDER_RECEIVER_THE_SAME);
+    }
+    stagedPayment.endStage(PaymentStage.ACCOUNT_LOOKUP);
+
+    if (hotAccountService.isHot(sender.getId())) {
+      hotAccountService.fold(sender); // Pending credits count towards the balance to be debited.
+    }
+
+    if (amount.exceeds(sender.getBalance())) {
+      throw RequirementException.of(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE);
+    }
+    // ---
+
+    sender.setBalance(sender.getBalance().minus(amount)); // Sender's balance - amount
+    accountRepository.save(sender); // Sender's balance is updated.
+    if (hotAccountService.isHot(receiver.getId())) {
+      hotAccountService.appendCredit(receiver.getId(), amount); // Receiver's row is not touched.
+    } else {
+      receiver.setBalance(receiver.getBalance().plus(amount)); // Receiver's balance + amount
+      accountRepository.save(receiver); // Receiver's balance is updated.
+    }
+
+    accountCache.invalidateAfterCommit(List.of(sender.getId(), receiver.getId()));
+    stagedPayment.endStage(PaymentStage.BALANCE_UPDATE);
+
+    var paymentToBeDone = EntityMappings.toEntity(paymentRequest, amount, Instant.now());
+    paymentRepository.save(paymentToBeDone); // Payment entities are saved in the DB.
+
+    var completedPayment = EntityMappings.toDto(paymentToBeDone); // Entity -> output DTO
+
+    recordIdempotencyKey(stagedPayment.idempotencyKey, completedPayment);
+    stagedPayment.endStage(PaymentStage.PAYMENT_INSERT);
+    return completedPayment;
+  }
+
+  /**
+   * Makes the payment with one guarded UPDATE statement per account instead of loading the account
+   * entities: the debit only applies if the sender's balance covers the amount, so there is no
+   * read-modify-write race. The updates run in ascending account ID order, the same order as the
+   * account locks, so that opposite payments do not deadlock. Requirements are only looked into
+   * when an update has not applied, and checked in the same order as {@link #transfer}.
+   */
+  private PaymentDto transferWithGuardedUpdates(StagedPayment stagedPayment) {
+    var paymentRequest = stagedPayment.paymentRequest;
+    var senderId = paymentRequest.getSenderAccountId();
+    var receiverId = paymentRequest.getReceiverAccountId();
+    var amount = stagedPayment.amount;
+    if (hotAccountService.isHot(senderId)) {
+      // Pending credits are folded into the sender entity.
+      return transfer(stagedPayment);
+    }
+    stagedPayment.endStage(PaymentStage.TRANSACTION_BEGIN);
+
+    boolean applied;
+    if (senderId.equals(receiverId)) {
+      applied = false;
+    } else if (hotAccountService.isHot(receiverId)) {
+      applied = accountRepository.existsById(receiverId)
+          && accountRepository.debit(senderId, amount) == 1;
+      if (applied) {
+        hotAccountService.appendCredit(receiverId, amount); // Receiver's row is not touched.
+      }
+    } else if (senderId < receiverId) {
+      applied = accountRepository.debit(senderId, amount) == 1
+          && accountRepository.credit(receiverId, amount) == 1;
+    } else {
+      applied = accountRepository.credit(receiverId, amount) == 1
+          && accountRepository.debit(senderId, amount) == 1;
+    }
+    stagedPayment.endStage(PaymentStage.BALANCE_UPDATE);
+    if (!applied) {
+      var rejection = rejectionOf(senderId, receiverId);
+      stagedPayment.endStage(PaymentStage.ACCOUNT_LOOKUP);
+      // The exception rolls back an update which has already applied.
+      throw RequirementException.of(rejection);
+    }
+
+    accountCache.invalidateAfterCommit(List.of(senderId, receiverId));
+
+    var paymentToBeDone = EntityMappings.toEntity(paymentRequest, amount, Instant.now());
+    paymentRepository.save(paymentToBeDone); // Payment entities are saved in the DB.
+
+    var completedPayment = EntityMappings.toDto(paymentToBeDone); // Entity -> output DTO
+
+    recordIdempotencyKey(stagedPayment.idempotencyKey, completedPayment);
+    stagedPayment.endStage(PaymentStage.PAYMENT_INSERT);
+    return completedPayment;
+  }
+
+  /**
+   * Inserts the idempotency key within the payment's transaction. If another request has recorded
+   * the same key, the insert fails and the payment is rolled back with it.
+   */
+  private void recordIdempotencyKey(String idempotencyKey, PaymentDto completedPayment) {
+    if (idempotencyKey != null) {
+      idempotencyKeyRepository.insert(idempotencyKey, completedPayment.getId(),
+          completedPayment.getSenderAccountId(), completedPayment.getReceiverAccountId(),
+          completedPayment.getAmount(), completedPayment.getTimestamp(), Instant.now());
+    }
+  }
+
+  /**
+   * @return Code of the first requirement, in the order of {@link #transfer}, violated by a payment
+   * whose guarded updates have not applied
+   */
+  private ExceptionCode rejectionOf(Long senderId, Long receiverId) {
+    if (!accountRepository.existsById(senderId)) {
+      return ExceptionCode.SENDER_ACCOUNT_NOT_FOUND;
+    }
+    if (!accountRepository.existsById(receiverId)) {
+      return ExceptionCode.RECEIVER_ACCOUNT_NOT_FOUND;
+    }
+    if (senderId.equals(receiverId)) {
+      return ExceptionCode.SENDER_RECEIVER_THE_SAME;
+    }
+    return ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE;
+  }
+
+  /**
+   * A payment made alone, which is the transaction callback of each of its attempts. It also keeps
+   * the time spent in each stage of the current attempt, and records them once per payment, when
+   * an attempt completes or rejects it, so that a retried payment is not timed twice. It takes the
+   * place of the lambdas the payment was made with, so timing the stages adds no allocation.
+   */
+  private final class StagedPayment implements TransactionCallback<PaymentDto> {
+
+    private final PaymentRequest paymentRequest;
+    private final Money amount;
+    private final String idempotencyKey;
+    private long mark; // End of the last stage
+    // Time spent in each stage, or -1 for a stage the current attempt has not gone through
+    private long lockWaitNanos = -1;
+    private long transactionBeginNanos;
+    private long accountLookupNanos;
+    private long balanceUpdateNanos;
+    private long paymentInsertNanos;
+    private long commitNanos;
+
+    StagedPayment(PaymentRequest paymentRequest, Money amount, String idempotencyKey,
+        long stageStart) {
+      this.paymentRequest = paymentRequest;
+      this.amount = amount;
+      this.idempotencyKey = idempotencyKey;
+      restart();
+      mark = stageStart;
+    }
+
+    /**
+     * Starts the stages of a new attempt
+     */
+    void restart() {
+      mark = System.nanoTime();
+      transactionBeginNanos = -1;
+      accountLookupNanos = -1;
+      balanceUpdateNanos = -1;
+      paymentInsertNanos = -1;
+      commitNanos = -1;
+    }
+
+    /**
+     * Ends a stage now, and starts the next one
+     */
+    void endStage(PaymentStage stage) {
+      var now = System.nanoTime();
+      var nanos = now - mark;
+      mark = now;
+      switch (stage) {
+        case LOCK_WAIT -> lockWaitNanos = nanos;
+        case TRANSACTION_BEGIN -> transactionBeginNanos = nanos;
+        case ACCOUNT_LOOKUP -> accountLookupNanos = nanos;
+        case BALANCE_UPDATE -> balanceUpdateNanos = nanos;
+        case PAYMENT_INSERT -> paymentInsertNanos = nanos;
+        case COMMIT -> commitNanos = nanos;
+      }
+    }
+
+    /**
+     * Makes an attempt in a new transaction
+     */
+    PaymentDto commit() {
+      var completedPayment = transactionTemplate.execute(this);
+      endStage(PaymentStage.COMMIT);
+      recordStages();
+      return completedPayment;
+    }
+
+    @Override
+    public PaymentDto doInTransaction(TransactionStatus status) {
+      try {
+        return jpaEngineProperties.isGuardedUpdates()
+            ? transferWithGuardedUpdates(this) : transfer(this);
+      } catch (RequirementException e) {
+        recordStages(); // A rejection is not retried, so this attempt is the payment's last one.
+        throw e;
+      }
+    }
+
+    private void recordStages() {
+      recordStage(PaymentStage.LOCK_WAIT, lockWaitNanos);
+      recordStage(PaymentStage.TRANSACTION_BEGIN, transactionBeginNanos);
+      recordStage(PaymentStage.ACCOUNT_LOOKUP, accountLookupNanos);
+      recordStage(PaymentStage.BALANCE_UPDATE, balanceUpdateNanos);
+      recordStage(PaymentStage.PAYMENT_INSERT, paymentInsertNanos);
+      recordStage(PaymentStage.COMMIT, commitNanos);
+    }
+
+    private void recordStage(PaymentStage stage, long nanos) {
+      if (nanos >= 0) {
+        paymentMetrics.recordStage(stage, nanos);
+      }
+    }
+  }
+}
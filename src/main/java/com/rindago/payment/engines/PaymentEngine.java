@@ -0,0 +1,41 @@
+package com.rindago.payment.engines;
+
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.money.Money;
+
+/**
+ * An engine applying a payment to account balances and recording it. The engine in use is selected
+ * by the 'payment.engine' property: 'jpa' (default), 'ledger' or 'sharded'. The amount is checked
+ * by the caller, which hands it over as {@link Money}.
+ */
+public interface PaymentEngine {
+
+  /**
+   * Makes payment and updates account balances accordingly
+   * @param paymentRequest A DTO holding and transferring information of the payment to be made
+   * @param amount The checked amount of the request
+   * @return Payment made
+   */
+  default PaymentDto makePayment(PaymentRequest paymentRequest, Money amount) {
+    return makePayment(paymentRequest, amount, null);
+  }
+
+  /**
+   * Makes payment, updates account balances accordingly, and records the idempotency key with the
+   * payment so that both are persisted together or not at all
+   * @param paymentRequest A DTO holding and transferring information of the payment to be made
+   * @param amount The checked amount of the request
+   * @param idempotencyKey Key of the payment request, or null if the request has none
+   * @return Payment made
+   */
+  PaymentDto makePayment(PaymentRequest paymentRequest, Money amount, String idempotencyKey);
+
+  /**
+   * @return Whether an account snapshot of the primary database holds the current balances, which
+   *     it does unless the engine keeps them elsewhere
+   */
+  default boolean supportsAccountSnapshots() {
+    return true;
+  }
+}
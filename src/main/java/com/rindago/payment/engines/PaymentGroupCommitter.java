@@ -0,0 +1,223 @@
+package com.rindago.payment.engines;
+
+import com.rindago.payment.dtos.PaymentBatchItemResult;
+import com.rindago.payment.dtos.PaymentBatchItemStatus;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.services.PaymentBatchService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gathers the payments submitted concurrently to the JPA engine into groups, bounded by a maximum
+ * size and a maximum wait, and makes each group in one transaction through
+ * {@link PaymentBatchService}, so that the commit cost is shared by the whole group. A rejected
+ * payment is rejected alone; if the group's transaction fails as a whole, e.g. on a lock timeout,
+ * each of its payments is handed back to be made alone.
+ *
+ * <p>A caller never waits without bound for a committer which has stopped. Once the committer is
+ * stopped, payments are made alone. A payment the committer has not taken into a group within
+ * 'payment.jpa.group-commit-timeout' is taken back by its caller and made alone. If the committer
+ * fails outside a group's transaction, the payments of the group and of the queue are handed back.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.engine", havingValue = "jpa", matchIfMissing = true)
+@RequiredArgsConstructor
+public class PaymentGroupCommitter {
+
+  private final Logger logger = LoggerFactory.getLogger(PaymentGroupCommitter.class);
+
+  private final PaymentBatchService paymentBatchService;
+  private final JpaEngineProperties jpaEngineProperties;
+
+  private final BlockingQueue<PendingPayment> pendingPayments = new LinkedBlockingQueue<>();
+  private final ExecutorService committer = Executors.newSingleThreadExecutor(
+      runnable -> new Thread(runnable, "payment-group-committer"));
+
+  private volatile boolean running;
+
+  @PostConstruct
+  void start() {
+    if (jpaEngineProperties.isGroupCommit()) {
+      running = true;
+      committer.execute(this::commitGroups);
+    }
+  }
+
+  @PreDestroy
+  void stop() throws InterruptedException {
+    running = false;
+    committer.shutdownNow();
+    committer.awaitTermination(1, TimeUnit.MINUTES);
+    // A payment queued after this is taken back by its caller once its wait has timed out.
+    handBackQueued();
+  }
+
+  /**
+   * Queues a payment for the next group and waits until the group has been committed
+   * @param paymentRequest A DTO holding and transferring information of the payment to be made
+   * @param amount The checked amount of the request
+   * @param idempotencyKey Key of the payment request, or null if the request has none
+   * @return Payment made, or empty if the payment is to be made alone: the committer is stopped,
+   *     has not taken it in time, or its group has failed
+   * @throws RequirementException If the payment has been rejected
+   */
+  public Optional<PaymentDto> makePayment(PaymentRequest paymentRequest, Money amount,
+      String idempotencyKey) {
+    if (!running) {
+      return Optional.empty();
+    }
+    var pendingPayment = new PendingPayment(paymentRequest, amount, idempotencyKey);
+    pendingPayments.offer(pendingPayment);
+    try {
+      try {
+        return pendingPayment.result.get(jpaEngineProperties.getGroupCommitTimeout().toNanos(),
+            TimeUnit.NANOSECONDS);
+      } catch (TimeoutException | InterruptedException e) {
+        if (e instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        if (pendingPayment.take()) {
+          pendingPayments.remove(pendingPayment);
+          return Optional.empty(); // Never to be part of a group
+        }
+        return pendingPayment.result.join(); // Its group has started, and is waited for.
+      } catch (ExecutionException e) {
+        throw new CompletionException(e.getCause());
+      }
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private void commitGroups() {
+    var maxSize = jpaEngineProperties.getGroupCommitMaxSize();
+    var maxWaitNanos = jpaEngineProperties.getGroupCommitMaxWait().toNanos();
+    var group = new ArrayList<PendingPayment>(maxSize);
+    while (true) {
+      try {
+        group.add(pendingPayments.take());
+        var deadline = System.nanoTime() + maxWaitNanos;
+        pendingPayments.drainTo(group, maxSize - group.size());
+        while (group.size() < maxSize) {
+          var next = pendingPayments.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break; // The maximum wait is over.
+          }
+          group.add(next);
+        }
+        group.removeIf(pendingPayment -> !pendingPayment.take()); // Taken back by their callers
+        if (!group.isEmpty()) {
+          commit(group);
+        }
+      } catch (InterruptedException e) {
+        handBack(group);
+        return;
+      } catch (RuntimeException | Error e) {
+        // Not thrown by a group's transaction, which hands back or completes its payments itself
+        logger.error("PAYMENT GROUP COMMITTER FAILED! {} grouped and {} queued payments are made "
+            + "alone", group.size(), pendingPayments.size(), e);
+        handBack(group);
+        handBackQueued();
+      }
+      group.clear();
+    }
+  }
+
+  private static void handBack(List<PendingPayment> group) {
+    group.forEach(pendingPayment -> pendingPayment.result.complete(Optional.empty()));
+  }
+
+  /**
+   * Hands the queued payments back to their callers, to be made alone
+   */
+  private void handBackQueued() {
+    PendingPayment pendingPayment;
+    while ((pendingPayment = pendingPayments.poll()) != null) {
+      if (pendingPayment.take()) {
+        pendingPayment.result.complete(Optional.empty());
+      }
+    }
+  }
+
+  private void commit(List<PendingPayment> group) {
+    var paymentRequests = new ArrayList<PaymentRequest>(group.size());
+    var amounts = new ArrayList<Money>(group.size());
+    var idempotencyKeys = new ArrayList<String>(group.size());
+    group.forEach(pendingPayment -> {
+      paymentRequests.add(pendingPayment.paymentRequest);
+      amounts.add(pendingPayment.amount);
+      idempotencyKeys.add(pendingPayment.idempotencyKey);
+    });
+
+    List<PaymentBatchItemResult> results;
+    try {
+      results = paymentBatchService.makePaymentGroup(paymentRequests, amounts,
+          idempotencyKeys);
+    } catch (RuntimeException e) {
+      logger.warn("PAYMENT GROUP COMMIT FAILED! {} payments are made alone: {}", group.size(),
+          e.getMessage());
+      group.forEach(pendingPayment -> pendingPayment.result.complete(Optional.empty()));
+      return;
+    }
+
+    // The group has committed, so a payment whose result cannot be read is failed, not made again.
+    for (var i = 0; i < group.size(); i++) {
+      var pendingPayment = group.get(i);
+      try {
+        var result = results.get(i);
+        if (result.getStatus() == PaymentBatchItemStatus.COMPLETED) {
+          pendingPayment.result.complete(Optional.of(result.getPayment()));
+        } else {
+          pendingPayment.result.completeExceptionally(
+              RequirementException.of(ExceptionCode.valueOf(result.getErrorCode())));
+        }
+      } catch (RuntimeException e) {
+        pendingPayment.result.completeExceptionally(e);
+      }
+    }
+  }
+
+  @RequiredArgsConstructor
+  private static class PendingPayment {
+
+    private final PaymentRequest paymentRequest;
+    private final Money amount;
+    private final String idempotencyKey;
+    private final CompletableFuture<Optional<PaymentDto>> result = new CompletableFuture<>();
+    private final AtomicBoolean taken = new AtomicBoolean();
+
+    /**
+     * Takes the payment, either into a group by the committer or back by its caller, which only
+     * one of them can
+     * @return Whether the payment has been taken by this call
+     */
+    boolean take() {
+      return taken.compareAndSet(false, true);
+    }
+  }
+}
@@ -1,15 +1,17 @@
 package com.rindago.payment.entities;
 
-import java.math.BigDecimal;
-import javax.persistence.Column;
-import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
-import javax.persistence.Id;
-import javax.persistence.Table;
-import javax.validation.constraints.DecimalMin;
-import javax.validation.constraints.NotNull;
-import javax.validation.constraints.Size;
+import com.rindago.payment.money.Money;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.Data;
 
 /**
@@ -22,7 +24,8 @@ import lombok.Data;
 public class Account {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "account_seq")
+  @SequenceGenerator(name = "account_seq", sequenceName = "account_seq", allocationSize = 50)
   private Long id;
 
   @NotNull
@@ -31,7 +34,22 @@ public class Account {
   private String name;
 
   @NotNull
-  @DecimalMin(value = "0")
   @Column(precision = 18, scale = 2, nullable = false)
-  private BigDecimal balance;
+  private Money balance; // Never negative; checked before it is set
+
+  /**
+   * The balance the account was created with, which its payments are reconciled against
+   */
+  @Column(name = "opening_balance", precision = 18, scale = 2, nullable = false,
+      updatable = false)
+  private Money openingBalance;
+
+  @Version
+  @Column(nullable = false)
+  private Long version;
+
+  @PrePersist
+  void recordOpeningBalance() {
+    openingBalance = balance;
+  }
 }
@@ -0,0 +1,35 @@
+package com.rindago.payment.entities;
+
+import com.rindago.payment.money.Money;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+/**
+ * An entity class covering a credit to a hot account which has not been folded into the account's
+ * balance yet
+ */
+@Data
+@Entity
+@Table(name = "account_balance_delta",
+    indexes = @Index(name = "account_balance_delta_account_idx", columnList = "account_id, id"))
+public class AccountBalanceDelta {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @NotNull
+  @Column(name = "account_id", nullable = false)
+  private Long accountId;
+
+  @NotNull
+  @Column(precision = 18, scale = 2, nullable = false)
+  private Money amount;
+}
@@ -0,0 +1,50 @@
+package com.rindago.payment.entities;
+
+import com.rindago.payment.money.Money;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+import java.time.Instant;
+import lombok.Data;
+
+/**
+ * An entity class covering the idempotency key of a payment request and the payment it has made,
+ * which is returned again when the request is retried with the same key
+ */
+@Data
+@Entity
+@Table(name = "idempotency_key",
+    indexes = @Index(name = "idempotency_key_created_idx", columnList = "created_at"))
+public class IdempotencyKey {
+
+  @Id
+  @Column(name = "idempotency_key", length = 255)
+  private String key;
+
+  @NotNull
+  @Column(name = "payment_id", nullable = false)
+  private Long paymentId;
+
+  @NotNull
+  @Column(name = "sender_account_id", nullable = false)
+  private Long senderAccountId;
+
+  @NotNull
+  @Column(name = "receiver_account_id", nullable = false)
+  private Long receiverAccountId;
+
+  @NotNull
+  @Column(precision = 18, scale = 2, nullable = false)
+  private Money amount;
+
+  @NotNull
+  @Column(name = "payment_timestamp", nullable = false)
+  private Instant paymentTimestamp;
+
+  @NotNull
+  @Column(name = "created_at", nullable = false)
+  private Instant createdAt;
+}
@@ -1,13 +1,16 @@
 package com.rindago.payment.entities;
 
-import java.math.BigDecimal;
+import com.rindago.payment.money.Money;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
 import java.time.Instant;
-import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
-import javax.persistence.Id;
-import javax.persistence.Table;
-import javax.validation.constraints.NotNull;
 import lombok.Data;
 
 /**
@@ -16,22 +19,28 @@ import lombok.Data;
  */
 @Data
 @Entity
-@Table(name = "payment")
+@Table(name = "payment", indexes = {
+    @Index(name = "payment_sender_idx", columnList = "sender_account_id, timestamp, id"),
+    @Index(name = "payment_receiver_idx", columnList = "receiver_account_id, timestamp, id")})
 public class Payment {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payment_seq")
+  @SequenceGenerator(name = "payment_seq", sequenceName = "payment_seq", allocationSize = 50)
   private Long id;
 
   @NotNull
+  @Column(name = "sender_account_id")
   private Long senderAccountId;
 
   @NotNull
+  @Column(name = "receiver_account_id")
   private Long receiverAccountId;
 
   @NotNull
-  private BigDecimal amount;
+  private Money amount;
 
   @NotNull
+  @Column(name = "timestamp")
   private Instant timestamp;
 }
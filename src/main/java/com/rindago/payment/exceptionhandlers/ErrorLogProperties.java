@@ -0,0 +1,19 @@
+package com.rindago.payment.exceptionhandlers;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the error response logging, bound from 'payment.error-log.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.error-log")
+public class ErrorLogProperties {
+
+  /**
+   * Minimum time between two log lines of the same exception code; the responses in between are
+   * only counted, by the 'payment.errors' counter and by the next line logged
+   */
+  private Duration interval = Duration.ofSeconds(1);
+}
@@ -1,18 +1,47 @@
 package com.rindago.payment.exceptionhandlers;
 
+import com.rindago.payment.exceptions.ExceptionCode;
 import com.rindago.payment.exceptions.ExceptionResponse;
+import com.rindago.payment.exceptions.PaymentQueueFullException;
 import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.metrics.PaymentMetrics;
+import java.util.concurrent.atomic.AtomicLongArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+/**
+ * Answers the exceptions thrown by the controllers. Every error response is counted, while its log
+ * line is sampled: at most one is written per exception code and configured interval, telling how
+ * many responses of the code have been left out since the previous one, so that a client sending
+ * invalid payments in a loop cannot flood the log.
+ */
 @RestControllerAdvice
 public class ExceptionProcessor {
 
   private final Logger logger = LoggerFactory.getLogger(ExceptionProcessor.class);
+  private final PaymentMetrics paymentMetrics;
+  private final long logIntervalNanos;
+  private final AtomicLongArray nextLogNanos;
+  private final AtomicLongArray unloggedErrors;
+
+  public ExceptionProcessor(PaymentMetrics paymentMetrics, ErrorLogProperties errorLogProperties) {
+    this.paymentMetrics = paymentMetrics;
+    this.logIntervalNanos = errorLogProperties.getInterval().toNanos();
+    var codes = ExceptionCode.values().length;
+    this.nextLogNanos = new AtomicLongArray(codes);
+    this.unloggedErrors = new AtomicLongArray(codes);
+    var now = System.nanoTime();
+    for (var i = 0; i < codes; i++) {
+      nextLogNanos.set(i, now);
+    }
+  }
 
   /**
    * Process an exception and prepares the response to be returned once it's thrown
@@ -22,11 +51,77 @@ public class ExceptionProcessor {
   @ExceptionHandler(RequirementException.class)
   @ResponseStatus(HttpStatus.BAD_REQUEST)
   public ExceptionResponse handleRequirementException(RequirementException requirementException) {
-    logger.error("REQUIREMENT ERROR!", requirementException);
+    var unlogged = countError(requirementException.getExceptionCode());
+    if (unlogged >= 0) {
+      logger.warn("REQUIREMENT ERROR! {} ({} more since the last one)",
+          requirementException.getExceptionCode(), unlogged);
+    }
     var exceptionResponse = new ExceptionResponse();
     exceptionResponse.setErrorCode(requirementException.getExceptionCode().name());
     exceptionResponse.setErrorMessage(requirementException.getExceptionCode().getExplanation());
     return exceptionResponse;
   }
 
+  /**
+   * Processes a concurrency failure which is left after the optimistic retries of a payment have
+   * been used up, and prepares the response to be returned so that the client can retry later
+   * @param concurrencyFailureException Thrown concurrency failure
+   * @return Prepared response which is to be returned
+   */
+  @ExceptionHandler(ConcurrencyFailureException.class)
+  @ResponseStatus(HttpStatus.CONFLICT)
+  public ExceptionResponse handleConcurrencyFailureException(
+      ConcurrencyFailureException concurrencyFailureException) {
+    var unlogged = countError(ExceptionCode.CONCURRENT_PAYMENT_CONFLICT);
+    if (unlogged >= 0) {
+      logger.warn("CONCURRENT PAYMENT CONFLICT! {} ({} more since the last one)",
+          concurrencyFailureException.getMessage(), unlogged);
+    }
+    var exceptionResponse = new ExceptionResponse();
+    exceptionResponse.setErrorCode(ExceptionCode.CONCURRENT_PAYMENT_CONFLICT.name());
+    exceptionResponse.setErrorMessage(ExceptionCode.CONCURRENT_PAYMENT_CONFLICT.getExplanation());
+    return exceptionResponse;
+  }
+
+  /**
+   * Processes a payment submission refused because the payment queue is full, and prepares the
+   * response to be returned so that the client can retry after a second
+   * @param paymentQueueFullException Thrown exception
+   * @return Prepared response which is to be returned
+   */
+  @ExceptionHandler(PaymentQueueFullException.class)
+  public ResponseEntity<ExceptionResponse> handlePaymentQueueFullException(
+      PaymentQueueFullException paymentQueueFullException) {
+    var unlogged = countError(ExceptionCode.PAYMENT_QUEUE_FULL);
+    if (unlogged >= 0) {
+      logger.warn("PAYMENT QUEUE FULL! {} ({} more since the last one)",
+          paymentQueueFullException.getMessage(), unlogged);
+    }
+    var exceptionResponse = new ExceptionResponse();
+    exceptionResponse.setErrorCode(ExceptionCode.PAYMENT_QUEUE_FULL.name());
+    exceptionResponse.setErrorMessage(ExceptionCode.PAYMENT_QUEUE_FULL.getExplanation());
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, "1")
+        .body(exceptionResponse);
+  }
+
+  /**
+   * Counts an error response and decides whether it is to be logged. Only the thread which moves
+   * the next log time of the code forward logs, so concurrent errors never log twice per interval.
+   * @param exceptionCode Exception code of the response
+   * @return Number of responses of the code left out of the log since the last line if this one is
+   * to be logged, or -1 if it is left out too
+   */
+  private long countError(ExceptionCode exceptionCode) {
+    paymentMetrics.countError(exceptionCode);
+    var code = exceptionCode.ordinal();
+    var now = System.nanoTime();
+    var nextLog = nextLogNanos.get(code);
+    if (now - nextLog < 0 || !nextLogNanos.compareAndSet(code, nextLog, now + logIntervalNanos)) {
+      unloggedErrors.incrementAndGet(code);
+      return -1;
+    }
+    return unloggedErrors.getAndSet(code, 0);
+  }
+
 }
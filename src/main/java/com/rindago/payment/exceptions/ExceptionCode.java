@@ -5,7 +5,9 @@ import lombok.Getter;
 
 /**
  * Exception codes and their explanatory messages to be returned in an HTTP bad request response
- * when the custom exception is thrown if there is a problematic scenario violating a requirement
+ * when the custom exception is thrown if there is a problematic scenario violating a requirement,
+ * or in an HTTP conflict response when a payment could not be applied because of concurrent ones,
+ * or in an HTTP service unavailable response when the payment queue is full
  */
 @Getter
 @AllArgsConstructor
@@ -17,7 +19,16 @@ public enum ExceptionCode {
   NEGATIVE_ACCOUNT_BALANCE("Account balance cannot be negative"),
   SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE(
       "A payment cannot make the sender account's balance drop to below zero"),
-  MORE_THAN_TWO_DECIMAL_PLACES("Payment amount input can have 2 decimal places");
+  MORE_THAN_TWO_DECIMAL_PLACES("Payment amount input can have 2 decimal places"),
+  INVALID_PAGE_CURSOR("Page cursor is malformed; it must be taken from a previous page"),
+  INVALID_PAGE_SIZE("Page size must be between 1 and 1000"),
+  INVALID_IDEMPOTENCY_KEY("Idempotency key must be between 1 and 255 characters"),
+  IDEMPOTENCY_KEY_REUSED(
+      "Idempotency key has already been used for a payment with other accounts or amount"),
+  CONCURRENT_PAYMENT_CONFLICT(
+      "The payment conflicted with concurrent payments on the same accounts and can be retried"),
+  PAYMENT_QUEUE_FULL("Too many payments are waiting to be settled; the payment can be retried"),
+  PAYMENT_SETTLEMENT_FAILED("The payment could not be settled and can be submitted again");
 
   private final String explanation;
 }
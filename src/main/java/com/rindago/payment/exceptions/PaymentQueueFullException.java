@@ -0,0 +1,12 @@
+package com.rindago.payment.exceptions;
+
+/**
+ * An exception to be thrown when a payment cannot be submitted because the queue of payments
+ * waiting to be settled is full
+ */
+public class PaymentQueueFullException extends RuntimeException {
+
+  public PaymentQueueFullException() {
+    super(ExceptionCode.PAYMENT_QUEUE_FULL.getExplanation());
+  }
+}
@@ -5,16 +5,36 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 /**
- * A custom exception to be thrown if there is a problematic scenario violating a requirement
+ * A custom exception to be thrown if there is a problematic scenario violating a requirement.
+ * A violated requirement is an expected outcome answered with 400, not a bug to be traced, so the
+ * exception has no stack trace and one instance per exception code is shared by all threads.
  */
 @ResponseStatus(value = HttpStatus.BAD_REQUEST)
 @Getter
 public class RequirementException extends RuntimeException {
 
+    private static final RequirementException[] INSTANCES =
+        new RequirementException[ExceptionCode.values().length];
+
+    static {
+        for (var exceptionCode : ExceptionCode.values()) {
+            INSTANCES[exceptionCode.ordinal()] = new RequirementException(exceptionCode);
+        }
+    }
+
     private final ExceptionCode exceptionCode;
 
-    public RequirementException(ExceptionCode exceptionCode) {
-        super(exceptionCode.getExplanation());
+    private RequirementException(ExceptionCode exceptionCode) {
+        // Neither a stack trace nor suppressed exceptions, so the shared instance is immutable
+        super(exceptionCode.getExplanation(), null, false, false);
         this.exceptionCode = exceptionCode;
     }
+
+    /**
+     * @param exceptionCode Code of the violated requirement
+     * @return The shared exception of the code, to be thrown
+     */
+    public static RequirementException of(ExceptionCode exceptionCode) {
+        return INSTANCES[exceptionCode.ordinal()];
+    }
 }
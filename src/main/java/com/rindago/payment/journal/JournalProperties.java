@@ -0,0 +1,47 @@
+package com.rindago.payment.journal;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Settings of the payment journal, bound from 'payment.journal.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.journal")
+public class JournalProperties {
+
+  /**
+   * Whether accepted payments and created accounts are appended to the journal, from which the
+   * database is rebuilt at startup. Requires the ledger payment engine.
+   */
+  private boolean enabled = false;
+
+  /**
+   * Directory of the journal segments and of the account snapshot
+   */
+  private Path directory = Path.of("journal");
+
+  /**
+   * Size of a journal segment file. A new segment is started when a record does not fit.
+   */
+  private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+  /**
+   * Delay between two forces of the journal to disk. The records appended in between share one.
+   */
+  private Duration syncInterval = Duration.ofMillis(2);
+
+  /**
+   * Whether a payment or an account creation is answered only once its record is on disk.
+   * Otherwise up to one sync interval of records can be lost by a crash of the machine.
+   */
+  private boolean awaitSync = true;
+
+  /**
+   * Minimum delay between two account snapshots, which shorten the replay at startup
+   */
+  private Duration snapshotInterval = Duration.ofMinutes(1);
+}
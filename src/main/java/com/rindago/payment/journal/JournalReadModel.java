@@ -0,0 +1,271 @@
+package com.rindago.payment.journal;
+
+import com.rindago.payment.archive.PaymentArchive;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.services.IdempotencyProperties;
+import com.rindago.payment.snapshot.AccountSnapshot;
+import com.rindago.payment.snapshot.AccountSnapshotService;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Treats the account, payment and idempotency key tables as a read model of the payment journal.
+ * At startup they are rebuilt from the latest account snapshot and the journal; while running,
+ * the ledger write-behind snapshots the account table once it has persisted the payments up to a
+ * journal record.
+ *
+ * <p>A snapshot holds the balances including exactly the payments up to its record, so only the
+ * later payments are applied to them. An account is journaled before it is committed, so a
+ * snapshot may hold an account whose record comes after the snapshot's, which is not inserted
+ * again, and miss an account whose record comes before, which is inserted. Such an account has no
+ * payment up to the snapshot's record, since it was not committed yet. All payments are inserted,
+ * since the journal is the payment history, except those of the days already in the payment
+ * archive. An account record holds the balance the account was created with, which becomes its
+ * opening balance, also for the accounts of the snapshot.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.journal.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class JournalReadModel {
+
+  private static final String SNAPSHOT_FILE = "accounts.snapshot";
+  private static final int BATCH_SIZE = 10_000;
+  private static final String INSERT_MISSING_ACCOUNT = "INSERT INTO account "
+      + "(id, name, balance, opening_balance, version) SELECT ?, ?, ?, ?, 0 "
+      + "WHERE NOT EXISTS (SELECT 1 FROM account WHERE id = ?)";
+  private static final String UPDATE_OPENING_BALANCE =
+      "UPDATE account SET opening_balance = ? WHERE id = ?";
+  private static final String INSERT_PAYMENT = "INSERT INTO payment "
+      + "(id, sender_account_id, receiver_account_id, amount, timestamp) VALUES (?, ?, ?, ?, ?)";
+  private static final String MERGE_IDEMPOTENCY_KEY = "MERGE INTO idempotency_key "
+      + "(idempotency_key, payment_id, sender_account_id, receiver_account_id, amount, "
+      + "payment_timestamp, created_at) KEY (idempotency_key) VALUES (?, ?, ?, ?, ?, ?, ?)";
+  private static final String UPDATE_BALANCE =
+      "UPDATE account SET balance = balance + ? WHERE id = ?";
+
+  private final Logger logger = LoggerFactory.getLogger(JournalReadModel.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final PaymentJournal paymentJournal;
+  private final AccountSnapshotService accountSnapshotService;
+  private final JournalProperties journalProperties;
+  private final IdempotencyProperties idempotencyProperties;
+  private final Environment environment;
+  private final Optional<PaymentArchive> paymentArchive;
+
+  private volatile long snapshotSequence;
+  private volatile long snapshotNanos = System.nanoTime();
+
+  @PostConstruct
+  void checkEngine() {
+    if (!"ledger".equals(environment.getProperty("payment.engine"))) {
+      throw new IllegalStateException("payment.journal.enabled requires payment.engine=ledger");
+    }
+  }
+
+  /**
+   * Rebuilds the account, payment and idempotency key tables, which must be empty, from the
+   * latest snapshot and the journal. Called by the ledger engine at startup before it reads them.
+   */
+  public void rebuild() throws IOException {
+    if (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM account", Long.class) > 0) {
+      throw new IllegalStateException("The journal rebuilds the account table, which is not empty");
+    }
+    var start = System.nanoTime();
+
+    var snapshotPath = snapshotPath();
+    var snapshotLoaded = Files.exists(snapshotPath);
+    if (snapshotLoaded) {
+      snapshotSequence = accountSnapshotService.load(snapshotPath, loaded -> { });
+    }
+    var accounts = new ArrayList<Account>(BATCH_SIZE);
+    var openings = new ArrayList<Account>(BATCH_SIZE); // Of the accounts in the snapshot
+    // Accounts first, so that the payments find them
+    paymentJournal.replayAccounts((sequence, accountId, balance, name) -> {
+      // Also before the snapshot's record, since an account may have committed after the snapshot
+      accounts.add(account(accountId, balance, name));
+      if (accounts.size() == BATCH_SIZE) {
+        insert(INSERT_MISSING_ACCOUNT, accounts, JournalReadModel::setMissingAccount);
+      }
+      if (snapshotLoaded) { // The snapshot has loaded its balances as the opening balances.
+        openings.add(account(accountId, balance, name));
+        if (openings.size() == BATCH_SIZE) {
+          insert(UPDATE_OPENING_BALANCE, openings, JournalReadModel::setOpeningBalance);
+        }
+      }
+    });
+    insert(INSERT_MISSING_ACCOUNT, accounts, JournalReadModel::setMissingAccount);
+    insert(UPDATE_OPENING_BALANCE, openings, JournalReadModel::setOpeningBalance);
+
+    var paymentCount = new long[1];
+    var payments = new ArrayList<Payment>(BATCH_SIZE);
+    var keyedPayments = new ArrayList<Payment>();
+    var idempotencyKeys = new HashMap<Long, String>(); // By payment ID, for the current batch
+    var balanceDeltas = new HashMap<Long, Long>(); // Net delta per account since the snapshot
+    var keyCutoff = Instant.now().minus(idempotencyProperties.getRetention());
+    var archivedBefore = paymentArchive.map(PaymentArchive::getArchivedBefore)
+        .orElse(Instant.EPOCH);
+    paymentJournal.replayPayments((sequence, payment, idempotencyKey) -> {
+      if (!payment.getTimestamp().isBefore(archivedBefore)) {
+        payments.add(payment);
+      }
+      if (idempotencyKey != null && payment.getTimestamp().isAfter(keyCutoff)) {
+        keyedPayments.add(payment);
+        idempotencyKeys.put(payment.getId(), idempotencyKey);
+      }
+      if (sequence > snapshotSequence) {
+        balanceDeltas.merge(payment.getSenderAccountId(), -payment.getAmount().getCents(),
+            Math::addExact);
+        balanceDeltas.merge(payment.getReceiverAccountId(), payment.getAmount().getCents(),
+            Math::addExact);
+      }
+      if (payments.size() == BATCH_SIZE) {
+        paymentCount[0] += payments.size();
+        insertPayments(payments, keyedPayments, idempotencyKeys);
+      }
+    });
+    paymentCount[0] += payments.size();
+    insertPayments(payments, keyedPayments, idempotencyKeys);
+
+    var deltas = new ArrayList<>(balanceDeltas.entrySet());
+    transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPDATE_BALANCE,
+        deltas, BATCH_SIZE, (statement, delta) -> {
+          statement.setBigDecimal(1, Money.ofCents(delta.getValue()).toBigDecimal());
+          statement.setLong(2, delta.getKey());
+        }));
+
+    accountSnapshotService.restartAccountIds();
+
+    logger.info("JOURNAL: {} accounts and {} payments rebuilt in {} ms",
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM account", Long.class), paymentCount[0],
+        (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Writes a snapshot of the account table if the latest one is older than the snapshot interval
+   * @param sequence Sequence of the journal record up to which the payments are persisted
+   */
+  public void snapshotIfDue(long sequence) throws IOException {
+    if (System.nanoTime() - snapshotNanos >= journalProperties.getSnapshotInterval().toNanos()) {
+      snapshot(sequence);
+    }
+  }
+
+  /**
+   * Writes a snapshot of the account table, unless the latest one is as recent. Must be called
+   * only while nothing else updates the balances, i.e. by the ledger write-behind.
+   * @param sequence Sequence of the journal record up to which the payments are persisted
+   */
+  public void snapshot(long sequence) throws IOException {
+    if (sequence <= snapshotSequence) {
+      return;
+    }
+    try (var writer = AccountSnapshot.create(snapshotPath(), sequence)) {
+      jdbcTemplate.query("SELECT id, name, balance FROM account ORDER BY id", resultSet -> {
+        try {
+          writer.write(resultSet.getLong(1), Money.of(resultSet.getBigDecimal(3)),
+              resultSet.getString(2));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      writer.commit();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    snapshotSequence = sequence;
+    snapshotNanos = System.nanoTime();
+  }
+
+  private Path snapshotPath() {
+    return journalProperties.getDirectory().resolve(SNAPSHOT_FILE);
+  }
+
+  private void insertPayments(List<Payment> payments, List<Payment> keyedPayments,
+      Map<Long, String> idempotencyKeys) {
+    transactionTemplate.executeWithoutResult(status -> {
+      jdbcTemplate.batchUpdate(INSERT_PAYMENT, payments, payments.size(), (statement, payment) -> {
+        statement.setLong(1, payment.getId());
+        statement.setLong(2, payment.getSenderAccountId());
+        statement.setLong(3, payment.getReceiverAccountId());
+        statement.setBigDecimal(4, payment.getAmount().toBigDecimal());
+        statement.setTimestamp(5, Timestamp.from(payment.getTimestamp()));
+      });
+      jdbcTemplate.batchUpdate(MERGE_IDEMPOTENCY_KEY, keyedPayments, keyedPayments.size(),
+          (statement, payment) -> {
+            var timestamp = Timestamp.from(payment.getTimestamp());
+            statement.setString(1, idempotencyKeys.get(payment.getId()));
+            statement.setLong(2, payment.getId());
+            statement.setLong(3, payment.getSenderAccountId());
+            statement.setLong(4, payment.getReceiverAccountId());
+            statement.setBigDecimal(5, payment.getAmount().toBigDecimal());
+            statement.setTimestamp(6, timestamp);
+            statement.setTimestamp(7, timestamp); // Close to when it was created
+          });
+    });
+    payments.clear();
+    keyedPayments.clear();
+    idempotencyKeys.clear();
+  }
+
+  private <T> void insert(String sql, List<T> batch,
+      ParameterizedPreparedStatementSetter<T> setter) {
+    if (!batch.isEmpty()) {
+      transactionTemplate.executeWithoutResult(status ->
+          jdbcTemplate.batchUpdate(sql, batch, batch.size(), setter));
+      batch.clear();
+    }
+  }
+
+  private static Account account(long accountId, Money balance, String name) {
+    var account = new Account();
+    account.setId(accountId);
+    account.setBalance(balance);
+    account.setName(name);
+    return account;
+  }
+
+  private static void setAccount(PreparedStatement statement, Account account)
+      throws SQLException {
+    statement.setLong(1, account.getId());
+    statement.setString(2, account.getName());
+    statement.setBigDecimal(3, account.getBalance().toBigDecimal());
+  }
+
+  private static void setMissingAccount(PreparedStatement statement, Account account)
+      throws SQLException {
+    setAccount(statement, account);
+    statement.setBigDecimal(4, account.getBalance().toBigDecimal());
+    statement.setLong(5, account.getId());
+  }
+
+  private static void setOpeningBalance(PreparedStatement statement, Account account)
+      throws SQLException {
+    statement.setBigDecimal(1, account.getBalance().toBigDecimal());
+    statement.setLong(2, account.getId());
+  }
+}
@@ -0,0 +1,415 @@
+package com.rindago.payment.journal;
+
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.money.Money;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * An append-only log of the created accounts and of the payments accepted by the ledger engine,
+ * from which {@link JournalReadModel} rebuilds the database at startup. The log is split into
+ * segment files of a fixed size, each mapped into memory, so an append is a copy into the page
+ * cache without a system call. A syncer thread forces the current segment to disk every sync
+ * interval, and all the records appended in between share that force.
+ *
+ * <p>A record is laid out as follows:
+ * <pre>
+ * int length     number of bytes after the checksum
+ * int checksum   CRC32C of the bytes after it
+ * long sequence  1 for the first record, then contiguous across segments
+ * byte type      ACCOUNT or PAYMENT
+ * payload
+ * </pre>
+ * A length of 0 ends the records of a segment. A segment is named after the sequence of its first
+ * record. At startup, a torn record at the end of the last segment, left by a crash, is zeroed and
+ * the next record is appended in its place.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.journal.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class PaymentJournal {
+
+  static final byte ACCOUNT = 1;
+  static final byte PAYMENT = 2;
+
+  private static final int HEADER_SIZE = 17; // Length, checksum, sequence and type
+  private static final String SEGMENT_PREFIX = "journal-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private final Logger logger = LoggerFactory.getLogger(PaymentJournal.class);
+
+  private final JournalProperties journalProperties;
+
+  // Not synchronized, which would pin the virtual thread of a waiting request to its carrier
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition synced = lock.newCondition();
+  private final CRC32C checksum = new CRC32C();
+  private final List<Path> segments = new ArrayList<>();
+  private MappedByteBuffer segment; // The last segment, the only one appended to
+  private long lastSequence;
+  private long syncedSequence;
+  private Thread syncer;
+  private volatile boolean running = true;
+
+  /**
+   * Opens the journal directory, checks the records of all segments and starts the syncer thread
+   * @throws IOException If the directory or a segment cannot be read or created
+   * @throws IllegalStateException If a segment other than the last one is corrupt or missing
+   */
+  @PostConstruct
+  public void open() throws IOException {
+    var segmentSize = journalProperties.getSegmentSize().toBytes();
+    if (segmentSize < 1024 || segmentSize > Integer.MAX_VALUE) {
+      throw new IllegalStateException("payment.journal.segment-size must be from 1KB to 2GB");
+    }
+    var directory = journalProperties.getDirectory();
+    Files.createDirectories(directory);
+    try (var files = Files.list(directory)) {
+      files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+              && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+          .sorted() // Sequences are zero-padded, so names sort in sequence order.
+          .forEach(segments::add);
+    }
+
+    for (var i = 0; i < segments.size(); i++) {
+      var path = segments.get(i);
+      if (firstSequenceOf(path) != lastSequence + 1) {
+        throw new IllegalStateException("Journal segment " + path + " does not start with record "
+            + (lastSequence + 1));
+      }
+      var buffer = map(path, Files.size(path));
+      var end = scan(buffer);
+      if (i < segments.size() - 1) {
+        if (end + Integer.BYTES <= buffer.limit() && buffer.getInt(end) != 0) {
+          throw new IllegalStateException("Journal segment " + path + " is corrupt at byte " + end);
+        }
+      } else {
+        if (zeroFrom(buffer, end)) {
+          logger.warn("JOURNAL: a torn record after record {} has been discarded", lastSequence);
+          buffer.force();
+        }
+        segment = buffer;
+        segment.position(end);
+      }
+    }
+    if (segment == null) {
+      startSegment();
+    }
+    syncedSequence = lastSequence;
+
+    syncer = new Thread(this::sync, "payment-journal-sync");
+    syncer.setDaemon(true);
+    syncer.start();
+  }
+
+  /**
+   * Forces the records appended so far to disk and stops the syncer thread
+   */
+  @PreDestroy
+  public void close() throws InterruptedException {
+    running = false;
+    LockSupport.unpark(syncer);
+    syncer.join();
+  }
+
+  /**
+   * Appends the record of a created account
+   * @param accountId ID of the account
+   * @param name Name of the account
+   * @param balance Opening balance of the account
+   */
+  public void appendAccount(long accountId, String name, Money balance) {
+    var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    lock.lock();
+    try {
+      var start = begin(ACCOUNT, Long.BYTES * 2 + Integer.BYTES + nameBytes.length);
+      segment.putLong(accountId)
+          .putLong(balance.getCents())
+          .putInt(nameBytes.length)
+          .put(nameBytes);
+      end(start);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Appends the record of an accepted payment
+   * @param payment The payment with its ID and timestamp assigned
+   * @param idempotencyKey Key of the payment request, or null if it has none
+   * @return Sequence of the record
+   */
+  public long appendPayment(Payment payment, String idempotencyKey) {
+    var keyBytes = idempotencyKey == null
+        ? null : idempotencyKey.getBytes(StandardCharsets.UTF_8);
+    lock.lock();
+    try {
+      var start = begin(PAYMENT, Long.BYTES * 5 + Integer.BYTES * 2
+          + (keyBytes == null ? 0 : keyBytes.length));
+      segment.putLong(payment.getId())
+          .putLong(payment.getSenderAccountId())
+          .putLong(payment.getReceiverAccountId())
+          .putLong(payment.getAmount().getCents())
+          .putLong(payment.getTimestamp().getEpochSecond())
+          .putInt(payment.getTimestamp().getNano());
+      if (keyBytes == null) {
+        segment.putInt(-1);
+      } else {
+        segment.putInt(keyBytes.length).put(keyBytes);
+      }
+      return end(start);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until all the records appended so far are on disk, unless the journal is configured not
+   * to wait for them
+   */
+  public void awaitSync() {
+    if (!journalProperties.isAwaitSync()) {
+      return;
+    }
+    lock.lock();
+    try {
+      var sequence = lastSequence;
+      while (syncedSequence < sequence) {
+        synced.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reads the account records of all segments in sequence order. Must not run concurrently with
+   * appends.
+   */
+  public void replayAccounts(AccountVisitor visitor) throws IOException {
+    replay(ACCOUNT, (sequence, buffer) -> visitor.visit(sequence, buffer.getLong(),
+        Money.ofCents(buffer.getLong()), readString(buffer, buffer.getInt())));
+  }
+
+  /**
+   * Reads the payment records of all segments in sequence order. Must not run concurrently with
+   * appends.
+   */
+  public void replayPayments(PaymentVisitor visitor) throws IOException {
+    replay(PAYMENT, (sequence, buffer) -> {
+      var payment = new Payment();
+      payment.setId(buffer.getLong());
+      payment.setSenderAccountId(buffer.getLong());
+      payment.setReceiverAccountId(buffer.getLong());
+      payment.setAmount(Money.ofCents(buffer.getLong()));
+      payment.setTimestamp(Instant.ofEpochSecond(buffer.getLong(), buffer.getInt()));
+      var keyLength = buffer.getInt();
+      visitor.visit(sequence, payment, keyLength < 0 ? null : readString(buffer, keyLength));
+    });
+  }
+
+  /**
+   * Receives the account records read by {@link #replayAccounts}
+   */
+  @FunctionalInterface
+  public interface AccountVisitor {
+    void visit(long sequence, long accountId, Money balance, String name);
+  }
+
+  /**
+   * Receives the payment records read by {@link #replayPayments}
+   */
+  @FunctionalInterface
+  public interface PaymentVisitor {
+    void visit(long sequence, Payment payment, String idempotencyKey);
+  }
+
+  private interface RecordReader {
+    void read(long sequence, ByteBuffer payload);
+  }
+
+  private void replay(byte type, RecordReader reader) throws IOException {
+    for (var path : segments) {
+      var buffer = map(path, Files.size(path));
+      var position = 0;
+      while (position + HEADER_SIZE <= buffer.limit()) {
+        var length = buffer.getInt(position);
+        if (length == 0) {
+          break;
+        }
+        if (buffer.get(position + HEADER_SIZE - 1) == type) {
+          reader.read(buffer.getLong(position + Integer.BYTES * 2),
+              buffer.position(position + HEADER_SIZE));
+        }
+        position += Integer.BYTES * 2 + length;
+      }
+    }
+  }
+
+  /**
+   * Checks the records of a segment from its start
+   * @return Position after the last valid record
+   */
+  private int scan(ByteBuffer buffer) {
+    var position = 0;
+    while (position + HEADER_SIZE <= buffer.limit()) {
+      var length = buffer.getInt(position);
+      var bodyStart = position + Integer.BYTES * 2;
+      if (length < HEADER_SIZE - Integer.BYTES * 2 || length > buffer.limit() - bodyStart
+          || buffer.getLong(bodyStart) != lastSequence + 1) {
+        break;
+      }
+      checksum.reset();
+      checksum.update(buffer.slice(bodyStart, length));
+      if ((int) checksum.getValue() != buffer.getInt(position + Integer.BYTES)) {
+        break;
+      }
+      lastSequence++;
+      position = bodyStart + length;
+    }
+    return position;
+  }
+
+  /**
+   * @return Whether there was anything but zeros after the position
+   */
+  private static boolean zeroFrom(ByteBuffer buffer, int position) {
+    var torn = false;
+    for (var i = position; i < buffer.limit(); i++) {
+      if (buffer.get(i) != 0) {
+        buffer.put(i, (byte) 0);
+        torn = true;
+      }
+    }
+    return torn;
+  }
+
+  /**
+   * Reserves room for a record in the segment, starting a new segment if it does not fit, and
+   * writes the sequence and the type. Must be called with the lock held.
+   * @return Position of the record, to be passed to {@link #end}
+   */
+  private int begin(byte type, int payloadLength) {
+    var recordLength = HEADER_SIZE + payloadLength;
+    if (segment.remaining() < recordLength) {
+      if (recordLength > journalProperties.getSegmentSize().toBytes()) {
+        throw new IllegalArgumentException("A journal record of " + recordLength
+            + " bytes does not fit in a segment");
+      }
+      // The full segment is on disk before any record goes to the next one.
+      segment.force();
+      syncedSequence = lastSequence;
+      synced.signalAll();
+      try {
+        startSegment();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    var start = segment.position();
+    segment.position(start + Integer.BYTES * 2)
+        .putLong(lastSequence + 1)
+        .put(type);
+    return start;
+  }
+
+  /**
+   * Writes the checksum and the length of a record whose payload has been written. The length
+   * goes last, so a record is not read until it is complete.
+   * @return Sequence of the record
+   */
+  private long end(int start) {
+    var bodyStart = start + Integer.BYTES * 2;
+    var length = segment.position() - bodyStart;
+    checksum.reset();
+    checksum.update(segment.slice(bodyStart, length));
+    segment.putInt(start + Integer.BYTES, (int) checksum.getValue());
+    segment.putInt(start, length);
+    return ++lastSequence;
+  }
+
+  private void startSegment() throws IOException {
+    var path = journalProperties.getDirectory().resolve(
+        String.format("%s%020d%s", SEGMENT_PREFIX, lastSequence + 1, SEGMENT_SUFFIX));
+    segment = map(path, journalProperties.getSegmentSize().toBytes(),
+        StandardOpenOption.CREATE_NEW);
+    segments.add(path);
+  }
+
+  private void sync() {
+    var intervalNanos = journalProperties.getSyncInterval().toNanos();
+    while (running) {
+      LockSupport.parkNanos(this, intervalNanos);
+      force();
+    }
+    force(); // Whatever has been appended since the last force
+  }
+
+  private void force() {
+    MappedByteBuffer appendedSegment;
+    long appendedSequence;
+    lock.lock();
+    try {
+      if (syncedSequence == lastSequence) {
+        return;
+      }
+      appendedSegment = segment;
+      appendedSequence = lastSequence;
+    } finally {
+      lock.unlock();
+    }
+    appendedSegment.force(); // Outside the lock, so appends go on meanwhile
+    lock.lock();
+    try {
+      syncedSequence = Math.max(syncedSequence, appendedSequence);
+      synced.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static long firstSequenceOf(Path segment) {
+    var name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+        name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private static MappedByteBuffer map(Path path, long size, OpenOption... options)
+      throws IOException {
+    var openOptions = new ArrayList<OpenOption>(List.of(options));
+    openOptions.add(StandardOpenOption.READ);
+    openOptions.add(StandardOpenOption.WRITE);
+    try (var channel = FileChannel.open(path, openOptions.toArray(OpenOption[]::new))) {
+      return channel.map(MapMode.READ_WRITE, 0, size); // Stays mapped after the channel closes
+    }
+  }
+
+  private static String readString(ByteBuffer buffer, int length) {
+    var bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
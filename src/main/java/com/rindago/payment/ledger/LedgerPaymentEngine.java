@@ -0,0 +1,165 @@
+package com.rindago.payment.ledger;
+
+import com.rindago.payment.archive.PaymentArchive;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.engines.PaymentEngine;
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.journal.JournalReadModel;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.services.EntityMappings;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * A payment engine holding the authoritative account balances in memory, partitioned by account ID
+ * across single-writer shards. Payments are persisted afterwards by {@link LedgerWriteBehind}.
+ *
+ * <p>A payment between two accounts of the same shard is checked and applied by a single task on
+ * that shard. A cross-shard payment follows this protocol:
+ * <ol>
+ *   <li>the receiver's shard reports whether the receiver account exists,</li>
+ *   <li>the sender's shard runs all requirement checks and debits the sender,</li>
+ *   <li>the receiver's shard credits the receiver.</li>
+ * </ol>
+ * The credit cannot fail since accounts are never deleted, so no compensation step is needed;
+ * between steps 2 and 3 the amount is only in flight.
+ *
+ * <p>A payment is handed over to the write-behind, and so to the journal, by the task that debits
+ * the sender, before the receiver is credited. A payment relying on that credit is therefore
+ * journaled after it, and replaying any prefix of the journal leaves no balance negative.
+ *
+ * <p>The ledger assumes it is the only writer of balances and payments while it is running.
+ */
+@Service
+@ConditionalOnProperty(name = "payment.engine", havingValue = "ledger")
+@DependsOn("entityManagerFactory") // The schema must be in place before it is read.
+@RequiredArgsConstructor
+public class LedgerPaymentEngine implements PaymentEngine {
+
+  private final JdbcTemplate jdbcTemplate;
+  private final LedgerWriteBehind writeBehind;
+  private final LedgerProperties ledgerProperties;
+  private final Optional<JournalReadModel> journalReadModel;
+  private final Optional<PaymentArchive> paymentArchive;
+
+  private final List<LedgerShard> shards = new ArrayList<>();
+  private final AtomicLong lastPaymentId = new AtomicLong();
+
+  @PostConstruct
+  void start() throws IOException {
+    if (journalReadModel.isPresent()) {
+      journalReadModel.get().rebuild();
+    }
+    lastPaymentId.set(Math.max(jdbcTemplate.queryForObject(
+        "SELECT COALESCE(MAX(id), 0) FROM payment", Long.class),
+        paymentArchive.map(PaymentArchive::getLastPaymentId).orElse(0L)));
+    for (var i = 0; i < ledgerProperties.getShards(); i++) {
+      var shard = new LedgerShard(i, this::loadBalance);
+      shards.add(shard);
+      shard.start();
+    }
+  }
+
+  @PreDestroy
+  void stop() throws InterruptedException {
+    for (var shard : shards) {
+      shard.stop();
+    }
+  }
+
+  @Override
+  public PaymentDto makePayment(PaymentRequest paymentRequest, Money amount,
+      String idempotencyKey) {
+    long senderId = paymentRequest.getSenderAccountId();
+    long receiverId = paymentRequest.getReceiverAccountId();
+    var senderShard = shardOf(senderId);
+    var receiverShard = shardOf(receiverId);
+
+    Payment payment;
+    if (senderShard == receiverShard) {
+      payment = await(senderShard.submit(shard -> {
+        debit(shard, senderId, receiverId, shard.exists(receiverId), amount);
+        shard.credit(receiverId, amount);
+        return append(paymentRequest, amount, idempotencyKey);
+      }));
+    } else {
+      boolean receiverExists = await(receiverShard.submit(
+          shard -> shard.exists(receiverId)));
+      payment = await(senderShard.submit(shard -> {
+        debit(shard, senderId, receiverId, receiverExists, amount);
+        return append(paymentRequest, amount, idempotencyKey);
+      }));
+      await(receiverShard.submit(shard -> {
+        shard.credit(receiverId, amount);
+        return null;
+      }));
+    }
+    writeBehind.awaitJournalSync();
+
+    return EntityMappings.toDto(payment); // Entity -> output DTO
+  }
+
+  /**
+   * Runs the account-dependent requirement checks in the same order as the JPA engine and debits
+   * the sender. Must run on the sender's shard.
+   */
+  private static void debit(LedgerShard shard, long senderId, long receiverId,
+      boolean receiverExists, Money amount) {
+    if (!shard.exists(senderId)) {
+      throw RequirementException.of(ExceptionCode.SENDER_ACCOUNT_NOT_FOUND);
+    }
+    if (!receiverExists) {
+      throw RequirementException.of(ExceptionCode.RECEIVER_ACCOUNT_NOT_FOUND);
+    }
+    if (senderId == receiverId) {
+      throw RequirementException.of(ExceptionCode.SENDER_RECEIVER_THE_SAME);
+    }
+    if (amount.getCents() > shard.balanceOf(senderId)) {
+      throw RequirementException.of(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE);
+    }
+    shard.debit(senderId, amount);
+  }
+
+  private Payment append(PaymentRequest paymentRequest, Money amount, String idempotencyKey) {
+    var payment = EntityMappings.toEntity(paymentRequest, amount, Instant.now());
+    payment.setId(lastPaymentId.incrementAndGet());
+    writeBehind.append(payment, idempotencyKey);
+    return payment;
+  }
+
+  private LedgerShard shardOf(long accountId) {
+    return shards.get((int) Math.floorMod(accountId, (long) shards.size()));
+  }
+
+  private Money loadBalance(long accountId) {
+    return jdbcTemplate.query("SELECT balance FROM account WHERE id = ?",
+        resultSet -> resultSet.next() ? Money.of(resultSet.getBigDecimal(1)) : null, accountId);
+  }
+
+  private static <T> T await(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+}
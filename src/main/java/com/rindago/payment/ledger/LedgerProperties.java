@@ -0,0 +1,28 @@
+package com.rindago.payment.ledger;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the in-memory ledger engine, bound from 'payment.ledger.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.ledger")
+public class LedgerProperties {
+
+  /**
+   * Number of single-writer shards that account balances are partitioned across
+   */
+  private int shards = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Maximum number of payments persisted by the write-behind in one database transaction
+   */
+  private int writeBehindBatchSize = 1000;
+
+  /**
+   * Delay between two write-behind flushes
+   */
+  private Duration writeBehindInterval = Duration.ofMillis(20);
+}
@@ -0,0 +1,118 @@
+package com.rindago.payment.ledger;
+
+import com.rindago.payment.money.Money;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * A partition of the in-memory ledger owning the balances of a subset of accounts. Balances are
+ * read and written only by the shard's own thread, so they need no locking; other threads hand
+ * tasks over through a lock-free queue and wait for the returned future. A balance is kept in
+ * cents, in a one-element cell which debits and credits update in place.
+ */
+class LedgerShard implements Runnable {
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final Map<Long, long[]> balances = new HashMap<>();
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final LongFunction<Money> balanceLoader;
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  /**
+   * @param index Index of the shard, used to name its thread
+   * @param balanceLoader Loads the persisted balance of an account, or null if it does not exist
+   */
+  LedgerShard(int index, LongFunction<Money> balanceLoader) {
+    this.balanceLoader = balanceLoader;
+    this.thread = new Thread(this, "ledger-shard-" + index);
+    this.thread.setDaemon(true);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  /**
+   * Stops the shard once the already submitted tasks are executed
+   */
+  void stop() throws InterruptedException {
+    running = false;
+    LockSupport.unpark(thread);
+    thread.join();
+  }
+
+  /**
+   * Runs a task on the shard's thread
+   * @param task The task, which may access the shard's balances
+   * @return A future completed with the task's result or with the exception it has thrown
+   */
+  <T> CompletableFuture<T> submit(Function<LedgerShard, T> task) {
+    var future = new CompletableFuture<T>();
+    tasks.offer(() -> {
+      try {
+        future.complete(task.apply(this));
+      } catch (RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    });
+    LockSupport.unpark(thread);
+    return future;
+  }
+
+  @Override
+  public void run() {
+    while (running || !tasks.isEmpty()) {
+      var task = tasks.poll();
+      if (task == null) {
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+      } else {
+        task.run();
+      }
+    }
+  }
+
+  // The methods below may only be called from tasks running on the shard's thread.
+
+  /**
+   * @return Whether the account exists; its balance is loaded on first access
+   */
+  boolean exists(long accountId) {
+    return cellOf(accountId) != null;
+  }
+
+  /**
+   * @return Balance of an existing account in cents
+   */
+  long balanceOf(long accountId) {
+    return cellOf(accountId)[0];
+  }
+
+  void debit(long accountId, Money amount) {
+    cellOf(accountId)[0] -= amount.getCents();
+  }
+
+  void credit(long accountId, Money amount) {
+    cellOf(accountId)[0] += amount.getCents();
+  }
+
+  private long[] cellOf(long accountId) {
+    var cell = balances.get(accountId);
+    if (cell == null) {
+      var balance = balanceLoader.apply(accountId);
+      if (balance != null) {
+        cell = new long[] {balance.getCents()};
+        balances.put(accountId, cell);
+      }
+    }
+    return cell;
+  }
+}
@@ -0,0 +1,233 @@
+package com.rindago.payment.ledger;
+
+import com.rindago.payment.cache.AccountCache;
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.journal.JournalReadModel;
+import com.rindago.payment.journal.PaymentJournal;
+import com.rindago.payment.money.Money;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Persists payments accepted by the ledger engine asynchronously. Payments are inserted in JDBC
+ * batches and account balances are updated with the net delta of each batch per account. Deltas
+ * commute, so the database converges to the ledger's balances regardless of the order in which
+ * the shards hand their payments over.
+ *
+ * <p>With the payment journal enabled, a payment is appended to the journal as it is queued, and
+ * payments are queued in the order of their journal records. Once a batch is committed, the
+ * database holds exactly the payments up to the record of its last payment, which is when the
+ * account table can be snapshotted.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.engine", havingValue = "ledger")
+@RequiredArgsConstructor
+public class LedgerWriteBehind {
+
+  private static final String INSERT_PAYMENT = "INSERT INTO payment "
+      + "(id, sender_account_id, receiver_account_id, amount, timestamp) VALUES (?, ?, ?, ?, ?)";
+  private static final String INSERT_IDEMPOTENCY_KEY = "INSERT INTO idempotency_key "
+      + "(idempotency_key, payment_id, sender_account_id, receiver_account_id, amount, "
+      + "payment_timestamp, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+  private static final String UPDATE_BALANCE =
+      "UPDATE account SET balance = balance + ?, version = version + 1 WHERE id = ?";
+
+  private final Logger logger = LoggerFactory.getLogger(LedgerWriteBehind.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final LedgerProperties ledgerProperties;
+  private final AccountCache accountCache;
+  private final Optional<PaymentJournal> paymentJournal;
+  private final Optional<JournalReadModel> journalReadModel;
+
+  private final Queue<JournaledPayment> pendingPayments = new ConcurrentLinkedQueue<>();
+  private final Map<Long, String> idempotencyKeys = new ConcurrentHashMap<>(); // By payment ID
+  private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(
+      runnable -> new Thread(runnable, "ledger-write-behind"));
+  private final ReentrantLock journalLock = new ReentrantLock();
+  private List<JournaledPayment> failedBatch = new ArrayList<>();
+  private long persistedSequence; // Journal record of the last persisted payment
+
+  @PostConstruct
+  void start() {
+    var interval = ledgerProperties.getWriteBehindInterval().toMillis();
+    writer.scheduleWithFixedDelay(this::drain, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  void stop() throws InterruptedException {
+    writer.shutdown();
+    writer.awaitTermination(1, TimeUnit.MINUTES);
+    drain(); // Whatever has been accepted after the last scheduled flush
+    if (journalReadModel.isPresent() && failedBatch.isEmpty()) {
+      try {
+        journalReadModel.get().snapshot(persistedSequence); // Shortens the replay of the restart
+      } catch (IOException e) {
+        logger.error("JOURNAL SNAPSHOT ERROR!", e);
+      }
+    }
+  }
+
+  /**
+   * Queues a payment, whose balance changes have already been applied by the ledger, to be saved,
+   * and appends it to the journal if enabled
+   * @param payment The payment with its ID already assigned
+   * @param idempotencyKey Key to be inserted with the payment, or null if the request has none
+   */
+  void append(Payment payment, String idempotencyKey) {
+    if (idempotencyKey != null) {
+      idempotencyKeys.put(payment.getId(), idempotencyKey);
+    }
+    if (paymentJournal.isEmpty()) {
+      pendingPayments.offer(new JournaledPayment(payment, 0));
+      return;
+    }
+    journalLock.lock();
+    try {
+      pendingPayments.offer(new JournaledPayment(payment,
+          paymentJournal.get().appendPayment(payment, idempotencyKey)));
+    } finally {
+      journalLock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the payments appended so far are on disk, if the journal is enabled and set to
+   * wait for it
+   */
+  void awaitJournalSync() {
+    paymentJournal.ifPresent(PaymentJournal::awaitSync);
+  }
+
+  /**
+   * Persists all payments queued so far and waits until they are committed
+   */
+  public void flush() throws InterruptedException {
+    try {
+      writer.submit(this::drain).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Ledger write-behind flush failed", e.getCause());
+    }
+  }
+
+  private void drain() { // Runs on the writer thread only, or after it has terminated
+    try {
+      if (!failedBatch.isEmpty()) {
+        persist(failedBatch);
+        failedBatch = new ArrayList<>();
+      }
+      var batch = new ArrayList<JournaledPayment>(ledgerProperties.getWriteBehindBatchSize());
+      JournaledPayment payment;
+      while ((payment = pendingPayments.poll()) != null) {
+        batch.add(payment);
+        if (batch.size() == ledgerProperties.getWriteBehindBatchSize()) {
+          persistOrKeep(batch);
+          batch = new ArrayList<>(ledgerProperties.getWriteBehindBatchSize());
+        }
+      }
+      if (!batch.isEmpty()) {
+        persistOrKeep(batch);
+      }
+    } catch (RuntimeException e) {
+      // The failed batch stays in failedBatch and the payments after it stay in pendingPayments,
+      // both are retried in order by the next flush.
+      logger.error("LEDGER WRITE-BEHIND ERROR!", e);
+      return;
+    }
+    if (journalReadModel.isPresent()) {
+      try {
+        journalReadModel.get().snapshotIfDue(persistedSequence);
+      } catch (IOException e) {
+        logger.error("JOURNAL SNAPSHOT ERROR!", e);
+      }
+    }
+  }
+
+  /**
+   * Persists a batch taken off the queue, keeping it in failedBatch until it is committed, since
+   * its payments have already been accepted
+   */
+  private void persistOrKeep(List<JournaledPayment> batch) {
+    failedBatch = batch;
+    persist(batch);
+    failedBatch = new ArrayList<>();
+  }
+
+  private void persist(List<JournaledPayment> journaledBatch) {
+    var batch = journaledBatch.stream().map(JournaledPayment::payment).toList();
+    var balanceDeltas = new HashMap<Long, Long>(); // Net delta per account in the batch, in cents
+    batch.forEach(payment -> {
+      balanceDeltas.merge(payment.getSenderAccountId(), -payment.getAmount().getCents(),
+          Math::addExact);
+      balanceDeltas.merge(payment.getReceiverAccountId(), payment.getAmount().getCents(),
+          Math::addExact);
+    });
+
+    var keyedPayments = new ArrayList<Payment>();
+    batch.forEach(payment -> {
+      if (idempotencyKeys.containsKey(payment.getId())) {
+        keyedPayments.add(payment);
+      }
+    });
+    var createdAt = Timestamp.from(Instant.now());
+
+    transactionTemplate.executeWithoutResult(status -> {
+      jdbcTemplate.batchUpdate(INSERT_PAYMENT, batch, batch.size(), (statement, payment) -> {
+        statement.setLong(1, payment.getId());
+        statement.setLong(2, payment.getSenderAccountId());
+        statement.setLong(3, payment.getReceiverAccountId());
+        statement.setBigDecimal(4, payment.getAmount().toBigDecimal());
+        statement.setTimestamp(5, Timestamp.from(payment.getTimestamp()));
+      });
+      jdbcTemplate.batchUpdate(INSERT_IDEMPOTENCY_KEY, keyedPayments, keyedPayments.size(),
+          (statement, payment) -> {
+            statement.setString(1, idempotencyKeys.get(payment.getId()));
+            statement.setLong(2, payment.getId());
+            statement.setLong(3, payment.getSenderAccountId());
+            statement.setLong(4, payment.getReceiverAccountId());
+            statement.setBigDecimal(5, payment.getAmount().toBigDecimal());
+            statement.setTimestamp(6, Timestamp.from(payment.getTimestamp()));
+            statement.setTimestamp(7, createdAt);
+          });
+      var deltas = new ArrayList<>(balanceDeltas.entrySet());
+      jdbcTemplate.batchUpdate(UPDATE_BALANCE, deltas, deltas.size(),
+          (statement, delta) -> {
+            statement.setBigDecimal(1, Money.ofCents(delta.getValue()).toBigDecimal());
+            statement.setLong(2, delta.getKey());
+          });
+      accountCache.invalidateAfterCommit(balanceDeltas.keySet());
+    });
+    keyedPayments.forEach(payment -> idempotencyKeys.remove(payment.getId()));
+    persistedSequence = journaledBatch.get(journaledBatch.size() - 1).sequence();
+  }
+
+  /**
+   * A queued payment with the sequence of its journal record, or 0 without a journal
+   */
+  private record JournaledPayment(Payment payment, long sequence) {
+  }
+}
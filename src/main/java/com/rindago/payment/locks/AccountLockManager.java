@@ -0,0 +1,123 @@
+package com.rindago.payment.locks;
+
+import com.rindago.payment.dtos.LockStatisticsDto;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * An in-JVM lock manager serializing payments which touch the same account. Account IDs are hashed
+ * onto a fixed number of lock stripes. The stripes of a payment are always acquired in ascending
+ * stripe order, so two payments locking the same pair of accounts in opposite directions cannot
+ * deadlock.
+ */
+@Component
+public class AccountLockManager {
+
+  private final ReentrantLock[] stripes;
+
+  private final LongAdder acquisitions = new LongAdder();
+  private final LongAdder contendedAcquisitions = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+  public AccountLockManager(AccountLockProperties accountLockProperties) {
+    stripes = new ReentrantLock[accountLockProperties.getStripes()];
+    for (var i = 0; i < stripes.length; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Runs an action while holding the locks of both accounts
+   * @param firstAccountId ID of one account touched by the action
+   * @param secondAccountId ID of the other account touched by the action
+   * @param action The action to run
+   * @return Result of the action
+   */
+  public <T> T callLocked(long firstAccountId, long secondAccountId, Supplier<T> action) {
+    var firstStripe = stripeOf(firstAccountId);
+    var secondStripe = stripeOf(secondAccountId);
+    var lower = stripes[Math.min(firstStripe, secondStripe)];
+    var higher = stripes[Math.max(firstStripe, secondStripe)];
+
+    lock(lower);
+    try {
+      if (higher != lower) {
+        lock(higher);
+      }
+      try {
+        return action.get();
+      } finally {
+        if (higher != lower) {
+          higher.unlock();
+        }
+      }
+    } finally {
+      lower.unlock();
+    }
+  }
+
+  /**
+   * Runs an action while holding the locks of all given accounts
+   * @param accountIds IDs of the accounts touched by the action
+   * @param action The action to run
+   * @return Result of the action
+   */
+  public <T> T callLocked(Collection<Long> accountIds, Supplier<T> action) {
+    var stripeIndexes = accountIds.stream()
+        .mapToInt(this::stripeOf)
+        .distinct()
+        .sorted()
+        .toArray();
+
+    var locked = 0;
+    try {
+      for (var stripeIndex : stripeIndexes) {
+        lock(stripes[stripeIndex]);
+        locked++;
+      }
+      return action.get();
+    } finally {
+      for (var i = locked - 1; i >= 0; i--) {
+        stripes[stripeIndexes[i]].unlock();
+      }
+    }
+  }
+
+  /**
+   * @return Lock-wait statistics since the application started
+   */
+  public LockStatisticsDto getStatistics() {
+    var statistics = new LockStatisticsDto();
+    var contended = contendedAcquisitions.sum();
+    statistics.setAcquisitions(acquisitions.sum());
+    statistics.setContendedAcquisitions(contended);
+    statistics.setAverageWaitMicros(
+        contended == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.sum() / contended));
+    statistics.setMaxWaitMicros(TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()));
+    return statistics;
+  }
+
+  private void lock(ReentrantLock lock) {
+    acquisitions.increment();
+    if (lock.tryLock()) {
+      return; // Uncontended, nothing to measure
+    }
+    var waitStart = System.nanoTime();
+    lock.lock();
+    var waitNanos = System.nanoTime() - waitStart;
+    contendedAcquisitions.increment();
+    totalWaitNanos.add(waitNanos);
+    maxWaitNanos.accumulate(waitNanos);
+  }
+
+  private int stripeOf(long accountId) {
+    // Sequential IDs are spread with the golden ratio multiplier before being reduced to a stripe.
+    return Math.floorMod(Long.hashCode(accountId * 0x9E3779B97F4A7C15L), stripes.length);
+  }
+}
@@ -0,0 +1,17 @@
+package com.rindago.payment.locks;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the striped account lock manager, bound from 'payment.locks.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.locks")
+public class AccountLockProperties {
+
+  /**
+   * Number of lock stripes that account IDs are hashed onto
+   */
+  private int stripes = 1024;
+}
@@ -0,0 +1,21 @@
+package com.rindago.payment.metrics;
+
+/**
+ * Stages of an account creation request, timed by the 'account.creation.stage' timer
+ */
+public enum AccountCreationStage {
+  /**
+   * Checking the balances and transforming the input DTOs into entities
+   */
+  VALIDATION,
+  /**
+   * Opening the transaction and saving the account entities, which takes their IDs from the
+   * sequence. The INSERT statements only run when the transaction is flushed, so they are timed by
+   * {@link #COMMIT}.
+   */
+  ACCOUNT_INSERT,
+  /**
+   * Flushing and committing the transaction
+   */
+  COMMIT
+}
@@ -0,0 +1,99 @@
+package com.rindago.payment.metrics;
+
+import com.rindago.payment.exceptions.ExceptionCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stage timers of payments and account creations, and counters of the exception codes answered to
+ * clients. All meters are registered up front, so recording one is a lookup by ordinal.
+ *
+ * <p>Stages are timed one after another: {@link #startStages()} returns the mark of the start, and
+ * each stage ends at the call recording it, which returns the mark starting the next one. The
+ * caller passes the marks on, so that timing a stage allocates nothing, even on a virtual thread
+ * per request.
+ */
+@Component
+public class PaymentMetrics {
+
+  private final Timer[] paymentStageTimers;
+  private final Timer[] accountCreationStageTimers;
+  private final Counter[] errorCounters;
+
+  public PaymentMetrics(MeterRegistry meterRegistry) {
+    paymentStageTimers = new Timer[PaymentStage.values().length];
+    for (var stage : PaymentStage.values()) {
+      paymentStageTimers[stage.ordinal()] = Timer.builder("payment.stage")
+          .description("Time spent in a stage of a payment made by the JPA payment engine")
+          .tag("stage", stage.name().toLowerCase())
+          .register(meterRegistry);
+    }
+    accountCreationStageTimers = new Timer[AccountCreationStage.values().length];
+    for (var stage : AccountCreationStage.values()) {
+      accountCreationStageTimers[stage.ordinal()] = Timer.builder("account.creation.stage")
+          .description("Time spent in a stage of an account creation request")
+          .tag("stage", stage.name().toLowerCase())
+          .register(meterRegistry);
+    }
+    errorCounters = new Counter[ExceptionCode.values().length];
+    for (var code : ExceptionCode.values()) {
+      errorCounters[code.ordinal()] = Counter.builder("payment.errors")
+          .description("Error responses by exception code")
+          .tag("code", code.name())
+          .register(meterRegistry);
+    }
+  }
+
+  /**
+   * @return Mark of the start of the first stage
+   */
+  public long startStages() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Records a payment stage ending now
+   * @param stage The stage which has ended
+   * @param stageStart Mark of the start of the stage
+   * @return Mark of the end of the stage, which starts the next one
+   */
+  public long endStage(PaymentStage stage, long stageStart) {
+    return record(paymentStageTimers[stage.ordinal()], stageStart);
+  }
+
+  /**
+   * Records a payment stage which has taken the given time
+   * @param stage The stage
+   * @param nanos Time spent in the stage
+   */
+  public void recordStage(PaymentStage stage, long nanos) {
+    paymentStageTimers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Records an account creation stage ending now
+   * @param stage The stage which has ended
+   * @param stageStart Mark of the start of the stage
+   * @return Mark of the end of the stage, which starts the next one
+   */
+  public long endStage(AccountCreationStage stage, long stageStart) {
+    return record(accountCreationStageTimers[stage.ordinal()], stageStart);
+  }
+
+  /**
+   * Counts an error response
+   * @param exceptionCode Exception code of the response
+   */
+  public void countError(ExceptionCode exceptionCode) {
+    errorCounters[exceptionCode.ordinal()].increment();
+  }
+
+  private static long record(Timer timer, long stageStart) {
+    var now = System.nanoTime();
+    timer.record(now - stageStart, TimeUnit.NANOSECONDS);
+    return now;
+  }
+}
@@ -0,0 +1,33 @@
+package com.rindago.payment.metrics;
+
+/**
+ * Stages of a payment made by the JPA payment engine, timed by the 'payment.stage' timer
+ */
+public enum PaymentStage {
+  /**
+   * Waiting for the account locks of a pessimistic payment
+   */
+  LOCK_WAIT,
+  /**
+   * Opening the transaction, including the wait for a pooled connection
+   */
+  TRANSACTION_BEGIN,
+  /**
+   * Loading the accounts, or finding out which requirement a rejected guarded update has violated
+   */
+  ACCOUNT_LOOKUP,
+  /**
+   * Checking the sender's balance and updating the balances. With JPA entities, the UPDATE
+   * statements only run when the transaction is flushed, so they are timed by {@link #COMMIT}.
+   */
+  BALANCE_UPDATE,
+  /**
+   * Saving the payment and its idempotency key. The INSERT of the payment entity only runs when the
+   * transaction is flushed, so it is timed by {@link #COMMIT}.
+   */
+  PAYMENT_INSERT,
+  /**
+   * Flushing and committing the transaction
+   */
+  COMMIT
+}
@@ -0,0 +1,58 @@
+package com.rindago.payment.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+
+/**
+ * Gauge of the open database transactions and counters of their outcomes. Spring Boot registers
+ * the listener with the transaction manager, which only notifies it of transactions it has begun
+ * itself, not of those joined by a nested call.
+ */
+@Component
+public class TransactionMetrics implements TransactionExecutionListener {
+
+  private final AtomicInteger active = new AtomicInteger();
+  private final Counter committed;
+  private final Counter commitFailed;
+  private final Counter rolledBack;
+
+  public TransactionMetrics(MeterRegistry meterRegistry) {
+    Gauge.builder("transactions.active", active, AtomicInteger::get)
+        .description("Database transactions which have begun and not completed yet")
+        .register(meterRegistry);
+    committed = outcomeCounter(meterRegistry, "committed");
+    commitFailed = outcomeCounter(meterRegistry, "commit_failed");
+    rolledBack = outcomeCounter(meterRegistry, "rolled_back");
+  }
+
+  private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+    return Counter.builder("transactions.completed")
+        .description("Completed database transactions by outcome")
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void afterBegin(TransactionExecution transaction, Throwable beginFailure) {
+    if (beginFailure == null) {
+      active.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void afterCommit(TransactionExecution transaction, Throwable commitFailure) {
+    active.decrementAndGet();
+    (commitFailure == null ? committed : commitFailed).increment();
+  }
+
+  @Override
+  public void afterRollback(TransactionExecution transaction, Throwable rollbackFailure) {
+    active.decrementAndGet();
+    rolledBack.increment();
+  }
+}
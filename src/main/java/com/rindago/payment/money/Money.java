@@ -0,0 +1,115 @@
+package com.rindago.payment.money;
+
+import java.math.BigDecimal;
+
+/**
+ * An amount of money held as a number of minor units (cents), the representation of balances and
+ * payment amounts behind the API. Amounts are converted from the {@link BigDecimal}s of the DTOs
+ * once, where they are validated; from there on, adding, subtracting and comparing them is long
+ * arithmetic. Money is immutable.
+ */
+public final class Money implements Comparable<Money> {
+
+  /**
+   * Number of decimal places of an amount, the scale of the NUMERIC(18, 2) columns
+   */
+  public static final int SCALE = 2;
+
+  public static final Money ZERO = new Money(0);
+
+  /**
+   * The largest amount a NUMERIC(18, 2) column can hold
+   */
+  public static final Money MAX_VALUE = new Money(999_999_999_999_999_999L);
+
+  private final long cents;
+
+  private Money(long cents) {
+    this.cents = cents;
+  }
+
+  /**
+   * @param cents Number of minor units
+   * @return The amount
+   */
+  public static Money ofCents(long cents) {
+    return cents == 0 ? ZERO : new Money(cents);
+  }
+
+  /**
+   * @param amount Amount with at most {@link #SCALE} decimal places
+   * @return The amount
+   * @throws ArithmeticException If the amount has more decimal places or does not fit in a long
+   * number of cents
+   */
+  public static Money of(BigDecimal amount) {
+    if (amount.scale() > SCALE) {
+      throw new ArithmeticException("More than " + SCALE + " decimal places: " + amount);
+    }
+    return ofCents(amount.movePointRight(SCALE).longValueExact());
+  }
+
+  /**
+   * @param amount Amount with at most {@link #SCALE} decimal places
+   * @return Whether the amount fits in a long number of cents
+   */
+  public static boolean fits(BigDecimal amount) {
+    return amount.movePointRight(SCALE).toBigInteger().bitLength() < Long.SIZE;
+  }
+
+  public long getCents() {
+    return cents;
+  }
+
+  /**
+   * @throws ArithmeticException If the sum overflows
+   */
+  public Money plus(Money other) {
+    return ofCents(Math.addExact(cents, other.cents));
+  }
+
+  /**
+   * @throws ArithmeticException If the difference overflows
+   */
+  public Money minus(Money other) {
+    return ofCents(Math.subtractExact(cents, other.cents));
+  }
+
+  public int signum() {
+    return Long.signum(cents);
+  }
+
+  /**
+   * @return Whether this amount is greater than the other one
+   */
+  public boolean exceeds(Money other) {
+    return cents > other.cents;
+  }
+
+  /**
+   * @return The amount with a scale of {@link #SCALE}, e.g. 12.50
+   */
+  public BigDecimal toBigDecimal() {
+    return BigDecimal.valueOf(cents, SCALE);
+  }
+
+  @Override
+  public int compareTo(Money other) {
+    return Long.compare(cents, other.cents);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof Money money && cents == money.cents;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(cents);
+  }
+
+  @Override
+  public String toString() {
+    return toBigDecimal().toPlainString();
+  }
+}
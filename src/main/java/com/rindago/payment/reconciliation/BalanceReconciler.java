@@ -0,0 +1,431 @@
+package com.rindago.payment.reconciliation;
+
+import com.rindago.payment.archive.PaymentArchive;
+import com.rindago.payment.dtos.BalanceMismatch;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.ReconciliationReport;
+import com.rindago.payment.money.Money;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Reconciles the balance of every account with its opening balance plus the payments it has
+ * received minus the payments it has sent, in the background.
+ *
+ * <p>A run first folds the payments made since the checkpoint of the previous run into a net
+ * amount per account, reading only these payments. It then splits the account IDs into ranges,
+ * which a fork-join pool reconciles in parallel. A range is read in one serializable transaction,
+ * so that its balances, pending credits of hot accounts and payments are of one point in time.
+ * The net payments of each account up to the checkpoint are kept in the account_reconciliation
+ * table, and the payments made while the run goes on are added to them when comparing.
+ *
+ * <p>A payment ID is allocated before the payment commits, so a payment may only become visible
+ * after greater IDs have been folded. Its accounts then seem not to match. An account which does
+ * not match is recounted from all its payments, which also corrects its net payments, before it
+ * is reported as a mismatch.
+ *
+ * <p>Before each range, and every {@value #THROTTLE_CHECK_ROWS} payments folded, the run pauses
+ * while the 99th percentile latency of '/payment' is above its budget.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.reconciliation.enabled", havingValue = "true")
+public class BalanceReconciler {
+
+  private static final int THROTTLE_CHECK_ROWS = 10_000;
+  private static final int MAX_LISTED_MISMATCHES = 1000;
+  private static final int ARCHIVE_PAGE_SIZE = 1000;
+  private static final String SELECT_LAST_PAYMENT_ID = "SELECT COALESCE(MAX(id), 0) FROM payment";
+  private static final String SELECT_NEW_PAYMENTS = "SELECT sender_account_id, "
+      + "receiver_account_id, amount FROM payment WHERE id > ? AND id <= ? AND timestamp >= ?";
+  private static final String SELECT_ACCOUNT_IDS = "SELECT MIN(id), MAX(id) FROM account";
+  // Balances include the pending credits of hot accounts, which are compacted into them later.
+  private static final String SELECT_ACCOUNTS = "SELECT a.id, a.balance + COALESCE("
+      + "(SELECT SUM(d.amount) FROM account_balance_delta d WHERE d.account_id = a.id), 0), "
+      + "a.opening_balance, r.net_payments FROM account a "
+      + "LEFT JOIN account_reconciliation r ON r.account_id = a.id "
+      + "WHERE a.id BETWEEN ? AND ? ORDER BY a.id";
+  private static final String SELECT_LATER_PAYMENTS = "SELECT sender_account_id, "
+      + "receiver_account_id, amount FROM payment WHERE id > ? "
+      + "AND (sender_account_id BETWEEN ? AND ? OR receiver_account_id BETWEEN ? AND ?)";
+  private static final String SELECT_RECEIVED = "SELECT COALESCE(SUM(amount), 0) FROM payment "
+      + "WHERE receiver_account_id = ? AND timestamp >= ? AND id <= ?";
+  private static final String SELECT_SENT = "SELECT COALESCE(SUM(amount), 0) FROM payment "
+      + "WHERE sender_account_id = ? AND timestamp >= ? AND id <= ?";
+  private static final String MERGE_NET_PAYMENTS = "MERGE INTO account_reconciliation "
+      + "(account_id, net_payments) KEY (account_id) VALUES (?, ?)";
+
+  private final Logger logger = LoggerFactory.getLogger(BalanceReconciler.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final ReconciliationProperties reconciliationProperties;
+  private final Optional<PaymentArchive> paymentArchive;
+  private final MeterRegistry meterRegistry;
+  private final ForkJoinPool pool;
+  private final Timer runTimer;
+  private final Timer throttleTimer;
+  private final AtomicLong mismatchCount = new AtomicLong();
+  private final AtomicLong throttledNanos = new AtomicLong();
+
+  private volatile long checkpoint; // ID of the last payment folded into account_reconciliation
+  private volatile ReconciliationReport lastReport;
+
+  public BalanceReconciler(JdbcTemplate jdbcTemplate,
+      PlatformTransactionManager transactionManager,
+      ReconciliationProperties reconciliationProperties, Optional<PaymentArchive> paymentArchive,
+      MeterRegistry meterRegistry, Environment environment) {
+    // The sharded engine keeps the balances and payments on its shards.
+    if ("sharded".equals(environment.getProperty("payment.engine"))) {
+      throw new IllegalStateException(
+          "payment.reconciliation.enabled is not supported with payment.engine=sharded");
+    }
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    // A serializable transaction of H2 reads all tables as of its first statement.
+    transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.reconciliationProperties = reconciliationProperties;
+    this.paymentArchive = paymentArchive;
+    this.meterRegistry = meterRegistry;
+    this.pool = new ForkJoinPool(reconciliationProperties.getThreads());
+    runTimer = Timer.builder("reconciliation.run")
+        .description("Time of a balance reconciliation run")
+        .register(meterRegistry);
+    throttleTimer = Timer.builder("reconciliation.throttle")
+        .description("Time the balance reconciliation paused for the latency of /payment")
+        .register(meterRegistry);
+    Gauge.builder("reconciliation.mismatches", mismatchCount, AtomicLong::get)
+        .description("Accounts whose balance did not match their payments in the last run")
+        .register(meterRegistry);
+    Gauge.builder("reconciliation.checkpoint", this, reconciler -> reconciler.checkpoint)
+        .description("ID of the last payment reconciled")
+        .register(meterRegistry);
+  }
+
+  @PreDestroy
+  void close() {
+    pool.shutdownNow();
+  }
+
+  /**
+   * @return The report of the last run, or empty if none has ended yet
+   */
+  public Optional<ReconciliationReport> getLastReport() {
+    return Optional.ofNullable(lastReport);
+  }
+
+  /**
+   * Folds the payments made since the last run, and reconciles the balances of all accounts. The
+   * first scheduled run is one interval after startup, once the accounts are loaded.
+   * @return Report of the run
+   */
+  @Scheduled(initialDelayString = "${payment.reconciliation.interval:PT1M}",
+      fixedDelayString = "${payment.reconciliation.interval:PT1M}")
+  public synchronized ReconciliationReport reconcile() {
+    var startedAt = Instant.now();
+    var start = System.nanoTime();
+    throttledNanos.set(0);
+
+    var netPayments = new HashMap<Long, Long>(); // Folded cents per account
+    var payments = new long[1];
+    var newCheckpoint = transactionTemplate.execute(status -> fold(netPayments, payments));
+
+    var result = jdbcTemplate.query(SELECT_ACCOUNT_IDS, resultSet -> {
+      resultSet.next();
+      var firstId = resultSet.getLong(1);
+      return resultSet.wasNull() ? new RangeResult()
+          : pool.invoke(new RangeTask(firstId, resultSet.getLong(2), netPayments, newCheckpoint));
+    });
+    checkpoint = newCheckpoint;
+    mismatchCount.set(result.mismatchCount);
+
+    var report = new ReconciliationReport();
+    report.setLastPaymentId(newCheckpoint);
+    report.setStartedAt(startedAt);
+    report.setDurationMillis((System.nanoTime() - start) / 1_000_000);
+    report.setAccounts(result.accounts);
+    report.setPayments(payments[0]);
+    report.setRecountedAccounts(result.recounted);
+    report.setThrottledMillis(throttledNanos.get() / 1_000_000);
+    report.setMismatchCount(result.mismatchCount);
+    report.setMismatches(result.mismatches);
+    lastReport = report;
+    runTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+    logger.info("RECONCILIATION: {} accounts and {} new payments reconciled up to payment {} in "
+            + "{} ms ({} ms throttled), {} accounts recounted", result.accounts, payments[0],
+        newCheckpoint, report.getDurationMillis(), report.getThrottledMillis(), result.recounted);
+    if (result.mismatchCount > 0) {
+      logger.warn("RECONCILIATION FAILED! {} accounts do not match their payments, e.g. {}",
+          result.mismatchCount, result.mismatches.get(0));
+    }
+    return report;
+  }
+
+  /**
+   * Adds the payments after the checkpoint to the net payments of their accounts
+   * @return ID of the last payment folded, the new checkpoint
+   */
+  private long fold(Map<Long, Long> netPayments, long[] payments) {
+    var lastPaymentId = Math.max(checkpoint,
+        jdbcTemplate.queryForObject(SELECT_LAST_PAYMENT_ID, Long.class));
+    // Read after the first statement, so a day archived since is read from the table.
+    var archivedBefore = archivedBefore();
+    if (paymentArchive.isPresent()) {
+      lastPaymentId = Math.max(lastPaymentId, paymentArchive.get().getLastPaymentId());
+      var scan = paymentArchive.get().scan(null, archivedBefore, checkpoint);
+      while (scan.hasNext() && scan.peek().getId() <= lastPaymentId) {
+        var payment = scan.next();
+        var cents = payment.getAmount().getCents();
+        netPayments.merge(payment.getSenderAccountId(), -cents, Math::addExact);
+        netPayments.merge(payment.getReceiverAccountId(), cents, Math::addExact);
+        payments[0]++;
+      }
+    }
+
+    // An embedded H2 builds the whole result first, unless its session executes queries lazily.
+    var h2 = "H2".equals(jdbcTemplate.execute(
+        (ConnectionCallback<String>) connection -> connection.getMetaData()
+            .getDatabaseProductName()));
+    if (h2) {
+      jdbcTemplate.execute("SET LAZY_QUERY_EXECUTION TRUE");
+    }
+    try {
+      jdbcTemplate.query(SELECT_NEW_PAYMENTS, resultSet -> {
+        var cents = Money.of(resultSet.getBigDecimal(3)).getCents();
+        netPayments.merge(resultSet.getLong(1), -cents, Math::addExact);
+        netPayments.merge(resultSet.getLong(2), cents, Math::addExact);
+        if (++payments[0] % THROTTLE_CHECK_ROWS == 0) {
+          throttle();
+        }
+      }, checkpoint, lastPaymentId, Timestamp.from(archivedBefore));
+    } finally {
+      if (h2) {
+        jdbcTemplate.execute("SET LAZY_QUERY_EXECUTION FALSE"); // The connection is pooled.
+      }
+    }
+    return lastPaymentId;
+  }
+
+  /**
+   * Reconciles the accounts of an ID range in one transaction, and stores their net payments up
+   * to the new checkpoint
+   */
+  private RangeResult reconcile(long fromId, long toId, Map<Long, Long> netPayments,
+      long lastPaymentId) {
+    throttle();
+    return transactionTemplate.execute(status -> {
+      var accounts = jdbcTemplate.query(SELECT_ACCOUNTS, BalanceReconciler::accountState, fromId,
+          toId);
+      // Read after the first statement, so a day archived since is read from the table.
+      var archivedBefore = archivedBefore();
+      var laterPayments = new HashMap<Long, Long>(); // Cents per account, made during the run
+      jdbcTemplate.query(SELECT_LATER_PAYMENTS, resultSet -> {
+        var cents = Money.of(resultSet.getBigDecimal(3)).getCents();
+        laterPayments.merge(resultSet.getLong(1), -cents, Math::addExact);
+        laterPayments.merge(resultSet.getLong(2), cents, Math::addExact);
+      }, lastPaymentId, fromId, toId, fromId, toId);
+
+      var result = new RangeResult();
+      var updates = new ArrayList<Object[]>();
+      for (var account : accounts) {
+        var folded = netPayments.get(account.id);
+        var net = folded == null ? account.netPayments : account.netPayments + folded;
+        var later = laterPayments.getOrDefault(account.id, 0L);
+        if (account.openingBalance + net + later != account.balance) {
+          var recounted = recount(account.id, archivedBefore, lastPaymentId);
+          result.recounted++;
+          if (recounted != net) {
+            net = recounted;
+            folded = recounted; // Stored below
+          }
+          if (account.openingBalance + net + later != account.balance) {
+            result.addMismatch(account.id, account.balance, account.openingBalance + net + later);
+          }
+        }
+        if (folded != null) {
+          updates.add(new Object[] {account.id, Money.ofCents(net).toBigDecimal()});
+        }
+      }
+      jdbcTemplate.batchUpdate(MERGE_NET_PAYMENTS, updates);
+      result.accounts = accounts.size();
+      return result;
+    });
+  }
+
+  /**
+   * @return Cents received minus cents sent by an account, in the payments up to the checkpoint
+   */
+  private long recount(long accountId, Instant archivedBefore, long lastPaymentId) {
+    var hotFrom = Timestamp.from(archivedBefore);
+    var net = Money.of(jdbcTemplate.queryForObject(SELECT_RECEIVED, BigDecimal.class, accountId,
+        hotFrom, lastPaymentId)).getCents() - Money.of(jdbcTemplate.queryForObject(SELECT_SENT,
+        BigDecimal.class, accountId, hotFrom, lastPaymentId)).getCents();
+    if (paymentArchive.isPresent()) {
+      var timestamp = Instant.EPOCH;
+      var id = 0L;
+      List<PaymentDto> page;
+      do {
+        page = paymentArchive.get().findPayments(accountId, timestamp, id, ARCHIVE_PAGE_SIZE);
+        for (var payment : page) {
+          if (payment.getTimestamp().isBefore(archivedBefore) && payment.getId() <= lastPaymentId) {
+            var cents = Money.of(payment.getAmount()).getCents();
+            net = Math.addExact(net, payment.getSenderAccountId() == accountId ? -cents : cents);
+          }
+        }
+        if (!page.isEmpty()) {
+          timestamp = page.get(page.size() - 1).getTimestamp();
+          id = page.get(page.size() - 1).getId();
+        }
+      } while (page.size() == ARCHIVE_PAGE_SIZE);
+    }
+    return net;
+  }
+
+  private Instant archivedBefore() {
+    return paymentArchive.map(PaymentArchive::getArchivedBefore).orElse(Instant.EPOCH);
+  }
+
+  /**
+   * Pauses while the 99th percentile latency of '/payment' is above the budget
+   */
+  private void throttle() {
+    var pause = reconciliationProperties.getThrottlePause();
+    while (getPaymentLatencyP99() > reconciliationProperties.getLatencyBudget().toNanos()) {
+      try {
+        Thread.sleep(pause.toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("The reconciliation was interrupted", e);
+      }
+      throttleTimer.record(pause);
+      throttledNanos.addAndGet(pause.toNanos());
+    }
+  }
+
+  /**
+   * @return The 99th percentile latency of '/payment' in nanoseconds, over the recent requests,
+   *     or 0 if it is not published
+   */
+  private double getPaymentLatencyP99() {
+    var p99 = 0.0;
+    for (var timer : meterRegistry.find("http.server.requests").tag("uri", "/payment").timers()) {
+      for (var percentile : timer.takeSnapshot().percentileValues()) {
+        if (percentile.percentile() == 0.99) {
+          p99 = Math.max(p99, percentile.value(TimeUnit.NANOSECONDS));
+        }
+      }
+    }
+    return p99;
+  }
+
+  private static AccountState accountState(ResultSet resultSet, int row) throws SQLException {
+    var netPayments = resultSet.getBigDecimal(4);
+    return new AccountState(resultSet.getLong(1),
+        Money.of(resultSet.getBigDecimal(2)).getCents(),
+        Money.of(resultSet.getBigDecimal(3)).getCents(),
+        netPayments == null ? 0 : Money.of(netPayments).getCents());
+  }
+
+  /**
+   * An account as read for its reconciliation, in cents. The balance includes pending credits.
+   */
+  private record AccountState(long id, long balance, long openingBalance, long netPayments) {
+  }
+
+  /**
+   * Splits an account ID range in halves until it is at most the range size, and reconciles the
+   * halves in parallel
+   */
+  private final class RangeTask extends RecursiveTask<RangeResult> {
+
+    private final long fromId;
+    private final long toId;
+    private final Map<Long, Long> netPayments;
+    private final long lastPaymentId;
+
+    RangeTask(long fromId, long toId, Map<Long, Long> netPayments, long lastPaymentId) {
+      this.fromId = fromId;
+      this.toId = toId;
+      this.netPayments = netPayments;
+      this.lastPaymentId = lastPaymentId;
+    }
+
+    @Override
+    protected RangeResult compute() {
+      if (toId - fromId < reconciliationProperties.getRangeSize()) {
+        return reconcile(fromId, toId, netPayments, lastPaymentId);
+      }
+      var middle = fromId + (toId - fromId) / 2;
+      var lower = new RangeTask(fromId, middle, netPayments, lastPaymentId);
+      lower.fork();
+      var upper = new RangeTask(middle + 1, toId, netPayments, lastPaymentId).compute();
+      return lower.join().add(upper);
+    }
+  }
+
+  /**
+   * Counts of the reconciled accounts of one or more ranges, with their first mismatches by ID
+   */
+  private static final class RangeResult {
+
+    long accounts;
+    long recounted;
+    long mismatchCount;
+    List<BalanceMismatch> mismatches = new ArrayList<>();
+
+    void addMismatch(long accountId, long balance, long expectedBalance) {
+      mismatchCount++;
+      if (mismatches.size() < MAX_LISTED_MISMATCHES) {
+        var mismatch = new BalanceMismatch();
+        mismatch.setAccountId(accountId);
+        mismatch.setBalance(Money.ofCents(balance).toBigDecimal());
+        mismatch.setExpectedBalance(Money.ofCents(expectedBalance).toBigDecimal());
+        mismatches.add(mismatch);
+      }
+    }
+
+    /**
+     * @param upper Result of the range of greater IDs
+     */
+    RangeResult add(RangeResult upper) {
+      accounts += upper.accounts;
+      recounted += upper.recounted;
+      mismatchCount += upper.mismatchCount;
+      for (var mismatch : upper.mismatches) {
+        if (mismatches.size() == MAX_LISTED_MISMATCHES) {
+          break;
+        }
+        mismatches.add(mismatch);
+      }
+      return this;
+    }
+  }
+}
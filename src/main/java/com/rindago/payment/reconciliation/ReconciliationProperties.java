@@ -0,0 +1,43 @@
+package com.rindago.payment.reconciliation;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the balance reconciliation, bound from 'payment.reconciliation.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.reconciliation")
+public class ReconciliationProperties {
+
+  /**
+   * Whether account balances are reconciled with the payments in the background
+   */
+  private boolean enabled = false;
+
+  /**
+   * Delay between the end of a reconciliation and the start of the next one
+   */
+  private Duration interval = Duration.ofMinutes(1);
+
+  /**
+   * Number of account IDs reconciled together, in one transaction
+   */
+  private int rangeSize = 10_000;
+
+  /**
+   * Number of account ID ranges reconciled in parallel
+   */
+  private int threads = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+
+  /**
+   * The reconciliation pauses while the 99th percentile latency of '/payment' is above it
+   */
+  private Duration latencyBudget = Duration.ofMillis(50);
+
+  /**
+   * How long the reconciliation pauses before checking the latency again
+   */
+  private Duration throttlePause = Duration.ofMillis(100);
+}
@@ -0,0 +1,36 @@
+package com.rindago.payment.repositories;
+
+import com.rindago.payment.entities.AccountBalanceDelta;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * A CrudRepository to handle database operations of pending credits to hot accounts
+ */
+@Repository
+public interface AccountBalanceDeltaRepository extends CrudRepository<AccountBalanceDelta, Long> {
+
+  List<AccountBalanceDelta> findByAccountId(Long accountId);
+
+  /**
+   * Reads the base balance of an account and its pending deltas in one statement, so that a
+   * concurrent fold cannot make the deltas it has moved into the balance count twice or not at all
+   * @return The balance plus the pending deltas, or null if the account does not exist
+   */
+  @Query("SELECT a.balance + COALESCE((SELECT SUM(d.amount) FROM AccountBalanceDelta d "
+      + "WHERE d.accountId = a.id), 0) FROM Account a WHERE a.id = :accountId")
+  BigDecimal findBalanceWithDeltasByAccountId(@Param("accountId") Long accountId);
+
+  @Modifying
+  @Query("DELETE FROM AccountBalanceDelta d WHERE d.id IN :ids")
+  int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+  @Query("SELECT DISTINCT d.accountId FROM AccountBalanceDelta d")
+  List<Long> findAccountIds();
+}
@@ -1,7 +1,11 @@
 package com.rindago.payment.repositories;
 
 import com.rindago.payment.entities.Account;
+import com.rindago.payment.money.Money;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -10,4 +14,21 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface AccountRepository extends CrudRepository<Account, Long> {
 
+  /**
+   * Debits an account in a single statement, only if its balance covers the amount
+   * @return 1 if the account has been debited, 0 if it does not exist or its balance is too low
+   */
+  @Modifying
+  @Query("UPDATE Account a SET a.balance = a.balance - :amount, a.version = a.version + 1 "
+      + "WHERE a.id = :id AND a.balance >= :amount")
+  int debit(@Param("id") Long id, @Param("amount") Money amount);
+
+  /**
+   * Credits an account in a single statement
+   * @return 1 if the account has been credited, 0 if it does not exist
+   */
+  @Modifying
+  @Query("UPDATE Account a SET a.balance = a.balance + :amount, a.version = a.version + 1 "
+      + "WHERE a.id = :id")
+  int credit(@Param("id") Long id, @Param("amount") Money amount);
 }
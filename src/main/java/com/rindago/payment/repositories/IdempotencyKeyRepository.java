@@ -0,0 +1,41 @@
+package com.rindago.payment.repositories;
+
+import com.rindago.payment.entities.IdempotencyKey;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * A CrudRepository to handle database operations of payment idempotency keys
+ */
+@Repository
+public interface IdempotencyKeyRepository extends CrudRepository<IdempotencyKey, String> {
+
+  /**
+   * Inserts a key right away, unlike save() which would merge it into an existing row. The insert
+   * fails if the key is taken, and waits for a concurrent transaction inserting the same key.
+   */
+  @Modifying
+  @Query(value = "INSERT INTO idempotency_key (idempotency_key, payment_id, sender_account_id, "
+      + "receiver_account_id, amount, payment_timestamp, created_at) VALUES (:key, :paymentId, "
+      + ":senderAccountId, :receiverAccountId, :amount, :paymentTimestamp, :createdAt)",
+      nativeQuery = true)
+  void insert(@Param("key") String key, @Param("paymentId") Long paymentId,
+      @Param("senderAccountId") Long senderAccountId,
+      @Param("receiverAccountId") Long receiverAccountId, @Param("amount") BigDecimal amount,
+      @Param("paymentTimestamp") Instant paymentTimestamp, @Param("createdAt") Instant createdAt);
+
+  @Query("SELECT k.key FROM IdempotencyKey k WHERE k.createdAt < :before")
+  List<String> findKeysCreatedBefore(@Param("before") Instant before, Pageable pageable);
+
+  @Modifying
+  @Query("DELETE FROM IdempotencyKey k WHERE k.key IN :keys")
+  int deleteByKeyIn(@Param("keys") Collection<String> keys);
+}
@@ -1,7 +1,13 @@
 package com.rindago.payment.repositories;
 
+import com.rindago.payment.dtos.PaymentDto;
 import com.rindago.payment.entities.Payment;
+import java.time.Instant;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -10,4 +16,30 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface PaymentRepository extends CrudRepository<Payment, Long> {
 
+  /**
+   * Reads the payments sent by an account after the given (timestamp, ID) position, in
+   * (timestamp, ID) order, as DTOs without loading the entities. The redundant 'timestamp >='
+   * condition lets the database start the scan of the (sender, timestamp, ID) index at the
+   * position, and ordering by all columns of the index lets it stop after the page instead of
+   * sorting all later payments.
+   */
+  @Query("SELECT new com.rindago.payment.dtos.PaymentDto(p.id, p.senderAccountId, "
+      + "p.receiverAccountId, p.amount, p.timestamp) FROM Payment p "
+      + "WHERE p.senderAccountId = :accountId AND p.timestamp >= :timestamp "
+      + "AND (p.timestamp > :timestamp OR p.id > :id) "
+      + "ORDER BY p.senderAccountId, p.timestamp, p.id")
+  List<PaymentDto> findSentAfter(@Param("accountId") Long accountId,
+      @Param("timestamp") Instant timestamp, @Param("id") Long id, Pageable pageable);
+
+  /**
+   * Reads the payments received by an account after the given (timestamp, ID) position, like
+   * {@link #findSentAfter}
+   */
+  @Query("SELECT new com.rindago.payment.dtos.PaymentDto(p.id, p.senderAccountId, "
+      + "p.receiverAccountId, p.amount, p.timestamp) FROM Payment p "
+      + "WHERE p.receiverAccountId = :accountId AND p.timestamp >= :timestamp "
+      + "AND (p.timestamp > :timestamp OR p.id > :id) "
+      + "ORDER BY p.receiverAccountId, p.timestamp, p.id")
+  List<PaymentDto> findReceivedAfter(@Param("accountId") Long accountId,
+      @Param("timestamp") Instant timestamp, @Param("id") Long id, Pageable pageable);
 }
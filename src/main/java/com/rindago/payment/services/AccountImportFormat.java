@@ -0,0 +1,10 @@
+package com.rindago.payment.services;
+
+/**
+ * Record formats of a streamed account import: one JSON object per line, or 'name,balance' lines
+ * with an optional header line
+ */
+public enum AccountImportFormat {
+  NDJSON,
+  CSV
+}
@@ -0,0 +1,23 @@
+package com.rindago.payment.services;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the streamed account import, bound from 'payment.account-import.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.account-import")
+public class AccountImportProperties {
+
+  /**
+   * Number of accounts inserted with one JDBC batch and committed together
+   */
+  private int batchSize = 1000;
+
+  /**
+   * Maximum number of rejected line numbers listed in an import summary; rejections beyond it
+   * are only counted
+   */
+  private int maxRejectedLines = 1000;
+}
@@ -0,0 +1,246 @@
+package com.rindago.payment.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.AccountImportSummary;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.journal.PaymentJournal;
+import com.rindago.payment.money.Money;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * A service class to import accounts from a stream of NDJSON or CSV records. Records are parsed
+ * and validated one line at a time, and the valid ones are inserted in fixed-size JDBC batches,
+ * each committed on its own, so the memory used does not depend on the size of the import.
+ */
+@Service
+@RequiredArgsConstructor
+public class AccountImportService {
+
+  private static final String INSERT_ACCOUNT = "INSERT INTO account "
+      + "(id, name, balance, opening_balance, version) VALUES (?, ?, ?, ?, 0)";
+  private static final String CSV_HEADER = "name,balance";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectMapper objectMapper;
+  private final EntityManager entityManager;
+  private final EntityManagerFactory entityManagerFactory;
+  private final AccountImportProperties accountImportProperties;
+  private final Optional<PaymentJournal> paymentJournal;
+
+  /**
+   * Imports the accounts of the given stream. A record is rejected if it cannot be parsed, if its
+   * name is empty or longer than 50 characters, if its balance is negative or has more than 2
+   * decimal places, or if its name is taken.
+   * @param input Stream of account records, one per line
+   * @param format Format of the records
+   * @return Counts of created and rejected accounts, created ID range and rejected line numbers
+   * @throws IOException If the stream cannot be read
+   */
+  public AccountImportSummary importAccounts(InputStream input, AccountImportFormat format)
+      throws IOException {
+    var summary = new AccountImportSummary();
+    var batch = new ArrayList<AccountRecord>(accountImportProperties.getBatchSize());
+
+    try (var reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+      var lineNumber = 0L;
+      for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+        lineNumber++;
+        if (line.isBlank() || (format == AccountImportFormat.CSV && lineNumber == 1
+            && CSV_HEADER.equalsIgnoreCase(line.replace(" ", "")))) {
+          continue;
+        }
+        var account = format == AccountImportFormat.CSV
+            ? parseCsv(line, lineNumber) : parseNdjson(line, lineNumber);
+        if (account == null || !isValid(account)) {
+          reject(summary, lineNumber);
+          continue;
+        }
+        batch.add(account);
+        if (batch.size() == accountImportProperties.getBatchSize()) {
+          insert(batch, summary);
+          batch.clear();
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      insert(batch, summary);
+    }
+
+    Collections.sort(summary.getRejectedLines()); // Duplicate names are found after later lines.
+    return summary;
+  }
+
+  /**
+   * Inserts a batch of accounts in one transaction. If the batch fails because of a taken name,
+   * its accounts are inserted one by one so that only the accounts with a taken name are rejected.
+   * The accounts are journaled before they commit, so that no payment to them is journaled before
+   * them.
+   */
+  private void insert(List<AccountRecord> batch, AccountImportSummary summary) {
+    try {
+      transactionTemplate.executeWithoutResult(status -> {
+        // IDs come from the same generator as for the accounts created through JPA.
+        var session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        var idGenerator = (BeforeExecutionGenerator) entityManagerFactory
+            .unwrap(SessionFactoryImplementor.class).getMappingMetamodel()
+            .getEntityDescriptor(Account.class).getGenerator();
+        batch.forEach(account -> account.id =
+            (Long) idGenerator.generate(session, null, null, EventType.INSERT));
+
+        jdbcTemplate.batchUpdate(INSERT_ACCOUNT, batch, batch.size(), (statement, account) -> {
+          statement.setLong(1, account.id);
+          statement.setString(2, account.name);
+          statement.setBigDecimal(3, account.balance);
+          statement.setBigDecimal(4, account.balance);
+        });
+        journal(batch);
+      });
+      batch.forEach(account -> created(summary, account));
+    } catch (DataIntegrityViolationException e) {
+      for (var account : batch) {
+        try {
+          transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(INSERT_ACCOUNT, account.id, account.name, account.balance,
+                account.balance);
+            journal(List.of(account));
+          });
+          created(summary, account);
+        } catch (DataIntegrityViolationException duplicate) {
+          reject(summary, account.lineNumber);
+        }
+      }
+    }
+  }
+
+  private AccountRecord parseNdjson(String line, long lineNumber) {
+    try {
+      var account = objectMapper.readValue(line, AccountDto.class);
+      return new AccountRecord(lineNumber, account.getName(), account.getBalance());
+    } catch (JsonProcessingException e) {
+      return null;
+    }
+  }
+
+  private static AccountRecord parseCsv(String line, long lineNumber) {
+    var fields = splitCsvLine(line);
+    if (fields == null || fields.size() != 2) {
+      return null;
+    }
+    try {
+      return new AccountRecord(lineNumber, fields.get(0), new BigDecimal(fields.get(1).trim()));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Splits a CSV line into its fields. Fields may be enclosed in double quotes, in which commas are
+   * kept and two double quotes stand for one.
+   * @return The fields, or null if a quoted field is not closed
+   */
+  private static List<String> splitCsvLine(String line) {
+    var fields = new ArrayList<String>();
+    var field = new StringBuilder();
+    var quoted = false;
+    for (var i = 0; i < line.length(); i++) {
+      var c = line.charAt(i);
+      if (quoted) {
+        if (c != '"') {
+          field.append(c);
+        } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return quoted ? null : fields;
+  }
+
+  /**
+   * Checks the same requirements as the account entity, and the scale of the balance column
+   */
+  private static boolean isValid(AccountRecord account) {
+    return account.name != null && !account.name.isEmpty() && account.name.length() <= 50
+        && account.balance != null && account.balance.signum() >= 0
+        && account.balance.scale() <= 2;
+  }
+
+  /**
+   * Appends inserted accounts to the payment journal if enabled, and waits until they are on disk
+   */
+  private void journal(List<AccountRecord> accounts) {
+    paymentJournal.ifPresent(journal -> {
+      accounts.forEach(account ->
+          journal.appendAccount(account.id, account.name, Money.of(account.balance)));
+      journal.awaitSync();
+    });
+  }
+
+  /**
+   * Counts a committed account
+   */
+  private void created(AccountImportSummary summary, AccountRecord account) {
+    long accountId = account.id;
+    summary.setCreated(summary.getCreated() + 1);
+    if (summary.getFirstCreatedId() == null || accountId < summary.getFirstCreatedId()) {
+      summary.setFirstCreatedId(accountId);
+    }
+    if (summary.getLastCreatedId() == null || accountId > summary.getLastCreatedId()) {
+      summary.setLastCreatedId(accountId);
+    }
+  }
+
+  private void reject(AccountImportSummary summary, long lineNumber) {
+    summary.setRejected(summary.getRejected() + 1);
+    if (summary.getRejectedLines().size() < accountImportProperties.getMaxRejectedLines()) {
+      summary.getRejectedLines().add(lineNumber);
+    }
+  }
+
+  private static class AccountRecord {
+
+    private final long lineNumber;
+    private final String name;
+    private final BigDecimal balance;
+    private Long id;
+
+    AccountRecord(long lineNumber, String name, BigDecimal balance) {
+      this.lineNumber = lineNumber;
+      this.name = name;
+      this.balance = balance;
+    }
+  }
+}
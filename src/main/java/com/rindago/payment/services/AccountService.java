@@ -1,17 +1,23 @@
 package com.rindago.payment.services;
 
+import com.rindago.payment.cache.AccountCache;
 import com.rindago.payment.dtos.AccountDto;
 import com.rindago.payment.dtos.AccountRequest;
 import com.rindago.payment.entities.Account;
 import com.rindago.payment.exceptions.ExceptionCode;
 import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.journal.PaymentJournal;
+import com.rindago.payment.metrics.AccountCreationStage;
+import com.rindago.payment.metrics.PaymentMetrics;
+import com.rindago.payment.money.Money;
 import com.rindago.payment.repositories.AccountRepository;
-import java.math.BigDecimal;
+import com.rindago.payment.sharding.AccountShards;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * A service class to process account creation request and handle the entity-DTO transformation
@@ -21,36 +27,75 @@ import org.springframework.transaction.annotation.Transactional;
 public class AccountService {
 
   private final AccountRepository accountRepository;
+  private final HotAccountService hotAccountService;
+  private final AccountCache accountCache;
+  private final TransactionTemplate transactionTemplate;
+  private final PaymentMetrics paymentMetrics;
+  private final Optional<PaymentJournal> paymentJournal;
+  private final Optional<AccountShards> accountShards;
 
   /**
-   * Creates a new account in the database
+   * Creates a new account in the database, and appends it to the payment journal if enabled. The
+   * accounts are journaled before they commit, so that no payment to them is journaled before them.
    * @param accountRequest A DTO holding and transferring information of the accounts to be created
    * @return Created accounts
    */
-  @Transactional
   public List<AccountDto> createAccount(AccountRequest accountRequest) {
+    var stageStart = paymentMetrics.startStages();
     var accountsToBeCreated = new ArrayList<Account>();
     accountRequest.getAccounts().forEach(account -> {
-      if (BigDecimal.ZERO.compareTo(account.getBalance()) > 0) {
-        throw new RequirementException(ExceptionCode.NEGATIVE_ACCOUNT_BALANCE);
+      if (account.getBalance().signum() < 0) {
+        throw RequirementException.of(ExceptionCode.NEGATIVE_ACCOUNT_BALANCE);
       }
-      var accountToBeCreated = new Account(); // Input DTOs -> entities to be saved in the DB
-      accountToBeCreated.setName(account.getName());
-      accountToBeCreated.setBalance(account.getBalance());
-      accountsToBeCreated.add(accountToBeCreated);
+      // Rejected like a payment amount or an imported balance, rather than rounded
+      if (account.getBalance().scale() > Money.SCALE) {
+        throw RequirementException.of(ExceptionCode.MORE_THAN_TWO_DECIMAL_PLACES);
+      }
+      // Input DTOs -> entities to be saved in the DB
+      accountsToBeCreated.add(EntityMappings.toEntity(account, Money.of(account.getBalance())));
     });
-    accountRepository.saveAll(accountsToBeCreated); // Account entities are saved in the DB.
+    var validated = paymentMetrics.endStage(AccountCreationStage.VALIDATION, stageStart);
 
-    var createdAccounts = new ArrayList<AccountDto>(); // Entities -> output DTOs
-    accountsToBeCreated.forEach(account -> {
-      var createdAccount = new AccountDto();
-      createdAccount.setId(account.getId());
-      createdAccount.setName(account.getName());
-      createdAccount.setBalance(account.getBalance());
-      createdAccounts.add(createdAccount);
+    var inserted = transactionTemplate.execute(status -> {
+      accountRepository.saveAll(accountsToBeCreated); // Account entities are saved in the DB.
+      status.flush(); // A taken name fails here, before the accounts are journaled.
+      paymentJournal.ifPresent(journal -> {
+        accountsToBeCreated.forEach(account ->
+            journal.appendAccount(account.getId(), account.getName(), account.getBalance()));
+        journal.awaitSync();
+      });
+      return paymentMetrics.endStage(AccountCreationStage.ACCOUNT_INSERT, validated);
     });
+    paymentMetrics.endStage(AccountCreationStage.COMMIT, inserted);
+
+    var createdAccounts = new ArrayList<AccountDto>(); // Entities -> output DTOs
+    accountsToBeCreated.forEach(account -> createdAccounts.add(EntityMappings.toDto(account)));
 
     return createdAccounts;
   }
 
+  /**
+   * Reads an account through the account cache. The balance is the committed one, including the
+   * pending credits of a hot account. With the ledger engine, it is the balance persisted so far.
+   * With the sharded engine, it is the balance on the account's shard once a payment has copied
+   * the account there.
+   * @param accountId ID of the account
+   * @return The account, or empty if it does not exist
+   */
+  public Optional<AccountDto> getAccount(Long accountId) {
+    return accountCache.get(accountId, this::loadAccount);
+  }
+
+  private AccountDto loadAccount(Long accountId) {
+    return accountRepository.findById(accountId).map(account -> {
+      var accountDto = EntityMappings.toDto(account); // Entity -> output DTO
+      if (hotAccountService.isHot(accountId)) {
+        accountDto.setBalance(hotAccountService.getBalance(accountId));
+      }
+      accountShards.flatMap(shards -> shards.findBalance(accountId))
+          .ifPresent(balance -> accountDto.setBalance(balance.toBigDecimal()));
+      return accountDto;
+    }).orElse(null);
+  }
+
 }
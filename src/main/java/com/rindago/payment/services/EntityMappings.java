@@ -0,0 +1,71 @@
+package com.rindago.payment.services;
+
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.money.Money;
+import java.time.Instant;
+
+/**
+ * Entity-DTO transformations shared by the services and all payment engines
+ */
+public final class EntityMappings {
+
+  private EntityMappings() {
+  }
+
+  /**
+   * @param accountDto Input DTO of an account to be created
+   * @param balance The DTO's balance, checked and converted
+   * @return Account entity to be saved in the DB, without an ID
+   */
+  public static Account toEntity(AccountDto accountDto, Money balance) {
+    var account = new Account();
+    account.setName(accountDto.getName());
+    account.setBalance(balance);
+    return account;
+  }
+
+  /**
+   * @param account Account entity
+   * @return Output DTO with the entity's balance
+   */
+  public static AccountDto toDto(Account account) {
+    var accountDto = new AccountDto();
+    accountDto.setId(account.getId());
+    accountDto.setName(account.getName());
+    accountDto.setBalance(account.getBalance().toBigDecimal());
+    return accountDto;
+  }
+
+  /**
+   * @param paymentRequest Payment request whose requirements have been checked
+   * @param amount The request's amount, checked and converted
+   * @param timestamp Time of the payment
+   * @return Payment entity to be saved in the DB, without an ID
+   */
+  public static Payment toEntity(PaymentRequest paymentRequest, Money amount, Instant timestamp) {
+    var payment = new Payment();
+    payment.setSenderAccountId(paymentRequest.getSenderAccountId());
+    payment.setReceiverAccountId(paymentRequest.getReceiverAccountId());
+    payment.setAmount(amount);
+    payment.setTimestamp(timestamp);
+    return payment;
+  }
+
+  /**
+   * @param payment Payment entity
+   * @return Output DTO
+   */
+  public static PaymentDto toDto(Payment payment) {
+    var paymentDto = new PaymentDto();
+    paymentDto.setId(payment.getId());
+    paymentDto.setSenderAccountId(payment.getSenderAccountId());
+    paymentDto.setReceiverAccountId(payment.getReceiverAccountId());
+    paymentDto.setAmount(payment.getAmount().toBigDecimal());
+    paymentDto.setTimestamp(payment.getTimestamp());
+    return paymentDto;
+  }
+}
@@ -0,0 +1,27 @@
+package com.rindago.payment.services;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of hot accounts, bound from 'payment.hot-accounts.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.hot-accounts")
+public class HotAccountProperties {
+
+  /**
+   * IDs of the accounts whose credits are appended as balance deltas instead of updating the
+   * account, e.g. the transit operator's collection account
+   */
+  private Set<Long> accountIds = new HashSet<>();
+
+  /**
+   * Delay between two runs of the compactor folding balance deltas into their accounts, in ISO-8601
+   * format since it is also read by the compactor's schedule
+   */
+  private Duration compactionInterval = Duration.ofSeconds(1);
+}
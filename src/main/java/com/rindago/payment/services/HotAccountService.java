@@ -0,0 +1,110 @@
+package com.rindago.payment.services;
+
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.entities.AccountBalanceDelta;
+import com.rindago.payment.locks.AccountLockManager;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountBalanceDeltaRepository;
+import com.rindago.payment.repositories.AccountRepository;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * A service class to spread the credits of hot accounts over balance delta rows, so that payments
+ * to such an account do not all serialize on its row. The balance of a hot account is its base
+ * balance in the account row plus its pending deltas, which a background compactor folds into the
+ * row from time to time.
+ */
+@Service
+@RequiredArgsConstructor
+public class HotAccountService {
+
+  private final Logger logger = LoggerFactory.getLogger(HotAccountService.class);
+
+  private final AccountRepository accountRepository;
+  private final AccountBalanceDeltaRepository accountBalanceDeltaRepository;
+  private final AccountLockManager accountLockManager;
+  private final TransactionTemplate transactionTemplate;
+  private final HotAccountProperties hotAccountProperties;
+  private volatile boolean compactedOnce;
+
+  /**
+   * @return Whether the account's credits are appended as balance deltas
+   */
+  public boolean isHot(Long accountId) {
+    return hotAccountProperties.getAccountIds().contains(accountId);
+  }
+
+  /**
+   * Credits a hot account by appending a balance delta, within the current transaction
+   * @param accountId ID of the hot account
+   * @param amount The amount to be credited
+   */
+  public void appendCredit(Long accountId, Money amount) {
+    var delta = new AccountBalanceDelta();
+    delta.setAccountId(accountId);
+    delta.setAmount(amount);
+    accountBalanceDeltaRepository.save(delta);
+  }
+
+  /**
+   * @param accountId ID of a hot account
+   * @return The account's base balance plus its pending deltas, or null if it does not exist
+   */
+  public BigDecimal getBalance(Long accountId) {
+    return accountBalanceDeltaRepository.findBalanceWithDeltasByAccountId(accountId);
+  }
+
+  /**
+   * Folds the pending deltas of a hot account into its balance, within the current transaction.
+   * Exactly the deltas read are deleted, so deltas committed concurrently are left for the next
+   * fold. The caller must hold the account's lock, or rely on the account's version, so that two
+   * folds do not count the same deltas twice.
+   * @param account The hot account, managed by the current persistence context
+   */
+  public void fold(Account account) {
+    var deltas = accountBalanceDeltaRepository.findByAccountId(account.getId());
+    if (deltas.isEmpty()) {
+      return; // No pending delta
+    }
+    var deltaIds = new ArrayList<Long>(deltas.size());
+    var pendingCents = 0L;
+    for (var delta : deltas) {
+      deltaIds.add(delta.getId());
+      pendingCents = Math.addExact(pendingCents, delta.getAmount().getCents());
+    }
+    account.setBalance(account.getBalance().plus(Money.ofCents(pendingCents)));
+    accountBalanceDeltaRepository.deleteByIdIn(deltaIds);
+  }
+
+  /**
+   * Folds the pending deltas of all accounts into their balances, one account per transaction.
+   * Without hot accounts, only the first run looks for deltas, left by accounts which were hot
+   * before a restart.
+   */
+  @Scheduled(fixedDelayString = "${payment.hot-accounts.compaction-interval:PT1S}")
+  public void compact() {
+    if (hotAccountProperties.getAccountIds().isEmpty() && compactedOnce) {
+      return; // No delta is appended without hot accounts.
+    }
+    for (var accountId : accountBalanceDeltaRepository.findAccountIds()) {
+      try {
+        accountLockManager.callLocked(accountId, accountId, () -> transactionTemplate.execute(
+            status -> {
+              accountRepository.findById(accountId).ifPresent(this::fold);
+              return null;
+            }));
+      } catch (RuntimeException e) {
+        // A concurrent payment has changed the account; its deltas are folded by the next run.
+        logger.warn("HOT ACCOUNT COMPACTION SKIPPED! Account {}: {}", accountId, e.getMessage());
+      }
+    }
+    compactedOnce = true;
+  }
+}
@@ -0,0 +1,36 @@
+package com.rindago.payment.services;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of payment idempotency keys, bound from 'payment.idempotency.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.idempotency")
+public class IdempotencyProperties {
+
+  /**
+   * Time for which a key is kept after its payment, during which a retry with the key returns the
+   * same payment instead of making a new one
+   */
+  private Duration retention = Duration.ofHours(24);
+
+  /**
+   * Maximum number of keys kept in memory in front of the table; the least recently used ones are
+   * evicted beyond it
+   */
+  private long cacheSize = 10_000;
+
+  /**
+   * Delay between two runs of the pruner deleting expired keys, in ISO-8601 format since it is also
+   * read by the pruner's schedule
+   */
+  private Duration pruneInterval = Duration.ofMinutes(1);
+
+  /**
+   * Number of expired keys deleted per transaction when pruning
+   */
+  private int pruneBatchSize = 1000;
+}
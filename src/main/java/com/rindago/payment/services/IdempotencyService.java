@@ -0,0 +1,169 @@
+package com.rindago.payment.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.engines.PaymentEngine;
+import com.rindago.payment.entities.IdempotencyKey;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.IdempotencyKeyRepository;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * A service class making a payment at most once per idempotency key, so that a client can safely
+ * retry a payment request whose response it has not received. The engine records the key with the
+ * payment in the same transaction; the payments of recent keys are also kept in a bounded
+ * in-memory cache, so a retry is normally answered without touching the database. A duplicate
+ * arriving while the first request is still running waits for and returns its outcome.
+ */
+@Service
+public class IdempotencyService {
+
+  public static final int MAX_KEY_LENGTH = 255;
+
+  private final PaymentEngine paymentEngine;
+  private final IdempotencyKeyRepository idempotencyKeyRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final IdempotencyProperties idempotencyProperties;
+
+  private final Cache<String, PaymentDto> completedPayments;
+  private final ConcurrentMap<String, CompletableFuture<PaymentDto>> runningPayments =
+      new ConcurrentHashMap<>();
+
+  public IdempotencyService(PaymentEngine paymentEngine,
+      IdempotencyKeyRepository idempotencyKeyRepository, TransactionTemplate transactionTemplate,
+      IdempotencyProperties idempotencyProperties) {
+    this.paymentEngine = paymentEngine;
+    this.idempotencyKeyRepository = idempotencyKeyRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.idempotencyProperties = idempotencyProperties;
+    this.completedPayments = Caffeine.newBuilder()
+        .maximumSize(idempotencyProperties.getCacheSize())
+        .expireAfterWrite(idempotencyProperties.getRetention())
+        .executor(Runnable::run) // Evictions are done by the calling thread.
+        .build();
+  }
+
+  /**
+   * Makes the payment unless the key has already been used, in which case the payment made with it
+   * is returned again
+   * @param idempotencyKey Key chosen by the client, the same for all attempts of one payment
+   * @param paymentRequest A DTO holding and transferring information of the payment to be made
+   * @param amount The checked amount of the request
+   * @return Payment made, now or by an earlier request with the same key
+   */
+  public PaymentDto makePayment(String idempotencyKey, PaymentRequest paymentRequest,
+      Money amount) {
+    if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+      throw RequirementException.of(ExceptionCode.INVALID_IDEMPOTENCY_KEY);
+    }
+    var completedPayment = completedPayments.getIfPresent(idempotencyKey);
+    if (completedPayment != null) {
+      return matching(completedPayment, paymentRequest);
+    }
+
+    var attempt = new CompletableFuture<PaymentDto>();
+    var runningPayment = runningPayments.putIfAbsent(idempotencyKey, attempt);
+    if (runningPayment != null) {
+      return matching(await(runningPayment), paymentRequest);
+    }
+    try {
+      // A request with the same key may have completed between the cache lookup and the
+      // registration; it is cached before it is deregistered.
+      completedPayment = completedPayments.getIfPresent(idempotencyKey);
+      if (completedPayment == null) {
+        completedPayment = makePaymentOnce(idempotencyKey, paymentRequest, amount);
+        completedPayments.put(idempotencyKey, completedPayment);
+      }
+      attempt.complete(completedPayment);
+    } catch (RuntimeException e) {
+      attempt.completeExceptionally(e); // Waiting duplicates fail the same way, and may retry.
+      throw e;
+    } finally {
+      runningPayments.remove(idempotencyKey, attempt);
+    }
+    return matching(completedPayment, paymentRequest);
+  }
+
+  private PaymentDto makePaymentOnce(String idempotencyKey, PaymentRequest paymentRequest,
+      Money amount) {
+    var storedPayment = idempotencyKeyRepository.findById(idempotencyKey);
+    if (storedPayment.isPresent()) {
+      return toPaymentDto(storedPayment.get()); // Evicted from the cache, or made by another node
+    }
+    try {
+      return paymentEngine.makePayment(paymentRequest, amount, idempotencyKey);
+    } catch (DataIntegrityViolationException e) {
+      // Another node has recorded the key first, and this payment has been rolled back.
+      return idempotencyKeyRepository.findById(idempotencyKey).map(this::toPaymentDto)
+          .orElseThrow(() -> e);
+    }
+  }
+
+  /**
+   * Deletes the keys older than the retention period, in batches of one transaction each so that
+   * the pruner never holds many row locks at once. The first scheduled run is one interval after
+   * startup.
+   * @return Number of keys deleted
+   */
+  @Scheduled(initialDelayString = "${payment.idempotency.prune-interval:PT1M}",
+      fixedDelayString = "${payment.idempotency.prune-interval:PT1M}")
+  public int pruneExpiredKeys() {
+    var createdBefore = Instant.now().minus(idempotencyProperties.getRetention());
+    var batchSize = idempotencyProperties.getPruneBatchSize();
+    var pruned = 0;
+    List<String> expiredKeys;
+    do {
+      expiredKeys = idempotencyKeyRepository.findKeysCreatedBefore(createdBefore,
+          PageRequest.of(0, batchSize));
+      if (!expiredKeys.isEmpty()) {
+        var batch = expiredKeys;
+        pruned += transactionTemplate.execute(
+            status -> idempotencyKeyRepository.deleteByKeyIn(batch));
+      }
+    } while (expiredKeys.size() == batchSize);
+    return pruned;
+  }
+
+  /**
+   * @return The payment, if it is the one requested; a key reused for another payment is rejected
+   */
+  private static PaymentDto matching(PaymentDto payment, PaymentRequest paymentRequest) {
+    if (!payment.getSenderAccountId().equals(paymentRequest.getSenderAccountId())
+        || !payment.getReceiverAccountId().equals(paymentRequest.getReceiverAccountId())
+        || payment.getAmount().compareTo(paymentRequest.getAmount()) != 0) {
+      throw RequirementException.of(ExceptionCode.IDEMPOTENCY_KEY_REUSED);
+    }
+    return payment;
+  }
+
+  private PaymentDto toPaymentDto(IdempotencyKey idempotencyKey) {
+    return new PaymentDto(idempotencyKey.getPaymentId(), idempotencyKey.getSenderAccountId(),
+        idempotencyKey.getReceiverAccountId(), idempotencyKey.getAmount(),
+        idempotencyKey.getPaymentTimestamp());
+  }
+
+  private static PaymentDto await(CompletableFuture<PaymentDto> runningPayment) {
+    try {
+      return runningPayment.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,252 @@
+package com.rindago.payment.services;
+
+import com.rindago.payment.cache.AccountCache;
+import com.rindago.payment.dtos.PaymentBatchItemResult;
+import com.rindago.payment.dtos.PaymentBatchItemStatus;
+import com.rindago.payment.dtos.PaymentBatchMode;
+import com.rindago.payment.dtos.PaymentBatchRequest;
+import com.rindago.payment.dtos.PaymentBatchResponse;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.engines.ConcurrencyMode;
+import com.rindago.payment.engines.JpaEngineProperties;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.locks.AccountLockManager;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.repositories.IdempotencyKeyRepository;
+import com.rindago.payment.repositories.PaymentRepository;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * A service class to make a batch of payments in a single transaction. Payments are checked in the
+ * order of the request against running balances, the debits and credits are netted per account so
+ * that each touched account is updated once, and the payments are inserted in JDBC batches. As in
+ * the JPA payment engine, the pending credits of a hot sender count towards its balance, and the
+ * credits of a hot receiver are appended as one balance delta without locking or updating its row.
+ *
+ * <p>It works on the database directly, so it is available with the JPA payment engine only.
+ */
+@Service
+@ConditionalOnProperty(name = "payment.engine", havingValue = "jpa", matchIfMissing = true)
+@RequiredArgsConstructor
+public class PaymentBatchService {
+
+  private final AccountRepository accountRepository;
+  private final PaymentRepository paymentRepository;
+  private final AccountLockManager accountLockManager;
+  private final TransactionTemplate transactionTemplate;
+  private final JpaEngineProperties jpaEngineProperties;
+  private final AccountCache accountCache;
+  private final IdempotencyKeyRepository idempotencyKeyRepository;
+  private final HotAccountService hotAccountService;
+
+  /**
+   * Processes payment batch request, makes the payments which are not rejected (or none of them if
+   * the batch is all-or-nothing and a payment is rejected), and updates account balances
+   * @param paymentBatchRequest A DTO holding and transferring information of the payments to be
+   * made
+   * @return Outcome of each payment of the batch
+   */
+  public PaymentBatchResponse makePayments(PaymentBatchRequest paymentBatchRequest) {
+    var results = makePayments(paymentBatchRequest.getMode(), paymentBatchRequest.getPayments(),
+        null, null);
+
+    var response = new PaymentBatchResponse();
+    response.setMode(paymentBatchRequest.getMode());
+    response.setResults(results);
+    results.forEach(result -> {
+      if (result.getStatus() == PaymentBatchItemStatus.COMPLETED) {
+        response.setCompleted(response.getCompleted() + 1);
+      } else if (result.getStatus() == PaymentBatchItemStatus.REJECTED) {
+        response.setRejected(response.getRejected() + 1);
+      }
+    });
+    return response;
+  }
+
+  /**
+   * Makes the payments gathered by a group commit in a single transaction, skipping the rejected
+   * ones, and records the idempotency key of each payment made in the same transaction
+   * @param payments Payments to be made, checked against account balances in the given order
+   * @param amounts Checked amount of each payment
+   * @param idempotencyKeys Key of each payment, or null for a payment without one
+   * @return Outcome of each payment, in the given order
+   */
+  public List<PaymentBatchItemResult> makePaymentGroup(List<PaymentRequest> payments,
+      List<Money> amounts, List<String> idempotencyKeys) {
+    return makePayments(PaymentBatchMode.BEST_EFFORT, payments, amounts, idempotencyKeys);
+  }
+
+  /**
+   * @param checkedAmounts Amount of each payment if already checked, or null to check them here
+   */
+  private List<PaymentBatchItemResult> makePayments(PaymentBatchMode mode,
+      List<PaymentRequest> payments, List<Money> checkedAmounts, List<String> idempotencyKeys) {
+    var results = new ArrayList<PaymentBatchItemResult>(payments.size());
+    var amounts = new Money[payments.size()];
+
+    // Requirements which do not need any account are checked up front for the whole batch.
+    var accountIds = new HashSet<Long>();
+    var senderIds = new HashSet<Long>();
+    for (var i = 0; i < payments.size(); i++) {
+      var result = new PaymentBatchItemResult();
+      result.setIndex(i);
+      try {
+        amounts[i] = checkedAmounts != null
+            ? checkedAmounts.get(i) : PaymentRequirements.checkAmount(payments.get(i).getAmount());
+        accountIds.add(payments.get(i).getSenderAccountId());
+        accountIds.add(payments.get(i).getReceiverAccountId());
+        senderIds.add(payments.get(i).getSenderAccountId());
+      } catch (RequirementException e) {
+        reject(result, e.getExceptionCode());
+      }
+      results.add(result);
+    }
+
+    if (jpaEngineProperties.getConcurrency() == ConcurrencyMode.OPTIMISTIC) {
+      // Account versions make a concurrently changed account fail the batch at commit.
+      transactionTemplate.executeWithoutResult(status -> settle(mode, payments, amounts,
+          idempotencyKeys, results, accountIds, senderIds));
+    } else {
+      // A hot account which only receives is not locked since its row is not updated.
+      var lockedAccountIds = new HashSet<>(senderIds);
+      accountIds.stream().filter(accountId -> !hotAccountService.isHot(accountId))
+          .forEach(lockedAccountIds::add);
+      accountLockManager.callLocked(lockedAccountIds, () -> transactionTemplate.execute(
+          status -> settle(mode, payments, amounts, idempotencyKeys, results, accountIds,
+              senderIds)));
+    }
+    return results;
+  }
+
+  /**
+   * Checks the account-dependent requirements of the payments not rejected yet, in the same order
+   * as the JPA payment engine, and saves the accepted payments with the net balance changes
+   */
+  private Void settle(PaymentBatchMode mode, List<PaymentRequest> payments, Money[] amounts,
+      List<String> idempotencyKeys, List<PaymentBatchItemResult> results,
+      Iterable<Long> accountIds, Set<Long> senderIds) {
+    var accounts = new HashMap<Long, Account>(); // All touched accounts are loaded with one query.
+    accountRepository.findAllById(accountIds).forEach(account -> {
+      accounts.put(account.getId(), account);
+      if (senderIds.contains(account.getId()) && hotAccountService.isHot(account.getId())) {
+        hotAccountService.fold(account); // Pending credits count towards the balance to be debited.
+      }
+    });
+
+    // Running balances of the touched accounts in cents, one cell per account updated in place
+    var balances = new HashMap<Long, long[]>();
+    accounts.values().forEach(account -> balances.put(account.getId(),
+        new long[] {account.getBalance().getCents()}));
+
+    // Credits of the hot accounts which only receive, in cents, appended as one delta per account
+    var hotCredits = new HashMap<Long, Long>();
+    var accepted = new ArrayList<Payment>();
+    var acceptedIndexes = new ArrayList<Integer>();
+    for (var i = 0; i < payments.size(); i++) {
+      if (results.get(i).getStatus() == PaymentBatchItemStatus.REJECTED) {
+        continue;
+      }
+      var paymentRequest = payments.get(i);
+      var amount = amounts[i];
+      var exceptionCode = check(paymentRequest, amount, balances);
+      if (exceptionCode != null) {
+        reject(results.get(i), exceptionCode);
+        continue;
+      }
+      balances.get(paymentRequest.getSenderAccountId())[0] -= amount.getCents(); // Checked above
+      var receiverId = paymentRequest.getReceiverAccountId();
+      if (hotAccountService.isHot(receiverId) && !senderIds.contains(receiverId)) {
+        hotCredits.merge(receiverId, amount.getCents(), Math::addExact);
+      } else {
+        var receiverBalance = balances.get(receiverId);
+        receiverBalance[0] = Math.addExact(receiverBalance[0], amount.getCents());
+      }
+
+      var payment = new Payment();
+      payment.setSenderAccountId(paymentRequest.getSenderAccountId());
+      payment.setReceiverAccountId(paymentRequest.getReceiverAccountId());
+      payment.setAmount(amount);
+      accepted.add(payment);
+      acceptedIndexes.add(i);
+    }
+
+    if (mode == PaymentBatchMode.ALL_OR_NOTHING && accepted.size() < payments.size()) {
+      acceptedIndexes.forEach(i -> results.get(i).setStatus(PaymentBatchItemStatus.NOT_APPLIED));
+      // Only pending deltas of hot senders may have been folded, which leaves balances unchanged.
+      return null;
+    }
+
+    // One update per touched account, carrying the net change of the whole batch
+    var changedAccountIds = new ArrayList<Long>();
+    accounts.values().forEach(account -> {
+      var balance = balances.get(account.getId())[0];
+      if (balance != account.getBalance().getCents()) {
+        account.setBalance(Money.ofCents(balance));
+        changedAccountIds.add(account.getId());
+      }
+    });
+    hotCredits.forEach((accountId, cents) -> {
+      hotAccountService.appendCredit(accountId, Money.ofCents(cents)); // Its row is not touched.
+      changedAccountIds.add(accountId);
+    });
+    accountCache.invalidateAfterCommit(changedAccountIds);
+    var timestamp = Instant.now();
+    accepted.forEach(payment -> payment.setTimestamp(timestamp));
+    // IDs come from the sequence; inserts are batched at flush.
+    paymentRepository.saveAll(accepted);
+
+    for (var i = 0; i < accepted.size(); i++) {
+      var result = results.get(acceptedIndexes.get(i));
+      result.setStatus(PaymentBatchItemStatus.COMPLETED);
+      result.setPayment(EntityMappings.toDto(accepted.get(i)));
+
+      var idempotencyKey = idempotencyKeys == null ? null
+          : idempotencyKeys.get(acceptedIndexes.get(i));
+      if (idempotencyKey != null) {
+        var payment = result.getPayment();
+        idempotencyKeyRepository.insert(idempotencyKey, payment.getId(),
+            payment.getSenderAccountId(), payment.getReceiverAccountId(), payment.getAmount(),
+            payment.getTimestamp(), Instant.now());
+      }
+    }
+    return null;
+  }
+
+  private static ExceptionCode check(PaymentRequest paymentRequest, Money amount,
+      Map<Long, long[]> balances) {
+    var senderBalance = balances.get(paymentRequest.getSenderAccountId());
+    if (senderBalance == null) {
+      return ExceptionCode.SENDER_ACCOUNT_NOT_FOUND;
+    }
+    if (!balances.containsKey(paymentRequest.getReceiverAccountId())) {
+      return ExceptionCode.RECEIVER_ACCOUNT_NOT_FOUND;
+    }
+    if (paymentRequest.getSenderAccountId().equals(paymentRequest.getReceiverAccountId())) {
+      return ExceptionCode.SENDER_RECEIVER_THE_SAME;
+    }
+    if (amount.getCents() > senderBalance[0]) {
+      return ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE;
+    }
+    return null;
+  }
+
+  private static void reject(PaymentBatchItemResult result, ExceptionCode exceptionCode) {
+    result.setStatus(PaymentBatchItemStatus.REJECTED);
+    result.setErrorCode(exceptionCode.name());
+    result.setErrorMessage(exceptionCode.getExplanation());
+  }
+}
@@ -0,0 +1,17 @@
+package com.rindago.payment.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Record formats of a streamed payment export: one JSON object per line, or CSV lines after a
+ * header line
+ */
+@Getter
+@AllArgsConstructor
+public enum PaymentExportFormat {
+  NDJSON("application/x-ndjson"),
+  CSV("text/csv");
+
+  private final String mediaType;
+}
@@ -0,0 +1,17 @@
+package com.rindago.payment.services;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the streamed payment export, bound from 'payment.export.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.export")
+public class PaymentExportProperties {
+
+  /**
+   * Number of rows the JDBC driver fetches at a time from the export cursor
+   */
+  private int fetchSize = 1000;
+}
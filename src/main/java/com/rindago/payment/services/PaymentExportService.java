@@ -0,0 +1,240 @@
+package com.rindago.payment.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.archive.PaymentArchive;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.function.Supplier;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * A service class to export payments for reconciliation. Payments are read through a forward-only,
+ * read-only JDBC cursor in ID order and written to the output stream one row at a time, so the
+ * memory used does not depend on the number of payments exported. With the payment archive, the
+ * archived payments are merged into them by ID, one segment block at a time. The sharded engine
+ * keeps the payments on its shards, so they are not exported with it.
+ */
+@Service
+@ConditionalOnExpression("'${payment.engine:jpa}' != 'sharded'")
+@RequiredArgsConstructor
+public class PaymentExportService {
+
+  private static final String SELECT_PAYMENTS = "SELECT id, sender_account_id, "
+      + "receiver_account_id, amount, timestamp FROM payment WHERE id > ?";
+  private static final String CSV_HEADER =
+      "id,senderAccountId,receiverAccountId,amount,timestamp\n";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final PlatformTransactionManager transactionManager;
+  private final ObjectMapper objectMapper;
+  private final PaymentExportProperties paymentExportProperties;
+  private final Optional<PaymentArchive> paymentArchive;
+
+  /**
+   * Writes the payments of a time range, in ID order. An interrupted export is resumed by passing
+   * the ID of the last payment received as afterId.
+   * @param from Start of the time range (inclusive), or null for no lower bound
+   * @param to End of the time range (exclusive), or null for no upper bound
+   * @param afterId Only payments with a greater ID are exported, or null to export from the start
+   * @param format Format of the records
+   * @param output Stream the records are written to; it is flushed but not closed
+   * @return Number of payments exported
+   */
+  public long export(Instant from, Instant to, Long afterId, PaymentExportFormat format,
+      OutputStream output) {
+    var sql = new StringBuilder(SELECT_PAYMENTS);
+    var parameters = new ArrayList<Object>();
+    var firstId = afterId == null ? 0L : afterId;
+    parameters.add(firstId);
+    if (from != null) {
+      sql.append(" AND timestamp >= ?");
+      parameters.add(Timestamp.from(from));
+    }
+    if (to != null) {
+      sql.append(" AND timestamp < ?");
+      parameters.add(Timestamp.from(to));
+    }
+    sql.append(" ORDER BY id");
+
+    // Some drivers only stream a result set with a fetch size inside a transaction.
+    var transactionTemplate = new TransactionTemplate(transactionManager);
+    transactionTemplate.setReadOnly(true);
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    var exporter = format == PaymentExportFormat.CSV
+        ? new CsvExporter(output) : new NdjsonExporter(output);
+    if (paymentArchive.isPresent()) {
+      exporter.archive = () -> paymentArchive.get().scan(from, to, firstId);
+    }
+    transactionTemplate.executeWithoutResult(status -> {
+      // An embedded H2 ignores the fetch size and builds the whole result first, unless its
+      // session executes queries lazily.
+      var h2 = "H2".equals(jdbcTemplate.execute(
+          (ConnectionCallback<String>) connection -> connection.getMetaData()
+              .getDatabaseProductName()));
+      if (h2) {
+        jdbcTemplate.execute("SET LAZY_QUERY_EXECUTION TRUE");
+      }
+      try {
+        jdbcTemplate.query(connection -> {
+          var statement = connection.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+              ResultSet.CONCUR_READ_ONLY);
+          statement.setFetchSize(paymentExportProperties.getFetchSize());
+          for (var i = 0; i < parameters.size(); i++) {
+            statement.setObject(i + 1, parameters.get(i));
+          }
+          return statement;
+        }, exporter);
+        exporter.writeArchived(Long.MAX_VALUE);
+      } finally {
+        if (h2) {
+          jdbcTemplate.execute("SET LAZY_QUERY_EXECUTION FALSE"); // The connection is pooled.
+        }
+      }
+    });
+    exporter.finish();
+    return exporter.exported;
+  }
+
+  private abstract static class Exporter implements RowCallbackHandler {
+
+    long exported;
+    Supplier<PaymentArchive.Scan> archive; // Null without the payment archive
+    private PaymentArchive.Scan archived;
+
+    @Override
+    public void processRow(ResultSet resultSet) throws SQLException {
+      var id = resultSet.getLong(1);
+      writeArchived(id);
+      try {
+        write(id, resultSet.getLong(2), resultSet.getLong(3),
+            resultSet.getBigDecimal(4), resultSet.getTimestamp(5).toInstant());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e); // The client has gone away; the cursor is closed.
+      }
+      exported++;
+    }
+
+    /**
+     * Writes the archived payments before an ID, and skips an archived copy of the payment of
+     * the ID, which was read from the table before it was deleted
+     */
+    void writeArchived(long beforeId) {
+      if (archive == null) {
+        return;
+      }
+      if (archived == null) {
+        archived = archive.get(); // Once the query of the table has started
+      }
+      for (var payment = archived.peek(); payment != null && payment.getId() <= beforeId;
+          payment = archived.peek()) {
+        archived.next();
+        if (payment.getId() < beforeId) {
+          try {
+            write(payment.getId(), payment.getSenderAccountId(), payment.getReceiverAccountId(),
+                payment.getAmount().toBigDecimal(), payment.getTimestamp());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          exported++;
+        }
+      }
+    }
+
+    abstract void write(long id, long senderAccountId, long receiverAccountId,
+        BigDecimal amount, Instant timestamp) throws IOException;
+
+    abstract void finish();
+  }
+
+  private class NdjsonExporter extends Exporter {
+
+    private final JsonGenerator generator;
+
+    NdjsonExporter(OutputStream output) {
+      try {
+        generator = objectMapper.getFactory().createGenerator(output)
+            .setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    void write(long id, long senderAccountId, long receiverAccountId,
+        BigDecimal amount, Instant timestamp) throws IOException {
+      generator.writeStartObject();
+      generator.writeNumberField("id", id);
+      generator.writeNumberField("senderAccountId", senderAccountId);
+      generator.writeNumberField("receiverAccountId", receiverAccountId);
+      generator.writeNumberField("amount", amount);
+      generator.writeStringField("timestamp", timestamp.toString());
+      generator.writeEndObject();
+    }
+
+    @Override
+    void finish() {
+      try {
+        if (exported > 0) {
+          // Records are separated by line feeds; the last one ends with one.
+          generator.writeRaw('\n');
+        }
+        generator.close(); // Flushes, and leaves the output stream open.
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private static class CsvExporter extends Exporter {
+
+    private final Writer writer;
+
+    CsvExporter(OutputStream output) {
+      writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+      try {
+        writer.write(CSV_HEADER);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    void write(long id, long senderAccountId, long receiverAccountId,
+        BigDecimal amount, Instant timestamp) throws IOException {
+      writer.write(id + "," + senderAccountId + "," + receiverAccountId + ","
+          + amount.toPlainString() + "," + timestamp + "\n");
+    }
+
+    @Override
+    void finish() {
+      try {
+        writer.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
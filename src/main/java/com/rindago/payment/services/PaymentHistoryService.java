@@ -0,0 +1,123 @@
+package com.rindago.payment.services;
+
+import com.rindago.payment.archive.PaymentArchive;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentHistoryPage;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.repositories.PaymentRepository;
+import com.rindago.payment.sharding.AccountShards;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service class to read the payment history of an account page by page. Pages are delimited by
+ * the (timestamp, ID) position of their last payment instead of an offset, so each page is read by
+ * two index range scans, of the sent and of the received payments, whatever its depth. With the
+ * payment archive, the page is completed by the archived payments after the same position, and
+ * with the sharded engine, by those of the account's shard.
+ */
+@Service
+@RequiredArgsConstructor
+public class PaymentHistoryService {
+
+  public static final int MAX_PAGE_SIZE = 1000;
+
+  private static final Comparator<PaymentDto> HISTORY_ORDER =
+      Comparator.comparing(PaymentDto::getTimestamp).thenComparing(PaymentDto::getId);
+
+  private final AccountRepository accountRepository;
+  private final PaymentRepository paymentRepository;
+  private final Optional<PaymentArchive> paymentArchive;
+  private final Optional<AccountShards> accountShards;
+
+  /**
+   * Reads a page of the payments sent and received by an account, in (timestamp, ID) order
+   * @param accountId ID of the account
+   * @param cursor Cursor of the page, taken from the previous page, or null for the first page
+   * @param size Maximum number of payments of the page, from 1 to {@value #MAX_PAGE_SIZE}
+   * @return The page, or empty if the account does not exist
+   */
+  public Optional<PaymentHistoryPage> getPayments(Long accountId, String cursor, int size) {
+    if (size < 1 || size > MAX_PAGE_SIZE) {
+      throw RequirementException.of(ExceptionCode.INVALID_PAGE_SIZE);
+    }
+    var after = cursor == null ? new Position(Instant.EPOCH, 0L) : Position.decode(cursor);
+    if (!accountRepository.existsById(accountId)) {
+      return Optional.empty();
+    }
+
+    // One more payment than the page size tells whether there is a next page.
+    var limit = PageRequest.of(0, size + 1);
+    var payments = new ArrayList<PaymentDto>(2 * size + 2);
+    payments.addAll(paymentRepository.findSentAfter(accountId, after.timestamp, after.id, limit));
+    payments.addAll(
+        paymentRepository.findReceivedAfter(accountId, after.timestamp, after.id, limit));
+    // Read after the table, so a payment archived in between is read twice rather than not at all
+    paymentArchive.ifPresent(archive -> payments.addAll(
+        archive.findPayments(accountId, after.timestamp, after.id, size + 1)));
+    accountShards.ifPresent(shards -> payments.addAll(
+        shards.findPayments(accountId, after.timestamp, after.id, size + 1)));
+    payments.sort(HISTORY_ORDER); // A payment is never both sent and received by the account.
+    for (var i = payments.size() - 1; i > 0; i--) {
+      if (payments.get(i).getId().equals(payments.get(i - 1).getId())) {
+        payments.remove(i);
+      }
+    }
+
+    var page = new PaymentHistoryPage();
+    if (payments.size() > size) {
+      var last = payments.get(size - 1);
+      page.setPayments(List.copyOf(payments.subList(0, size)));
+      page.setNextCursor(new Position(last.getTimestamp(), last.getId()).encode());
+    } else {
+      page.setPayments(payments);
+    }
+    return Optional.of(page);
+  }
+
+  /**
+   * The (timestamp, ID) position of a payment in the history, encoded as an opaque cursor
+   */
+  private static class Position {
+
+    private final Instant timestamp;
+    private final Long id;
+
+    Position(Instant timestamp, Long id) {
+      this.timestamp = timestamp;
+      this.id = id;
+    }
+
+    String encode() {
+      var position = timestamp.getEpochSecond() + ":" + timestamp.getNano() + ":" + id;
+      return Base64.getUrlEncoder().withoutPadding()
+          .encodeToString(position.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static Position decode(String cursor) {
+      try {
+        var fields = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII)
+            .split(":");
+        if (fields.length != 3) {
+          throw RequirementException.of(ExceptionCode.INVALID_PAGE_CURSOR);
+        }
+        return new Position(
+            Instant.ofEpochSecond(Long.parseLong(fields[0]), Long.parseLong(fields[1])),
+            Long.parseLong(fields[2]));
+      } catch (IllegalArgumentException | DateTimeException | ArithmeticException e) {
+        throw RequirementException.of(ExceptionCode.INVALID_PAGE_CURSOR);
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.rindago.payment.services;
+
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import java.math.BigDecimal;
+
+/**
+ * Requirement checks on a payment request which do not need any account state, shared by all
+ * payment engines
+ */
+public final class PaymentRequirements {
+
+  private PaymentRequirements() {
+  }
+
+  /**
+   * Checks that the amount has at most two decimal places and is positive, and converts it into
+   * minor units for the payment engine to work with
+   * @param amount The amount to be transferred
+   * @return The checked amount. An amount above {@link Money#MAX_VALUE} exceeds any balance, so it
+   * is rejected here for the sender's balance, as it would be for any account.
+   */
+  public static Money checkAmount(BigDecimal amount) {
+    if (amount.scale() > Money.SCALE) {
+      throw RequirementException.of(ExceptionCode.MORE_THAN_TWO_DECIMAL_PLACES);
+    }
+
+    if (amount.signum() <= 0) {
+      throw RequirementException.of(ExceptionCode.NOT_POSITIVE_PAYMENT_AMOUNT);
+    }
+
+    var checkedAmount = Money.fits(amount) ? Money.of(amount) : null;
+    if (checkedAmount == null || checkedAmount.exceeds(Money.MAX_VALUE)) {
+      throw RequirementException.of(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE);
+    }
+    return checkedAmount;
+  }
+
+  /**
+   * Checks that the sender and the receiver are different accounts
+   * @param senderAccountId ID of the sender account
+   * @param receiverAccountId ID of the receiver account
+   */
+  public static void checkAccounts(Long senderAccountId, Long receiverAccountId) {
+    if (senderAccountId.equals(receiverAccountId)) {
+      throw RequirementException.of(ExceptionCode.SENDER_RECEIVER_THE_SAME);
+    }
+  }
+}
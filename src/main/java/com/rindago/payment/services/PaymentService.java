@@ -2,80 +2,57 @@ package com.rindago.payment.services;
 
 import com.rindago.payment.dtos.PaymentDto;
 import com.rindago.payment.dtos.PaymentRequest;
-import com.rindago.payment.entities.Payment;
-import com.rindago.payment.exceptions.ExceptionCode;
-import com.rindago.payment.exceptions.RequirementException;
-import com.rindago.payment.repositories.AccountRepository;
-import com.rindago.payment.repositories.PaymentRepository;
-import java.math.BigDecimal;
-import java.time.Instant;
-import javax.transaction.Transactional;
+import com.rindago.payment.engines.PaymentEngine;
+import com.rindago.payment.money.Money;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 /**
- * A service class to process a payment request and handle the entity-DTO transformation
+ * A service class to process a payment request through the configured payment engine. The amount
+ * is checked and converted into {@link Money} here, once, before the engine takes any lock or opens
+ * any transaction, so a request rejected for its amount alone costs no database work.
  */
 @Service
 @RequiredArgsConstructor
 public class PaymentService {
 
-  private final PaymentRepository paymentRepository;
-  private final AccountRepository accountRepository;
+  private final PaymentEngine paymentEngine;
+  private final IdempotencyService idempotencyService;
 
   /**
    * Processes payment request, makes payment, and updates account balances accordingly
    * @param paymentRequest A DTO holding and transferring information of the payment to be made
    * @return Payment made
    */
-  @Transactional
   public PaymentDto makePayment(PaymentRequest paymentRequest) {
-    var amount = paymentRequest.getAmount();
-
-    // ---
-    // Requirements are checked in the following block and exception is thrown if inputs are problematic.
-    if (paymentRequest.getAmount().scale() > 2) {
-      throw new RequirementException(ExceptionCode.MORE_THAN_TWO_DECIMAL_PLACES);
-    }
-
-    if (BigDecimal.ZERO.compareTo(amount) >= 0) {
-      throw new RequirementException(ExceptionCode.NOT_POSITIVE_PAYMENT_AMOUNT);
-    }
-
-    var sender = accountRepository.findById(paymentRequest.getSenderAccountId())
-        .orElseThrow(() -> new RequirementException(ExceptionCode.SENDER_ACCOUNT_NOT_FOUND));
-
-    var receiver = accountRepository.findById(paymentRequest.getReceiverAccountId())
-        .orElseThrow(() -> new RequirementException(ExceptionCode.RECEIVER_ACCOUNT_NOT_FOUND));
+    return makePayment(paymentRequest, null);
+  }
 
-    if (sender.getId().equals(receiver.getId())) {
-      throw new RequirementException(ExceptionCode.SENDER_RECEIVER_THE_SAME);
-    }
+  /**
+   * Processes payment request like {@link #makePayment(PaymentRequest)}, at most once per
+   * idempotency key
+   * @param paymentRequest A DTO holding and transferring information of the payment to be made
+   * @param idempotencyKey Key chosen by the client for all attempts of the payment, or null
+   * @return Payment made, now or by an earlier request with the same key
+   */
+  public PaymentDto makePayment(PaymentRequest paymentRequest, String idempotencyKey) {
+    return makePayment(paymentRequest, PaymentRequirements.checkAmount(paymentRequest.getAmount()),
+        idempotencyKey);
+  }
 
-    if (amount.compareTo(sender.getBalance()) > 0) {
-      throw new RequirementException(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE);
+  /**
+   * Processes payment request like {@link #makePayment(PaymentRequest, String)}, with its amount
+   * already checked by the caller
+   * @param paymentRequest A DTO holding and transferring information of the payment to be made
+   * @param amount The checked amount of the request
+   * @param idempotencyKey Key chosen by the client for all attempts of the payment, or null
+   * @return Payment made, now or by an earlier request with the same key
+   */
+  public PaymentDto makePayment(PaymentRequest paymentRequest, Money amount,
+      String idempotencyKey) {
+    if (idempotencyKey == null) {
+      return paymentEngine.makePayment(paymentRequest, amount);
     }
-    // ---
-
-    sender.setBalance(sender.getBalance().subtract(amount)); // Sender's balance - amount
-    accountRepository.save(sender); // Sender's balance is updated.
-    receiver.setBalance(receiver.getBalance().add(amount)); // Receiver's balance + amount
-    accountRepository.save(receiver); // Receiver's balance is updated.
-
-    var paymentToBeDone = new Payment(); // Payment entities are saved in the DB.
-    paymentToBeDone.setSenderAccountId(sender.getId());
-    paymentToBeDone.setReceiverAccountId(receiver.getId());
-    paymentToBeDone.setAmount(paymentRequest.getAmount());
-    paymentToBeDone.setTimestamp(Instant.now());
-    paymentRepository.save(paymentToBeDone);
-
-    var completedPayment = new PaymentDto(); // Entity -> output DTO
-    completedPayment.setId(paymentToBeDone.getId());
-    completedPayment.setSenderAccountId(paymentToBeDone.getSenderAccountId());
-    completedPayment.setReceiverAccountId(paymentToBeDone.getReceiverAccountId());
-    completedPayment.setAmount(amount);
-    completedPayment.setTimestamp(Instant.now());
-
-    return completedPayment;
+    return idempotencyService.makePayment(idempotencyKey, paymentRequest, amount);
   }
 }
@@ -0,0 +1,39 @@
+package com.rindago.payment.services;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of asynchronous payment submission, bound from 'payment.async.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.async")
+public class PaymentSubmissionProperties {
+
+  /**
+   * Whether 'POST /payment' queues the payment and answers 202 Accepted with a handle, instead of
+   * answering with the payment once it has been made
+   */
+  private boolean enabled = false;
+
+  /**
+   * Number of worker threads settling queued payments
+   */
+  private int workers = 8;
+
+  /**
+   * Maximum number of payments waiting for a worker; further submissions are refused with 503
+   */
+  private int queueCapacity = 10_000;
+
+  /**
+   * Time for which the outcome of a settled payment can be polled
+   */
+  private Duration outcomeRetention = Duration.ofHours(1);
+
+  /**
+   * Maximum number of settled outcomes kept; the oldest are evicted beyond it
+   */
+  private long maxOutcomes = 100_000;
+}
@@ -0,0 +1,145 @@
+package com.rindago.payment.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.dtos.PaymentSubmission;
+import com.rindago.payment.dtos.PaymentSubmissionStatus;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.PaymentQueueFullException;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service class accepting payments for asynchronous settlement. A submitted payment is checked
+ * for the requirements which do not need any account, put on a bounded queue, and made afterwards
+ * by a pool of workers through {@link PaymentService}. Its outcome is kept in memory to be polled
+ * by its handle.
+ *
+ * <p>Queued payments are held in memory only: those not settled yet are lost if the process dies,
+ * so a client which has not seen an outcome should submit again with the same idempotency key.
+ */
+@Service
+public class PaymentSubmissionService {
+
+  private final Logger logger = LoggerFactory.getLogger(PaymentSubmissionService.class);
+
+  private final PaymentService paymentService;
+
+  private final ThreadPoolExecutor workers;
+  private final ConcurrentMap<String, PaymentSubmission> pendingSubmissions =
+      new ConcurrentHashMap<>();
+  private final Cache<String, PaymentSubmission> settledSubmissions;
+
+  public PaymentSubmissionService(PaymentService paymentService,
+      PaymentSubmissionProperties paymentSubmissionProperties) {
+    this.paymentService = paymentService;
+    var workerNumber = new AtomicInteger();
+    this.workers = new ThreadPoolExecutor(paymentSubmissionProperties.getWorkers(),
+        paymentSubmissionProperties.getWorkers(), 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(paymentSubmissionProperties.getQueueCapacity()),
+        runnable -> new Thread(runnable, "payment-settlement-" + workerNumber.incrementAndGet()));
+    this.settledSubmissions = Caffeine.newBuilder()
+        .maximumSize(paymentSubmissionProperties.getMaxOutcomes())
+        .expireAfterWrite(paymentSubmissionProperties.getOutcomeRetention())
+        .executor(Runnable::run) // Evictions are done by the calling thread.
+        .build();
+  }
+
+  /**
+   * Settles the payments queued so far before the application stops
+   */
+  @PreDestroy
+  void stop() throws InterruptedException {
+    workers.shutdown();
+    workers.awaitTermination(1, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Checks and queues a payment to be settled
+   * @param paymentRequest A DTO holding and transferring information of the payment to be made
+   * @param idempotencyKey Key of the payment request, or null if the request has none
+   * @return The pending submission, whose ID is the handle to poll its outcome with
+   * @throws PaymentQueueFullException If too many payments are waiting to be settled
+   */
+  public PaymentSubmission submit(PaymentRequest paymentRequest, String idempotencyKey) {
+    var amount = PaymentRequirements.checkAmount(paymentRequest.getAmount());
+    PaymentRequirements.checkAccounts(paymentRequest.getSenderAccountId(),
+        paymentRequest.getReceiverAccountId());
+
+    var submission = new PaymentSubmission();
+    submission.setId(UUID.randomUUID().toString());
+    submission.setStatus(PaymentSubmissionStatus.PENDING);
+    submission.setSubmittedAt(Instant.now());
+    pendingSubmissions.put(submission.getId(), submission);
+    try {
+      workers.execute(() -> settle(submission, paymentRequest, amount, idempotencyKey));
+    } catch (RejectedExecutionException e) {
+      pendingSubmissions.remove(submission.getId());
+      throw new PaymentQueueFullException();
+    }
+    return copyOf(submission);
+  }
+
+  /**
+   * @param id Handle of a submitted payment
+   * @return Current state of the submission, or empty if it is unknown or its outcome has expired
+   */
+  public Optional<PaymentSubmission> getSubmission(String id) {
+    var submission = pendingSubmissions.get(id);
+    if (submission == null) {
+      // A settled submission is cached before it is removed from the pending ones.
+      submission = settledSubmissions.getIfPresent(id);
+    }
+    return Optional.ofNullable(submission).map(PaymentSubmissionService::copyOf);
+  }
+
+  private void settle(PaymentSubmission submission, PaymentRequest paymentRequest, Money amount,
+      String idempotencyKey) {
+    var settled = copyOf(submission);
+    try {
+      settled.setPayment(paymentService.makePayment(paymentRequest, amount, idempotencyKey));
+      settled.setStatus(PaymentSubmissionStatus.COMPLETED);
+    } catch (RequirementException e) {
+      settled.setStatus(PaymentSubmissionStatus.REJECTED);
+      settled.setErrorCode(e.getExceptionCode().name());
+      settled.setErrorMessage(e.getExceptionCode().getExplanation());
+    } catch (RuntimeException e) {
+      var exceptionCode = e instanceof ConcurrencyFailureException
+          ? ExceptionCode.CONCURRENT_PAYMENT_CONFLICT : ExceptionCode.PAYMENT_SETTLEMENT_FAILED;
+      logger.warn("PAYMENT SETTLEMENT FAILED! Submission {}: {}", submission.getId(),
+          e.getMessage());
+      settled.setStatus(PaymentSubmissionStatus.FAILED);
+      settled.setErrorCode(exceptionCode.name());
+      settled.setErrorMessage(exceptionCode.getExplanation());
+    }
+    settledSubmissions.put(settled.getId(), settled);
+    pendingSubmissions.remove(settled.getId());
+  }
+
+  private static PaymentSubmission copyOf(PaymentSubmission submission) {
+    var copy = new PaymentSubmission();
+    copy.setId(submission.getId());
+    copy.setStatus(submission.getStatus());
+    copy.setSubmittedAt(submission.getSubmittedAt());
+    copy.setPayment(submission.getPayment());
+    copy.setErrorCode(submission.getErrorCode());
+    copy.setErrorMessage(submission.getErrorMessage());
+    return copy;
+  }
+}
@@ -0,0 +1,28 @@
+package com.rindago.payment.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * One shard database, holding the balances and payments of the accounts routed to it, with its own
+ * connection pool and transactions
+ */
+@Getter
+public class AccountShard {
+
+  private final int index;
+  private final HikariDataSource dataSource;
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+
+  AccountShard(int index, HikariDataSource dataSource) {
+    this.index = index;
+    this.dataSource = dataSource;
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.transactionTemplate =
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+  }
+}
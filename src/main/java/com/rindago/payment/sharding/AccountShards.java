@@ -0,0 +1,144 @@
+package com.rindago.payment.sharding;
+
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.money.Money;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Routes accounts to the shard databases of the sharded engine by account ID. The primary database
+ * remains the catalog of accounts, where they are created with their IDs, names and opening
+ * balances. An account is copied to its shard with its balance the first time a payment needs it,
+ * and from then on its shard holds its balance.
+ *
+ * <p>The shard of an account also holds all its payments: those it sent, with the transfers it sent
+ * which are still in doubt, those it received from an account of the same shard, and the transfers
+ * it received from the other shards, so the payment history of an account is read from its shard.
+ *
+ * <p>The shard databases are not Spring beans, so the primary data source is still the one Spring
+ * Boot configures. Their schema is created if it does not exist yet, so that a shard keeps its
+ * transfers in doubt across restarts.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.engine", havingValue = "sharded")
+public class AccountShards {
+
+  private static final String SELECT_BALANCE = "SELECT balance FROM account WHERE id = ?";
+  private static final String INSERT_ACCOUNT = "INSERT INTO account (id, balance) VALUES (?, ?)";
+  // Formatted with the table and its account column
+  private static final String SELECT_PAYMENTS_AFTER = "SELECT id, sender_account_id, "
+      + "receiver_account_id, amount, timestamp FROM %s WHERE %s = ? AND timestamp >= ? "
+      + "AND (timestamp > ? OR id > ?) ORDER BY timestamp, id LIMIT ?";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final List<AccountShard> shards = new ArrayList<>();
+
+  public AccountShards(JdbcTemplate jdbcTemplate, ShardingProperties shardingProperties) {
+    this.jdbcTemplate = jdbcTemplate;
+    var schema = new ResourceDatabasePopulator(new ClassPathResource("shard-schema.sql"));
+    for (var url : shardingProperties.getUrls()) {
+      var dataSource = DataSourceBuilder.create().type(HikariDataSource.class).url(url)
+          .username(shardingProperties.getUsername())
+          .password(shardingProperties.getPassword())
+          .build();
+      dataSource.setPoolName("shard-" + shards.size());
+      dataSource.setMaximumPoolSize(shardingProperties.getPoolSize());
+      shards.add(new AccountShard(shards.size(), dataSource));
+      schema.execute(dataSource);
+    }
+  }
+
+  @PreDestroy
+  void close() {
+    shards.forEach(shard -> shard.getDataSource().close());
+  }
+
+  public List<AccountShard> getShards() {
+    return shards;
+  }
+
+  /**
+   * @return The shard holding the balance and the sent payments of the account
+   */
+  public AccountShard shardOf(long accountId) {
+    return shards.get((int) Math.floorMod(accountId, (long) shards.size()));
+  }
+
+  /**
+   * Makes sure that the account is on its shard, copying it from the primary database if needed
+   * @param accountId ID of the account
+   * @return Whether the account exists
+   */
+  public boolean copyToShard(long accountId) {
+    var shard = shardOf(accountId);
+    if (findBalance(shard, accountId).isPresent()) {
+      return true;
+    }
+    var balance = jdbcTemplate.query(SELECT_BALANCE,
+        resultSet -> resultSet.next() ? resultSet.getBigDecimal(1) : null, accountId);
+    if (balance == null) {
+      return false;
+    }
+    try {
+      shard.getJdbcTemplate().update(INSERT_ACCOUNT, accountId, balance);
+    } catch (DuplicateKeyException e) {
+      // Copied by a concurrent payment
+    }
+    return true;
+  }
+
+  /**
+   * @return The balance of the account on its shard, or empty if it has not been copied there yet
+   */
+  public Optional<Money> findBalance(long accountId) {
+    return findBalance(shardOf(accountId), accountId);
+  }
+
+  /**
+   * Reads the payments sent or received by an account after the given (timestamp, ID) position,
+   * in (timestamp, ID) order per kind, from the shard of the account. A cross-shard transfer
+   * completed while they are read may be returned twice, but is not missed.
+   * @param limit Maximum number of payments read of each kind
+   */
+  public List<PaymentDto> findPayments(long accountId, Instant timestamp, long id, int limit) {
+    var shard = shardOf(accountId);
+    var payments = new ArrayList<PaymentDto>();
+    // Completing a transfer deletes it from transfer_out and inserts it into payment, so it is read
+    // from transfer_out before payment.
+    payments.addAll(findPayments(shard, "transfer_out", "sender_account_id", accountId, timestamp,
+        id, limit));
+    payments.addAll(findPayments(shard, "payment", "sender_account_id", accountId, timestamp, id,
+        limit));
+    payments.addAll(findPayments(shard, "payment", "receiver_account_id", accountId, timestamp, id,
+        limit));
+    payments.addAll(findPayments(shard, "transfer_in", "receiver_account_id", accountId, timestamp,
+        id, limit));
+    return payments;
+  }
+
+  private static List<PaymentDto> findPayments(AccountShard shard, String table, String column,
+      long accountId, Instant timestamp, long id, int limit) {
+    return shard.getJdbcTemplate().query(SELECT_PAYMENTS_AFTER.formatted(table, column),
+        (resultSet, rowNumber) -> new PaymentDto(resultSet.getLong(1), resultSet.getLong(2),
+            resultSet.getLong(3), resultSet.getBigDecimal(4),
+            resultSet.getTimestamp(5).toInstant()),
+        accountId, Timestamp.from(timestamp), Timestamp.from(timestamp), id, limit);
+  }
+
+  private static Optional<Money> findBalance(AccountShard shard, long accountId) {
+    return Optional.ofNullable(shard.getJdbcTemplate().query(SELECT_BALANCE,
+        resultSet -> resultSet.next() ? Money.of(resultSet.getBigDecimal(1)) : null, accountId));
+  }
+}
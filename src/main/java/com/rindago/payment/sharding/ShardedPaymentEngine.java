@@ -0,0 +1,363 @@
+package com.rindago.payment.sharding;
+
+import com.rindago.payment.cache.AccountCache;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.engines.PaymentEngine;
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.services.EntityMappings;
+import com.rindago.payment.services.IdempotencyProperties;
+import jakarta.annotation.PostConstruct;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
+
+/**
+ * A payment engine partitioning account balances and payments by account ID across several
+ * databases, the shards of {@link AccountShards}, so that the write rate is not bound to one
+ * database. A payment is recorded on the shard of its sender, with an ID unique across the shards.
+ *
+ * <p>A payment between two accounts of the same shard is made in one local transaction of that
+ * shard, with guarded updates as the JPA engine's: the debit only applies if the sender's balance
+ * covers the amount. A cross-shard payment is a transfer in three local transactions:
+ * <ol>
+ *   <li>reserve: once the receiver's shard has reported that the receiver exists, the sender's
+ *   shard debits the sender with a guarded update and logs the transfer in its transfer_out
+ *   table,</li>
+ *   <li>credit: the receiver's shard records the transfer in its transfer_in table, whose key
+ *   makes the credit apply once, and credits the receiver,</li>
+ *   <li>complete: the sender's shard replaces the logged transfer with the payment.</li>
+ * </ol>
+ * The reservation is the decision: from then on the transfer is only rolled forward, which cannot
+ * fail since accounts are never deleted, so no balance goes negative and none needs compensating.
+ * A transfer whose credit or completion has failed, e.g. while the receiver's shard was down,
+ * stays logged on the sender's shard. The recovery completes the transfers in doubt at startup and
+ * every 'payment.sharding.recovery-interval'. Both later steps can be repeated safely, so the
+ * recovery may overlap with the request still making a transfer.
+ *
+ * <p>Between the reservation and the credit, the amount is in neither balance.
+ *
+ * <p>An idempotency key is recorded on the sender's shard in the transaction making or reserving
+ * its payment, so a retry cannot pay twice, and then in the primary database, where the
+ * idempotency service looks it up. A retry finding the key on the shard but not in the primary
+ * database, e.g. after a crash in between, copies it there and fails on the duplicate key, upon
+ * which the service returns the stored payment. The keys of the shards are pruned with the
+ * settings of those of the primary database.
+ */
+@Service
+@ConditionalOnProperty(name = "payment.engine", havingValue = "sharded")
+@RequiredArgsConstructor
+public class ShardedPaymentEngine implements PaymentEngine {
+
+  private static final String DEBIT =
+      "UPDATE account SET balance = balance - ? WHERE id = ? AND balance >= ?";
+  private static final String CREDIT = "UPDATE account SET balance = balance + ? WHERE id = ?";
+  private static final String NEXT_PAYMENT_SEQUENCE = "SELECT NEXT VALUE FOR payment_seq";
+  private static final String INSERT_PAYMENT = "INSERT INTO payment "
+      + "(id, sender_account_id, receiver_account_id, amount, timestamp) VALUES (?, ?, ?, ?, ?)";
+  private static final String INSERT_TRANSFER_OUT = "INSERT INTO transfer_out "
+      + "(id, sender_account_id, receiver_account_id, amount, timestamp) VALUES (?, ?, ?, ?, ?)";
+  private static final String INSERT_TRANSFER_IN = "INSERT INTO transfer_in "
+      + "(id, sender_account_id, receiver_account_id, amount, timestamp) VALUES (?, ?, ?, ?, ?)";
+  private static final String DELETE_TRANSFER_OUT = "DELETE FROM transfer_out WHERE id = ?";
+  private static final String SELECT_TRANSFERS_IN_DOUBT = "SELECT id, sender_account_id, "
+      + "receiver_account_id, amount, timestamp FROM transfer_out WHERE timestamp < ? ORDER BY id";
+  private static final String INSERT_IDEMPOTENCY_KEY = "INSERT INTO idempotency_key "
+      + "(idempotency_key, payment_id, sender_account_id, receiver_account_id, amount, "
+      + "payment_timestamp, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+  private static final String SELECT_IDEMPOTENCY_KEY = "SELECT payment_id, sender_account_id, "
+      + "receiver_account_id, amount, payment_timestamp FROM idempotency_key "
+      + "WHERE idempotency_key = ?";
+  private static final String DELETE_EXPIRED_IDEMPOTENCY_KEYS =
+      "DELETE FROM idempotency_key WHERE created_at < ? LIMIT ?";
+
+  private final Logger logger = LoggerFactory.getLogger(ShardedPaymentEngine.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final AccountShards accountShards;
+  private final ShardingProperties shardingProperties;
+  private final AccountCache accountCache;
+  private final IdempotencyProperties idempotencyProperties;
+
+  @PostConstruct
+  void start() {
+    recoverTransfers(Instant.now());
+  }
+
+  @Override
+  public PaymentDto makePayment(PaymentRequest paymentRequest, Money amount,
+      String idempotencyKey) {
+    var payment = EntityMappings.toEntity(paymentRequest, amount, Instant.now());
+
+    var senderShard = accountShards.shardOf(payment.getSenderAccountId());
+    var receiverShard = accountShards.shardOf(payment.getReceiverAccountId());
+    try {
+      if (senderShard == receiverShard) {
+        while (!Boolean.TRUE.equals(senderShard.getTransactionTemplate().execute(status ->
+            transferWithinShard(senderShard, payment, idempotencyKey) || rollBack(status)))) {
+          checkRequirements(payment);
+        }
+      } else {
+        // Asked again after each check, which returns once a missing receiver has been created
+        while (!accountShards.copyToShard(payment.getReceiverAccountId())
+            || !Boolean.TRUE.equals(senderShard.getTransactionTemplate().execute(
+                status -> reserve(senderShard, payment, idempotencyKey) || rollBack(status)))) {
+          checkRequirements(payment);
+        }
+      }
+    } catch (DuplicateKeyException e) {
+      // The key is on the shard, with the payment of an earlier attempt.
+      if (idempotencyKey != null) {
+        copyIdempotencyKey(senderShard, idempotencyKey);
+      }
+      throw e;
+    }
+
+    if (senderShard != receiverShard) {
+      try {
+        credit(receiverShard, payment);
+        complete(senderShard, payment);
+      } catch (DataAccessException e) {
+        logger.warn("SHARDING: Transfer {} is left to the recovery: {}", payment.getId(),
+            e.toString());
+      }
+    }
+    return recordIdempotencyKey(idempotencyKey, payment);
+  }
+
+  /**
+   * @return False, since the balances are kept on the shards rather than in the primary database
+   */
+  @Override
+  public boolean supportsAccountSnapshots() {
+    return false;
+  }
+
+  /**
+   * Completes the cross-shard transfers reserved more than 'payment.sharding.recovery-delay' ago,
+   * whose requests have failed or not finished
+   * @return Number of transfers completed
+   */
+  @Scheduled(fixedDelayString = "${payment.sharding.recovery-interval:PT10S}")
+  public int recoverTransfers() {
+    return recoverTransfers(Instant.now().minus(shardingProperties.getRecoveryDelay()));
+  }
+
+  /**
+   * Deletes the idempotency keys of the shards older than the retention period, as the idempotency
+   * service does with those of the primary database, on the same schedule
+   * @return Number of keys deleted
+   */
+  @Scheduled(initialDelayString = "${payment.idempotency.prune-interval:PT1M}",
+      fixedDelayString = "${payment.idempotency.prune-interval:PT1M}")
+  public int pruneIdempotencyKeys() {
+    var createdBefore = Timestamp.from(Instant.now().minus(idempotencyProperties.getRetention()));
+    var batchSize = idempotencyProperties.getPruneBatchSize();
+    var pruned = 0;
+    for (var shard : accountShards.getShards()) {
+      int deleted;
+      do {
+        deleted = shard.getJdbcTemplate().update(DELETE_EXPIRED_IDEMPOTENCY_KEYS, createdBefore,
+            batchSize);
+        pruned += deleted;
+      } while (deleted == batchSize);
+    }
+    return pruned;
+  }
+
+  private int recoverTransfers(Instant reservedBefore) {
+    var recovered = 0;
+    for (var shard : accountShards.getShards()) {
+      var transfers = shard.getJdbcTemplate().query(SELECT_TRANSFERS_IN_DOUBT,
+          ShardedPaymentEngine::toPayment, Timestamp.from(reservedBefore));
+      for (var payment : transfers) {
+        try {
+          credit(accountShards.shardOf(payment.getReceiverAccountId()), payment);
+          complete(shard, payment);
+          recovered++;
+        } catch (DataAccessException e) {
+          logger.warn("SHARDING: Transfer {} is still in doubt: {}", payment.getId(),
+              e.toString());
+        }
+      }
+    }
+    if (recovered > 0) {
+      logger.info("SHARDING: {} transfers in doubt completed", recovered);
+    }
+    return recovered;
+  }
+
+  /**
+   * Debits the sender and credits the receiver in ascending account ID order, as the JPA engine's
+   * guarded updates, and records the payment with its idempotency key, if any. Must run in a
+   * transaction of the shard.
+   * @return Whether the payment is made, or false if an update has not applied
+   */
+  private boolean transferWithinShard(AccountShard shard, Payment payment,
+      String idempotencyKey) {
+    var jdbcTemplate = shard.getJdbcTemplate();
+    var senderId = payment.getSenderAccountId();
+    var receiverId = payment.getReceiverAccountId();
+    var amount = payment.getAmount().toBigDecimal();
+    if (senderId.equals(receiverId)) {
+      return false;
+    }
+    var applied = senderId < receiverId
+        ? jdbcTemplate.update(DEBIT, amount, senderId, amount) == 1
+            && jdbcTemplate.update(CREDIT, amount, receiverId) == 1
+        : jdbcTemplate.update(CREDIT, amount, receiverId) == 1
+            && jdbcTemplate.update(DEBIT, amount, senderId, amount) == 1;
+    if (!applied) {
+      return false;
+    }
+    payment.setId(nextPaymentId(shard));
+    insert(jdbcTemplate, INSERT_PAYMENT, payment);
+    insertIdempotencyKey(jdbcTemplate, idempotencyKey, payment);
+    accountCache.invalidateAfterCommit(List.of(senderId, receiverId));
+    return true;
+  }
+
+  /**
+   * Debits the sender and logs the transfer with its idempotency key, if any. Must run in a
+   * transaction of the sender's shard.
+   * @return Whether the transfer is reserved, or false if the debit has not applied
+   */
+  private boolean reserve(AccountShard shard, Payment payment, String idempotencyKey) {
+    var amount = payment.getAmount().toBigDecimal();
+    if (shard.getJdbcTemplate().update(DEBIT, amount, payment.getSenderAccountId(), amount) != 1) {
+      return false;
+    }
+    payment.setId(nextPaymentId(shard));
+    insert(shard.getJdbcTemplate(), INSERT_TRANSFER_OUT, payment);
+    insertIdempotencyKey(shard.getJdbcTemplate(), idempotencyKey, payment);
+    accountCache.invalidateAfterCommit(List.of(payment.getSenderAccountId()));
+    return true;
+  }
+
+  /**
+   * Credits the receiver of a reserved transfer, unless it has already been credited
+   */
+  private void credit(AccountShard shard, Payment payment) {
+    try {
+      shard.getTransactionTemplate().executeWithoutResult(status -> {
+        insert(shard.getJdbcTemplate(), INSERT_TRANSFER_IN, payment);
+        shard.getJdbcTemplate().update(CREDIT, payment.getAmount().toBigDecimal(),
+            payment.getReceiverAccountId());
+        accountCache.invalidateAfterCommit(List.of(payment.getReceiverAccountId()));
+      });
+    } catch (DuplicateKeyException e) {
+      // Credited before, by the recovery or by the request itself
+    }
+  }
+
+  /**
+   * Replaces the logged transfer with the payment on the sender's shard, unless it is done already
+   */
+  private void complete(AccountShard shard, Payment payment) {
+    shard.getTransactionTemplate().executeWithoutResult(status -> {
+      if (shard.getJdbcTemplate().update(DELETE_TRANSFER_OUT, payment.getId()) == 1) {
+        insert(shard.getJdbcTemplate(), INSERT_PAYMENT, payment);
+      }
+    });
+  }
+
+  /**
+   * Looks into a payment whose updates have not applied, copying its accounts to their shards if
+   * they are not there yet, and rejects it in the same order of requirements as the JPA engine.
+   * Returns if nothing is wrong anymore, e.g. once an account has been copied.
+   */
+  private void checkRequirements(Payment payment) {
+    var senderId = payment.getSenderAccountId();
+    var receiverId = payment.getReceiverAccountId();
+    if (!accountShards.copyToShard(senderId)) {
+      throw RequirementException.of(ExceptionCode.SENDER_ACCOUNT_NOT_FOUND);
+    }
+    if (!accountShards.copyToShard(receiverId)) {
+      throw RequirementException.of(ExceptionCode.RECEIVER_ACCOUNT_NOT_FOUND);
+    }
+    if (senderId.equals(receiverId)) {
+      throw RequirementException.of(ExceptionCode.SENDER_RECEIVER_THE_SAME);
+    }
+    if (payment.getAmount().exceeds(accountShards.findBalance(senderId).orElseThrow())) {
+      throw RequirementException.of(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE);
+    }
+  }
+
+  /**
+   * @return A payment ID unique across the shards, whose remainder is the index of the shard
+   */
+  private long nextPaymentId(AccountShard shard) {
+    var sequence = shard.getJdbcTemplate().queryForObject(NEXT_PAYMENT_SEQUENCE, Long.class);
+    return sequence * accountShards.getShards().size() + shard.getIndex();
+  }
+
+  /**
+   * Records the idempotency key of a payment made in the primary database, unless it is there
+   * already
+   * @return The payment made
+   */
+  private PaymentDto recordIdempotencyKey(String idempotencyKey, Payment payment) {
+    try {
+      insertIdempotencyKey(jdbcTemplate, idempotencyKey, payment);
+    } catch (DuplicateKeyException e) {
+      // Copied there by a retry with the key
+    }
+    return EntityMappings.toDto(payment); // Entity -> output DTO
+  }
+
+  /**
+   * Copies the idempotency key recorded on the sender's shard to the primary database
+   */
+  private void copyIdempotencyKey(AccountShard shard, String idempotencyKey) {
+    for (var payment : shard.getJdbcTemplate().query(SELECT_IDEMPOTENCY_KEY,
+        ShardedPaymentEngine::toPayment, idempotencyKey)) {
+      recordIdempotencyKey(idempotencyKey, payment);
+    }
+  }
+
+  private static void insertIdempotencyKey(JdbcTemplate jdbcTemplate, String idempotencyKey,
+      Payment payment) {
+    if (idempotencyKey != null) {
+      jdbcTemplate.update(INSERT_IDEMPOTENCY_KEY, idempotencyKey, payment.getId(),
+          payment.getSenderAccountId(), payment.getReceiverAccountId(),
+          payment.getAmount().toBigDecimal(), Timestamp.from(payment.getTimestamp()),
+          Timestamp.from(Instant.now()));
+    }
+  }
+
+  private static boolean rollBack(TransactionStatus status) {
+    status.setRollbackOnly();
+    return false;
+  }
+
+  private static void insert(JdbcTemplate jdbcTemplate, String sql, Payment payment) {
+    jdbcTemplate.update(sql, payment.getId(), payment.getSenderAccountId(),
+        payment.getReceiverAccountId(), payment.getAmount().toBigDecimal(),
+        Timestamp.from(payment.getTimestamp()));
+  }
+
+  private static Payment toPayment(ResultSet resultSet, int rowNumber) throws SQLException {
+    var payment = new Payment();
+    payment.setId(resultSet.getLong(1));
+    payment.setSenderAccountId(resultSet.getLong(2));
+    payment.setReceiverAccountId(resultSet.getLong(3));
+    payment.setAmount(Money.of(resultSet.getBigDecimal(4)));
+    payment.setTimestamp(resultSet.getTimestamp(5).toInstant());
+    return payment;
+  }
+}
@@ -0,0 +1,47 @@
+package com.rindago.payment.sharding;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the sharded engine, bound from 'payment.sharding.*' properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.sharding")
+public class ShardingProperties {
+
+  /**
+   * JDBC URLs of the shard databases. An account belongs to the shard at the index of its ID
+   * modulo their number, so the list cannot change once payments are made.
+   */
+  private List<String> urls = new ArrayList<>(List.of("jdbc:h2:mem:shard-0",
+      "jdbc:h2:mem:shard-1"));
+
+  /**
+   * User name of the shard databases
+   */
+  private String username = "sa";
+
+  /**
+   * Password of the shard databases
+   */
+  private String password = "";
+
+  /**
+   * Maximum number of connections to each shard database
+   */
+  private int poolSize = 10;
+
+  /**
+   * Delay between two runs of the recovery of cross-shard transfers in doubt
+   */
+  private Duration recoveryInterval = Duration.ofSeconds(10);
+
+  /**
+   * Age from which a reserved cross-shard transfer is in doubt, and completed by the recovery
+   */
+  private Duration recoveryDelay = Duration.ofSeconds(5);
+}
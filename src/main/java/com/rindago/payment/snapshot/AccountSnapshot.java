@@ -0,0 +1,193 @@
+package com.rindago.payment.snapshot;
+
+import com.rindago.payment.money.Money;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The binary file of an account snapshot: the ID, name and balance of every account, as of a
+ * journal record, or as of when it was written from a running instance. It is laid out as
+ * follows, with variable-length longs of 7 bits per byte:
+ * <pre>
+ * int magic      "PSNP"
+ * int version    1
+ * long sequence  of the last journal record included, or 0 outside of the journal
+ * per account, in ascending ID order:
+ *   varlong      ID minus the previous ID, or the ID itself for the first account
+ *   varlong      balance in cents
+ *   byte         length of the name in UTF-8, unsigned
+ *   name in UTF-8
+ * varlong 0      end of the accounts
+ * int checksum   CRC32C of all the bytes before it
+ * </pre>
+ * A snapshot is written to a temporary file which replaces the previous snapshot once complete.
+ */
+public final class AccountSnapshot {
+
+  private static final int MAGIC = 0x50534E50;
+  private static final int VERSION = 1;
+
+  private AccountSnapshot() {
+  }
+
+  /**
+   * Starts writing a snapshot
+   * @param path File of the snapshot, replaced by {@link Writer#commit()}
+   * @param sequence Sequence of the last journal record the accounts include
+   */
+  public static Writer create(Path path, long sequence) throws IOException {
+    var temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+    return new Writer(path, temporaryPath, new FileOutputStream(temporaryPath.toFile()), sequence);
+  }
+
+  /**
+   * Starts writing a snapshot to a stream, which {@link Writer#commit()} flushes but does not close
+   * @param output Stream the snapshot is written to
+   * @param sequence Sequence of the last journal record the accounts include, or 0
+   */
+  public static Writer create(OutputStream output, long sequence) throws IOException {
+    return new Writer(null, null, output, sequence);
+  }
+
+  /**
+   * Reads a snapshot, passing its accounts to the visitor in ascending ID order
+   * @return Sequence of the last journal record the accounts include
+   * @throws IOException If the file cannot be read, or is not a complete snapshot. In that case,
+   *     the accounts already passed to the visitor must be discarded.
+   */
+  public static long read(Path path, AccountVisitor visitor) throws IOException {
+    var checksum = new CRC32C();
+    try (var input = new DataInputStream(new CheckedInputStream(
+        new BufferedInputStream(Files.newInputStream(path), 1 << 16), checksum))) {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        throw new IOException(path + " is not an account snapshot of version " + VERSION);
+      }
+      var sequence = input.readLong();
+      var accountId = 0L;
+      var name = new byte[255];
+      for (var idDelta = readVarLong(input); idDelta != 0; idDelta = readVarLong(input)) {
+        accountId += idDelta;
+        var balance = Money.ofCents(readVarLong(input));
+        var nameLength = input.readUnsignedByte();
+        input.readFully(name, 0, nameLength);
+        visitor.visit(accountId, balance, new String(name, 0, nameLength, StandardCharsets.UTF_8));
+      }
+      var expected = (int) checksum.getValue();
+      if (input.readInt() != expected) {
+        throw new IOException("Account snapshot " + path + " is corrupt");
+      }
+      return sequence;
+    }
+  }
+
+  /**
+   * Receives the accounts read by {@link #read}
+   */
+  @FunctionalInterface
+  public interface AccountVisitor {
+    void visit(long accountId, Money balance, String name);
+  }
+
+  /**
+   * Writes the accounts of a snapshot to a temporary file, or to a stream. Closing it without a
+   * commit deletes the temporary file and leaves the previous snapshot in place.
+   */
+  public static final class Writer implements Closeable {
+
+    private final Path path; // Null when writing to a stream
+    private final Path temporaryPath;
+    private final OutputStream target;
+    private final CRC32C checksum = new CRC32C();
+    private final DataOutputStream output;
+    private long lastAccountId;
+    private boolean committed;
+
+    private Writer(Path path, Path temporaryPath, OutputStream target, long sequence)
+        throws IOException {
+      this.path = path;
+      this.temporaryPath = temporaryPath;
+      this.target = target;
+      this.output = new DataOutputStream(new CheckedOutputStream(
+          new BufferedOutputStream(target, 1 << 16), checksum));
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(sequence);
+    }
+
+    /**
+     * Writes an account, whose ID must be greater than the ID of the previous one
+     */
+    public void write(long accountId, Money balance, String name) throws IOException {
+      if (accountId <= lastAccountId) {
+        throw new IllegalArgumentException("Accounts must be written in ascending ID order");
+      }
+      var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+      if (nameBytes.length > 255) {
+        throw new IllegalArgumentException("Account name longer than 255 bytes: " + name);
+      }
+      writeVarLong(output, accountId - lastAccountId);
+      writeVarLong(output, balance.getCents());
+      output.writeByte(nameBytes.length);
+      output.write(nameBytes);
+      lastAccountId = accountId;
+    }
+
+    /**
+     * Ends the snapshot. A file is forced to disk and replaces the previous snapshot; a stream is
+     * flushed.
+     */
+    public void commit() throws IOException {
+      writeVarLong(output, 0);
+      output.writeInt((int) checksum.getValue());
+      output.flush();
+      committed = true;
+      if (path != null) {
+        ((FileOutputStream) target).getFD().sync();
+        output.close();
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!committed && path != null) {
+        output.close();
+        Files.deleteIfExists(temporaryPath);
+      }
+    }
+  }
+
+  private static void writeVarLong(DataOutputStream output, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      output.writeByte((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    output.writeByte((int) value);
+  }
+
+  private static long readVarLong(DataInputStream input) throws IOException {
+    var value = 0L;
+    for (var shift = 0; shift < Long.SIZE; shift += 7) {
+      var b = input.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable-length long");
+  }
+}
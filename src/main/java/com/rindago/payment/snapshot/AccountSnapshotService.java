@@ -0,0 +1,219 @@
+package com.rindago.payment.snapshot;
+
+import com.rindago.payment.money.Money;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * A service class to write the account table to an account snapshot and to load one into it.
+ * A snapshot is written through a forward-only, read-only JDBC cursor in ID order. It is loaded
+ * by one thread decoding the file while a pool of threads inserts its accounts, one batch of
+ * consecutive IDs at a time. A batch is inserted by a single statement, which H2 reads from
+ * arrays of IDs, names and balances, instead of a statement executed once per account.
+ */
+@Service
+@RequiredArgsConstructor
+public class AccountSnapshotService {
+
+  // Balances include the pending credits of hot accounts, which are compacted into them later.
+  private static final String SELECT_ACCOUNTS = "SELECT a.id, a.name, a.balance + COALESCE("
+      + "(SELECT SUM(d.amount) FROM account_balance_delta d WHERE d.account_id = a.id), 0) "
+      + "FROM account a ORDER BY a.id";
+  // The payments behind a snapshot's balances are not loaded, so they are the opening balances.
+  private static final String INSERT_ACCOUNTS = "INSERT INTO account "
+      + "(id, name, balance, opening_balance, version) SELECT id, name, balance, balance, 0 "
+      + "FROM UNNEST(CAST(? AS BIGINT ARRAY), CAST(? AS VARCHAR ARRAY), "
+      + "CAST(? AS NUMERIC(18, 2) ARRAY)) AS t (id, name, balance)";
+  private static final int FETCH_SIZE = 1000;
+  private static final int ACCOUNT_ID_BLOCK = 50; // allocationSize of account_seq
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final PlatformTransactionManager transactionManager;
+  private final WarmStartProperties warmStartProperties;
+
+  /**
+   * Writes a snapshot of the accounts, with the balances committed when it starts, while payments
+   * go on. With the ledger engine, these are the balances persisted by its write-behind.
+   * @param output Stream the snapshot is written to; it is flushed but not closed
+   * @return Number of accounts written
+   */
+  public long write(OutputStream output) throws IOException {
+    // A repeatable read sees the balances of one point in time, even across a lazy query.
+    var readTemplate = new TransactionTemplate(transactionManager);
+    readTemplate.setReadOnly(true);
+    readTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    readTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    var writer = AccountSnapshot.create(output, 0);
+    var written = new long[1];
+    try {
+      readTemplate.executeWithoutResult(status -> {
+        // An embedded H2 builds the whole result first, unless its session executes lazily.
+        var h2 = "H2".equals(jdbcTemplate.execute(
+            (ConnectionCallback<String>) connection -> connection.getMetaData()
+                .getDatabaseProductName()));
+        if (h2) {
+          jdbcTemplate.execute("SET LAZY_QUERY_EXECUTION TRUE");
+        }
+        try {
+          jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(SELECT_ACCOUNTS,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+          }, resultSet -> {
+            try {
+              writer.write(resultSet.getLong(1), Money.of(resultSet.getBigDecimal(3)),
+                  resultSet.getString(2));
+            } catch (IOException e) {
+              throw new UncheckedIOException(e); // The client has gone away; the cursor is closed.
+            }
+            written[0]++;
+          });
+        } finally {
+          if (h2) {
+            jdbcTemplate.execute("SET LAZY_QUERY_EXECUTION FALSE"); // The connection is pooled.
+          }
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    writer.commit();
+    return written[0];
+  }
+
+  /**
+   * Inserts the accounts of a snapshot into the account table, which must not hold any of them.
+   * The account ID sequence is left as it is; see {@link #restartAccountIds()}. The balances are
+   * also the accounts' opening balances.
+   * @param path File of the snapshot
+   * @param progress Receives the number of accounts of each batch once it is inserted
+   * @return Sequence of the last journal record the accounts include
+   * @throws IOException If the snapshot cannot be read. In that case, some of its accounts may
+   *     have been inserted.
+   */
+  public long load(Path path, LongConsumer progress) throws IOException {
+    var threads = warmStartProperties.getThreads();
+    var threadNumber = new AtomicInteger();
+    var inserters = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(threads), // Bounds the batches decoded ahead of the inserts
+        runnable -> new Thread(runnable, "account-snapshot-" + threadNumber.incrementAndGet()),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    try {
+      var loader = new Loader(inserters, progress);
+      var sequence = AccountSnapshot.read(path, loader);
+      loader.flush();
+      inserters.shutdown();
+      inserters.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      loader.checkFailure();
+      return sequence;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while loading " + path);
+    } finally {
+      inserters.shutdownNow();
+    }
+  }
+
+  /**
+   * Restarts the account ID sequence after the greatest account ID, once accounts have been
+   * inserted with their own IDs
+   */
+  public void restartAccountIds() {
+    // The pooled optimizer hands out the block of IDs below the value it reads from account_seq.
+    var lastAccountId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM account",
+        Long.class);
+    jdbcTemplate.execute("ALTER SEQUENCE account_seq RESTART WITH "
+        + (lastAccountId + ACCOUNT_ID_BLOCK + 1));
+  }
+
+  private void insert(Long[] ids, String[] names, BigDecimal[] balances) {
+    transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(INSERT_ACCOUNTS,
+        statement -> {
+          statement.setObject(1, ids);
+          statement.setObject(2, names);
+          statement.setObject(3, balances);
+        }));
+  }
+
+  /**
+   * Gathers the accounts decoded from a snapshot into batches and hands them to the inserters
+   */
+  private final class Loader implements AccountSnapshot.AccountVisitor {
+
+    private final ThreadPoolExecutor inserters;
+    private final LongConsumer progress;
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private final int batchSize = warmStartProperties.getBatchSize();
+    private Long[] ids = new Long[batchSize];
+    private String[] names = new String[batchSize];
+    private BigDecimal[] balances = new BigDecimal[batchSize];
+    private int size;
+
+    Loader(ThreadPoolExecutor inserters, LongConsumer progress) {
+      this.inserters = inserters;
+      this.progress = progress;
+    }
+
+    @Override
+    public void visit(long accountId, Money balance, String name) {
+      ids[size] = accountId;
+      names[size] = name;
+      balances[size] = balance.toBigDecimal();
+      if (++size == batchSize) {
+        flush();
+      }
+    }
+
+    void flush() {
+      checkFailure(); // Stops reading the snapshot once a batch has failed
+      if (size == 0) {
+        return;
+      }
+      // The arrays are handed over to the inserter, and new ones filled in the meantime.
+      var full = size == batchSize;
+      var batchIds = full ? ids : Arrays.copyOf(ids, size);
+      var batchNames = full ? names : Arrays.copyOf(names, size);
+      var batchBalances = full ? balances : Arrays.copyOf(balances, size);
+      ids = new Long[batchSize];
+      names = new String[batchSize];
+      balances = new BigDecimal[batchSize];
+      inserters.execute(() -> {
+        try {
+          insert(batchIds, batchNames, batchBalances);
+          progress.accept(batchIds.length);
+        } catch (RuntimeException e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+      size = 0;
+    }
+
+    void checkFailure() {
+      var exception = failure.get();
+      if (exception != null) {
+        throw exception;
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.rindago.payment.snapshot;
+
+import com.rindago.payment.journal.JournalProperties;
+import jakarta.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads the account snapshot set by 'payment.warm-start.snapshot' into the empty account table at
+ * startup. It runs as an application runner, after the context has started and before the
+ * application is ready for traffic, so the readiness state refuses traffic until the accounts are
+ * loaded. As the 'warmStart' health indicator of the readiness group, it is OUT_OF_SERVICE with
+ * the number of accounts loaded so far during the load, and DOWN if the load failed.
+ */
+@Component
+@RequiredArgsConstructor
+public class WarmStart implements ApplicationRunner, HealthIndicator {
+
+  private final Logger logger = LoggerFactory.getLogger(WarmStart.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final AccountSnapshotService accountSnapshotService;
+  private final WarmStartProperties warmStartProperties;
+  private final JournalProperties journalProperties;
+
+  private final AtomicLong loadedAccounts = new AtomicLong();
+  private volatile boolean loaded;
+  private volatile long loadMillis;
+  private volatile Exception failure;
+
+  @PostConstruct
+  void checkJournal() {
+    if (warmStartProperties.getSnapshot() != null && journalProperties.isEnabled()) {
+      throw new IllegalStateException("payment.warm-start.snapshot cannot be used with "
+          + "payment.journal.enabled, which rebuilds the accounts from its own snapshot");
+    }
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    var snapshot = warmStartProperties.getSnapshot();
+    if (snapshot == null) {
+      return;
+    }
+    try {
+      if (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM account", Long.class) > 0) {
+        throw new IllegalStateException("The warm start loads the account table, which is not "
+            + "empty");
+      }
+      var start = System.nanoTime();
+      accountSnapshotService.load(snapshot, loadedAccounts::addAndGet);
+      accountSnapshotService.restartAccountIds();
+      loadMillis = (System.nanoTime() - start) / 1_000_000;
+      loaded = true;
+      logger.info("WARM START: {} accounts loaded from {} in {} ms", loadedAccounts.get(),
+          snapshot, loadMillis);
+    } catch (Exception e) {
+      failure = e; // The application fails to start.
+      throw e;
+    }
+  }
+
+  @Override
+  public Health health() {
+    var snapshot = warmStartProperties.getSnapshot();
+    if (snapshot == null) {
+      return Health.up().build();
+    }
+    var health = failure != null ? Health.down(failure)
+        : loaded ? Health.up().withDetail("loadMillis", loadMillis)
+        : Health.outOfService();
+    return health.withDetail("snapshot", snapshot.toString())
+        .withDetail("loadedAccounts", loadedAccounts.get())
+        .build();
+  }
+}
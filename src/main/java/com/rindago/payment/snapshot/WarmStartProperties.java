@@ -0,0 +1,32 @@
+package com.rindago.payment.snapshot;
+
+import java.nio.file.Path;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the warm start from an account snapshot, bound from 'payment.warm-start.*'
+ * properties
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.warm-start")
+public class WarmStartProperties {
+
+  /**
+   * Account snapshot loaded into the empty account table at startup, before the application is
+   * ready for traffic, or none to start without accounts. Cannot be used with the journal, which
+   * loads its own snapshot.
+   */
+  private Path snapshot;
+
+  /**
+   * Number of threads inserting the accounts of a snapshot, each one a batch of consecutive IDs at
+   * a time. Should not exceed the size of the connection pool.
+   */
+  private int threads = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+
+  /**
+   * Number of accounts inserted by one statement
+   */
+  private int batchSize = 10_000;
+}
@@ -1,18 +1,57 @@
+DROP TABLE IF EXISTS account_reconciliation CASCADE;
+DROP TABLE IF EXISTS idempotency_key CASCADE;
+DROP TABLE IF EXISTS account_balance_delta CASCADE;
 DROP TABLE IF EXISTS payment CASCADE;
 DROP TABLE IF EXISTS account CASCADE;
+DROP SEQUENCE IF EXISTS payment_seq;
+DROP SEQUENCE IF EXISTS account_seq;
+
+CREATE SEQUENCE account_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE payment_seq START WITH 1 INCREMENT BY 50;
 
 CREATE TABLE account(
-  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  id BIGINT PRIMARY KEY,
   name VARCHAR(50) NOT NULL,
-  balance NUMERIC(18, 2) NOT NULL
+  balance NUMERIC(18, 2) NOT NULL,
+  opening_balance NUMERIC(18, 2) NOT NULL,
+  version BIGINT DEFAULT 0 NOT NULL
 );
 
 CREATE TABLE payment(
-  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  id BIGINT PRIMARY KEY,
   sender_account_id BIGINT NOT NULL,
   receiver_account_id BIGINT NOT NULL,
   amount NUMERIC(18, 2) NOT NULL,
-  timestamp TIMESTAMP NOT NULL,
+  timestamp TIMESTAMP WITH TIME ZONE NOT NULL,
   FOREIGN KEY (sender_account_id) REFERENCES account(id),
   FOREIGN KEY (receiver_account_id) REFERENCES account(id)
 );
+
+CREATE INDEX payment_sender_idx ON payment(sender_account_id, timestamp, id);
+CREATE INDEX payment_receiver_idx ON payment(receiver_account_id, timestamp, id);
+
+CREATE TABLE account_balance_delta(
+  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  account_id BIGINT NOT NULL,
+  amount NUMERIC(18, 2) NOT NULL,
+  FOREIGN KEY (account_id) REFERENCES account(id)
+);
+
+CREATE INDEX account_balance_delta_account_idx ON account_balance_delta(account_id, id);
+
+CREATE TABLE idempotency_key(
+  idempotency_key VARCHAR(255) PRIMARY KEY,
+  payment_id BIGINT NOT NULL,
+  sender_account_id BIGINT NOT NULL,
+  receiver_account_id BIGINT NOT NULL,
+  amount NUMERIC(18, 2) NOT NULL,
+  payment_timestamp TIMESTAMP WITH TIME ZONE NOT NULL,
+  created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX idempotency_key_created_idx ON idempotency_key(created_at);
+
+CREATE TABLE account_reconciliation(
+  account_id BIGINT PRIMARY KEY,
+  net_payments NUMERIC(18, 2) NOT NULL
+);
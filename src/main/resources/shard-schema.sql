@@ -0,0 +1,50 @@
+CREATE SEQUENCE IF NOT EXISTS payment_seq START WITH 1;
+
+CREATE TABLE IF NOT EXISTS account(
+  id BIGINT PRIMARY KEY,
+  balance NUMERIC(18, 2) NOT NULL CHECK (balance >= 0)
+);
+
+CREATE TABLE IF NOT EXISTS payment(
+  id BIGINT PRIMARY KEY,
+  sender_account_id BIGINT NOT NULL,
+  receiver_account_id BIGINT NOT NULL,
+  amount NUMERIC(18, 2) NOT NULL,
+  timestamp TIMESTAMP WITH TIME ZONE NOT NULL,
+  FOREIGN KEY (sender_account_id) REFERENCES account(id)
+);
+
+CREATE INDEX IF NOT EXISTS payment_sender_idx ON payment(sender_account_id, timestamp, id);
+CREATE INDEX IF NOT EXISTS payment_receiver_idx ON payment(receiver_account_id, timestamp, id);
+
+CREATE TABLE IF NOT EXISTS transfer_out(
+  id BIGINT PRIMARY KEY,
+  sender_account_id BIGINT NOT NULL,
+  receiver_account_id BIGINT NOT NULL,
+  amount NUMERIC(18, 2) NOT NULL,
+  timestamp TIMESTAMP WITH TIME ZONE NOT NULL,
+  FOREIGN KEY (sender_account_id) REFERENCES account(id)
+);
+
+CREATE TABLE IF NOT EXISTS transfer_in(
+  id BIGINT PRIMARY KEY,
+  sender_account_id BIGINT NOT NULL,
+  receiver_account_id BIGINT NOT NULL,
+  amount NUMERIC(18, 2) NOT NULL,
+  timestamp TIMESTAMP WITH TIME ZONE NOT NULL,
+  FOREIGN KEY (receiver_account_id) REFERENCES account(id)
+);
+
+CREATE INDEX IF NOT EXISTS transfer_in_receiver_idx ON transfer_in(receiver_account_id, timestamp, id);
+
+CREATE TABLE IF NOT EXISTS idempotency_key(
+  idempotency_key VARCHAR(255) PRIMARY KEY,
+  payment_id BIGINT NOT NULL,
+  sender_account_id BIGINT NOT NULL,
+  receiver_account_id BIGINT NOT NULL,
+  amount NUMERIC(18, 2) NOT NULL,
+  payment_timestamp TIMESTAMP WITH TIME ZONE NOT NULL,
+  created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idempotency_key_created_idx ON idempotency_key(created_at);
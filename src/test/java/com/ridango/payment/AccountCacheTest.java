@@ -0,0 +1,162 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccount;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.cache.AccountCache;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.services.AccountService;
+import com.rindago.payment.services.HotAccountProperties;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest(classes = PaymentApplication.class, properties = {
+    "payment.account-cache.maximum-size=3",
+    "payment.hot-accounts.compaction-interval=PT1H"})
+@AutoConfigureMockMvc
+class AccountCacheTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+  @Autowired
+  private AccountService accountService;
+  @Autowired
+  private PaymentService paymentService;
+  @Autowired
+  private AccountCache accountCache;
+  @Autowired
+  private HotAccountProperties hotAccountProperties;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * To clean up the database, the account cache which does not see the deletes, and the hot account
+   * flags after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    hotAccountProperties.getAccountIds().clear();
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "account_balance_delta", "payment", "account");
+    accountCache.invalidateAll();
+  }
+
+  @Test
+  void test_1_readsAreCachedUntilAPaymentOnTheAccountCommits() throws Exception {
+    var rider = createAccount(accountRepository, "Cached Rider", "100.00");
+    var collector = createAccount(accountRepository, "Cached Collector", "0.00");
+    hotAccountProperties.getAccountIds().add(collector);
+    var before = accountCache.getStatistics();
+
+    mockMvc.perform(get("/account/" + rider))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.name").value("Cached Rider"))
+        .andExpect(jsonPath("$.balance").value(100.00));
+    accountService.getAccount(rider);
+    accountService.getAccount(collector);
+
+    // The balance is changed behind the cache's back, so only a cache hit returns the old one.
+    jdbcTemplate.update("UPDATE account SET balance = 99.00 WHERE id = ?", rider);
+    assertEquals(new BigDecimal("100.00"),
+        accountService.getAccount(rider).orElseThrow().getBalance());
+
+    paymentService.makePayment(paymentRequest(rider, collector, "9.00"));
+
+    mockMvc.perform(get("/account/" + rider))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.balance").value(90.00));
+    // The hot collector's balance includes its pending credit.
+    assertEquals(new BigDecimal("9.00"),
+        accountService.getAccount(collector).orElseThrow().getBalance());
+
+    var after = accountCache.getStatistics();
+    assertEquals(2, after.getHits() - before.getHits());
+    assertEquals(4, after.getMisses() - before.getMisses());
+    assertEquals(2, after.getInvalidations() - before.getInvalidations());
+  }
+
+  @Test
+  void test_2_uncommittedAndRolledBackPaymentsAreNeverCached() {
+    var sender = createAccount(accountRepository, "Sender", "100.00");
+    var receiver = createAccount(accountRepository, "Receiver", "0.00");
+    var invalidationsBefore = accountCache.getStatistics().getInvalidations();
+
+    transactionTemplate.executeWithoutResult(status -> {
+      paymentService.makePayment(paymentRequest(sender, receiver, "40.00"));
+      // Another reader loads and caches the committed balance while the payment is in flight.
+      assertEquals(new BigDecimal("100.00"), readInAnotherThread(sender));
+      assertEquals(invalidationsBefore, accountCache.getStatistics().getInvalidations());
+    });
+    assertEquals(new BigDecimal("60.00"),
+        accountService.getAccount(sender).orElseThrow().getBalance());
+    assertEquals(new BigDecimal("40.00"),
+        accountService.getAccount(receiver).orElseThrow().getBalance());
+
+    transactionTemplate.executeWithoutResult(status -> {
+      paymentService.makePayment(paymentRequest(sender, receiver, "60.00"));
+      status.setRollbackOnly();
+    });
+    assertEquals(new BigDecimal("60.00"),
+        accountService.getAccount(sender).orElseThrow().getBalance());
+    assertEquals(invalidationsBefore + 2, accountCache.getStatistics().getInvalidations());
+  }
+
+  @Test
+  void test_3_missingAccountIsNotFoundAndNotCached() throws Exception {
+    mockMvc.perform(get("/account/-1"))
+        .andExpect(status().isNotFound());
+
+    var account = createAccount(accountRepository, "Created After Miss", "5.00");
+    mockMvc.perform(get("/account/" + account))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.balance").value(5.00));
+  }
+
+  @Test
+  void test_4_accountsBeyondTheMaximumSizeAreEvicted() throws Exception {
+    var evictionsBefore = accountCache.getStatistics().getEvictions();
+    for (var i = 0; i < 5; i++) {
+      accountService.getAccount(createAccount(accountRepository, "Evicted " + i, "1.00"));
+    }
+
+    mockMvc.perform(get("/statistics/account-cache"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.enabled").value(true));
+    var statistics = accountCache.getStatistics();
+    assertTrue(statistics.getSize() <= 3);
+    assertTrue(statistics.getEvictions() - evictionsBefore >= 2);
+  }
+
+  private BigDecimal readInAnotherThread(Long accountId) {
+    return CompletableFuture.supplyAsync(
+        () -> accountService.getAccount(accountId).orElseThrow().getBalance()).join();
+  }
+
+  private static PaymentRequest paymentRequest(Long senderAccountId, Long receiverAccountId,
+      String amount) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(new BigDecimal(amount));
+    return paymentRequest;
+  }
+}
@@ -0,0 +1,134 @@
+package com.ridango.payment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.AccountImportSummary;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest(classes = PaymentApplication.class,
+    properties = "payment.account-import.batch-size=3")
+@AutoConfigureMockMvc
+class AccountImportTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+  @Autowired
+  private ObjectMapper objectMapper;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * To clean up the database after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "payment", "account");
+  }
+
+  @Test
+  void test_1_ndjsonImportCreatesValidAccountsAndReportsRejectedLines() throws Exception {
+    var existing = new Account();
+    existing.setName("Existing Card");
+    existing.setBalance(Money.of(BigDecimal.ONE));
+    accountRepository.save(existing);
+
+    var lines = new ArrayList<String>();
+    lines.add("{\"name\": \"Card 1\", \"balance\": 10.00}");
+    lines.add("{\"name\": \"Card 2\", \"balance\": 0}");
+    lines.add("{\"name\": \"Card 3\", \"balance\": -1.00}"); // Negative balance
+    lines.add("{\"name\": \"Card 4\", \"balance\": 1.001}"); // More than 2 decimal places
+    lines.add("{\"name\": \"" + "x".repeat(51) + "\", \"balance\": 1}"); // Name too long
+    lines.add("{\"name\": \"Card 6\""); // Not a JSON object
+    lines.add("");
+    lines.add("{\"name\": \"Existing Card\", \"balance\": 5}"); // Name taken
+    lines.add("{\"name\": \"Card 9\", \"balance\": 9.99}");
+    lines.add("{\"name\": \"Card 1\", \"balance\": 5}"); // Name taken within the import
+    lines.add("{\"name\": \"Card 11\", \"balance\": 11}");
+
+    var response = mockMvc.perform(post("/account/import")
+            .contentType("application/x-ndjson")
+            .content(String.join("\n", lines)))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray();
+    var summary = objectMapper.readValue(response, AccountImportSummary.class);
+
+    assertEquals(4, summary.getCreated());
+    assertEquals(6, summary.getRejected());
+    assertEquals(List.of(3L, 4L, 5L, 6L, 8L, 10L), summary.getRejectedLines());
+    var imported = jdbcTemplate.queryForList(
+        "SELECT id FROM account WHERE name LIKE 'Card %' ORDER BY id", Long.class);
+    assertThat(imported).hasSize(4);
+    assertEquals(imported.get(0), summary.getFirstCreatedId());
+    assertEquals(imported.get(3), summary.getLastCreatedId());
+    assertEquals(new BigDecimal("9.99"), jdbcTemplate.queryForObject(
+        "SELECT balance FROM account WHERE name = 'Card 9'", BigDecimal.class));
+
+    // Accounts created through JPA afterwards do not collide with the imported IDs.
+    var created = new Account();
+    created.setName("Created After Import");
+    created.setBalance(Money.of(BigDecimal.ONE));
+    assertThat(imported).doesNotContain(accountRepository.save(created).getId());
+    assertEquals(6, accountRepository.count());
+  }
+
+  @Test
+  void test_2_csvImportSkipsTheHeaderAndReadsQuotedNames() throws Exception {
+    var csv = "name,balance\n"
+        + "\"Smith, John\",25.50\n"
+        + "\"The \"\"Night\"\" Card\",0.00\n"
+        + "Plain Card,not-a-number\n"
+        + "Missing Balance\n"
+        + "Plain Card,1\n";
+
+    mockMvc.perform(post("/account/import")
+            .contentType("text/csv")
+            .content(csv))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.created").value(3))
+        .andExpect(jsonPath("$.rejected").value(2))
+        .andExpect(jsonPath("$.rejectedLines[0]").value(4))
+        .andExpect(jsonPath("$.rejectedLines[1]").value(5));
+
+    mockMvc.perform(post("/account/import")
+            .contentType("text/csv")
+            .content("\"Smith, John\",1\n"))
+        .andExpect(jsonPath("$.created").value(0))
+        .andExpect(jsonPath("$.rejectedLines[0]").value(1));
+    assertEquals(new BigDecimal("25.50"), jdbcTemplate.queryForObject(
+        "SELECT balance FROM account WHERE name = 'Smith, John'", BigDecimal.class));
+    assertEquals(1, JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "account",
+        "name = 'The \"Night\" Card'"));
+  }
+
+  @Test
+  void test_3_importWithAnUnsupportedContentTypeIsRefused() throws Exception {
+    mockMvc.perform(post("/account/import")
+            .contentType(MediaType.TEXT_PLAIN)
+            .content("Card,1"))
+        .andExpect(status().isUnsupportedMediaType());
+
+    assertEquals(0, accountRepository.count());
+  }
+}
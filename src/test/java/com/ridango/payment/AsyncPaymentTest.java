@@ -0,0 +1,174 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccount;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.dtos.PaymentSubmission;
+import com.rindago.payment.dtos.PaymentSubmissionStatus;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.locks.AccountLockManager;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.repositories.PaymentRepository;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+@SpringBootTest(classes = PaymentApplication.class, properties = {
+    "payment.async.enabled=true",
+    "payment.async.workers=1",
+    "payment.async.queue-capacity=2"})
+@AutoConfigureMockMvc
+class AsyncPaymentTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+  @Autowired
+  private ObjectMapper objectMapper;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private PaymentRepository paymentRepository;
+  @Autowired
+  private AccountLockManager accountLockManager;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * To clean up the database after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "payment", "account");
+  }
+
+  @Test
+  void test_1_acceptedPaymentIsSettledAndPolled() throws Exception {
+    var sender = createAccount(accountRepository, "Async Sender", "100.00");
+    var receiver = createAccount(accountRepository, "Async Receiver", "0.00");
+
+    var submission = readSubmission(submit(paymentRequest(sender, receiver, "25.00"))
+        .andExpect(status().isAccepted())
+        .andExpect(jsonPath("$.status").value("PENDING")));
+    var settled = awaitOutcome(submission.getId());
+
+    assertEquals(PaymentSubmissionStatus.COMPLETED, settled.getStatus());
+    assertEquals(submission.getSubmittedAt(), settled.getSubmittedAt());
+    assertEquals(new BigDecimal("25.00"), settled.getPayment().getAmount());
+    assertTrue(paymentRepository.existsById(settled.getPayment().getId()));
+    assertEquals(new BigDecimal("75.00"), balanceOf(sender));
+  }
+
+  @Test
+  void test_2_shapeIsCheckedBeforeQueueingAndBalanceWhenSettling() throws Exception {
+    var sender = createAccount(accountRepository, "Async Poor Sender", "1.00");
+    var receiver = createAccount(accountRepository, "Async Poor Receiver", "0.00");
+
+    submit(paymentRequest(sender, sender, "1.00"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.errorCode").value(ExceptionCode.SENDER_RECEIVER_THE_SAME.name()));
+    submit(paymentRequest(sender, receiver, "0.001"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.errorCode")
+            .value(ExceptionCode.MORE_THAN_TWO_DECIMAL_PLACES.name()));
+    submit(paymentRequest(sender, receiver, "-1.00"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.errorCode")
+            .value(ExceptionCode.NOT_POSITIVE_PAYMENT_AMOUNT.name()));
+
+    var submission = readSubmission(submit(paymentRequest(sender, receiver, "5.00"))
+        .andExpect(status().isAccepted()));
+    var settled = awaitOutcome(submission.getId());
+    assertEquals(PaymentSubmissionStatus.REJECTED, settled.getStatus());
+    assertEquals(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE.name(),
+        settled.getErrorCode());
+
+    mockMvc.perform(get("/payment/no-such-handle"))
+        .andExpect(status().isNotFound());
+  }
+
+  @Test
+  void test_3_fullQueueIsRefusedWithServiceUnavailable() throws Exception {
+    var sender = createAccount(accountRepository, "Queued Sender", "100.00");
+    var receiver = createAccount(accountRepository, "Queued Receiver", "0.00");
+    var request = paymentRequest(sender, receiver, "1.00");
+
+    // The worker blocks on the accounts' locks with the first payment; two more fill the queue.
+    var handles = new ArrayList<String>();
+    accountLockManager.callLocked(sender, receiver, () -> {
+      try {
+        for (var i = 0; i < 3; i++) {
+          handles.add(readSubmission(submit(request).andExpect(status().isAccepted())).getId());
+        }
+        submit(request)
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+            .andExpect(jsonPath("$.errorCode").value(ExceptionCode.PAYMENT_QUEUE_FULL.name()));
+        assertEquals(PaymentSubmissionStatus.PENDING, readSubmission(
+            mockMvc.perform(get("/payment/" + handles.get(0)))).getStatus());
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+      return null;
+    });
+
+    for (var handle : handles) {
+      assertEquals(PaymentSubmissionStatus.COMPLETED, awaitOutcome(handle).getStatus());
+    }
+    assertEquals(new BigDecimal("97.00"), balanceOf(sender));
+  }
+
+  private ResultActions submit(PaymentRequest paymentRequest) throws Exception {
+    return mockMvc.perform(post("/payment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(objectMapper.writeValueAsString(paymentRequest)));
+  }
+
+  private PaymentSubmission awaitOutcome(String id) throws Exception {
+    for (var attempt = 0; attempt < 500; attempt++) {
+      var submission = readSubmission(mockMvc.perform(get("/payment/" + id))
+          .andExpect(status().isOk()));
+      if (submission.getStatus() != PaymentSubmissionStatus.PENDING) {
+        return submission;
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("Payment " + id + " has not been settled");
+  }
+
+  private PaymentSubmission readSubmission(ResultActions resultActions) throws Exception {
+    return objectMapper.readValue(resultActions.andReturn().getResponse().getContentAsByteArray(),
+        PaymentSubmission.class);
+  }
+
+  private BigDecimal balanceOf(Long accountId) {
+    return accountRepository.findById(accountId).orElseThrow().getBalance().toBigDecimal();
+  }
+
+  private static PaymentRequest paymentRequest(Long senderAccountId, Long receiverAccountId,
+      String amount) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(new BigDecimal(amount));
+    return paymentRequest;
+  }
+}
@@ -0,0 +1,222 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccounts;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.archive.PaymentArchive;
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.reconciliation.BalanceReconciler;
+import com.rindago.payment.services.HotAccountProperties;
+import com.rindago.payment.services.PaymentService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Reconciles the balances with ranges of 2 account IDs, each time with a new in-memory database
+ */
+class BalanceReconciliationTest {
+
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  @TempDir
+  private Path directory;
+
+  @Test
+  void test_1_eachRunFoldsOnlyTheNewPayments() {
+    try (var context = start()) {
+      var accounts = createAccounts(context, "100.00", "100.00", "100.00", "100.00", "100.00");
+      context.getBean(HotAccountProperties.class).getAccountIds().add(accounts.get(0).getId());
+      makePayments(context, accounts, 20);
+      var reconciler = context.getBean(BalanceReconciler.class);
+
+      var report = reconciler.reconcile();
+      assertEquals(5, report.getAccounts());
+      assertEquals(20, report.getPayments());
+      assertEquals(0, report.getRecountedAccounts());
+      assertEquals(0, report.getMismatchCount());
+
+      makePayments(context, accounts, 7);
+      report = reconciler.reconcile();
+      assertEquals(7, report.getPayments());
+      assertEquals(0, report.getMismatchCount());
+      assertEquals(lastPaymentId(context), report.getLastPaymentId());
+      assertEquals(0, reconciler.reconcile().getPayments());
+    }
+  }
+
+  @Test
+  void test_2_changedBalanceIsReported() {
+    try (var context = start()) {
+      var accounts = createAccounts(context, "100.00", "100.00", "100.00", "100.00", "100.00");
+      makePayments(context, accounts, 20);
+      var reconciler = context.getBean(BalanceReconciler.class);
+      reconciler.reconcile();
+
+      var account = accounts.get(3);
+      var jdbcTemplate = context.getBean(JdbcTemplate.class);
+      var balance = jdbcTemplate.queryForObject("SELECT balance FROM account WHERE id = ?",
+          BigDecimal.class, account.getId());
+      jdbcTemplate.update("UPDATE account SET balance = balance + 0.01 WHERE id = ?",
+          account.getId());
+
+      var report = reconciler.reconcile();
+      assertEquals(1, report.getMismatchCount());
+      assertEquals(1, report.getRecountedAccounts());
+      var mismatch = report.getMismatches().get(0);
+      assertEquals(account.getId(), mismatch.getAccountId());
+      assertEquals(balance.add(new BigDecimal("0.01")), mismatch.getBalance());
+      assertEquals(balance, mismatch.getExpectedBalance());
+      assertEquals(1, context.getBean(MeterRegistry.class).get("reconciliation.mismatches")
+          .gauge().value());
+      assertEquals(report, reconciler.getLastReport().orElseThrow());
+    }
+  }
+
+  @Test
+  void test_3_paymentCommittedAfterGreaterIdsIsRecounted() {
+    try (var context = start()) {
+      var accounts = createAccounts(context, "100.00", "100.00", "100.00", "100.00", "100.00");
+      makePayments(context, accounts, 20);
+      var sender = accounts.get(1).getId();
+      var receiver = accounts.get(2).getId();
+      insertPayment(context, 1_000_000, sender, receiver);
+      var reconciler = context.getBean(BalanceReconciler.class);
+      assertEquals(1_000_000, reconciler.reconcile().getLastPaymentId());
+
+      // A payment whose ID was allocated before the checkpoint, but which only committed now
+      insertPayment(context, 999_999, receiver, sender);
+
+      var report = reconciler.reconcile();
+      assertEquals(2, report.getRecountedAccounts());
+      assertEquals(0, report.getMismatchCount());
+      report = reconciler.reconcile();
+      assertEquals(0, report.getRecountedAccounts()); // The net payments have been corrected.
+      assertEquals(0, report.getMismatchCount());
+    }
+  }
+
+  @Test
+  void test_4_archivedPaymentsAreReconciled() throws Exception {
+    try (var context = start("--payment.archive.enabled=true",
+        "--payment.archive.directory=" + directory, "--payment.archive.interval=PT1H")) {
+      var accounts = createAccounts(context, "100.00", "100.00", "100.00", "100.00", "100.00");
+      var jdbcTemplate = context.getBean(JdbcTemplate.class);
+      var random = new Random(42);
+      var day = Instant.parse("2020-10-01T00:00:00Z");
+      for (var i = 0; i < 30; i++) {
+        var sender = random.nextInt(5);
+        var receiver = (sender + 1 + random.nextInt(4)) % 5;
+        jdbcTemplate.update("INSERT INTO payment (id, sender_account_id, receiver_account_id, "
+                + "amount, timestamp) VALUES (?, ?, ?, 0.10, ?)", 800_000_000L + i,
+            accounts.get(sender).getId(), accounts.get(receiver).getId(),
+            Timestamp.from(day.plusSeconds(i * 7200L)));
+        jdbcTemplate.update("UPDATE account SET balance = balance - 0.10 WHERE id = ?",
+            accounts.get(sender).getId());
+        jdbcTemplate.update("UPDATE account SET balance = balance + 0.10 WHERE id = ?",
+            accounts.get(receiver).getId());
+      }
+      assertEquals(3, context.getBean(PaymentArchive.class).archive());
+      makePayments(context, accounts, 10);
+
+      var reconciler = context.getBean(BalanceReconciler.class);
+      var report = reconciler.reconcile();
+      assertEquals(40, report.getPayments());
+      assertEquals(0, report.getMismatchCount());
+
+      // The recount reads the archive as well.
+      jdbcTemplate.update("UPDATE account SET balance = balance - 0.01 WHERE id = ?",
+          accounts.get(4).getId());
+      report = reconciler.reconcile();
+      assertEquals(1, report.getMismatchCount());
+      assertEquals(new BigDecimal("0.01"), report.getMismatches().get(0).getExpectedBalance()
+          .subtract(report.getMismatches().get(0).getBalance()));
+    }
+  }
+
+  @Test
+  void test_5_runPausesWhilePaymentLatencyIsOverBudget() {
+    try (var context = start("--payment.reconciliation.latency-budget=PT0.01S",
+        "--payment.reconciliation.throttle-pause=PT0.05S",
+        "--management.metrics.distribution.expiry[http.server.requests]=PT1S")) {
+      var accounts = createAccounts(context, "100.00", "100.00", "100.00", "100.00", "100.00");
+      makePayments(context, accounts, 20);
+      var meterRegistry = context.getBean(MeterRegistry.class);
+      var paymentTimer = Timer.builder("http.server.requests").tag("uri", "/payment")
+          .register(meterRegistry);
+      for (var i = 0; i < 100; i++) {
+        paymentTimer.record(Duration.ofMillis(200));
+      }
+
+      var report = context.getBean(BalanceReconciler.class).reconcile();
+      assertThat(report.getThrottledMillis()).isGreaterThan(0);
+      assertThat(meterRegistry.get("reconciliation.throttle").timer().count()).isGreaterThan(0);
+      assertEquals(0, report.getMismatchCount());
+    }
+  }
+
+  private ConfigurableApplicationContext start(String... arguments) {
+    var allArguments = new ArrayList<>(List.of("--payment.reconciliation.enabled=true",
+        "--payment.reconciliation.interval=PT1H", "--payment.reconciliation.range-size=2",
+        "--payment.hot-accounts.compaction-interval=PT1H",
+        "--payment.idempotency.prune-interval=PT1H",
+        "--spring.datasource.url=jdbc:h2:mem:reconciliation-" + DATABASES.incrementAndGet()));
+    allArguments.addAll(List.of(arguments));
+    return new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .run(allArguments.toArray(String[]::new));
+  }
+
+  private static void makePayments(ConfigurableApplicationContext context,
+      List<AccountDto> accounts, int count) {
+    var paymentService = context.getBean(PaymentService.class);
+    var random = new Random(count);
+    for (var i = 0; i < count; i++) {
+      var sender = random.nextInt(accounts.size());
+      var paymentRequest = new PaymentRequest();
+      paymentRequest.setSenderAccountId(accounts.get(sender).getId());
+      paymentRequest.setReceiverAccountId(
+          accounts.get((sender + 1 + random.nextInt(accounts.size() - 1)) % accounts.size())
+              .getId());
+      paymentRequest.setAmount(BigDecimal.valueOf(1 + random.nextInt(100), 2));
+      paymentService.makePayment(paymentRequest, null);
+    }
+  }
+
+  private static void insertPayment(ConfigurableApplicationContext context, long id,
+      long senderAccountId, long receiverAccountId) {
+    var jdbcTemplate = context.getBean(JdbcTemplate.class);
+    context.getBean(TransactionTemplate.class).executeWithoutResult(status -> {
+      jdbcTemplate.update("INSERT INTO payment (id, sender_account_id, receiver_account_id, "
+              + "amount, timestamp) VALUES (?, ?, ?, 1.00, ?)", id, senderAccountId,
+          receiverAccountId, Timestamp.from(Instant.now()));
+      jdbcTemplate.update("UPDATE account SET balance = balance - 1.00 WHERE id = ?",
+          senderAccountId);
+      jdbcTemplate.update("UPDATE account SET balance = balance + 1.00 WHERE id = ?",
+          receiverAccountId);
+    });
+  }
+
+  private static long lastPaymentId(ConfigurableApplicationContext context) {
+    return context.getBean(JdbcTemplate.class)
+        .queryForObject("SELECT MAX(id) FROM payment", Long.class);
+  }
+}
@@ -0,0 +1,140 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.locks.AccountLockManager;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.repositories.PaymentRepository;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+
+@SpringBootTest(classes = PaymentApplication.class)
+class ConcurrentPaymentStressTest {
+
+  private static final int THREADS = 16;
+
+  @Autowired
+  private PaymentService paymentService;
+  @Autowired
+  private AccountLockManager accountLockManager;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private PaymentRepository paymentRepository;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * To clean up the database after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "payment", "account");
+  }
+
+  @Test
+  void test_1_randomConcurrentPaymentsConserveTheTotalBalance() throws Exception {
+    var accountIds = createAccounts(8, "100.00");
+    var succeeded = new AtomicInteger();
+
+    runConcurrently(3000, () -> {
+      var random = ThreadLocalRandom.current();
+      try {
+        paymentService.makePayment(paymentRequest(
+            accountIds.get(random.nextInt(accountIds.size())),
+            accountIds.get(random.nextInt(accountIds.size())),
+            BigDecimal.valueOf(random.nextInt(1, 5000), 2)));
+        succeeded.incrementAndGet();
+      } catch (RequirementException e) {
+        // Same account or insufficient balance, both expected with random transfers
+      }
+    });
+
+    assertEquals(new BigDecimal("800.00"), jdbcTemplate.queryForObject(
+        "SELECT SUM(balance) FROM account", BigDecimal.class));
+    assertEquals(0, JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "account", "balance < 0"));
+    assertEquals(succeeded.get(), paymentRepository.count());
+
+    // No update is lost: each balance is its opening balance plus received minus sent amounts.
+    for (var accountId : accountIds) {
+      var expectedBalance = jdbcTemplate.queryForObject("SELECT 100.00"
+              + " + COALESCE((SELECT SUM(amount) FROM payment WHERE receiver_account_id = ?), 0)"
+              + " - COALESCE((SELECT SUM(amount) FROM payment WHERE sender_account_id = ?), 0)",
+          BigDecimal.class, accountId, accountId);
+      assertThat(accountRepository.findById(accountId).orElseThrow().getBalance().toBigDecimal())
+          .isEqualByComparingTo(expectedBalance);
+    }
+  }
+
+  @Test
+  void test_2_opposingPaymentsBetweenTwoAccountsDoNotDeadlock() {
+    var accountIds = createAccounts(2, "1000.00");
+    var contendedBefore = accountLockManager.getStatistics().getContendedAcquisitions();
+
+    assertTimeoutPreemptively(Duration.ofSeconds(60), () -> runConcurrently(2000, () -> {
+      var forward = ThreadLocalRandom.current().nextBoolean();
+      paymentService.makePayment(paymentRequest(accountIds.get(forward ? 0 : 1),
+          accountIds.get(forward ? 1 : 0), new BigDecimal("0.01")));
+    }));
+
+    assertEquals(new BigDecimal("2000.00"), jdbcTemplate.queryForObject(
+        "SELECT SUM(balance) FROM account", BigDecimal.class));
+    assertEquals(2000, paymentRepository.count());
+    assertThat(accountLockManager.getStatistics().getContendedAcquisitions())
+        .isGreaterThan(contendedBefore);
+  }
+
+  private List<Long> createAccounts(int count, String balance) {
+    var accountIds = new ArrayList<Long>();
+    for (var i = 0; i < count; i++) {
+      accountIds.add(createAccount(accountRepository, "Stress Account " + i, balance));
+    }
+    return accountIds;
+  }
+
+  private static void runConcurrently(int payments, Runnable payment) throws Exception {
+    var tasks = new ArrayList<Callable<Void>>();
+    for (var i = 0; i < payments; i++) {
+      tasks.add(() -> {
+        payment.run();
+        return null;
+      });
+    }
+    var executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static PaymentRequest paymentRequest(Long senderAccountId, Long receiverAccountId,
+      BigDecimal amount) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(amount);
+    return paymentRequest;
+  }
+}
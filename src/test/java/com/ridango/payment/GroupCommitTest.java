@@ -0,0 +1,180 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccount;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.engines.PaymentGroupCommitter;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.repositories.PaymentRepository;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest(classes = PaymentApplication.class, properties = {
+    "payment.jpa.group-commit=true",
+    "payment.jpa.group-commit-max-size=8",
+    "payment.jpa.group-commit-max-wait=PT0.05S"})
+class GroupCommitTest {
+
+  @Autowired
+  private PaymentService paymentService;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private PaymentRepository paymentRepository;
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+  @Autowired
+  private ApplicationContext applicationContext;
+
+  /**
+   * To clean up the database after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "idempotency_key", "payment", "account");
+  }
+
+  @Test
+  void test_1_concurrentPaymentsShareTransactionsAndAreRejectedAlone() throws Exception {
+    var rider = createAccount(accountRepository, "Group Rider", "100.00");
+    var poorRider = createAccount(accountRepository, "Group Poor Rider", "1.00");
+    var operator = createAccount(accountRepository, "Group Operator", "0.00");
+
+    var requests = new ArrayList<PaymentRequest>();
+    for (var i = 0; i < 20; i++) {
+      requests.add(paymentRequest(rider, operator, "2.00"));
+    }
+    requests.add(paymentRequest(poorRider, operator, "5.00")); // Not enough balance
+    requests.add(paymentRequest(rider, -1L, "1.00")); // No such receiver
+    requests.add(paymentRequest(rider, operator, "0.001")); // Too many decimal places
+
+    var outcomes = makeConcurrently(requests);
+    var paymentIds = new HashSet<Long>();
+    for (var i = 0; i < 20; i++) {
+      paymentIds.add(((PaymentDto) outcomes.get(i)).getId());
+    }
+    assertEquals(20, paymentIds.size());
+    assertEquals(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE, outcomes.get(20));
+    assertEquals(ExceptionCode.RECEIVER_ACCOUNT_NOT_FOUND, outcomes.get(21));
+    assertEquals(ExceptionCode.MORE_THAN_TWO_DECIMAL_PLACES, outcomes.get(22));
+
+    assertEquals(20, paymentRepository.count());
+    assertEquals(new BigDecimal("60.00"), balanceOf(rider));
+    assertEquals(new BigDecimal("1.00"), balanceOf(poorRider));
+    assertEquals(new BigDecimal("40.00"), balanceOf(operator));
+    // The payments of a group share the timestamp of its transaction.
+    var transactions = jdbcTemplate.queryForObject(
+        "SELECT COUNT(DISTINCT timestamp) FROM payment", Integer.class);
+    assertTrue(transactions < 20, transactions + " transactions for 20 payments");
+  }
+
+  @Test
+  void test_2_idempotencyKeysAreRecordedByTheGroup() {
+    var rider = createAccount(accountRepository, "Keyed Group Rider", "10.00");
+    var operator = createAccount(accountRepository, "Keyed Group Operator", "0.00");
+
+    var payment = paymentService.makePayment(paymentRequest(rider, operator, "3.00"), "group-key");
+    assertEquals(payment.getId(),
+        paymentService.makePayment(paymentRequest(rider, operator, "3.00"), "group-key").getId());
+    assertEquals(payment.getId(), jdbcTemplate.queryForObject(
+        "SELECT payment_id FROM idempotency_key WHERE idempotency_key = 'group-key'", Long.class));
+    assertEquals(new BigDecimal("7.00"), balanceOf(rider));
+  }
+
+  @Test
+  void test_3_paymentWithinTheCallersTransactionIsMadeAlone() {
+    var rider = createAccount(accountRepository, "Transactional Rider", "10.00");
+    var operator = createAccount(accountRepository, "Transactional Operator", "0.00");
+
+    transactionTemplate.executeWithoutResult(status -> {
+      var payment = paymentService.makePayment(paymentRequest(rider, operator, "4.00"));
+      assertNotNull(payment.getId());
+      status.setRollbackOnly();
+    });
+    assertEquals(0, paymentRepository.count());
+    assertEquals(new BigDecimal("10.00"), balanceOf(rider));
+  }
+
+  @Test
+  @DirtiesContext
+  void test_4_paymentAfterTheCommitterHasStoppedIsMadeAlone() {
+    var rider = createAccount(accountRepository, "Late Rider", "10.00");
+    var operator = createAccount(accountRepository, "Late Operator", "0.00");
+
+    applicationContext.getAutowireCapableBeanFactory()
+        .destroyBean(applicationContext.getBean(PaymentGroupCommitter.class));
+    var payment = assertTimeoutPreemptively(Duration.ofSeconds(10),
+        () -> paymentService.makePayment(paymentRequest(rider, operator, "4.00")));
+    assertNotNull(payment.getId());
+    assertEquals(new BigDecimal("6.00"), balanceOf(rider));
+  }
+
+  /**
+   * @return For each request, the payment made or the code of the requirement it has violated
+   */
+  private List<Object> makeConcurrently(List<PaymentRequest> requests) throws Exception {
+    var start = new CountDownLatch(1);
+    var executor = Executors.newFixedThreadPool(requests.size());
+    try {
+      var futures = new ArrayList<Future<PaymentDto>>();
+      for (var request : requests) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          return paymentService.makePayment(request);
+        }));
+      }
+      start.countDown();
+      var outcomes = new ArrayList<Object>();
+      for (var future : futures) {
+        try {
+          outcomes.add(future.get());
+        } catch (ExecutionException e) {
+          outcomes.add(((RequirementException) e.getCause()).getExceptionCode());
+        }
+      }
+      return outcomes;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private BigDecimal balanceOf(Long accountId) {
+    return accountRepository.findById(accountId).orElseThrow().getBalance().toBigDecimal();
+  }
+
+  private static PaymentRequest paymentRequest(Long senderAccountId, Long receiverAccountId,
+      String amount) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(new BigDecimal(amount));
+    return paymentRequest;
+  }
+}
@@ -0,0 +1,160 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccount;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.engines.JpaEngineProperties;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.repositories.PaymentRepository;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+
+@SpringBootTest(classes = PaymentApplication.class)
+class GuardedUpdatePaymentTest {
+
+  private static final long MISSING_ACCOUNT_ID = -1L;
+
+  @Autowired
+  private PaymentService paymentService;
+  @Autowired
+  private JpaEngineProperties jpaEngineProperties;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private PaymentRepository paymentRepository;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * To clean up the database and switch guarded updates back off after the execution of each test
+   * case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    jpaEngineProperties.setGuardedUpdates(false);
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "payment", "account");
+  }
+
+  @Test
+  void test_1_guardedUpdatesHaveTheSameOutcomesAsTheEntityPath() {
+    // Each scenario: sender and receiver (0 = rich account, 1 = empty account, -1 = missing
+    // account) and amount
+    var scenarios = List.of(
+        new Object[] {0, 1, "40.00"},
+        new Object[] {0, 1, "100.00"},
+        new Object[] {0, 1, "100.01"},
+        new Object[] {1, 0, "0.01"},
+        new Object[] {-1, 1, "1.00"},
+        new Object[] {0, -1, "1.00"},
+        new Object[] {0, -1, "1000.00"},
+        new Object[] {-1, -1, "1.00"},
+        new Object[] {0, 0, "1.00"},
+        new Object[] {0, 0, "1000.00"},
+        new Object[] {0, 1, "1.001"},
+        new Object[] {0, 1, "0"});
+
+    for (var scenario : scenarios) {
+      var entityOutcome = outcomeOf(false, (int) scenario[0], (int) scenario[1],
+          (String) scenario[2]);
+      var guardedOutcome = outcomeOf(true, (int) scenario[0], (int) scenario[1],
+          (String) scenario[2]);
+      assertEquals(entityOutcome, guardedOutcome,
+          () -> "Outcomes differ for " + List.of(scenario));
+    }
+  }
+
+  @Test
+  void test_2_concurrentGuardedPaymentsConserveTheTotalBalance() throws Exception {
+    jpaEngineProperties.setGuardedUpdates(true);
+    var accountIds = new ArrayList<Long>();
+    for (var i = 0; i < 6; i++) {
+      accountIds.add(createAccount(accountRepository, "Guarded Account " + i, "100.00"));
+    }
+    var succeeded = new AtomicInteger();
+
+    var tasks = new ArrayList<Callable<Void>>();
+    for (var i = 0; i < 2000; i++) {
+      tasks.add(() -> {
+        var random = ThreadLocalRandom.current();
+        try {
+          paymentService.makePayment(paymentRequest(
+              accountIds.get(random.nextInt(accountIds.size())),
+              accountIds.get(random.nextInt(accountIds.size())),
+              BigDecimal.valueOf(random.nextInt(1, 5000), 2)));
+          succeeded.incrementAndGet();
+        } catch (RequirementException e) {
+          // Same account or insufficient balance, both expected with random transfers
+        }
+        return null;
+      });
+    }
+    var executor = Executors.newFixedThreadPool(16);
+    try {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(new BigDecimal("600.00"), jdbcTemplate.queryForObject(
+        "SELECT SUM(balance) FROM account", BigDecimal.class));
+    assertEquals(0, JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "account", "balance < 0"));
+    assertEquals(succeeded.get(), paymentRepository.count());
+    // Each payment has bumped the versions of both of its accounts, as with the entity path.
+    assertEquals(2L * succeeded.get(), jdbcTemplate.queryForObject(
+        "SELECT SUM(version) FROM account", Long.class));
+  }
+
+  /**
+   * Makes a payment between freshly created accounts, a rich one and an empty one, and describes
+   * its outcome: the exception code or the payment, and the balances of both accounts afterwards
+   */
+  private List<Object> outcomeOf(boolean guardedUpdates, int sender, int receiver, String amount) {
+    jpaEngineProperties.setGuardedUpdates(guardedUpdates);
+    var accountIds = List.of(createAccount(accountRepository, "Rich Account", "100.00"),
+        createAccount(accountRepository, "Empty Account", "0.00"));
+
+    Object result;
+    try {
+      var payment = paymentService.makePayment(paymentRequest(
+          sender < 0 ? MISSING_ACCOUNT_ID : accountIds.get(sender),
+          receiver < 0 ? MISSING_ACCOUNT_ID : accountIds.get(receiver),
+          new BigDecimal(amount)));
+      result = List.of(payment.getAmount(), paymentRepository.count());
+    } catch (RequirementException e) {
+      result = e.getExceptionCode();
+    }
+    var outcome = List.of(result,
+        accountRepository.findById(accountIds.get(0)).orElseThrow().getBalance(),
+        accountRepository.findById(accountIds.get(1)).orElseThrow().getBalance());
+
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "payment", "account");
+    return outcome;
+  }
+
+  private static PaymentRequest paymentRequest(Long senderAccountId, Long receiverAccountId,
+      BigDecimal amount) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(amount);
+    return paymentRequest;
+  }
+}
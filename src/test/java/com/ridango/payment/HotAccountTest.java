@@ -0,0 +1,190 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.saveAccount;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentBatchMode;
+import com.rindago.payment.dtos.PaymentBatchRequest;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.repositories.AccountBalanceDeltaRepository;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.services.HotAccountProperties;
+import com.rindago.payment.services.HotAccountService;
+import com.rindago.payment.services.PaymentBatchService;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+
+// Its own database, so that the compaction schedulers of other cached test contexts do not fold
+// the deltas of its hot accounts in the middle of a test.
+@SpringBootTest(classes = PaymentApplication.class, properties = {
+    "payment.hot-accounts.compaction-interval=PT1H",
+    "spring.datasource.url=jdbc:h2:mem:hot-accounts"})
+class HotAccountTest {
+
+  @Autowired
+  private PaymentService paymentService;
+  @Autowired
+  private HotAccountService hotAccountService;
+  @Autowired
+  private PaymentBatchService paymentBatchService;
+  @Autowired
+  private HotAccountProperties hotAccountProperties;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private AccountBalanceDeltaRepository accountBalanceDeltaRepository;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * To clean up the database and the hot account flags after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    hotAccountProperties.getAccountIds().clear();
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "account_balance_delta", "payment", "account");
+  }
+
+  @Test
+  void test_1_creditsToAHotAccountAreAppendedAndCompacted() {
+    var rider = saveAccount(accountRepository, "Hot Rider", "100.00");
+    var collector = createHotAccount("Hot Collector 1", "10.00");
+
+    paymentService.makePayment(paymentRequest(rider.getId(), collector.getId(), "1.50"));
+    paymentService.makePayment(paymentRequest(rider.getId(), collector.getId(), "2.50"));
+
+    // The collector's row is untouched, its credits are pending deltas.
+    var collectorBeforeCompaction = accountRepository.findById(collector.getId()).orElseThrow();
+    assertEquals(new BigDecimal("10.00"), collectorBeforeCompaction.getBalance().toBigDecimal());
+    assertEquals(collector.getVersion(), collectorBeforeCompaction.getVersion());
+    assertEquals(2, accountBalanceDeltaRepository.count());
+    assertEquals(new BigDecimal("14.00"), hotAccountService.getBalance(collector.getId()));
+
+    hotAccountService.compact();
+
+    var collectorAfterCompaction = accountRepository.findById(collector.getId()).orElseThrow();
+    assertEquals(new BigDecimal("14.00"), collectorAfterCompaction.getBalance().toBigDecimal());
+    assertEquals(0, accountBalanceDeltaRepository.count());
+    assertEquals(new BigDecimal("96.00"),
+        accountRepository.findById(rider.getId()).orElseThrow().getBalance().toBigDecimal());
+  }
+
+  @Test
+  void test_2_debitsFromAHotAccountCountPendingCreditsAndKeepTheBalanceNonNegative() {
+    var rider = saveAccount(accountRepository, "Hot Rider", "100.00");
+    var collector = createHotAccount("Hot Collector 2", "0.00");
+    var operator = saveAccount(accountRepository, "Operator", "0.00");
+
+    paymentService.makePayment(paymentRequest(rider.getId(), collector.getId(), "60.00"));
+
+    // Only the pending credit makes this payout possible.
+    paymentService.makePayment(paymentRequest(collector.getId(), operator.getId(), "45.00"));
+    var exception = assertThrows(RequirementException.class, () -> paymentService.makePayment(
+        paymentRequest(collector.getId(), operator.getId(), "15.01")));
+    assertEquals(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE, exception.getExceptionCode());
+
+    assertEquals(new BigDecimal("15.00"),
+        accountRepository.findById(collector.getId()).orElseThrow().getBalance().toBigDecimal());
+    assertEquals(0, accountBalanceDeltaRepository.count());
+    assertEquals(new BigDecimal("45.00"),
+        accountRepository.findById(operator.getId()).orElseThrow().getBalance().toBigDecimal());
+  }
+
+  @Test
+  void test_3_concurrentCreditsAndCompactionsConserveTheTotalBalance() throws Exception {
+    var collector = createHotAccount("Hot Collector 3", "0.00");
+    var riderIds = new ArrayList<Long>();
+    for (var i = 0; i < 16; i++) {
+      riderIds.add(saveAccount(accountRepository, "Hot Rider " + i, "100.00").getId());
+    }
+
+    var tasks = new ArrayList<Callable<Void>>();
+    for (var i = 0; i < 1600; i++) {
+      var riderId = riderIds.get(i % riderIds.size());
+      tasks.add(() -> {
+        paymentService.makePayment(paymentRequest(riderId, collector.getId(), "0.50"));
+        return null;
+      });
+      if (i % 100 == 0) {
+        tasks.add(() -> {
+          hotAccountService.compact();
+          return null;
+        });
+      }
+    }
+    var executor = Executors.newFixedThreadPool(16);
+    try {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(new BigDecimal("800.00"), hotAccountService.getBalance(collector.getId()));
+    hotAccountService.compact();
+    assertEquals(new BigDecimal("800.00"),
+        accountRepository.findById(collector.getId()).orElseThrow().getBalance().toBigDecimal());
+    assertEquals(new BigDecimal("1600.00"), jdbcTemplate.queryForObject(
+        "SELECT SUM(balance) FROM account", BigDecimal.class)); // 16 * 100 + 0 + 800 - 800
+  }
+
+  @Test
+  void test_4_batchCountsPendingCreditsOfHotSendersAndAppendsCreditsOfHotReceivers() {
+    var rider = saveAccount(accountRepository, "Hot Rider", "100.00");
+    var collector = createHotAccount("Hot Collector 4", "0.00");
+    var otherCollector = createHotAccount("Hot Collector 5", "0.00");
+    var operator = saveAccount(accountRepository, "Operator", "0.00");
+    paymentService.makePayment(paymentRequest(rider.getId(), collector.getId(), "60.00"));
+
+    var batchRequest = new PaymentBatchRequest();
+    batchRequest.setMode(PaymentBatchMode.ALL_OR_NOTHING);
+    batchRequest.setPayments(List.of(
+        paymentRequest(rider.getId(), otherCollector.getId(), "10.00"),
+        // Only the pending credit makes this payout possible.
+        paymentRequest(collector.getId(), operator.getId(), "45.00"),
+        paymentRequest(rider.getId(), otherCollector.getId(), "5.00")));
+    assertEquals(3, paymentBatchService.makePayments(batchRequest).getCompleted());
+
+    assertEquals(new BigDecimal("15.00"),
+        accountRepository.findById(collector.getId()).orElseThrow().getBalance().toBigDecimal());
+    // The other collector's row is untouched, its credits are one pending delta.
+    var otherCollectorAfterBatch = accountRepository.findById(otherCollector.getId()).orElseThrow();
+    assertEquals(new BigDecimal("0.00"), otherCollectorAfterBatch.getBalance().toBigDecimal());
+    assertEquals(otherCollector.getVersion(), otherCollectorAfterBatch.getVersion());
+    assertEquals(1, accountBalanceDeltaRepository.count());
+    assertEquals(new BigDecimal("15.00"), hotAccountService.getBalance(otherCollector.getId()));
+    assertEquals(new BigDecimal("25.00"),
+        accountRepository.findById(rider.getId()).orElseThrow().getBalance().toBigDecimal());
+  }
+
+  private Account createHotAccount(String accountName, String accountBalance) {
+    var account = saveAccount(accountRepository, accountName, accountBalance);
+    hotAccountProperties.getAccountIds().add(account.getId());
+    return account;
+  }
+
+  private static PaymentRequest paymentRequest(Long senderAccountId, Long receiverAccountId,
+      String amount) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(new BigDecimal(amount));
+    return paymentRequest;
+  }
+}
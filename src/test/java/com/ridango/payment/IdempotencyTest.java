@@ -0,0 +1,201 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccount;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.repositories.PaymentRepository;
+import com.rindago.payment.services.IdempotencyService;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+// Its own database, so that the idempotency key pruners of other cached test contexts do not
+// delete its expired keys in the middle of a test.
+@SpringBootTest(classes = PaymentApplication.class, properties = {
+    "payment.idempotency.prune-batch-size=10",
+    "payment.idempotency.prune-interval=PT1H",
+    "spring.datasource.url=jdbc:h2:mem:idempotency"})
+@AutoConfigureMockMvc
+class IdempotencyTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+  @Autowired
+  private ObjectMapper objectMapper;
+  @Autowired
+  private PaymentService paymentService;
+  @Autowired
+  private IdempotencyService idempotencyService;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private PaymentRepository paymentRepository;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * To clean up the database after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "idempotency_key", "payment", "account");
+  }
+
+  @Test
+  void test_1_retriesWithTheSameKeyReturnTheFirstPayment() throws Exception {
+    var sender = createAccount(accountRepository, "Idempotent Sender", "100.00");
+    var receiver = createAccount(accountRepository, "Idempotent Receiver", "0.00");
+    var key = UUID.randomUUID().toString();
+    var body = objectMapper.writeValueAsString(paymentRequest(sender, receiver, "30.00"));
+
+    var first = postPayment(key, body);
+    var retry = postPayment(key, body);
+    assertEquals(first, retry);
+    var withoutKey = objectMapper.readValue(mockMvc.perform(post("/payment")
+            .contentType(MediaType.APPLICATION_JSON).content(body))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray(), PaymentDto.class);
+    assertEquals(2, paymentRepository.count());
+    assertEquals(new BigDecimal("40.00"), balanceOf(sender)); // 100 - 30 - 30
+
+    // A key recorded by another node, or evicted from the cache, is found in the table.
+    var recordedKey = UUID.randomUUID().toString();
+    insertKey(recordedKey, withoutKey, Instant.now());
+    assertEquals(withoutKey.getId(), postPayment(recordedKey, body).getId());
+    assertEquals(2, paymentRepository.count());
+    assertEquals(new BigDecimal("40.00"), balanceOf(sender));
+  }
+
+  @Test
+  void test_2_concurrentDuplicatesWaitForTheFirstPayment() throws Exception {
+    var sender = createAccount(accountRepository, "Concurrent Sender", "100.00");
+    var receiver = createAccount(accountRepository, "Concurrent Receiver", "0.00");
+    var key = UUID.randomUUID().toString();
+    var request = paymentRequest(sender, receiver, "10.00");
+
+    var start = new CountDownLatch(1);
+    var executor = Executors.newFixedThreadPool(16);
+    var paymentIds = new HashSet<Long>();
+    try {
+      var futures = new ArrayList<Future<PaymentDto>>();
+      for (var i = 0; i < 16; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          return paymentService.makePayment(request, key);
+        }));
+      }
+      start.countDown();
+      for (var future : futures) {
+        paymentIds.add(future.get().getId());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(1, paymentIds.size());
+    assertEquals(1, paymentRepository.count());
+    assertEquals(new BigDecimal("90.00"), balanceOf(sender));
+    assertEquals(1, JdbcTestUtils.countRowsInTable(jdbcTemplate, "idempotency_key"));
+  }
+
+  @Test
+  void test_3_reusedInvalidAndFailedKeysAreHandled() throws Exception {
+    var sender = createAccount(accountRepository, "Reuse Sender", "20.00");
+    var receiver = createAccount(accountRepository, "Reuse Receiver", "0.00");
+    var key = UUID.randomUUID().toString();
+
+    postPayment(key, objectMapper.writeValueAsString(paymentRequest(sender, receiver, "5.00")));
+    mockMvc.perform(post("/payment").header("Idempotency-Key", key)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(paymentRequest(sender, receiver, "6.00"))))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.errorCode").value(ExceptionCode.IDEMPOTENCY_KEY_REUSED.name()));
+    mockMvc.perform(post("/payment").header("Idempotency-Key", "k".repeat(256))
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(paymentRequest(sender, receiver, "5.00"))))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.errorCode").value(ExceptionCode.INVALID_IDEMPOTENCY_KEY.name()));
+
+    // A rejected payment does not use up its key, so it can be retried once it can be made.
+    var failedKey = UUID.randomUUID().toString();
+    var tooMuch = paymentRequest(sender, receiver, "50.00");
+    var exception = assertThrows(RequirementException.class,
+        () -> paymentService.makePayment(tooMuch, failedKey));
+    assertEquals(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE, exception.getExceptionCode());
+    jdbcTemplate.update("UPDATE account SET balance = 100.00 WHERE id = ?", sender);
+    var payment = paymentService.makePayment(tooMuch, failedKey);
+    assertEquals(new BigDecimal("50.00"), payment.getAmount());
+    assertEquals(2, paymentRepository.count());
+  }
+
+  @Test
+  void test_4_expiredKeysArePrunedInBatches() {
+    var payment = new PaymentDto(1L, 1L, 2L, new BigDecimal("1.00"), Instant.now());
+    var expired = Instant.now().minus(Duration.ofHours(25));
+    for (var i = 0; i < 25; i++) {
+      insertKey("expired-" + i, payment, expired);
+    }
+    insertKey("fresh", payment, Instant.now());
+
+    assertEquals(25, idempotencyService.pruneExpiredKeys());
+    assertEquals(1, JdbcTestUtils.countRowsInTable(jdbcTemplate, "idempotency_key"));
+    assertEquals(0, idempotencyService.pruneExpiredKeys());
+  }
+
+  private PaymentDto postPayment(String key, String body) throws Exception {
+    return objectMapper.readValue(mockMvc.perform(post("/payment")
+            .header("Idempotency-Key", key)
+            .contentType(MediaType.APPLICATION_JSON).content(body))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray(), PaymentDto.class);
+  }
+
+  private void insertKey(String key, PaymentDto payment, Instant createdAt) {
+    jdbcTemplate.update("INSERT INTO idempotency_key (idempotency_key, payment_id, "
+        + "sender_account_id, receiver_account_id, amount, payment_timestamp, created_at) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?)", key, payment.getId(), payment.getSenderAccountId(),
+        payment.getReceiverAccountId(), payment.getAmount(), Timestamp.from(payment.getTimestamp()),
+        Timestamp.from(createdAt));
+  }
+
+  private BigDecimal balanceOf(Long accountId) {
+    return accountRepository.findById(accountId).orElseThrow().getBalance().toBigDecimal();
+  }
+
+  private static PaymentRequest paymentRequest(Long senderAccountId, Long receiverAccountId,
+      String amount) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(new BigDecimal(amount));
+    return paymentRequest;
+  }
+}
@@ -0,0 +1,231 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccounts;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.journal.JournalProperties;
+import com.rindago.payment.journal.PaymentJournal;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.services.PaymentService;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Restarts the application on the same journal directory, each time with a new in-memory database
+ */
+class JournalTest {
+
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  @TempDir
+  private Path directory;
+
+  @Test
+  void test_1_accountsPaymentsAndIdempotencyKeysSurviveARestart() {
+    List<AccountDto> accounts;
+    PaymentDto payment;
+    try (var context = start(directory)) {
+      accounts = createAccounts(context, "100.00", "50.00", "0.00");
+      payment = pay(context, accounts.get(0), accounts.get(1), "30.00", "journal-key-1");
+      pay(context, accounts.get(1), accounts.get(2), "70.00", null);
+    }
+    assertTrue(Files.exists(directory.resolve("accounts.snapshot")));
+
+    try (var context = start(directory)) {
+      assertThat(balances(context, accounts)).containsExactly(
+          new BigDecimal("70.00"), new BigDecimal("10.00"), new BigDecimal("70.00"));
+      assertEquals(2, context.getBean(JdbcTemplate.class).queryForObject(
+          "SELECT COUNT(*) FROM payment", Long.class));
+      // The retry of a payment made before the restart is answered with that payment
+      var retried = pay(context, accounts.get(0), accounts.get(1), "30.00", "journal-key-1");
+      assertEquals(payment.getId(), retried.getId());
+      assertEquals(payment.getAmount(), retried.getAmount());
+
+      var newAccount = createAccounts(context, "1.00").get(0);
+      assertThat(newAccount.getId()).isGreaterThan(accounts.get(2).getId());
+      var newPayment = pay(context, newAccount, accounts.get(0), "1.00", null);
+      assertThat(newPayment.getId()).isGreaterThan(payment.getId());
+    }
+  }
+
+  @Test
+  void test_2_paymentsAfterTheSnapshotAreReplayedOnIt() throws IOException {
+    List<AccountDto> accounts;
+    try (var context = start(directory)) {
+      accounts = createAccounts(context, "100.00", "100.00");
+      pay(context, accounts.get(0), accounts.get(1), "10.00", null);
+    } // Snapshots the accounts on shutdown
+
+    var copy = directory.resolveSibling(directory.getFileName() + "-copy");
+    try (var context = start(directory)) {
+      var lateAccount = createAccounts(context, "5.00").get(0);
+      pay(context, accounts.get(1), accounts.get(0), "25.00", null);
+      pay(context, lateAccount, accounts.get(1), "5.00", null);
+      accounts = new ArrayList<>(accounts);
+      accounts.add(lateAccount);
+      // Copied while running, so it has the journal tail but not the snapshot of the shutdown
+      FileSystemUtils.copyRecursively(directory, copy);
+    }
+
+    try (var context = start(copy)) {
+      assertThat(balances(context, accounts)).containsExactly(
+          new BigDecimal("115.00"), new BigDecimal("90.00"), new BigDecimal("0.00"));
+      // Not the balances of the snapshot, but those the accounts were created with
+      assertThat(openingBalances(context, accounts)).containsExactly(
+          new BigDecimal("100.00"), new BigDecimal("100.00"), new BigDecimal("5.00"));
+      assertEquals(3, context.getBean(JdbcTemplate.class).queryForObject(
+          "SELECT COUNT(*) FROM payment", Long.class));
+    } finally {
+      FileSystemUtils.deleteRecursively(copy);
+    }
+  }
+
+  @Test
+  void test_3_tornRecordAtTheEndIsDiscardedAndOverwritten() throws Exception {
+    var journalProperties = new JournalProperties();
+    journalProperties.setDirectory(directory);
+    var journal = new PaymentJournal(journalProperties);
+    journal.open();
+    for (var i = 1; i <= 3; i++) {
+      journal.appendPayment(payment(i), null);
+    }
+    journal.close();
+
+    // A payment record without a key takes 65 bytes; a byte of the last one's amount is lost.
+    try (var segment = new RandomAccessFile(
+        directory.resolve("journal-00000000000000000001.log").toFile(), "rw")) {
+      segment.seek(65 * 2 + 17 + 24);
+      segment.write(0xFF);
+    }
+
+    journal = new PaymentJournal(journalProperties);
+    journal.open();
+    assertEquals(List.of(1L, 2L), replayedPaymentIds(journal));
+    journal.appendPayment(payment(4), null);
+    assertEquals(List.of(1L, 2L, 4L), replayedPaymentIds(journal));
+    journal.close();
+  }
+
+  @Test
+  void test_4_recordsGoOnInTheNextSegmentOnceOneIsFull() throws Exception {
+    var journalProperties = new JournalProperties();
+    journalProperties.setDirectory(directory);
+    journalProperties.setSegmentSize(DataSize.ofKilobytes(1));
+    var journal = new PaymentJournal(journalProperties);
+    journal.open();
+    for (var i = 1; i <= 40; i++) { // 15 payment records per segment
+      journal.appendPayment(payment(i), null);
+    }
+    journal.close();
+
+    try (var files = Files.list(directory)) {
+      assertEquals(3, files.count());
+    }
+    journal = new PaymentJournal(journalProperties);
+    journal.open();
+    assertEquals(40, replayedPaymentIds(journal).size());
+    assertTrue(Files.exists(directory.resolve("journal-00000000000000000031.log")));
+    journal.close();
+  }
+
+  @Test
+  void test_5_journalRequiresTheLedgerEngine() {
+    var exception = assertThrows(Exception.class, () -> new SpringApplicationBuilder(
+        PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .run("--payment.engine=jpa", "--payment.journal.enabled=true",
+            "--payment.journal.directory=" + directory,
+            "--spring.datasource.url=jdbc:h2:mem:journal-" + DATABASES.incrementAndGet()));
+    assertThat(exception).rootCause().hasMessageContaining("payment.engine=ledger");
+  }
+
+  @Test
+  void test_6_accountJournaledBeforeTheSnapshotButMissingFromItIsInserted() {
+    List<AccountDto> accounts;
+    try (var context = start(directory)) {
+      accounts = createAccounts(context, "100.00", "20.00", "0.00");
+      pay(context, accounts.get(0), accounts.get(2), "10.00", null);
+      // As if the second account had committed after the snapshot had read the account table
+      context.getBean(JdbcTemplate.class).update("DELETE FROM account WHERE id = ?",
+          accounts.get(1).getId());
+    } // Snapshots the accounts on shutdown, after the records of all three
+
+    try (var context = start(directory)) {
+      assertThat(balances(context, accounts)).containsExactly(
+          new BigDecimal("90.00"), new BigDecimal("20.00"), new BigDecimal("10.00"));
+    }
+  }
+
+  private static ConfigurableApplicationContext start(Path directory) {
+    return new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .run("--payment.engine=ledger", "--payment.journal.enabled=true",
+            "--payment.journal.directory=" + directory,
+            "--payment.hot-accounts.compaction-interval=PT1H",
+            "--payment.idempotency.prune-interval=PT1H",
+            "--spring.datasource.url=jdbc:h2:mem:journal-" + DATABASES.incrementAndGet());
+  }
+
+  private static PaymentDto pay(ConfigurableApplicationContext context, AccountDto sender,
+      AccountDto receiver, String amount, String idempotencyKey) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(sender.getId());
+    paymentRequest.setReceiverAccountId(receiver.getId());
+    paymentRequest.setAmount(new BigDecimal(amount));
+    return context.getBean(PaymentService.class).makePayment(paymentRequest, idempotencyKey);
+  }
+
+  private static List<BigDecimal> balances(ConfigurableApplicationContext context,
+      List<AccountDto> accounts) {
+    var jdbcTemplate = context.getBean(JdbcTemplate.class);
+    return accounts.stream().map(account -> jdbcTemplate.queryForObject(
+        "SELECT balance FROM account WHERE id = ?", BigDecimal.class, account.getId())).toList();
+  }
+
+  private static List<BigDecimal> openingBalances(ConfigurableApplicationContext context,
+      List<AccountDto> accounts) {
+    var jdbcTemplate = context.getBean(JdbcTemplate.class);
+    return accounts.stream().map(account -> jdbcTemplate.queryForObject(
+        "SELECT opening_balance FROM account WHERE id = ?", BigDecimal.class, account.getId()))
+        .toList();
+  }
+
+  private static Payment payment(long id) {
+    var payment = new Payment();
+    payment.setId(id);
+    payment.setSenderAccountId(1L);
+    payment.setReceiverAccountId(2L);
+    payment.setAmount(Money.ofCents(100));
+    payment.setTimestamp(Instant.parse("2024-01-01T00:00:00Z"));
+    return payment;
+  }
+
+  private static List<Long> replayedPaymentIds(PaymentJournal journal) throws IOException {
+    var ids = new ArrayList<Long>();
+    journal.replayPayments((sequence, payment, idempotencyKey) -> ids.add(payment.getId()));
+    return ids;
+  }
+}
@@ -0,0 +1,199 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccount;
+import static com.ridango.payment.TestAccounts.saveAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.ledger.LedgerWriteBehind;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.repositories.PaymentRepository;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+
+@SpringBootTest(classes = PaymentApplication.class,
+    properties = {"payment.engine=ledger", "payment.ledger.shards=4",
+        "payment.ledger.write-behind-batch-size=4"})
+class LedgerPaymentEngineTest {
+
+  @Autowired
+  private PaymentService paymentService;
+  @Autowired
+  private LedgerWriteBehind writeBehind;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private PaymentRepository paymentRepository;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * To clean up the database after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() throws InterruptedException {
+    writeBehind.flush();
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "idempotency_key", "payment", "account");
+  }
+
+  @Test
+  void test_1_sameShardAndCrossShardPaymentsArePersistedByWriteBehind() throws Exception {
+    var first = saveAccount(accountRepository, "Ledger Account 1", "500.00");
+    var second = saveAccount(accountRepository, "Ledger Account 2", "100.00");
+    var third = saveAccount(accountRepository, "Ledger Account 3", "0.00");
+
+    var payment = paymentService.makePayment(
+        paymentRequest(first.getId(), second.getId(), new BigDecimal("150.00")));
+    paymentService.makePayment(
+        paymentRequest(second.getId(), third.getId(), new BigDecimal("250.00")));
+    writeBehind.flush();
+
+    var paymentMade = paymentRepository.findById(payment.getId()).orElseThrow();
+    assertEquals(first.getId(), paymentMade.getSenderAccountId());
+    assertEquals(second.getId(), paymentMade.getReceiverAccountId());
+    assertEquals(new BigDecimal("150.00"), paymentMade.getAmount().toBigDecimal());
+    assertThat(paymentRepository.count()).isEqualTo(2);
+
+    assertEquals(new BigDecimal("350.00"), balanceOf(first)); // 500 - 150
+    assertEquals(new BigDecimal("0.00"), balanceOf(second)); // 100 + 150 - 250
+    assertEquals(new BigDecimal("250.00"), balanceOf(third)); // 0 + 250
+  }
+
+  @Test
+  void test_2_requirementsAreCheckedInTheSameOrderAsTheJpaEngine() throws Exception {
+    var sender = saveAccount(accountRepository, "Ledger Sender", "100.00");
+    var receiver = saveAccount(accountRepository, "Ledger Receiver", "0.00");
+
+    assertRejected(ExceptionCode.MORE_THAN_TWO_DECIMAL_PLACES,
+        paymentRequest(sender.getId(), receiver.getId(), new BigDecimal("1.001")));
+    assertRejected(ExceptionCode.NOT_POSITIVE_PAYMENT_AMOUNT,
+        paymentRequest(sender.getId(), receiver.getId(), BigDecimal.ZERO));
+    assertRejected(ExceptionCode.SENDER_ACCOUNT_NOT_FOUND,
+        paymentRequest(-1L, -2L, BigDecimal.ONE));
+    assertRejected(ExceptionCode.RECEIVER_ACCOUNT_NOT_FOUND,
+        paymentRequest(sender.getId(), -2L, BigDecimal.ONE));
+    assertRejected(ExceptionCode.SENDER_RECEIVER_THE_SAME,
+        paymentRequest(sender.getId(), sender.getId(), BigDecimal.ONE));
+    assertRejected(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE,
+        paymentRequest(sender.getId(), receiver.getId(), new BigDecimal("100.01")));
+
+    writeBehind.flush();
+    assertThat(paymentRepository.findAll()).isEmpty();
+    assertEquals(sender.getBalance().toBigDecimal(), balanceOf(sender));
+    assertEquals(receiver.getBalance().toBigDecimal(), balanceOf(receiver));
+  }
+
+  @Test
+  void test_3_concurrentPaymentsConserveTheTotalBalance() throws Exception {
+    var accountIds = new ArrayList<Long>();
+    for (var i = 0; i < 10; i++) {
+      accountIds.add(createAccount(accountRepository, "Ledger Stress " + i, "50.00"));
+    }
+    var succeeded = new AtomicInteger();
+    var tasks = new ArrayList<Callable<Void>>();
+    for (var i = 0; i < 2000; i++) {
+      tasks.add(() -> {
+        var random = ThreadLocalRandom.current();
+        var request = paymentRequest(accountIds.get(random.nextInt(accountIds.size())),
+            accountIds.get(random.nextInt(accountIds.size())),
+            BigDecimal.valueOf(random.nextInt(1, 2000), 2));
+        try {
+          paymentService.makePayment(request);
+          succeeded.incrementAndGet();
+        } catch (RequirementException e) {
+          // Same account or insufficient balance, both expected with random transfers
+        }
+        return null;
+      });
+    }
+    var executor = Executors.newFixedThreadPool(16);
+    try {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    writeBehind.flush();
+
+    assertEquals(new BigDecimal("500.00"), jdbcTemplate.queryForObject(
+        "SELECT SUM(balance) FROM account", BigDecimal.class));
+    assertEquals(0, JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "account", "balance < 0"));
+    assertEquals(succeeded.get(), paymentRepository.count());
+  }
+
+  @Test
+  void test_4_idempotencyKeyIsPersistedWithItsPayment() throws Exception {
+    var sender = saveAccount(accountRepository, "Ledger Keyed Sender", "100.00");
+    var receiver = saveAccount(accountRepository, "Ledger Keyed Receiver", "0.00");
+    var request = paymentRequest(sender.getId(), receiver.getId(), new BigDecimal("10.00"));
+
+    var payment = paymentService.makePayment(request, "ledger-key");
+    // The retry is answered before the write-behind has persisted the payment.
+    assertEquals(payment, paymentService.makePayment(request, "ledger-key"));
+    writeBehind.flush();
+
+    assertEquals(1, paymentRepository.count());
+    assertEquals(payment.getId(), jdbcTemplate.queryForObject(
+        "SELECT payment_id FROM idempotency_key WHERE idempotency_key = 'ledger-key'", Long.class));
+    assertEquals(new BigDecimal("90.00"), balanceOf(sender));
+  }
+
+  @Test
+  void test_5_fullBatchThatFailsToPersistIsRetried() throws Exception {
+    var sender = saveAccount(accountRepository, "Ledger Retry Sender", "100.00");
+    var receiver = saveAccount(accountRepository, "Ledger Retry Receiver", "0.00");
+
+    jdbcTemplate.execute("ALTER TABLE payment RENAME TO unavailable");
+    try {
+      for (var i = 0; i < 10; i++) { // Two full batches and a partial one
+        paymentService.makePayment(
+            paymentRequest(sender.getId(), receiver.getId(), new BigDecimal("1.00")));
+      }
+      writeBehind.flush(); // Fails on the first full batch
+    } finally {
+      jdbcTemplate.execute("ALTER TABLE unavailable RENAME TO payment");
+    }
+    writeBehind.flush();
+
+    assertEquals(10, paymentRepository.count());
+    assertEquals(new BigDecimal("90.00"), balanceOf(sender));
+    assertEquals(new BigDecimal("10.00"), balanceOf(receiver));
+  }
+
+  private void assertRejected(ExceptionCode exceptionCode, PaymentRequest paymentRequest) {
+    var exception = assertThrows(RequirementException.class,
+        () -> paymentService.makePayment(paymentRequest));
+    assertEquals(exceptionCode, exception.getExceptionCode());
+  }
+
+  private BigDecimal balanceOf(Account account) {
+    return accountRepository.findById(account.getId()).orElseThrow().getBalance().toBigDecimal();
+  }
+
+  private static PaymentRequest paymentRequest(Long senderAccountId, Long receiverAccountId,
+      BigDecimal amount) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(amount);
+    return paymentRequest;
+  }
+}
@@ -0,0 +1,191 @@
+package com.ridango.payment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.AccountRequest;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.metrics.AccountCreationStage;
+import com.rindago.payment.metrics.PaymentStage;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+@SpringBootTest(classes = PaymentApplication.class, properties = {
+    "payment.hot-accounts.compaction-interval=PT1H",
+    "payment.idempotency.prune-interval=PT1H"})
+@AutoConfigureMockMvc
+@AutoConfigureObservability // Exposes the Prometheus endpoint, which tests switch off by default
+class MetricsTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+  @Autowired
+  private ObjectMapper objectMapper;
+  @Autowired
+  private MeterRegistry meterRegistry;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * To clean up the database after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "payment", "account");
+  }
+
+  @Test
+  void test_1_everyStageOfAnAccountCreationAndAPaymentIsTimedOnce() throws Exception {
+    var paymentStagesBefore = paymentStageCounts();
+    var accountCreationStagesBefore = accountCreationStageCounts();
+    var committedBefore = transactions("committed");
+
+    var accounts = createAccounts("Metrics Sender", "Metrics Receiver");
+    pay(accounts.get(0), accounts.get(1), "10.00")
+        .andExpect(status().isOk());
+
+    var paymentStages = paymentStageCounts();
+    for (var stage : PaymentStage.values()) {
+      assertEquals(paymentStagesBefore.get(stage.ordinal()) + 1,
+          paymentStages.get(stage.ordinal()), stage::name);
+    }
+    var accountCreationStages = accountCreationStageCounts();
+    for (var stage : AccountCreationStage.values()) {
+      assertEquals(accountCreationStagesBefore.get(stage.ordinal()) + 1,
+          accountCreationStages.get(stage.ordinal()), stage::name);
+    }
+    assertThat(transactions("committed")).isGreaterThanOrEqualTo(committedBefore + 2);
+    assertEquals(0, meterRegistry.get("transactions.active").gauge().value());
+  }
+
+  @Test
+  void test_2_errorResponsesAreCountedByExceptionCode() throws Exception {
+    var accounts = createAccounts("Metrics Poor Sender", "Metrics Receiver");
+    var rejectedBefore = errors(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE);
+    var rolledBackBefore = transactions("rolled_back");
+
+    pay(accounts.get(0), accounts.get(1), "100.01")
+        .andExpect(status().isBadRequest());
+    pay(accounts.get(0), accounts.get(1), "100.01")
+        .andExpect(status().isBadRequest());
+    pay(accounts.get(0), accounts.get(1), "0.001")
+        .andExpect(status().isBadRequest());
+
+    assertEquals(rejectedBefore + 2, errors(ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE));
+    assertEquals(1, errors(ExceptionCode.MORE_THAN_TWO_DECIMAL_PLACES));
+    // The amount is rejected before a transaction is opened, so only the overdrafts roll back
+    assertThat(transactions("rolled_back")).isGreaterThanOrEqualTo(rolledBackBefore + 2);
+    assertEquals(0, meterRegistry.get("transactions.active").gauge().value());
+  }
+
+  @Test
+  void test_3_metricsAreExposedForPrometheus() throws Exception {
+    var accounts = createAccounts("Metrics Scraped Sender", "Metrics Receiver");
+    pay(accounts.get(0), accounts.get(1), "1.00")
+        .andExpect(status().isOk());
+
+    var scrape = mockMvc.perform(get("/actuator/prometheus"))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    assertThat(scrape)
+        .contains("payment_stage_seconds_bucket{stage=\"commit\"")
+        .contains("account_creation_stage_seconds_count{stage=\"account_insert\"}")
+        .contains("payment_errors_total{code=\"SENDER_ACCOUNT_NOT_FOUND\"}")
+        .contains("transactions_active")
+        .contains("transactions_completed_total{outcome=\"committed\"}")
+        .contains("hikaricp_connections_active");
+  }
+
+  @Test
+  void test_4_rejectedAmountOpensNoTransactionAndThrowsASharedStacklessException()
+      throws Exception {
+    var accounts = createAccounts("Metrics Careless Sender", "Metrics Receiver");
+    var completedBefore = transactions("committed") + transactions("rolled_back");
+
+    pay(accounts.get(0), accounts.get(1), "-1.00")
+        .andExpect(status().isBadRequest());
+    pay(accounts.get(0), accounts.get(1), "1.001")
+        .andExpect(status().isBadRequest());
+
+    assertEquals(completedBefore, transactions("committed") + transactions("rolled_back"));
+    var rejection = RequirementException.of(ExceptionCode.MORE_THAN_TWO_DECIMAL_PLACES);
+    assertSame(rejection, RequirementException.of(ExceptionCode.MORE_THAN_TWO_DECIMAL_PLACES));
+    assertEquals(0, rejection.getStackTrace().length);
+  }
+
+  private List<Long> createAccounts(String senderName, String receiverName) throws Exception {
+    var accountRequest = new AccountRequest();
+    accountRequest.setAccounts(new ArrayList<>());
+    for (var name : List.of(senderName, receiverName)) {
+      var account = new AccountDto();
+      account.setName(name);
+      account.setBalance(new BigDecimal("100.00"));
+      accountRequest.getAccounts().add(account);
+    }
+    var created = objectMapper.readValue(mockMvc.perform(post("/account/")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(accountRequest)))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray(), AccountDto[].class);
+    return List.of(created[0].getId(), created[1].getId());
+  }
+
+  private ResultActions pay(Long senderAccountId,
+      Long receiverAccountId, String amount) throws Exception {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(new BigDecimal(amount));
+    return mockMvc.perform(post("/payment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(objectMapper.writeValueAsString(paymentRequest)));
+  }
+
+  private List<Long> paymentStageCounts() {
+    var counts = new ArrayList<Long>();
+    for (var stage : PaymentStage.values()) {
+      counts.add(meterRegistry.get("payment.stage").tag("stage", stage.name().toLowerCase())
+          .timer().count());
+    }
+    return counts;
+  }
+
+  private List<Long> accountCreationStageCounts() {
+    var counts = new ArrayList<Long>();
+    for (var stage : AccountCreationStage.values()) {
+      counts.add(meterRegistry.get("account.creation.stage")
+          .tag("stage", stage.name().toLowerCase()).timer().count());
+    }
+    return counts;
+  }
+
+  private double errors(ExceptionCode exceptionCode) {
+    return meterRegistry.get("payment.errors").tag("code", exceptionCode.name()).counter().count();
+  }
+
+  private double transactions(String outcome) {
+    return meterRegistry.get("transactions.completed").tag("outcome", outcome).counter().count();
+  }
+}
@@ -0,0 +1,105 @@
+package com.ridango.payment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.repositories.PaymentRepository;
+import com.rindago.payment.services.PaymentService;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+
+@SpringBootTest(classes = PaymentApplication.class,
+    properties = {"payment.jpa.concurrency=optimistic", "payment.jpa.max-attempts=20"})
+class OptimisticPaymentStressTest {
+
+  @Autowired
+  private PaymentService paymentService;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private PaymentRepository paymentRepository;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  /**
+   * To clean up the database after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "payment", "account");
+  }
+
+  @Test
+  void test_1_conflictingPaymentsAreRetriedAndConserveTheTotalBalance() throws Exception {
+    var accountIds = new ArrayList<Long>();
+    for (var i = 0; i < 4; i++) {
+      var account = new Account();
+      account.setName("Optimistic Account " + i);
+      account.setBalance(Money.of(new BigDecimal("100.00")));
+      accountIds.add(accountRepository.save(account).getId());
+    }
+    var succeeded = new AtomicInteger();
+    var conflicted = new AtomicInteger();
+    var paymentInserts = meterRegistry.get("payment.stage").tag("stage", "payment_insert").timer();
+    var paymentInsertsBefore = paymentInserts.count();
+
+    var tasks = new ArrayList<Callable<Void>>();
+    for (var i = 0; i < 1000; i++) {
+      tasks.add(() -> {
+        var random = ThreadLocalRandom.current();
+        var paymentRequest = new PaymentRequest();
+        paymentRequest.setSenderAccountId(accountIds.get(random.nextInt(accountIds.size())));
+        paymentRequest.setReceiverAccountId(accountIds.get(random.nextInt(accountIds.size())));
+        paymentRequest.setAmount(BigDecimal.valueOf(random.nextInt(1, 5000), 2));
+        try {
+          paymentService.makePayment(paymentRequest);
+          succeeded.incrementAndGet();
+        } catch (RequirementException e) {
+          // Same account or insufficient balance, both expected with random transfers
+        } catch (ConcurrencyFailureException e) {
+          conflicted.incrementAndGet(); // Retry budget used up, nothing has been applied
+        }
+        return null;
+      });
+    }
+    var executor = Executors.newFixedThreadPool(8);
+    try {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(new BigDecimal("400.00"), jdbcTemplate.queryForObject(
+        "SELECT SUM(balance) FROM account", BigDecimal.class));
+    assertEquals(0, JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "account", "balance < 0"));
+    assertEquals(succeeded.get(), paymentRepository.count());
+    assertThat(conflicted.get()).isLessThan(succeeded.get());
+    // Each successful payment has bumped the versions of both of its accounts.
+    assertEquals(2L * succeeded.get(), jdbcTemplate.queryForObject(
+        "SELECT SUM(version) FROM account", Long.class));
+    // The stages of a payment are timed once, however many attempts it has taken.
+    assertEquals(succeeded.get(), paymentInserts.count() - paymentInsertsBefore);
+  }
+}
@@ -0,0 +1,172 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccounts;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.archive.PaymentArchive;
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.services.PaymentExportFormat;
+import com.rindago.payment.services.PaymentExportService;
+import com.rindago.payment.services.PaymentHistoryService;
+import com.rindago.payment.services.PaymentService;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Archives past days of payments into segments of 4 payments per block, each time with a new
+ * in-memory database
+ */
+class PaymentArchiveTest {
+
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+  private static final Instant DAY = Instant.parse("2020-10-01T00:00:00Z");
+
+  @TempDir
+  private Path directory;
+
+  @Test
+  void test_1_historyAndExportSpanTheTableAndTheArchive() throws IOException {
+    try (var context = start()) {
+      var accounts = createAccounts(context, "100.00", "100.00", "100.00");
+      insertPayments(context, accounts);
+
+      var histories = histories(context, accounts);
+      var exports = exports(context);
+      assertEquals(3, context.getBean(PaymentArchive.class).archive());
+
+      var jdbcTemplate = context.getBean(JdbcTemplate.class);
+      assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payment", Long.class));
+      assertThat(context.getBean(PaymentArchive.class).getSegments())
+          .extracting(segment -> segment.getDay().toString())
+          .containsExactly("2020-10-01", "2020-10-02", "2020-10-03");
+      assertEquals(histories, histories(context, accounts));
+      assertEquals(exports, exports(context));
+      assertEquals(0, context.getBean(PaymentArchive.class).archive());
+    }
+  }
+
+  @Test
+  void test_2_archiveIsKeptAcrossRestartsAndPaymentIdsGoOn() throws IOException {
+    String export;
+    try (var context = start()) {
+      var accounts = createAccounts(context, "100.00", "100.00", "100.00");
+      insertPayments(context, accounts);
+      context.getBean(PaymentArchive.class).archive();
+      export = export(context, null, DAY.plusSeconds(3 * 86_400), null);
+    }
+
+    // The payments of today were in the in-memory database only.
+    try (var context = start()) {
+      assertEquals(export, export(context, null, null, null));
+      var accounts = createAccounts(context, "100.00", "100.00");
+      var paymentRequest = new PaymentRequest();
+      paymentRequest.setSenderAccountId(accounts.get(0).getId());
+      paymentRequest.setReceiverAccountId(accounts.get(1).getId());
+      paymentRequest.setAmount(new BigDecimal("1.00"));
+      var payment = context.getBean(PaymentService.class).makePayment(paymentRequest, null);
+      assertThat(payment.getId())
+          .isGreaterThan(context.getBean(PaymentArchive.class).getLastPaymentId());
+    }
+  }
+
+  @Test
+  void test_3_corruptSegmentStopsTheStartup() throws IOException {
+    try (var context = start()) {
+      var accounts = createAccounts(context, "100.00", "100.00", "100.00");
+      insertPayments(context, accounts);
+      context.getBean(PaymentArchive.class).archive();
+    }
+    try (var segment = new RandomAccessFile(
+        directory.resolve("payments-2020-10-02.seg").toFile(), "rw")) {
+      segment.seek(segment.length() - 50); // The last block entry
+      segment.write(segment.read() + 1);
+    }
+
+    var exception = assertThrows(Exception.class, this::start);
+    assertThat(exception).rootCause().hasMessageContaining("is corrupt");
+  }
+
+  private ConfigurableApplicationContext start() {
+    return new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .run("--payment.archive.enabled=true", "--payment.archive.directory=" + directory,
+            "--payment.archive.block-size=4", "--payment.archive.interval=PT1H",
+            "--payment.hot-accounts.compaction-interval=PT1H",
+            "--payment.idempotency.prune-interval=PT1H",
+            "--spring.datasource.url=jdbc:h2:mem:archive-" + DATABASES.incrementAndGet());
+  }
+
+  /**
+   * Inserts 40 payments over 3 past days, whose IDs are not in time order, and 3 payments of now
+   */
+  private static void insertPayments(ConfigurableApplicationContext context,
+      List<AccountDto> accounts) {
+    var jdbcTemplate = context.getBean(JdbcTemplate.class);
+    var random = new Random(42);
+    for (var i = 0; i < 43; i++) {
+      var sender = accounts.get(random.nextInt(3));
+      var receiver = accounts.get((accounts.indexOf(sender) + 1 + random.nextInt(2)) % 3);
+      var timestamp = i < 40
+          ? DAY.plusSeconds(i * 5400L + random.nextInt(3600))
+              .plusNanos(1000L * random.nextInt(1_000_000))
+          : Instant.now().minusSeconds(i);
+      jdbcTemplate.update("INSERT INTO payment (id, sender_account_id, receiver_account_id, "
+              + "amount, timestamp) VALUES (?, ?, ?, ?, ?)", 700_000_000L + i * 7L % 43,
+          sender.getId(), receiver.getId(), BigDecimal.valueOf(100 + i, 2),
+          Timestamp.from(timestamp));
+    }
+  }
+
+  private static List<List<PaymentDto>> histories(ConfigurableApplicationContext context,
+      List<AccountDto> accounts) {
+    var historyService = context.getBean(PaymentHistoryService.class);
+    var histories = new ArrayList<List<PaymentDto>>();
+    for (var account : accounts) {
+      var payments = new ArrayList<PaymentDto>();
+      String cursor = null;
+      do {
+        var page = historyService.getPayments(account.getId(), cursor, 3).orElseThrow();
+        payments.addAll(page.getPayments());
+        cursor = page.getNextCursor();
+      } while (cursor != null);
+      histories.add(payments);
+    }
+    return histories;
+  }
+
+  private static List<String> exports(ConfigurableApplicationContext context) {
+    var from = DAY.plusSeconds(86_400 - 7200);
+    var to = DAY.plusSeconds(2 * 86_400 + 3600);
+    return List.of(export(context, null, null, null), export(context, from, to, null),
+        export(context, null, null, 700_000_020L), export(context, from, null, 700_000_010L));
+  }
+
+  private static String export(ConfigurableApplicationContext context, Instant from, Instant to,
+      Long afterId) {
+    var output = new ByteArrayOutputStream();
+    context.getBean(PaymentExportService.class)
+        .export(from, to, afterId, PaymentExportFormat.CSV, output);
+    return output.toString(StandardCharsets.UTF_8);
+  }
+}
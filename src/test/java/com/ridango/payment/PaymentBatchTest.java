@@ -0,0 +1,163 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.saveAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentBatchItemStatus;
+import com.rindago.payment.dtos.PaymentBatchMode;
+import com.rindago.payment.dtos.PaymentBatchRequest;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.repositories.PaymentRepository;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest(classes = PaymentApplication.class)
+@AutoConfigureMockMvc
+class PaymentBatchTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+  @Autowired
+  private ObjectMapper objectMapper;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private PaymentRepository paymentRepository;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * To clean up the database after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "payment", "account");
+  }
+
+  @Test
+  void test_1_bestEffortBatchSkipsRejectedPaymentsAndNetsBalances() throws Exception {
+    var collector = saveAccount(accountRepository, "Collection Account", "0.00");
+    var riders = new ArrayList<Account>();
+    for (var i = 0; i < 5; i++) {
+      riders.add(saveAccount(accountRepository, "Rider " + i, "10.00"));
+    }
+
+    var payments = new ArrayList<PaymentRequest>();
+    for (var rider : riders) {
+      payments.add(paymentRequest(rider.getId(), collector.getId(), new BigDecimal("2.50")));
+      payments.add(paymentRequest(rider.getId(), collector.getId(), new BigDecimal("2.50")));
+    }
+    payments.add(paymentRequest(riders.get(0).getId(), collector.getId(),
+        new BigDecimal("5.01"))); // 10.00 - 2 * 2.50 = 5.00 left
+    payments.add(paymentRequest(riders.get(1).getId(), collector.getId(),
+        new BigDecimal("0.001")));
+    payments.add(paymentRequest(riders.get(2).getId(), -1L, BigDecimal.ONE));
+
+    mockMvc.perform(post("/payments/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(
+                batchRequest(PaymentBatchMode.BEST_EFFORT, payments))))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.completed").value(10))
+        .andExpect(jsonPath("$.rejected").value(3))
+        .andExpect(jsonPath("$.results[0].status").value(
+            PaymentBatchItemStatus.COMPLETED.name()))
+        .andExpect(jsonPath("$.results[0].payment.id").isNumber())
+        .andExpect(jsonPath("$.results[10].errorCode").value(
+            ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE.name()))
+        .andExpect(jsonPath("$.results[11].errorCode").value(
+            ExceptionCode.MORE_THAN_TWO_DECIMAL_PLACES.name()))
+        .andExpect(jsonPath("$.results[12].errorCode").value(
+            ExceptionCode.RECEIVER_ACCOUNT_NOT_FOUND.name()));
+
+    assertEquals(10, paymentRepository.count());
+    var collectorAfterBatch = accountRepository.findById(collector.getId()).orElseThrow();
+    assertEquals(new BigDecimal("25.00"), collectorAfterBatch.getBalance().toBigDecimal());
+    // Ten credits have been applied to the collection account with a single update.
+    assertEquals(collector.getVersion() + 1, collectorAfterBatch.getVersion());
+    for (var rider : riders) {
+      assertEquals(new BigDecimal("5.00"),
+          accountRepository.findById(rider.getId()).orElseThrow().getBalance().toBigDecimal());
+    }
+  }
+
+  @Test
+  void test_2_allOrNothingBatchMakesNoPaymentIfOneIsRejected() throws Exception {
+    var sender = saveAccount(accountRepository, "Batch Sender", "100.00");
+    var receiver = saveAccount(accountRepository, "Batch Receiver", "0.00");
+
+    var payments = List.of(
+        paymentRequest(sender.getId(), receiver.getId(), new BigDecimal("60.00")),
+        paymentRequest(sender.getId(), receiver.getId(), new BigDecimal("60.00")));
+
+    mockMvc.perform(post("/payments/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(
+                batchRequest(PaymentBatchMode.ALL_OR_NOTHING, payments))))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.completed").value(0))
+        .andExpect(jsonPath("$.rejected").value(1))
+        .andExpect(jsonPath("$.results[0].status").value(
+            PaymentBatchItemStatus.NOT_APPLIED.name()))
+        .andExpect(jsonPath("$.results[1].status").value(PaymentBatchItemStatus.REJECTED.name()))
+        .andExpect(jsonPath("$.results[1].errorCode").value(
+            ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE.name()));
+
+    assertThat(paymentRepository.findAll()).isEmpty();
+    assertEquals(sender.getBalance(),
+        accountRepository.findById(sender.getId()).orElseThrow().getBalance());
+    assertEquals(receiver.getBalance(),
+        accountRepository.findById(receiver.getId()).orElseThrow().getBalance());
+  }
+
+  @Test
+  void test_3_batchWithAnEmptyMandatoryFieldIsRefusedAsAWhole() throws Exception {
+    var paymentWithoutSender = new PaymentRequest();
+    paymentWithoutSender.setReceiverAccountId(1L);
+    paymentWithoutSender.setAmount(BigDecimal.ONE);
+
+    mockMvc.perform(post("/payments/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(
+                batchRequest(PaymentBatchMode.BEST_EFFORT, List.of(paymentWithoutSender)))))
+        .andExpect(status().isBadRequest());
+
+    assertThat(paymentRepository.findAll()).isEmpty();
+  }
+
+  private static PaymentBatchRequest batchRequest(PaymentBatchMode mode,
+      List<PaymentRequest> payments) {
+    var batchRequest = new PaymentBatchRequest();
+    batchRequest.setMode(mode);
+    batchRequest.setPayments(payments);
+    return batchRequest;
+  }
+
+  private static PaymentRequest paymentRequest(Long senderAccountId, Long receiverAccountId,
+      BigDecimal amount) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(amount);
+    return paymentRequest;
+  }
+}
@@ -17,6 +17,7 @@ import com.rindago.payment.dtos.AccountRequest;
 import com.rindago.payment.dtos.PaymentRequest;
 import com.rindago.payment.entities.Account;
 import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.money.Money;
 import com.rindago.payment.repositories.AccountRepository;
 import com.rindago.payment.repositories.PaymentRepository;
 import java.math.BigDecimal;
@@ -97,13 +98,13 @@ class PaymentEndToEndTest {
     assertThat(accountRepository.findById(senderAccount.getId())).isNotEmpty();
     var createdSenderAccount = accountRepository.findById(senderAccount.getId()).orElseThrow();
     assertEquals(createdSenderAccount.getName(), senderAccount.getName());
-    assertEquals(createdSenderAccount.getBalance(), senderAccount.getBalance());
+    assertEquals(createdSenderAccount.getBalance().toBigDecimal(), senderAccount.getBalance());
 
     assertThat(accountRepository.findById(receiverAccount.getId())).isNotEmpty();
     var createdReceiverAccount = accountRepository.findById(receiverAccount.getId())
         .orElseThrow();
     assertEquals(createdReceiverAccount.getName(), receiverAccount.getName());
-    assertEquals(createdReceiverAccount.getBalance(), receiverAccount.getBalance());
+    assertEquals(createdReceiverAccount.getBalance().toBigDecimal(), receiverAccount.getBalance());
 
     // Make a payment
     var paymentRequest = new PaymentRequest();
@@ -131,7 +132,7 @@ class PaymentEndToEndTest {
     var paymentMade = paymentRepository.findById(paymentId).orElseThrow();
     assertEquals(paymentRequest.getSenderAccountId(), paymentMade.getSenderAccountId());
     assertEquals(paymentRequest.getReceiverAccountId(), paymentMade.getReceiverAccountId());
-    assertEquals(paymentRequest.getAmount(), paymentMade.getAmount());
+    assertEquals(paymentRequest.getAmount(), paymentMade.getAmount().toBigDecimal());
     assertNotNull(paymentMade.getTimestamp());
 
     // Verify the balances of the sender and the receiver accounts after the payment
@@ -140,9 +141,9 @@ class PaymentEndToEndTest {
     var receiverAccountAfterPayment = accountRepository.findById(receiverAccount.getId())
         .orElseThrow();
     assertEquals(new BigDecimal("350.00"),
-        senderAccountAfterPayment.getBalance()); // 500 - 150 = 350
+        senderAccountAfterPayment.getBalance().toBigDecimal()); // 500 - 150 = 350
     assertEquals(new BigDecimal("950.00"),
-        receiverAccountAfterPayment.getBalance()); // 800 + 150 = 950
+        receiverAccountAfterPayment.getBalance().toBigDecimal()); // 800 + 150 = 950
   }
 
   @Test
@@ -391,10 +392,84 @@ class PaymentEndToEndTest {
     this.verifyThatNoPaymentMadeAndBalancesNotChanged(senderAccount, receiverAccount);
   }
 
+  @Test
+  void test_11_paymentAmountBeyondTheRangeOfAnyBalance() throws Exception {
+    // Create accounts straightforwardly with entity objects through CrudRepository
+    var senderAccount = this.createAndSaveAccountEntity("Sender Account 11",
+        new BigDecimal("500.00"));
+    var receiverAccount = this.createAndSaveAccountEntity("Receiver Account 11",
+        new BigDecimal("1000.00"));
+
+    // Try to make a payment whose amount does not even fit in a long number of cents
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccount.getId());
+    paymentRequest.setReceiverAccountId(receiverAccount.getId());
+    paymentRequest.setAmount(new BigDecimal("1E+30"));
+
+    // Verify that it is rejected for the sender's balance, like any amount above the balance
+    mockMvc.perform(post("/payment/")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(paymentRequest)))
+        .andDo(print())
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.errorCode").value(
+            ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE.name()));
+
+    this.verifyThatNoPaymentMadeAndBalancesNotChanged(senderAccount, receiverAccount);
+  }
+
+  @Test
+  void test_12_paymentAmountBeyondTheRangeOfAnyBalanceFromTheLargestBalance() throws Exception {
+    // Create a sender holding the largest balance an account can hold
+    var senderAccount = this.createAndSaveAccountEntity("Sender Account 12",
+        Money.MAX_VALUE.toBigDecimal());
+    var receiverAccount = this.createAndSaveAccountEntity("Receiver Account 12",
+        new BigDecimal("0.00"));
+
+    // Try to make a payment above that balance, which does not fit in a long number of cents
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccount.getId());
+    paymentRequest.setReceiverAccountId(receiverAccount.getId());
+    paymentRequest.setAmount(new BigDecimal("1E+30"));
+
+    // Verify that it is rejected rather than made for the largest amount
+    mockMvc.perform(post("/payment/")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(paymentRequest)))
+        .andDo(print())
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.errorCode").value(
+            ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE.name()));
+
+    this.verifyThatNoPaymentMadeAndBalancesNotChanged(senderAccount, receiverAccount);
+  }
+
+  @Test
+  void test_13_accountCreationWithMoreThanTwoDecimalPlacesInBalanceInput() throws Exception {
+    // Try to create an account whose balance has more decimal places than its column
+    var accountRequest = new AccountRequest();
+    var accountToBeCreated = new AccountDto();
+    accountToBeCreated.setName("Fractional Account");
+    accountToBeCreated.setBalance(new BigDecimal("100.005"));
+    accountRequest.setAccounts(Collections.singletonList(accountToBeCreated));
+
+    // Verify that the POST request to create the account returned an error
+    mockMvc.perform(post("/account/")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(accountRequest)))
+        .andDo(print())
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.errorCode").value(
+            ExceptionCode.MORE_THAN_TWO_DECIMAL_PLACES.name()));
+
+    // Verify that no account has been created
+    assertThat(accountRepository.findAll()).isEmpty();
+  }
+
   private Account createAndSaveAccountEntity(String accountName, BigDecimal accountBalance) {
     var account = new Account();
     account.setName(accountName);
-    account.setBalance(accountBalance);
+    account.setBalance(Money.of(accountBalance));
     return accountRepository.save(account);
   }
 
@@ -0,0 +1,134 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccount;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.repositories.AccountRepository;
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+@SpringBootTest(classes = PaymentApplication.class, properties = "payment.export.fetch-size=2")
+@AutoConfigureMockMvc
+class PaymentExportTest {
+
+  private static final Instant DAY = Instant.parse("2020-10-01T00:00:00Z");
+
+  @Autowired
+  private MockMvc mockMvc;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private Long rider;
+  private Long operator;
+
+  @BeforeEach
+  void insertPayments() {
+    rider = createAccount(accountRepository, "Export Rider", "0.00");
+    operator = createAccount(accountRepository, "Export Operator", "0.00");
+    insertPayment(800_000_001L, "1.50", DAY.minusMillis(1)); // The day before
+    insertPayment(800_000_002L, "2.00", DAY);
+    insertPayment(800_000_004L, "2.50", DAY.plusSeconds(3600));
+    insertPayment(800_000_003L, "0.10", DAY.plusSeconds(7200));
+    insertPayment(800_000_005L, "3.00", DAY.plusSeconds(86_400)); // The day after
+  }
+
+  /**
+   * To clean up the database after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "payment", "account");
+  }
+
+  @Test
+  void test_1_ndjsonExportStreamsTheTimeRangeInIdOrder() throws Exception {
+    var result = export(get("/payments/export")
+        .param("from", "2020-10-01T00:00:00Z")
+        .param("to", "2020-10-02T00:00:00Z"));
+
+    assertEquals("application/x-ndjson", result.getResponse().getContentType());
+    var lines = result.getResponse().getContentAsString().split("\n");
+    assertEquals(3, lines.length);
+    assertEquals("{\"id\":800000002,\"senderAccountId\":" + rider + ",\"receiverAccountId\":"
+        + operator + ",\"amount\":2.00,\"timestamp\":\"2020-10-01T00:00:00Z\"}", lines[0]);
+    assertEquals(List.of(800000002L, 800000003L, 800000004L), List.of(idOf(lines[0]),
+        idOf(lines[1]), idOf(lines[2])));
+  }
+
+  @Test
+  void test_2_csvExportResumesAfterTheLastExportedId() throws Exception {
+    var result = export(get("/payments/export")
+        .param("format", "CSV")
+        .param("afterId", "800000003"));
+
+    assertEquals("text/csv", result.getResponse().getContentType());
+    assertEquals("id,senderAccountId,receiverAccountId,amount,timestamp\n"
+            + "800000004," + rider + "," + operator + ",2.50,2020-10-01T01:00:00Z\n"
+            + "800000005," + rider + "," + operator + ",3.00,2020-10-02T00:00:00Z\n",
+        result.getResponse().getContentAsString());
+
+    var nothingLeft = export(get("/payments/export").param("afterId", "800000005"));
+    assertEquals("", nothingLeft.getResponse().getContentAsString());
+  }
+
+  @Test
+  void test_3_exportIsGzipCompressedWhenTheClientAcceptsIt() throws Exception {
+    var plain = export(get("/payments/export"));
+    var compressed = export(get("/payments/export")
+        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"));
+
+    assertEquals("gzip", compressed.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING));
+    try (var input = new GZIPInputStream(
+        new ByteArrayInputStream(compressed.getResponse().getContentAsByteArray()))) {
+      assertArrayEquals(plain.getResponse().getContentAsByteArray(), input.readAllBytes());
+    }
+    assertEquals(5, plain.getResponse().getContentAsString(StandardCharsets.UTF_8)
+        .split("\n").length);
+  }
+
+  private MvcResult export(RequestBuilder request) throws Exception {
+    var result = mockMvc.perform(request)
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    return mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+        .andReturn();
+  }
+
+  private static long idOf(String line) {
+    return Long.parseLong(line.substring(line.indexOf(':') + 1, line.indexOf(',')));
+  }
+
+  private void insertPayment(Long id, String amount, Instant timestamp) {
+    jdbcTemplate.update("INSERT INTO payment (id, sender_account_id, receiver_account_id, amount, "
+        + "timestamp) VALUES (?, ?, ?, ?, ?)", id, rider, operator, new BigDecimal(amount),
+        Timestamp.from(timestamp));
+  }
+}
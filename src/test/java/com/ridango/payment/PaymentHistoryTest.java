@@ -0,0 +1,142 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentHistoryPage;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.repositories.AccountRepository;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest(classes = PaymentApplication.class)
+@AutoConfigureMockMvc
+class PaymentHistoryTest {
+
+  private static final Instant START = Instant.parse("2020-10-01T08:00:00Z");
+
+  @Autowired
+  private MockMvc mockMvc;
+  @Autowired
+  private ObjectMapper objectMapper;
+  @Autowired
+  private AccountRepository accountRepository;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  /**
+   * To clean up the database after the execution of each test case
+   */
+  @AfterEach
+  void cleanDatabase() {
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "payment", "account");
+  }
+
+  @Test
+  void test_1_pagesCoverSentAndReceivedPaymentsInTimestampAndIdOrder() throws Exception {
+    var rider = createAccount(accountRepository, "History Rider", "100.00");
+    var operator = createAccount(accountRepository, "History Operator", "100.00");
+    var other = createAccount(accountRepository, "History Other", "100.00");
+
+    // IDs out of timestamp order, and several payments with the same timestamp
+    insertPayment(900_000_007L, rider, operator, START.plusSeconds(1));
+    insertPayment(900_000_003L, operator, rider, START.plusSeconds(1));
+    insertPayment(900_000_005L, rider, other, START.plusSeconds(1));
+    insertPayment(900_000_009L, other, rider, START);
+    insertPayment(900_000_001L, rider, operator, START.plusSeconds(2));
+    insertPayment(900_000_002L, other, operator, START.plusSeconds(1)); // Not the rider's
+    insertPayment(900_000_004L, rider, operator, START.plusMillis(2500));
+
+    var payments = new ArrayList<PaymentDto>();
+    var pages = 0;
+    String cursor = null;
+    do {
+      var request = get("/account/" + rider + "/payments").param("size", "2");
+      if (cursor != null) {
+        request.param("cursor", cursor);
+      }
+      var page = objectMapper.readValue(mockMvc.perform(request)
+          .andExpect(status().isOk())
+          .andReturn().getResponse().getContentAsByteArray(), PaymentHistoryPage.class);
+      assertThat(page.getPayments()).hasSizeLessThanOrEqualTo(2);
+      payments.addAll(page.getPayments());
+      cursor = page.getNextCursor();
+      pages++;
+    } while (cursor != null);
+
+    assertEquals(List.of(900_000_009L, 900_000_003L, 900_000_005L, 900_000_007L, 900_000_001L,
+        900_000_004L), payments.stream().map(PaymentDto::getId).collect(Collectors.toList()));
+    assertEquals(3, pages);
+    assertEquals(START.plusMillis(2500), payments.get(5).getTimestamp());
+    assertEquals(operator, payments.get(1).getSenderAccountId());
+    assertEquals(new BigDecimal("1.00"), payments.get(0).getAmount());
+
+    var firstPageOfAll = objectMapper.readValue(mockMvc.perform(
+            get("/account/" + rider + "/payments"))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray(), PaymentHistoryPage.class);
+    assertThat(firstPageOfAll.getPayments()).hasSize(6);
+    assertNull(firstPageOfAll.getNextCursor());
+  }
+
+  @Test
+  void test_2_missingAccountMalformedCursorAndPageSizeAreRejected() throws Exception {
+    var rider = createAccount(accountRepository, "History Rider", "100.00");
+
+    mockMvc.perform(get("/account/-1/payments"))
+        .andExpect(status().isNotFound());
+    mockMvc.perform(get("/account/" + rider + "/payments").param("cursor", "not-a-cursor"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.errorCode").value(ExceptionCode.INVALID_PAGE_CURSOR.name()));
+    mockMvc.perform(get("/account/" + rider + "/payments").param("size", "0"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.errorCode").value(ExceptionCode.INVALID_PAGE_SIZE.name()));
+    mockMvc.perform(get("/account/" + rider + "/payments"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.payments").isEmpty())
+        .andExpect(jsonPath("$.nextCursor").doesNotExist());
+  }
+
+  @Test
+  void test_3_pageQueriesScanTheCompositeIndexesFromTheCursor() {
+    for (var direction : List.of("sender", "receiver")) {
+      // The same conditions and order as the repository queries
+      var plan = jdbcTemplate.queryForObject("EXPLAIN SELECT id FROM payment "
+          + "WHERE " + direction + "_account_id = 1 "
+          + "AND timestamp >= TIMESTAMP '2020-10-01 08:00:00' "
+          + "AND (timestamp > TIMESTAMP '2020-10-01 08:00:00' OR id > 5) "
+          + "ORDER BY " + direction + "_account_id, timestamp, id FETCH FIRST 51 ROWS ONLY",
+          String.class).toUpperCase();
+      assertThat(plan).contains("PAYMENT_" + direction.toUpperCase() + "_IDX");
+      assertThat(plan).contains("TIMESTAMP >=");
+      assertThat(plan).contains("/* INDEX SORTED */");
+    }
+  }
+
+  private void insertPayment(Long id, Long senderAccountId, Long receiverAccountId,
+      Instant timestamp) {
+    jdbcTemplate.update("INSERT INTO payment (id, sender_account_id, receiver_account_id, amount, "
+        + "timestamp) VALUES (?, ?, ?, 1.00, ?)", id, senderAccountId, receiverAccountId,
+        Timestamp.from(timestamp));
+  }
+}
@@ -0,0 +1,352 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccounts;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.controllers.AccountController;
+import com.rindago.payment.controllers.PaymentController;
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.PaymentDto;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.exceptions.ExceptionCode;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.services.AccountService;
+import com.rindago.payment.services.PaymentExportFormat;
+import com.rindago.payment.services.PaymentHistoryService;
+import com.rindago.payment.services.PaymentService;
+import com.rindago.payment.sharding.AccountShards;
+import com.rindago.payment.sharding.ShardedPaymentEngine;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Makes payments with the sharded engine, each time with new in-memory primary and shard databases.
+ * Account IDs are allocated in creation order, so with 2 shards consecutive accounts are on
+ * different shards.
+ */
+class ShardedPaymentEngineTest {
+
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  @Test
+  void test_1_sameShardAndCrossShardPaymentsAreMadeOnTheirShards() {
+    try (var context = start(2, DATABASES.incrementAndGet(), false)) {
+      var accounts = createAccounts(context, "500.00", "100.00", "0.00");
+      var first = accounts.get(0).getId();
+      var second = accounts.get(1).getId();
+      var third = accounts.get(2).getId();
+      var paymentService = context.getBean(PaymentService.class);
+
+      var sameShard = paymentService.makePayment(paymentRequest(first, third, "150.00"));
+      var crossShard = paymentService.makePayment(paymentRequest(third, second, "50.00"));
+      var keyed = paymentService.makePayment(paymentRequest(second, first, "25.00"), "shard-key");
+      assertEquals(keyed,
+          paymentService.makePayment(paymentRequest(second, first, "25.00"), "shard-key"));
+
+      assertEquals(new BigDecimal("375.00"), balanceOf(context, first)); // 500 - 150 + 25
+      assertEquals(new BigDecimal("125.00"), balanceOf(context, second)); // 100 + 50 - 25
+      assertEquals(new BigDecimal("100.00"), balanceOf(context, third)); // 0 + 150 - 50
+
+      // Payment IDs are unique, and tell the shard of their sender.
+      var shards = context.getBean(AccountShards.class);
+      assertEquals(shards.shardOf(first).getIndex(), sameShard.getId() % 2);
+      assertEquals(shards.shardOf(third).getIndex(), crossShard.getId() % 2);
+      assertEquals(shards.shardOf(second).getIndex(), keyed.getId() % 2);
+      assertEquals(2, countRows(context, "payment", first));
+      assertEquals(1, countRows(context, "payment", second));
+      assertEquals(1, countRows(context, "transfer_in", first));
+      assertEquals(1, countRows(context, "transfer_in", second));
+      assertEquals(0, countRows(context, "transfer_out", first));
+      assertEquals(0, countRows(context, "transfer_out", second));
+    }
+  }
+
+  @Test
+  void test_2_requirementsAreCheckedInTheSameOrderAsTheJpaEngine() {
+    try (var context = start(2, DATABASES.incrementAndGet(), false)) {
+      var accounts = createAccounts(context, "100.00", "0.00", "0.00");
+      var sender = accounts.get(0).getId();
+      var crossShardReceiver = accounts.get(1).getId();
+      var sameShardReceiver = accounts.get(2).getId();
+
+      for (var receiver : List.of(crossShardReceiver, sameShardReceiver)) {
+        assertRejected(context, ExceptionCode.NOT_POSITIVE_PAYMENT_AMOUNT,
+            paymentRequest(sender, receiver, "0"));
+        assertRejected(context, ExceptionCode.SENDER_ACCOUNT_NOT_FOUND,
+            paymentRequest(receiver + 100, sender, "1.00"));
+        assertRejected(context, ExceptionCode.RECEIVER_ACCOUNT_NOT_FOUND,
+            paymentRequest(sender, receiver + 100, "1.00"));
+        assertRejected(context, ExceptionCode.SENDER_ACCOUNT_BALANCE_GOING_NEGATIVE,
+            paymentRequest(sender, receiver, "100.01"));
+        assertEquals(BigDecimal.ZERO.setScale(2), balanceOf(context, receiver));
+      }
+      assertRejected(context, ExceptionCode.SENDER_RECEIVER_THE_SAME,
+          paymentRequest(sender, sender, "1.00"));
+
+      assertEquals(new BigDecimal("100.00"), balanceOf(context, sender));
+      assertEquals(0, countRows(context, "payment", sender) + countRows(context, "payment",
+          crossShardReceiver) + countRows(context, "transfer_out", sender));
+    }
+  }
+
+  @Test
+  void test_3_concurrentPaymentsConserveTheTotalBalance() throws Exception {
+    try (var context = start(3, DATABASES.incrementAndGet(), false)) {
+      var balances = new String[10];
+      Arrays.fill(balances, "50.00");
+      var accountIds = createAccounts(context, balances).stream().map(AccountDto::getId).toList();
+      var paymentService = context.getBean(PaymentService.class);
+      var succeeded = new AtomicInteger();
+      var tasks = new ArrayList<Callable<Void>>();
+      for (var i = 0; i < 2000; i++) {
+        tasks.add(() -> {
+          var random = ThreadLocalRandom.current();
+          try {
+            paymentService.makePayment(paymentRequest(
+                accountIds.get(random.nextInt(accountIds.size())),
+                accountIds.get(random.nextInt(accountIds.size())),
+                BigDecimal.valueOf(random.nextInt(1, 2000), 2).toPlainString()));
+            succeeded.incrementAndGet();
+          } catch (RequirementException e) {
+            // Same account or insufficient balance, both expected with random transfers
+          }
+          return null;
+        });
+      }
+      var executor = Executors.newFixedThreadPool(16);
+      try {
+        for (var future : executor.invokeAll(tasks)) {
+          future.get();
+        }
+      } finally {
+        executor.shutdown();
+      }
+
+      var total = BigDecimal.ZERO;
+      var payments = 0;
+      for (var shard : context.getBean(AccountShards.class).getShards()) {
+        var jdbcTemplate = shard.getJdbcTemplate();
+        total = total.add(jdbcTemplate.queryForObject("SELECT SUM(balance) FROM account",
+            BigDecimal.class));
+        payments += jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payment", Integer.class);
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transfer_out",
+            Integer.class));
+      }
+      assertEquals(new BigDecimal("500.00"), total);
+      assertEquals(succeeded.get(), payments);
+    }
+  }
+
+  @Test
+  void test_4_transferInDoubtIsCompletedByTheRecovery() {
+    try (var context = start(2, DATABASES.incrementAndGet(), false,
+        "--payment.sharding.recovery-delay=PT0S")) {
+      var accounts = createAccounts(context, "100.00", "0.00");
+      var sender = accounts.get(0).getId();
+      var receiver = accounts.get(1).getId();
+      var receiverShard = context.getBean(AccountShards.class).shardOf(receiver);
+      context.getBean(PaymentService.class).makePayment(paymentRequest(sender, receiver, "1.00"));
+
+      // The receiver's shard fails to credit the next transfer, which has been reserved.
+      receiverShard.getJdbcTemplate().execute("ALTER TABLE transfer_in RENAME TO unavailable");
+      var payment = context.getBean(PaymentService.class)
+          .makePayment(paymentRequest(sender, receiver, "30.00"));
+      receiverShard.getJdbcTemplate().execute("ALTER TABLE unavailable RENAME TO transfer_in");
+
+      assertEquals(new BigDecimal("69.00"), balanceOf(context, sender));
+      assertEquals(new BigDecimal("1.00"), balanceOf(context, receiver));
+      assertEquals(1, countRows(context, "transfer_out", sender));
+
+      var engine = context.getBean(ShardedPaymentEngine.class);
+      assertEquals(1, engine.recoverTransfers());
+      assertEquals(0, engine.recoverTransfers());
+      assertEquals(new BigDecimal("69.00"), balanceOf(context, sender));
+      assertEquals(new BigDecimal("31.00"), balanceOf(context, receiver));
+      assertEquals(0, countRows(context, "transfer_out", sender));
+      assertEquals(2, countRows(context, "payment", sender));
+      assertThat(context.getBean(AccountShards.class).shardOf(sender).getJdbcTemplate()
+          .queryForList("SELECT id FROM payment", Long.class)).contains(payment.getId());
+    }
+  }
+
+  @Test
+  void test_5_transferInDoubtIsCompletedAtStartup() {
+    var database = DATABASES.incrementAndGet();
+    long sender;
+    long receiver;
+    try (var context = start(2, database, true)) {
+      var accounts = createAccounts(context, "100.00", "0.00");
+      sender = accounts.get(0).getId();
+      receiver = accounts.get(1).getId();
+      var receiverShard = context.getBean(AccountShards.class).shardOf(receiver);
+      receiverShard.getJdbcTemplate().execute("ALTER TABLE transfer_in RENAME TO unavailable");
+      context.getBean(PaymentService.class).makePayment(paymentRequest(sender, receiver, "40.00"));
+      receiverShard.getJdbcTemplate().execute("ALTER TABLE unavailable RENAME TO transfer_in");
+      assertEquals(1, countRows(context, "transfer_out", sender));
+    }
+
+    // The shard databases outlive the first context, as a shard's files outlive a restart.
+    try (var context = start(2, database, true)) {
+      var shards = context.getBean(AccountShards.class);
+      assertEquals(new BigDecimal("60.00"), shards.findBalance(sender).orElseThrow()
+          .toBigDecimal());
+      assertEquals(new BigDecimal("40.00"), shards.findBalance(receiver).orElseThrow()
+          .toBigDecimal());
+      assertEquals(0, countRows(context, "transfer_out", sender));
+      shards.getShards().forEach(shard -> shard.getJdbcTemplate().execute("SHUTDOWN"));
+    }
+  }
+
+  @Test
+  void test_6_retryWithAKeyRecordedOnlyOnTheShardIsNotPaidAgain() {
+    try (var context = start(2, DATABASES.incrementAndGet(), false,
+        "--payment.idempotency.cache-size=0")) {
+      var accounts = createAccounts(context, "100.00", "0.00", "0.00");
+      var sender = accounts.get(0).getId();
+      var paymentService = context.getBean(PaymentService.class);
+      var jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+      for (var receiver : List.of(accounts.get(1).getId(), accounts.get(2).getId())) {
+        var key = "shard-key-" + receiver;
+        var payment = paymentService.makePayment(paymentRequest(sender, receiver, "10.00"), key);
+        // As if the process had died before recording the key in the primary database
+        jdbcTemplate.update("DELETE FROM idempotency_key WHERE idempotency_key = ?", key);
+
+        var retried = paymentService.makePayment(paymentRequest(sender, receiver, "10.00"), key);
+        assertEquals(payment.getId(), retried.getId());
+        assertEquals(new BigDecimal("10.00"), balanceOf(context, receiver));
+        assertEquals(1, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM idempotency_key WHERE idempotency_key = ?", Integer.class, key));
+      }
+      assertEquals(new BigDecimal("80.00"), balanceOf(context, sender));
+
+      context.getBean(AccountShards.class).shardOf(sender).getJdbcTemplate()
+          .update("UPDATE idempotency_key SET created_at = created_at - INTERVAL '2' DAY");
+      assertEquals(2, context.getBean(ShardedPaymentEngine.class).pruneIdempotencyKeys());
+      assertEquals(0, countRows(context, "idempotency_key", sender));
+    }
+  }
+
+  @Test
+  void test_7_historyIsReadFromTheShardOfTheAccount() {
+    try (var context = start(2, DATABASES.incrementAndGet(), false)) {
+      var accounts = createAccounts(context, "100.00", "100.00", "100.00");
+      var first = accounts.get(0).getId();
+      var second = accounts.get(1).getId();
+      var third = accounts.get(2).getId();
+      var paymentService = context.getBean(PaymentService.class);
+      var sameShard = paymentService.makePayment(paymentRequest(first, third, "1.00"));
+      var crossShardSent = paymentService.makePayment(paymentRequest(first, second, "2.00"));
+      var crossShardReceived = paymentService.makePayment(paymentRequest(second, first, "3.00"));
+      // A transfer whose credit has failed is in doubt on the sender's shard.
+      var receiverShard = context.getBean(AccountShards.class).shardOf(second);
+      receiverShard.getJdbcTemplate().execute("ALTER TABLE transfer_in RENAME TO unavailable");
+      var inDoubt = paymentService.makePayment(paymentRequest(first, second, "4.00"));
+      receiverShard.getJdbcTemplate().execute("ALTER TABLE unavailable RENAME TO transfer_in");
+
+      var historyService = context.getBean(PaymentHistoryService.class);
+      var firstPage = historyService.getPayments(first, null, 3).orElseThrow();
+      assertThat(firstPage.getPayments()).extracting(PaymentDto::getId).containsExactly(
+          sameShard.getId(), crossShardSent.getId(), crossShardReceived.getId());
+      assertThat(historyService.getPayments(first, firstPage.getNextCursor(), 3).orElseThrow()
+          .getPayments()).extracting(PaymentDto::getId).containsExactly(inDoubt.getId());
+      assertThat(historyService.getPayments(second, null, 50).orElseThrow().getPayments())
+          .extracting(PaymentDto::getId)
+          .containsExactly(crossShardSent.getId(), crossShardReceived.getId());
+      assertThat(historyService.getPayments(third, null, 50).orElseThrow().getPayments())
+          .extracting(PaymentDto::getId).containsExactly(sameShard.getId());
+    }
+  }
+
+  @Test
+  void test_8_featuresReadingThePrimaryAreNotSupported() {
+    for (var feature : List.of("--payment.archive.enabled=true",
+        "--payment.reconciliation.enabled=true")) {
+      var exception = assertThrows(Exception.class,
+          () -> start(2, DATABASES.incrementAndGet(), false, feature));
+      assertThat(exception).rootCause().hasMessageContaining("payment.engine=sharded");
+    }
+
+    try (var context = start(2, DATABASES.incrementAndGet(), false)) {
+      var export = assertThrows(ResponseStatusException.class,
+          () -> context.getBean(PaymentController.class).exportPayments(null, null, null,
+              PaymentExportFormat.NDJSON, null));
+      assertEquals(HttpStatus.NOT_IMPLEMENTED, export.getStatusCode());
+      var snapshot = assertThrows(ResponseStatusException.class,
+          () -> context.getBean(AccountController.class).getSnapshot());
+      assertEquals(HttpStatus.NOT_IMPLEMENTED, snapshot.getStatusCode());
+    }
+  }
+
+  /**
+   * Starts a context with the given number of shards
+   * @param keepShards Whether the shard databases are kept until they are shut down, so that a
+   *     later context with the same database number finds them again
+   */
+  private static ConfigurableApplicationContext start(int shards, int database,
+      boolean keepShards, String... arguments) {
+    var urls = new ArrayList<String>();
+    for (var i = 0; i < shards; i++) {
+      urls.add("jdbc:h2:mem:sharded-" + database + "-" + i + (keepShards ? ";DB_CLOSE_DELAY=-1"
+          : ""));
+    }
+    var allArguments = new ArrayList<>(List.of("--payment.engine=sharded",
+        "--payment.sharding.urls=" + String.join(",", urls),
+        "--payment.sharding.recovery-interval=PT1H",
+        "--payment.hot-accounts.compaction-interval=PT1H",
+        "--payment.idempotency.prune-interval=PT1H",
+        "--spring.datasource.url=jdbc:h2:mem:sharded-primary-" + database));
+    allArguments.addAll(List.of(arguments));
+    return new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .run(allArguments.toArray(String[]::new));
+  }
+
+  private static void assertRejected(ConfigurableApplicationContext context,
+      ExceptionCode exceptionCode, PaymentRequest paymentRequest) {
+    var exception = assertThrows(RequirementException.class,
+        () -> context.getBean(PaymentService.class).makePayment(paymentRequest));
+    assertEquals(exceptionCode, exception.getExceptionCode());
+  }
+
+  /**
+   * @return The balance of the account read through the account service
+   */
+  private static BigDecimal balanceOf(ConfigurableApplicationContext context, long accountId) {
+    return context.getBean(AccountService.class).getAccount(accountId).orElseThrow().getBalance();
+  }
+
+  /**
+   * @return Number of rows of the table on the shard of the account
+   */
+  private static int countRows(ConfigurableApplicationContext context, String table,
+      long accountId) {
+    return context.getBean(AccountShards.class).shardOf(accountId).getJdbcTemplate()
+        .queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+  }
+
+  private static PaymentRequest paymentRequest(long senderAccountId, long receiverAccountId,
+      String amount) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(new BigDecimal(amount));
+    return paymentRequest;
+  }
+}
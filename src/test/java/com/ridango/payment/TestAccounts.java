@@ -0,0 +1,64 @@
+package com.ridango.payment;
+
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.AccountRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.services.AccountService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Creates the accounts of the test cases
+ */
+final class TestAccounts {
+
+  private static final AtomicInteger ACCOUNTS = new AtomicInteger();
+
+  private TestAccounts() {
+  }
+
+  /**
+   * Creates the accounts through the account service, so also in the journal and on the shards when
+   * they are enabled, with names unique across the test cases.
+   *
+   * @return Created accounts, in the order of the balances
+   */
+  static List<AccountDto> createAccounts(ApplicationContext context, String... balances) {
+    var accountRequest = new AccountRequest();
+    accountRequest.setAccounts(new ArrayList<>());
+    for (var balance : balances) {
+      var account = new AccountDto();
+      account.setName("Test Account " + ACCOUNTS.incrementAndGet());
+      account.setBalance(new BigDecimal(balance));
+      accountRequest.getAccounts().add(account);
+    }
+    return context.getBean(AccountService.class).createAccount(accountRequest);
+  }
+
+  /**
+   * Saves the account directly in the account table.
+   *
+   * @return ID of the account
+   */
+  static Long createAccount(AccountRepository accountRepository, String name, String balance) {
+    return saveAccount(accountRepository, name, balance).getId();
+  }
+
+  /**
+   * Saves the account directly in the account table, for the test cases which compare it with its
+   * row later on.
+   *
+   * @return Saved account
+   */
+  static Account saveAccount(AccountRepository accountRepository, String name, String balance) {
+    var account = new Account();
+    account.setName(name);
+    account.setBalance(Money.of(new BigDecimal(balance)));
+    return accountRepository.save(account);
+  }
+}
@@ -0,0 +1,150 @@
+package com.ridango.payment;
+
+import static com.ridango.payment.TestAccounts.createAccounts;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.snapshot.AccountSnapshot;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Writes account snapshots from running instances and starts new instances, each one with a new
+ * in-memory database, from them
+ */
+class WarmStartTest {
+
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  @TempDir
+  private Path directory;
+
+  @Test
+  void test_1_snapshotFromTheEndpointIsLoadedBeforeTheInstanceIsReady() throws Exception {
+    var snapshot = directory.resolve("accounts.snapshot");
+    List<AccountDto> accounts;
+    try (var context = start(WebApplicationType.SERVLET)) {
+      accounts = createAccounts(context, "100.00", "0.05", "12345678.90");
+      // A pending credit of a hot account is part of its balance in the snapshot.
+      context.getBean(JdbcTemplate.class).update(
+          "INSERT INTO account_balance_delta (account_id, amount) VALUES (?, ?)",
+          accounts.get(1).getId(), new BigDecimal("1.00"));
+      var response = HttpClient.newHttpClient().send(
+          HttpRequest.newBuilder(uri(context, "/account/snapshot")).build(),
+          HttpResponse.BodyHandlers.ofFile(snapshot));
+      assertEquals(200, response.statusCode());
+      assertThat(response.headers().firstValue("Content-Type"))
+          .hasValue("application/octet-stream");
+    }
+
+    try (var context = start(WebApplicationType.SERVLET, "--payment.warm-start.snapshot="
+        + snapshot, "--payment.warm-start.batch-size=2", "--payment.warm-start.threads=2")) {
+      var jdbcTemplate = context.getBean(JdbcTemplate.class);
+      assertThat(accounts).allSatisfy(account -> assertEquals(account.getName(),
+          jdbcTemplate.queryForObject("SELECT name FROM account WHERE id = ?", String.class,
+              account.getId())));
+      assertThat(balances(context, accounts)).containsExactly(
+          new BigDecimal("100.00"), new BigDecimal("1.05"), new BigDecimal("12345678.90"));
+
+      var readiness = HttpClient.newHttpClient().send(
+          HttpRequest.newBuilder(uri(context, "/actuator/health/readiness")).build(),
+          HttpResponse.BodyHandlers.ofString());
+      assertEquals(200, readiness.statusCode());
+      assertThat(readiness.body()).contains("\"warmStart\":{\"status\":\"UP\"")
+          .contains("\"loadedAccounts\":3");
+
+      var newAccount = createAccounts(context, "1.00").get(0);
+      assertThat(newAccount.getId()).isGreaterThan(accounts.get(2).getId());
+    }
+  }
+
+  @Test
+  void test_2_largeSnapshotIsLoadedInParallelBatches() throws IOException {
+    var snapshot = directory.resolve("large.snapshot");
+    try (var writer = AccountSnapshot.create(snapshot, 0)) {
+      for (var id = 1L; id <= 10_000; id++) {
+        writer.write(id * 3, Money.ofCents(id), "Warm Account " + id);
+      }
+      writer.commit();
+    }
+
+    try (var context = start(WebApplicationType.NONE, "--payment.warm-start.snapshot=" + snapshot,
+        "--payment.warm-start.batch-size=999", "--payment.warm-start.threads=4")) {
+      var jdbcTemplate = context.getBean(JdbcTemplate.class);
+      assertEquals(10_000, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM account", Long.class));
+      assertEquals(new BigDecimal("500050.00"), jdbcTemplate.queryForObject(
+          "SELECT SUM(balance) FROM account", BigDecimal.class));
+      assertEquals("Warm Account 7", jdbcTemplate.queryForObject(
+          "SELECT name FROM account WHERE id = 21", String.class));
+    }
+  }
+
+  @Test
+  void test_3_corruptSnapshotStopsTheStartup() throws IOException {
+    var snapshot = directory.resolve("corrupt.snapshot");
+    try (var writer = AccountSnapshot.create(snapshot, 0)) {
+      writer.write(1, Money.ofCents(100), "Warm Account");
+      writer.commit();
+    }
+    var bytes = Files.readAllBytes(snapshot);
+    bytes[17]++; // The balance of the account
+    Files.write(snapshot, bytes);
+
+    var exception = assertThrows(Exception.class,
+        () -> start(WebApplicationType.NONE, "--payment.warm-start.snapshot=" + snapshot));
+    assertThat(exception).rootCause().hasMessageContaining("is corrupt");
+  }
+
+  @Test
+  void test_4_warmStartCannotBeUsedWithTheJournal() {
+    var exception = assertThrows(Exception.class, () -> start(WebApplicationType.NONE,
+        "--payment.engine=ledger", "--payment.journal.enabled=true",
+        "--payment.journal.directory=" + directory,
+        "--payment.warm-start.snapshot=" + directory.resolve("accounts.snapshot")));
+    assertThat(exception).rootCause().hasMessageContaining("payment.journal.enabled");
+  }
+
+  private static ConfigurableApplicationContext start(WebApplicationType webApplicationType,
+      String... args) {
+    var arguments = new ArrayList<>(List.of("--server.port=0",
+        "--payment.hot-accounts.compaction-interval=PT1H",
+        "--payment.idempotency.prune-interval=PT1H",
+        "--spring.datasource.url=jdbc:h2:mem:warm-start-" + DATABASES.incrementAndGet()));
+    arguments.addAll(List.of(args));
+    return new SpringApplicationBuilder(PaymentApplication.class)
+        .web(webApplicationType)
+        .run(arguments.toArray(String[]::new));
+  }
+
+  private static URI uri(ConfigurableApplicationContext context, String path) {
+    var port = ((WebServerApplicationContext) context).getWebServer().getPort();
+    return URI.create("http://localhost:" + port + path);
+  }
+
+  private static List<BigDecimal> balances(ConfigurableApplicationContext context,
+      List<AccountDto> accounts) {
+    var jdbcTemplate = context.getBean(JdbcTemplate.class);
+    return accounts.stream().map(account -> jdbcTemplate.queryForObject(
+        "SELECT balance FROM account WHERE id = ?", BigDecimal.class, account.getId())).toList();
+  }
+}
@@ -0,0 +1,72 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.AccountRequest;
+import com.rindago.payment.services.AccountService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * Compares the throughput of bulk account creation with one INSERT statement per account, as it
+ * was with IDENTITY columns, and with JDBC batches of inserts, which the pooled account sequence
+ * makes possible. Run with 'gradle benchmark'.
+ */
+@Tag("benchmark")
+class AccountCreationBenchmark {
+
+  private static final int ACCOUNTS_PER_REQUEST = 1_000;
+  private static final int WARMUP_REQUESTS = 10;
+  private static final int MEASURED_REQUESTS = 50;
+
+  @Test
+  void compareUnbatchedAndBatchedInserts() {
+    System.out.printf("%-12s %12s%n", "batch size", "accounts/s");
+    for (var batchSize : List.of(1, 50)) {
+      run(batchSize);
+    }
+  }
+
+  private void run(int batchSize) {
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        // Arguments, unlike default properties, take precedence over application.properties.
+        .run("--spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize,
+            "--spring.datasource.url=jdbc:h2:mem:benchmark-accounts-" + batchSize)) {
+      var accountService = context.getBean(AccountService.class);
+
+      var nextAccount = 0;
+      for (var i = 0; i < WARMUP_REQUESTS; i++, nextAccount += ACCOUNTS_PER_REQUEST) {
+        accountService.createAccount(accountRequest(nextAccount));
+      }
+
+      var start = System.nanoTime();
+      for (var i = 0; i < MEASURED_REQUESTS; i++, nextAccount += ACCOUNTS_PER_REQUEST) {
+        accountService.createAccount(accountRequest(nextAccount));
+      }
+      var seconds = (System.nanoTime() - start) / 1e9;
+
+      System.out.printf("%-12d %12.0f%n",
+          batchSize, MEASURED_REQUESTS * ACCOUNTS_PER_REQUEST / seconds);
+    }
+  }
+
+  private static AccountRequest accountRequest(int firstAccount) {
+    var accounts = new ArrayList<AccountDto>(ACCOUNTS_PER_REQUEST);
+    for (var i = firstAccount; i < firstAccount + ACCOUNTS_PER_REQUEST; i++) {
+      var account = new AccountDto();
+      account.setName("Benchmark Account " + i);
+      account.setBalance(new BigDecimal("100.00"));
+      accounts.add(account);
+    }
+    var accountRequest = new AccountRequest();
+    accountRequest.setAccounts(accounts);
+    return accountRequest;
+  }
+}
@@ -0,0 +1,115 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.cache.AccountCache;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.services.AccountService;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * Compares the throughput of a read-heavy mix of account reads and payments with the account cache
+ * switched off and on. Run with 'gradle benchmark'.
+ */
+@Tag("benchmark")
+class AccountReadBenchmark {
+
+  private static final int ACCOUNTS = 1_000;
+  private static final int THREADS = 8;
+  private static final int READ_PERCENT = 95;
+  private static final int WARMUP_OPERATIONS = 20_000;
+  private static final int MEASURED_OPERATIONS = 200_000;
+
+  @Test
+  void compareReadsWithAndWithoutCache() throws Exception {
+    System.out.printf("%-8s %12s %10s%n", "cache", "ops/s", "hit rate");
+    for (var enabled : List.of(false, true)) {
+      run(enabled);
+    }
+  }
+
+  private void run(boolean cacheEnabled) throws Exception {
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run("--payment.account-cache.enabled=" + cacheEnabled,
+            "--spring.datasource.url=jdbc:h2:mem:benchmark-account-read-" + cacheEnabled)) {
+      var accountService = context.getBean(AccountService.class);
+      var paymentService = context.getBean(PaymentService.class);
+      var accountRepository = context.getBean(AccountRepository.class);
+
+      var accounts = new ArrayList<Account>();
+      for (var i = 0; i < ACCOUNTS; i++) {
+        var account = new Account();
+        account.setName("Benchmark Account " + i);
+        account.setBalance(Money.of(new BigDecimal("1000000.00")));
+        accounts.add(account);
+      }
+      accountRepository.saveAll(accounts);
+      var accountIds = accounts.stream().map(Account::getId).toArray(Long[]::new);
+
+      var executor = Executors.newFixedThreadPool(THREADS);
+      try {
+        runMix(executor, accountService, paymentService, accountIds, WARMUP_OPERATIONS);
+        var before = context.getBean(AccountCache.class).getStatistics();
+
+        var start = System.nanoTime();
+        runMix(executor, accountService, paymentService, accountIds, MEASURED_OPERATIONS);
+        var seconds = (System.nanoTime() - start) / 1e9;
+
+        var statistics = context.getBean(AccountCache.class).getStatistics();
+        var hits = statistics.getHits() - before.getHits();
+        var reads = hits + statistics.getMisses() - before.getMisses();
+        System.out.printf("%-8s %12.0f %9.1f%%%n", cacheEnabled ? "on" : "off",
+            MEASURED_OPERATIONS / seconds, reads == 0 ? 0 : 100.0 * hits / reads);
+      } finally {
+        executor.shutdown();
+      }
+    }
+  }
+
+  private static void runMix(ExecutorService executor,
+      AccountService accountService, PaymentService paymentService, Long[] accountIds,
+      int operations) throws Exception {
+    var tasks = new ArrayList<Callable<Void>>(THREADS);
+    for (var t = 0; t < THREADS; t++) {
+      tasks.add(() -> {
+        var random = ThreadLocalRandom.current();
+        for (var i = 0; i < operations / THREADS; i++) {
+          var accountId = accountIds[random.nextInt(accountIds.length)];
+          if (random.nextInt(100) < READ_PERCENT) {
+            accountService.getAccount(accountId);
+            continue;
+          }
+          var paymentRequest = new PaymentRequest();
+          paymentRequest.setSenderAccountId(accountId);
+          paymentRequest.setReceiverAccountId(accountIds[random.nextInt(accountIds.length)]);
+          paymentRequest.setAmount(new BigDecimal("0.01"));
+          try {
+            paymentService.makePayment(paymentRequest);
+          } catch (RequirementException e) {
+            // Same sender and receiver
+          }
+        }
+        return null;
+      });
+    }
+    for (var future : executor.invokeAll(tasks)) {
+      future.get();
+    }
+  }
+}
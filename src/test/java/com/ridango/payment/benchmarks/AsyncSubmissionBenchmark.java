@@ -0,0 +1,113 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.dtos.PaymentSubmissionStatus;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.services.PaymentService;
+import com.rindago.payment.services.PaymentSubmissionService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * Compares the mean time a caller is held by a synchronous payment and by an asynchronous
+ * submission, and the time until all submitted payments are settled. Run with 'gradle benchmark'.
+ */
+@Tag("benchmark")
+class AsyncSubmissionBenchmark {
+
+  private static final int ACCOUNTS = 1_000;
+  private static final int THREADS = 32;
+  private static final int PAYMENTS = 20_000;
+
+  @Test
+  void compareSynchronousAndAsynchronousPayments() throws Exception {
+    System.out.printf("%-8s %17s %14s%n", "mode", "caller held (us)", "settled in (s)");
+    for (var async : List.of(false, true)) {
+      run(async);
+    }
+  }
+
+  private void run(boolean async) throws Exception {
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run("--payment.async.enabled=" + async, "--payment.async.queue-capacity=" + PAYMENTS,
+            "--spring.datasource.url=jdbc:h2:mem:benchmark-async-" + async)) {
+      var accountRepository = context.getBean(AccountRepository.class);
+      var paymentService = context.getBean(PaymentService.class);
+      var paymentSubmissionService = context.getBean(PaymentSubmissionService.class);
+
+      var accounts = new ArrayList<Account>();
+      for (var i = 0; i < ACCOUNTS; i++) {
+        var account = new Account();
+        account.setName("Benchmark Account " + i);
+        account.setBalance(Money.of(new BigDecimal("1000000.00")));
+        accounts.add(account);
+      }
+      accountRepository.saveAll(accounts);
+      var accountIds = accounts.stream().map(Account::getId).toArray(Long[]::new);
+
+      var heldNanos = new LongAdder();
+      var handles = new ArrayList<String>();
+      var start = System.nanoTime();
+      var tasks = new ArrayList<Callable<List<String>>>(THREADS);
+      for (var t = 0; t < THREADS; t++) {
+        tasks.add(() -> {
+          var random = ThreadLocalRandom.current();
+          var threadHandles = new ArrayList<String>();
+          for (var i = 0; i < PAYMENTS / THREADS; i++) {
+            var paymentRequest = new PaymentRequest();
+            var sender = random.nextInt(ACCOUNTS);
+            paymentRequest.setSenderAccountId(accountIds[sender]);
+            paymentRequest.setReceiverAccountId(
+                accountIds[(sender + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS]);
+            paymentRequest.setAmount(new BigDecimal("0.01"));
+            var callStart = System.nanoTime();
+            if (async) {
+              threadHandles.add(paymentSubmissionService.submit(paymentRequest, null).getId());
+            } else {
+              try {
+                paymentService.makePayment(paymentRequest);
+              } catch (RequirementException e) {
+                // Not expected since sender and receiver differ
+              }
+            }
+            heldNanos.add(System.nanoTime() - callStart);
+          }
+          return threadHandles;
+        });
+      }
+      var executor = Executors.newFixedThreadPool(THREADS);
+      try {
+        for (var future : executor.invokeAll(tasks)) {
+          handles.addAll(future.get());
+        }
+      } finally {
+        executor.shutdown();
+      }
+      for (var handle : handles) {
+        while (paymentSubmissionService.getSubmission(handle).orElseThrow().getStatus()
+            == PaymentSubmissionStatus.PENDING) {
+          Thread.onSpinWait();
+        }
+      }
+      var seconds = (System.nanoTime() - start) / 1e9;
+
+      System.out.printf("%-8s %17.0f %14.2f%n", async ? "async" : "sync",
+          heldNanos.sum() / 1e3 / PAYMENTS, seconds);
+    }
+  }
+}
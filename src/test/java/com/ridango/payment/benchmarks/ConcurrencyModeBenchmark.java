@@ -0,0 +1,110 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.dao.ConcurrencyFailureException;
+
+/**
+ * Compares the throughput of the pessimistic and optimistic concurrency modes of the JPA engine
+ * at low contention (random payments among many accounts) and at high contention (random payments
+ * among a handful of accounts). Run with 'gradle benchmark'.
+ */
+@Tag("benchmark")
+class ConcurrencyModeBenchmark {
+
+  private static final int THREADS = 16;
+  private static final int WARMUP_PAYMENTS = 2_000;
+  private static final int MEASURED_PAYMENTS = 10_000;
+
+  @Test
+  void compareConcurrencyModes() throws Exception {
+    System.out.printf("%-12s %-10s %12s %10s %10s%n",
+        "mode", "accounts", "payments/s", "rejected", "conflicts");
+    for (var mode : List.of("pessimistic", "optimistic")) {
+      for (var accounts : List.of(1_000, 4)) {
+        run(mode, accounts);
+      }
+    }
+  }
+
+  private void run(String mode, int accountCount) throws Exception {
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off",
+            // Version conflicts are expected in optimistic mode and retried.
+            "logging.level.org.hibernate.engine.jdbc.batch.internal.BatchingBatch=OFF")
+        // Arguments, unlike default properties, take precedence over application.properties.
+        .run("--payment.jpa.concurrency=" + mode,
+            "--spring.datasource.url=jdbc:h2:mem:benchmark-" + mode + "-" + accountCount)) {
+      var accountRepository = context.getBean(AccountRepository.class);
+      var paymentService = context.getBean(PaymentService.class);
+
+      var accountIds = new ArrayList<Long>();
+      for (var i = 0; i < accountCount; i++) {
+        var account = new Account();
+        account.setName("Benchmark Account " + i);
+        account.setBalance(Money.of(new BigDecimal("1000000.00")));
+        accountIds.add(accountRepository.save(account).getId());
+      }
+
+      var rejected = new AtomicInteger();
+      var conflicts = new AtomicInteger();
+      pay(paymentService, accountIds, WARMUP_PAYMENTS, rejected, conflicts);
+      rejected.set(0);
+      conflicts.set(0);
+
+      var start = System.nanoTime();
+      pay(paymentService, accountIds, MEASURED_PAYMENTS, rejected, conflicts);
+      var seconds = (System.nanoTime() - start) / 1e9;
+
+      System.out.printf("%-12s %-10d %12.0f %10d %10d%n",
+          mode, accountCount, MEASURED_PAYMENTS / seconds, rejected.get(), conflicts.get());
+    }
+  }
+
+  private static void pay(PaymentService paymentService, List<Long> accountIds, int payments,
+      AtomicInteger rejected, AtomicInteger conflicts) throws Exception {
+    var tasks = new ArrayList<Callable<Void>>();
+    for (var i = 0; i < payments; i++) {
+      tasks.add(() -> {
+        var random = ThreadLocalRandom.current();
+        var paymentRequest = new PaymentRequest();
+        paymentRequest.setSenderAccountId(accountIds.get(random.nextInt(accountIds.size())));
+        paymentRequest.setReceiverAccountId(accountIds.get(random.nextInt(accountIds.size())));
+        paymentRequest.setAmount(new BigDecimal("1.00"));
+        try {
+          paymentService.makePayment(paymentRequest);
+        } catch (RequirementException e) {
+          rejected.incrementAndGet(); // Sender and receiver drawn the same
+        } catch (ConcurrencyFailureException e) {
+          conflicts.incrementAndGet(); // Optimistic retry budget used up
+        }
+        return null;
+      });
+    }
+    var executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import com.rindago.payment.services.PaymentService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Compares the throughput and mean latency of payments committed one by one and by group commit
+ * with several maximum waits, with many concurrent callers. Run with 'gradle benchmark'.
+ */
+@Tag("benchmark")
+class GroupCommitBenchmark {
+
+  private static final int ACCOUNTS = 1_000;
+  private static final int THREADS = 64;
+  private static final int WARMUP_PAYMENTS = 5_000;
+  private static final int MEASURED_PAYMENTS = 40_000;
+
+  @Test
+  void compareGroupCommitSettings() throws Exception {
+    System.out.printf("%-14s %12s %18s %12s%n", "group commit", "payments/s", "mean latency (us)",
+        "transactions");
+    run(false, "PT0S");
+    for (var maxWait : List.of("PT0S", "PT0.001S", "PT0.005S")) {
+      run(true, maxWait);
+    }
+  }
+
+  private void run(boolean groupCommit, String maxWait) throws Exception {
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run("--payment.jpa.group-commit=" + groupCommit,
+            "--payment.jpa.group-commit-max-wait=" + maxWait,
+            "--spring.datasource.url=jdbc:h2:mem:benchmark-group-commit-" + groupCommit + maxWait)) {
+      var accountRepository = context.getBean(AccountRepository.class);
+      var paymentService = context.getBean(PaymentService.class);
+
+      var accounts = new ArrayList<Account>();
+      for (var i = 0; i < ACCOUNTS; i++) {
+        var account = new Account();
+        account.setName("Benchmark Account " + i);
+        account.setBalance(Money.of(new BigDecimal("1000000.00")));
+        accounts.add(account);
+      }
+      accountRepository.saveAll(accounts);
+      var accountIds = accounts.stream().map(Account::getId).toArray(Long[]::new);
+
+      var latencyNanos = new LongAdder();
+      pay(paymentService, accountIds, WARMUP_PAYMENTS, latencyNanos);
+      latencyNanos.reset();
+      var jdbcTemplate = context.getBean(JdbcTemplate.class);
+      var transactionsBefore = countTransactions(jdbcTemplate);
+
+      var start = System.nanoTime();
+      pay(paymentService, accountIds, MEASURED_PAYMENTS, latencyNanos);
+      var seconds = (System.nanoTime() - start) / 1e9;
+
+      System.out.printf("%-14s %12.0f %18.0f %12d%n", groupCommit ? maxWait : "off",
+          MEASURED_PAYMENTS / seconds, latencyNanos.sum() / 1e3 / MEASURED_PAYMENTS,
+          countTransactions(jdbcTemplate) - transactionsBefore);
+    }
+  }
+
+  /**
+   * @return Number of distinct payment timestamps, which is the number of transactions that have
+   * made payments, since the payments of a group share the timestamp of its transaction
+   */
+  private static long countTransactions(JdbcTemplate jdbcTemplate) {
+    return jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT timestamp) FROM payment", Long.class);
+  }
+
+  private static void pay(PaymentService paymentService, Long[] accountIds, int payments,
+      LongAdder latencyNanos) throws Exception {
+    var tasks = new ArrayList<Callable<Void>>(THREADS);
+    for (var t = 0; t < THREADS; t++) {
+      tasks.add(() -> {
+        var random = ThreadLocalRandom.current();
+        for (var i = 0; i < payments / THREADS; i++) {
+          var paymentRequest = new PaymentRequest();
+          paymentRequest.setSenderAccountId(accountIds[random.nextInt(accountIds.length)]);
+          paymentRequest.setReceiverAccountId(accountIds[random.nextInt(accountIds.length)]);
+          paymentRequest.setAmount(new BigDecimal("0.01"));
+          var start = System.nanoTime();
+          try {
+            paymentService.makePayment(paymentRequest);
+          } catch (RequirementException e) {
+            // Sender and receiver drawn the same
+          }
+          latencyNanos.add(System.nanoTime() - start);
+        }
+        return null;
+      });
+    }
+    var executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.entities.Payment;
+import com.rindago.payment.journal.JournalProperties;
+import com.rindago.payment.journal.PaymentJournal;
+import com.rindago.payment.money.Money;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Measures how fast payments are appended to the journal and read back, and how long the
+ * application takes to start on that journal, which rebuilds the account and payment tables. The
+ * first row, without payments, is the startup time of the application itself. The in-memory
+ * database of 10 million payments needs a heap of several GB, e.g. with maxHeapSize set on the
+ * benchmark task. Run with 'gradle benchmark'.
+ */
+@Tag("benchmark")
+class JournalRecoveryBenchmark {
+
+  private static final int ACCOUNTS = 10_000;
+
+  @Test
+  void measureAppendAndRecovery() throws Exception {
+    System.out.printf("%-10s %12s %13s %12s %13s %12s%n", "payments", "appends/s",
+        "journal (MB)", "reads/s", "startup (s)", "replayed/s");
+    for (var paymentCount : List.of(0, 1_000_000, 10_000_000)) {
+      run(paymentCount);
+    }
+  }
+
+  private void run(int paymentCount) throws Exception {
+    var directory = Files.createTempDirectory("benchmark-journal");
+    try {
+      var journalProperties = new JournalProperties();
+      journalProperties.setDirectory(directory);
+      journalProperties.setAwaitSync(false);
+      var journal = new PaymentJournal(journalProperties);
+      journal.open();
+      for (var i = 1; i <= ACCOUNTS; i++) {
+        journal.appendAccount(i, "Benchmark Account " + i, Money.ofCents(100_000_000));
+      }
+      var payment = new Payment();
+      payment.setAmount(Money.ofCents(1));
+      payment.setTimestamp(Instant.now());
+      var start = System.nanoTime();
+      for (var i = 1; i <= paymentCount; i++) {
+        payment.setId((long) i);
+        payment.setSenderAccountId(1L + i % ACCOUNTS);
+        payment.setReceiverAccountId(1L + (i + 1) % ACCOUNTS);
+        journal.appendPayment(payment, null);
+      }
+      journal.close(); // Forces the journal to disk
+      var appendSeconds = (System.nanoTime() - start) / 1e9;
+      var journalBytes = journalBytes(directory);
+
+      journal = new PaymentJournal(journalProperties);
+      journal.open();
+      start = System.nanoTime();
+      journal.replayPayments((sequence, replayed, idempotencyKey) -> { });
+      var readSeconds = (System.nanoTime() - start) / 1e9;
+      journal.close();
+
+      start = System.nanoTime();
+      new SpringApplicationBuilder(PaymentApplication.class)
+          .web(WebApplicationType.NONE)
+          .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+          .run("--payment.engine=ledger", "--payment.journal.enabled=true",
+              "--payment.journal.directory=" + directory,
+              "--spring.datasource.url=jdbc:h2:mem:benchmark-journal-" + paymentCount)
+          .close();
+      var startupSeconds = (System.nanoTime() - start) / 1e9;
+
+      System.out.printf("%-10d %12.0f %13.0f %12.0f %13.1f %12.0f%n", paymentCount,
+          paymentCount / appendSeconds, journalBytes / 1e6, paymentCount / readSeconds,
+          startupSeconds, paymentCount / startupSeconds);
+    } finally {
+      FileSystemUtils.deleteRecursively(directory);
+    }
+  }
+
+  private static long journalBytes(Path directory) throws Exception {
+    try (var files = Files.list(directory)) {
+      return files.mapToLong(path -> path.toFile().length()).sum();
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.archive.PaymentArchive;
+import com.rindago.payment.services.PaymentExportFormat;
+import com.rindago.payment.services.PaymentExportService;
+import com.rindago.payment.services.PaymentHistoryService;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Measures the payment table growing through 10 days of payments, and then the same operations
+ * once the past days are archived: inserting a day of payments, reading the first history page of
+ * an account, which is in the oldest day, and exporting all payments. Run with 'gradle benchmark'.
+ */
+@Tag("benchmark")
+class PaymentArchiveBenchmark {
+
+  private static final int ACCOUNTS = 1_000;
+  private static final int DAYS = 10;
+  private static final int PAYMENTS_PER_DAY = 200_000;
+  private static final int PAGE_SIZE = 50;
+  private static final int FIRST_PAGES = 2_000;
+  private static final int INSERT_BATCH_SIZE = 10_000;
+  private static final Instant FIRST_DAY = Instant.parse("2020-01-01T00:00:00Z");
+
+  private final Random random = new Random(42);
+  private long lastPaymentId;
+
+  @Test
+  void measureTableAndArchive() throws Exception {
+    var directory = Files.createTempDirectory("benchmark-archive");
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run("--payment.archive.enabled=true", "--payment.archive.directory=" + directory,
+            "--payment.archive.interval=PT24H",
+            "--spring.datasource.url=jdbc:h2:mem:benchmark-archive")) {
+      var jdbcTemplate = context.getBean(JdbcTemplate.class);
+      var accounts = new ArrayList<Object[]>(ACCOUNTS);
+      for (var i = 1; i <= ACCOUNTS; i++) {
+        accounts.add(new Object[] {i, "Benchmark Account " + i});
+      }
+      jdbcTemplate.batchUpdate(
+          "INSERT INTO account (id, name, balance, opening_balance, version) "
+              + "VALUES (?, ?, 0, 0, 0)", accounts);
+
+      System.out.printf("%-6s %12s %12s%n", "day", "table rows", "inserts/s");
+      for (var day = 0; day < DAYS; day++) {
+        var insertsPerSecond = insertDay(jdbcTemplate, FIRST_DAY.plusSeconds(day * 86_400L));
+        System.out.printf("%-6d %12d %12.0f%n", day + 1, lastPaymentId, insertsPerSecond);
+      }
+
+      var today = Instant.now().minusSeconds(86_400).plusSeconds(3600);
+      var tableRows = count(jdbcTemplate);
+      var tableInserts = insertDay(jdbcTemplate, today);
+      var tablePage = firstPageMicros(context);
+      var tableExport = exportsPerSecond(context);
+
+      var archivedPayments = count(jdbcTemplate);
+      var start = System.nanoTime();
+      var archivedDays = context.getBean(PaymentArchive.class).archive();
+      var archiveSeconds = (System.nanoTime() - start) / 1e9;
+      archivedPayments -= count(jdbcTemplate);
+      long segmentBytes;
+      try (var files = Files.list(directory)) {
+        segmentBytes = files.mapToLong(path -> path.toFile().length()).sum();
+      }
+      System.out.printf("%n%d days (%d payments) archived in %.1f s: %.1f MB of segments, "
+              + "%.1f bytes/payment%n%n", archivedDays, archivedPayments, archiveSeconds,
+          segmentBytes / 1e6, (double) segmentBytes / archivedPayments);
+
+      var archiveRows = count(jdbcTemplate);
+      var archiveInserts = insertDay(jdbcTemplate, today.plusSeconds(1));
+      var archivePage = firstPageMicros(context);
+      var archiveExport = exportsPerSecond(context);
+
+      System.out.printf("%-36s %14s %14s%n", "", "all in table", "archived");
+      System.out.printf("%-36s %14d %14d%n", "table rows before the inserts", tableRows,
+          archiveRows);
+      System.out.printf("%-36s %14.0f %14.0f%n", "inserts/s of a day", tableInserts,
+          archiveInserts);
+      System.out.printf("%-36s %14.0f %14.0f%n", "first history page (us)", tablePage,
+          archivePage);
+      System.out.printf("%-36s %14.0f %14.0f%n", "export (payments/s)", tableExport,
+          archiveExport);
+    } finally {
+      FileSystemUtils.deleteRecursively(directory);
+    }
+  }
+
+  /**
+   * Inserts a day of payments, in ID and time order
+   * @return Payments inserted per second
+   */
+  private double insertDay(JdbcTemplate jdbcTemplate, Instant day) {
+    var start = System.nanoTime();
+    var payments = new ArrayList<Object[]>(INSERT_BATCH_SIZE);
+    for (var i = 0; i < PAYMENTS_PER_DAY; i++) {
+      var sender = 1 + random.nextInt(ACCOUNTS);
+      var receiver = 1 + (sender + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+      payments.add(new Object[] {++lastPaymentId, sender, receiver,
+          Timestamp.from(day.plusMillis(i * 400L + random.nextInt(100)))});
+      if (payments.size() == INSERT_BATCH_SIZE) {
+        jdbcTemplate.batchUpdate("INSERT INTO payment (id, sender_account_id, "
+            + "receiver_account_id, amount, timestamp) VALUES (?, ?, ?, 1.00, ?)", payments);
+        payments.clear();
+      }
+    }
+    return PAYMENTS_PER_DAY / ((System.nanoTime() - start) / 1e9);
+  }
+
+  private double firstPageMicros(ConfigurableApplicationContext context) {
+    var paymentHistoryService = context.getBean(PaymentHistoryService.class);
+    for (var i = 0; i < FIRST_PAGES; i++) { // Warm-up
+      paymentHistoryService.getPayments(1L + random.nextInt(ACCOUNTS), null, PAGE_SIZE);
+    }
+    var start = System.nanoTime();
+    for (var i = 0; i < FIRST_PAGES; i++) {
+      paymentHistoryService.getPayments(1L + random.nextInt(ACCOUNTS), null, PAGE_SIZE);
+    }
+    return (System.nanoTime() - start) / 1e3 / FIRST_PAGES;
+  }
+
+  private static double exportsPerSecond(ConfigurableApplicationContext context) {
+    var start = System.nanoTime();
+    var exported = context.getBean(PaymentExportService.class)
+        .export(null, null, null, PaymentExportFormat.CSV, OutputStream.nullOutputStream());
+    return exported / ((System.nanoTime() - start) / 1e9);
+  }
+
+  private static long count(JdbcTemplate jdbcTemplate) {
+    return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payment", Long.class);
+  }
+}
@@ -0,0 +1,119 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.repositories.PaymentRepository;
+import com.rindago.payment.services.PaymentExportFormat;
+import com.rindago.payment.services.PaymentExportService;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Compares the live heap used to read the whole payment table through the streamed export and
+ * through PaymentRepository.findAll(), as the table grows. The live heap is measured after a full
+ * garbage collection, halfway through the export or with the whole findAll() result held. Run with
+ * 'gradle benchmark'.
+ */
+@Tag("benchmark")
+class PaymentExportBenchmark {
+
+  private static final int ACCOUNTS = 1_000;
+  private static final int INSERT_BATCH_SIZE = 10_000;
+
+  @Test
+  void compareExportAndFindAllHeap() {
+    System.out.printf("%-10s %14s %16s %17s%n", "payments", "export rows/s", "export heap (MB)",
+        "findAll heap (MB)");
+    for (var paymentCount : List.of(100_000, 400_000)) {
+      run(paymentCount);
+    }
+  }
+
+  private void run(int paymentCount) {
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run("--spring.datasource.url=jdbc:h2:mem:benchmark-export-" + paymentCount)) {
+      insertAccountsAndPayments(context.getBean(JdbcTemplate.class), paymentCount);
+      var paymentExportService = context.getBean(PaymentExportService.class);
+
+      var baseline = liveHeap();
+      var output = new HalfwayHeapProbe(paymentCount * 110L); // About 110 bytes per record
+      var start = System.nanoTime();
+      var exported = paymentExportService.export(null, null, null, PaymentExportFormat.NDJSON,
+          output);
+      var seconds = (System.nanoTime() - start) / 1e9;
+      var exportHeap = output.heapHalfway - baseline;
+
+      baseline = liveHeap();
+      var payments = context.getBean(PaymentRepository.class).findAll();
+      var findAllHeap = liveHeap() - baseline;
+      payments.forEach(payment -> { }); // The result is held until here.
+
+      System.out.printf("%-10d %14.0f %16.1f %17.1f%n", exported, exported / seconds,
+          exportHeap / 1e6, findAllHeap / 1e6);
+    }
+  }
+
+  private static long liveHeap() {
+    System.gc();
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  /**
+   * Discards the export and measures the live heap once about half of it has been written
+   */
+  private static class HalfwayHeapProbe extends OutputStream {
+
+    private final long halfwayBytes;
+    private long written;
+    private long heapHalfway;
+
+    HalfwayHeapProbe(long expectedBytes) {
+      this.halfwayBytes = expectedBytes / 2;
+    }
+
+    @Override
+    public void write(int b) {
+      write(null, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      if (written < halfwayBytes && written + len >= halfwayBytes) {
+        heapHalfway = liveHeap();
+      }
+      written += len;
+    }
+  }
+
+  private static void insertAccountsAndPayments(JdbcTemplate jdbcTemplate, int paymentCount) {
+    var accounts = new ArrayList<Object[]>(ACCOUNTS);
+    for (var i = 1; i <= ACCOUNTS; i++) {
+      accounts.add(new Object[] {i, "Benchmark Account " + i});
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO account (id, name, balance, opening_balance, version) "
+            + "VALUES (?, ?, 0, 0, 0)", accounts);
+
+    var start = Instant.parse("2020-01-01T00:00:00Z");
+    var payments = new ArrayList<Object[]>(INSERT_BATCH_SIZE);
+    for (var i = 1; i <= paymentCount; i++) {
+      payments.add(new Object[] {i, 1 + i % ACCOUNTS, 1 + (i + 1) % ACCOUNTS,
+          Timestamp.from(start.plusMillis(i * 10L))});
+      if (payments.size() == INSERT_BATCH_SIZE || i == paymentCount) {
+        jdbcTemplate.batchUpdate("INSERT INTO payment (id, sender_account_id, "
+            + "receiver_account_id, amount, timestamp) VALUES (?, ?, ?, 1.00, ?)", payments);
+        payments.clear();
+      }
+    }
+  }
+}
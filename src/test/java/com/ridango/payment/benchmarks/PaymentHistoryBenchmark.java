@@ -0,0 +1,100 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.services.PaymentHistoryService;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Measures the latency of payment history pages as the payment table grows, for the first page of
+ * an account and for all pages of an account's history walked with cursors. Run with
+ * 'gradle benchmark'.
+ */
+@Tag("benchmark")
+class PaymentHistoryBenchmark {
+
+  private static final int ACCOUNTS = 1_000;
+  private static final int PAGE_SIZE = 50;
+  private static final int FIRST_PAGES = 5_000;
+  private static final int WALKED_ACCOUNTS = 50;
+  private static final int INSERT_BATCH_SIZE = 10_000;
+
+  @Test
+  void measurePageLatencyAsPaymentsGrow() {
+    System.out.printf("%-10s %16s %16s %8s%n", "payments", "first page (us)", "any page (us)",
+        "pages");
+    for (var paymentCount : List.of(100_000, 1_000_000)) {
+      run(paymentCount);
+    }
+  }
+
+  private void run(int paymentCount) {
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run("--spring.datasource.url=jdbc:h2:mem:benchmark-history-" + paymentCount)) {
+      var jdbcTemplate = context.getBean(JdbcTemplate.class);
+      var paymentHistoryService = context.getBean(PaymentHistoryService.class);
+      insertAccountsAndPayments(jdbcTemplate, paymentCount);
+      var random = new Random(42);
+
+      for (var i = 0; i < FIRST_PAGES; i++) { // Warm-up
+        paymentHistoryService.getPayments(1L + random.nextInt(ACCOUNTS), null, PAGE_SIZE);
+      }
+      var start = System.nanoTime();
+      for (var i = 0; i < FIRST_PAGES; i++) {
+        paymentHistoryService.getPayments(1L + random.nextInt(ACCOUNTS), null, PAGE_SIZE);
+      }
+      var firstPageMicros = (System.nanoTime() - start) / 1e3 / FIRST_PAGES;
+
+      var pages = 0;
+      start = System.nanoTime();
+      for (var i = 0; i < WALKED_ACCOUNTS; i++) {
+        var accountId = 1L + random.nextInt(ACCOUNTS);
+        String cursor = null;
+        do {
+          cursor = paymentHistoryService.getPayments(accountId, cursor, PAGE_SIZE).orElseThrow()
+              .getNextCursor();
+          pages++;
+        } while (cursor != null);
+      }
+      var anyPageMicros = (System.nanoTime() - start) / 1e3 / pages;
+
+      System.out.printf("%-10d %16.0f %16.0f %8d%n", paymentCount, firstPageMicros, anyPageMicros,
+          pages);
+    }
+  }
+
+  private static void insertAccountsAndPayments(JdbcTemplate jdbcTemplate, int paymentCount) {
+    var accounts = new ArrayList<Object[]>(ACCOUNTS);
+    for (var i = 1; i <= ACCOUNTS; i++) {
+      accounts.add(new Object[] {i, "Benchmark Account " + i});
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO account (id, name, balance, opening_balance, version) "
+            + "VALUES (?, ?, 0, 0, 0)", accounts);
+
+    var random = new Random(7);
+    var start = Instant.parse("2020-01-01T00:00:00Z");
+    var payments = new ArrayList<Object[]>(INSERT_BATCH_SIZE);
+    for (var i = 1; i <= paymentCount; i++) {
+      var sender = 1 + random.nextInt(ACCOUNTS);
+      var receiver = 1 + (sender + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+      payments.add(new Object[] {i, sender, receiver,
+          Timestamp.from(start.plusMillis(i * 10L + random.nextInt(5)))});
+      if (payments.size() == INSERT_BATCH_SIZE || i == paymentCount) {
+        jdbcTemplate.batchUpdate("INSERT INTO payment (id, sender_account_id, "
+            + "receiver_account_id, amount, timestamp) VALUES (?, ?, ?, 1.00, ?)", payments);
+        payments.clear();
+      }
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.reconciliation.BalanceReconciler;
+import com.rindago.payment.reconciliation.ReconciliationProperties;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Measures the balance reconciliation of 100 000 accounts and 1 000 000 payments: the first run,
+ * which folds all payments, an incremental run, and a single aggregate query over the payment
+ * table. Then measures the latency of '/payment' over HTTP without reconciliation, while it runs
+ * without a budget, and while it is throttled to the latency without reconciliation. Run with
+ * 'gradle benchmark'.
+ */
+@Tag("benchmark")
+class ReconciliationBenchmark {
+
+  private static final int ACCOUNTS = 100_000;
+  private static final int PAYMENTS = 1_000_000;
+  private static final int INSERT_BATCH_SIZE = 10_000;
+  private static final int CLIENTS = 4;
+  private static final Duration LOAD_DURATION = Duration.ofSeconds(20);
+  private static final String NAIVE_AGGREGATE = "SELECT a.id, a.opening_balance "
+      + "+ COALESCE(r.amount, 0) - COALESCE(s.amount, 0) - a.balance FROM account a "
+      + "LEFT JOIN (SELECT receiver_account_id id, SUM(amount) amount FROM payment "
+      + "GROUP BY receiver_account_id) r ON r.id = a.id "
+      + "LEFT JOIN (SELECT sender_account_id id, SUM(amount) amount FROM payment "
+      + "GROUP BY sender_account_id) s ON s.id = a.id";
+
+  @Test
+  void measureRunsAndPaymentLatency() throws Exception {
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.SERVLET)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run("--server.port=0", "--payment.reconciliation.enabled=true",
+            "--payment.reconciliation.interval=PT24H",
+            "--management.metrics.distribution.expiry[http.server.requests]=PT2S",
+            "--spring.datasource.url=jdbc:h2:mem:benchmark-reconciliation")) {
+      insertAccountsAndPayments(context.getBean(JdbcTemplate.class));
+      var reconciler = context.getBean(BalanceReconciler.class);
+
+      System.out.printf("%-36s %10s %10s %12s%n", "", "time (s)", "payments", "mismatches");
+      var report = reconciler.reconcile();
+      System.out.printf("%-36s %10.1f %10d %12d%n", "first run", report.getDurationMillis() / 1e3,
+          report.getPayments(), report.getMismatchCount());
+      var start = System.nanoTime();
+      var mismatches = new long[1];
+      context.getBean(JdbcTemplate.class).query(NAIVE_AGGREGATE, resultSet -> {
+        if (resultSet.getBigDecimal(2).signum() != 0) {
+          mismatches[0]++;
+        }
+      });
+      System.out.printf("%-36s %10.1f %10d %12d%n", "one aggregate query",
+          (System.nanoTime() - start) / 1e9, PAYMENTS, mismatches[0]);
+
+      var baseUri = "http://localhost:"
+          + ((WebServerApplicationContext) context).getWebServer().getPort();
+      var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+      load(client, baseUri, null); // Warms up the web server and the payment path.
+      var baseline = load(client, baseUri, null);
+      report = reconciler.reconcile();
+      System.out.printf("%-36s %10.1f %10d %12d%n", "incremental run",
+          report.getDurationMillis() / 1e3, report.getPayments(), report.getMismatchCount());
+
+      System.out.printf("%n%-24s %12s %10s %10s %6s %14s%n", "reconciliation", "payments/s",
+          "p50 (ms)", "p99 (ms)", "runs", "throttled (s)");
+      print("none", baseline);
+      var properties = context.getBean(ReconciliationProperties.class);
+      properties.setLatencyBudget(Duration.ofHours(1));
+      print("without a budget", load(client, baseUri, reconciler));
+      var budget = Duration.ofNanos(Math.max(baseline.p99Nanos, 1_000_000));
+      properties.setLatencyBudget(budget);
+      print(String.format("budget %.1f ms", budget.toNanos() / 1e6),
+          load(client, baseUri, reconciler));
+    }
+  }
+
+  /**
+   * Inserts accounts with the balances resulting from random payments between them
+   */
+  private static void insertAccountsAndPayments(JdbcTemplate jdbcTemplate) {
+    var random = new Random(42);
+    var balances = new long[ACCOUNTS + 1];
+    Arrays.fill(balances, 1_000_000); // 10 000.00 opening balance
+    var payments = new ArrayList<Object[]>(PAYMENTS);
+    var timestamp = Timestamp.from(Instant.now());
+    for (var id = 1; id <= PAYMENTS; id++) {
+      var sender = 1 + random.nextInt(ACCOUNTS);
+      var receiver = 1 + (sender + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+      var cents = 1 + random.nextInt(100);
+      balances[sender] -= cents;
+      balances[receiver] += cents;
+      payments.add(new Object[] {id, sender, receiver, BigDecimal.valueOf(cents, 2), timestamp});
+    }
+    var accounts = new ArrayList<Object[]>(INSERT_BATCH_SIZE);
+    for (var id = 1; id <= ACCOUNTS; id++) {
+      accounts.add(new Object[] {id, "Benchmark Account " + id,
+          BigDecimal.valueOf(balances[id], 2)});
+      if (accounts.size() == INSERT_BATCH_SIZE) {
+        jdbcTemplate.batchUpdate("INSERT INTO account (id, name, balance, opening_balance, "
+            + "version) VALUES (?, ?, ?, 10000, 0)", accounts);
+        accounts.clear();
+      }
+    }
+    for (var from = 0; from < PAYMENTS; from += INSERT_BATCH_SIZE) {
+      jdbcTemplate.batchUpdate("INSERT INTO payment (id, sender_account_id, receiver_account_id, "
+          + "amount, timestamp) VALUES (?, ?, ?, ?, ?)",
+          payments.subList(from, from + INSERT_BATCH_SIZE));
+    }
+    // The pooled optimizer hands out the block of IDs below the value it reads.
+    jdbcTemplate.execute("ALTER SEQUENCE payment_seq RESTART WITH " + (PAYMENTS + 51));
+    jdbcTemplate.execute("ALTER SEQUENCE account_seq RESTART WITH " + (ACCOUNTS + 51));
+  }
+
+  /**
+   * Sends payments from several clients for the load duration, while the reconciler, if any,
+   * runs again and again
+   */
+  private static LoadResult load(HttpClient client, String baseUri, BalanceReconciler reconciler)
+      throws Exception {
+    var end = System.nanoTime() + LOAD_DURATION.toNanos();
+    var running = new AtomicBoolean(true);
+    var runs = new AtomicInteger();
+    var throttledMillis = new AtomicLong();
+    var reconciling = new Thread(() -> {
+      while (reconciler != null && running.get()) {
+        var report = reconciler.reconcile();
+        runs.incrementAndGet();
+        throttledMillis.addAndGet(report.getThrottledMillis());
+      }
+    });
+    reconciling.start();
+    var latencies = new long[CLIENTS][1_000_000];
+    var counts = new int[CLIENTS];
+    var clients = new ArrayList<Thread>();
+    for (var c = 0; c < CLIENTS; c++) {
+      var clientIndex = c;
+      var thread = new Thread(() -> {
+        while (System.nanoTime() < end && counts[clientIndex] < latencies[clientIndex].length) {
+          var start = System.nanoTime();
+          try {
+            client.send(paymentRequest(baseUri), HttpResponse.BodyHandlers.discarding());
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+          latencies[clientIndex][counts[clientIndex]++] = System.nanoTime() - start;
+        }
+      });
+      clients.add(thread);
+      thread.start();
+    }
+    for (var thread : clients) {
+      thread.join();
+    }
+    running.set(false);
+    reconciling.join();
+
+    var all = new long[Arrays.stream(counts).sum()];
+    var length = 0;
+    for (var c = 0; c < CLIENTS; c++) {
+      System.arraycopy(latencies[c], 0, all, length, counts[c]);
+      length += counts[c];
+    }
+    Arrays.sort(all);
+    return new LoadResult(all.length / (double) LOAD_DURATION.toSeconds(), all[all.length / 2],
+        all[all.length * 99 / 100], runs.get(), throttledMillis.get());
+  }
+
+  private static HttpRequest paymentRequest(String baseUri) {
+    var random = ThreadLocalRandom.current();
+    var sender = 1 + random.nextInt(ACCOUNTS);
+    var receiver = 1 + (sender + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+    var body = "{\"senderAccountId\":" + sender + ",\"receiverAccountId\":" + receiver
+        + ",\"amount\":0.01}";
+    return HttpRequest.newBuilder(URI.create(baseUri + "/payment"))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body))
+        .build();
+  }
+
+  private static void print(String label, LoadResult result) {
+    System.out.printf("%-24s %12.0f %10.1f %10.1f %6d %14.1f%n", label, result.paymentsPerSecond,
+        result.p50Nanos / 1e6, result.p99Nanos / 1e6, result.runs, result.throttledMillis / 1e3);
+  }
+
+  private record LoadResult(double paymentsPerSecond, long p50Nanos, long p99Nanos, int runs,
+      long throttledMillis) {
+  }
+}
@@ -0,0 +1,195 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.AccountRequest;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.exceptions.RequirementException;
+import com.rindago.payment.services.AccountService;
+import com.rindago.payment.services.PaymentService;
+import com.rindago.payment.sharding.AccountShards;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.h2.api.Trigger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * Measures the throughput and mean latency of payments between random accounts with the sharded
+ * engine and 1, 2, 4 and 8 in-memory shard databases, with many concurrent callers, and how the
+ * payments spread over the shards. Run with 'gradle benchmark'.
+ *
+ * <p>Each shard stands for a database on its own host, whose commits are limited by syncing its
+ * log: every local transaction of a payment waits {@link #SYNC_MICROS} for its shard's log, one
+ * transaction at a time per shard. The wait costs no CPU, so the shards' logs work in parallel as
+ * separate hosts would, and the application's CPU is not what limits the throughput.
+ */
+@Tag("benchmark")
+class ShardingBenchmark {
+
+  private static final int ACCOUNTS = 10_000;
+  private static final int THREADS = 64;
+  private static final int WARMUP_PAYMENTS = 10_000;
+  private static final int MEASURED_PAYMENTS = 40_000;
+  // Time to sync a shard's log, taken by each local transaction of a payment
+  private static final long SYNC_MICROS = 1_000;
+  // Each local transaction of a payment inserts one row into one of these tables.
+  private static final List<String> COMMITTED_TABLES = List.of("payment", "transfer_out",
+      "transfer_in");
+
+  @Test
+  void compareShardCounts() throws Exception {
+    System.out.printf("%-7s %12s %18s %14s %16s%n", "shards", "payments/s",
+        "mean latency (us)", "cross-shard %", "busiest shard %");
+    for (var shards : List.of(1, 2, 4, 8)) {
+      run(shards);
+    }
+  }
+
+  private void run(int shards) throws Exception {
+    var urls = new ArrayList<String>();
+    for (var i = 0; i < shards; i++) {
+      urls.add("jdbc:h2:mem:benchmark-sharding-" + shards + "-" + i);
+    }
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run("--payment.engine=sharded", "--payment.sharding.urls=" + String.join(",", urls),
+            "--payment.sharding.pool-size=" + THREADS,
+            "--spring.datasource.url=jdbc:h2:mem:benchmark-sharding-primary-" + shards)) {
+      var accountRequest = new AccountRequest();
+      accountRequest.setAccounts(new ArrayList<>());
+      for (var i = 0; i < ACCOUNTS; i++) {
+        var account = new AccountDto();
+        account.setName("Benchmark Account " + i);
+        account.setBalance(new BigDecimal("1000000.00"));
+        accountRequest.getAccounts().add(account);
+      }
+      var accountIds = context.getBean(AccountService.class).createAccount(accountRequest)
+          .stream().map(AccountDto::getId).toArray(Long[]::new);
+      var paymentService = context.getBean(PaymentService.class);
+      var accountShards = context.getBean(AccountShards.class);
+      for (var shard : accountShards.getShards()) {
+        for (var table : COMMITTED_TABLES) {
+          shard.getJdbcTemplate().execute("CREATE TRIGGER synced_" + table + " AFTER INSERT ON "
+              + table + " FOR EACH ROW CALL \"" + SyncedLog.class.getName() + "\"");
+        }
+      }
+
+      var latencyNanos = new LongAdder();
+      pay(paymentService, accountIds, WARMUP_PAYMENTS, latencyNanos); // Also copies the accounts
+      latencyNanos.reset();
+      var paymentsBefore = countPayments(accountShards, "payment");
+      var transfersBefore = countPayments(accountShards, "transfer_in");
+
+      var start = System.nanoTime();
+      pay(paymentService, accountIds, MEASURED_PAYMENTS, latencyNanos);
+      var seconds = (System.nanoTime() - start) / 1e9;
+
+      var payments = countPayments(accountShards, "payment");
+      var transfers = countPayments(accountShards, "transfer_in");
+      var busiest = 0L;
+      for (var i = 0; i < shards; i++) {
+        busiest = Math.max(busiest, payments[i] - paymentsBefore[i]);
+      }
+      System.out.printf("%-7d %12.0f %18.0f %14.1f %16.1f%n", shards,
+          MEASURED_PAYMENTS / seconds, latencyNanos.sum() / 1e3 / MEASURED_PAYMENTS,
+          100.0 * (sum(transfers) - sum(transfersBefore)) / MEASURED_PAYMENTS,
+          100.0 * busiest / MEASURED_PAYMENTS);
+    }
+  }
+
+  private static void pay(PaymentService paymentService, Long[] accountIds, int count,
+      LongAdder latencyNanos) throws Exception {
+    var tasks = new ArrayList<Callable<Void>>(count);
+    for (var i = 0; i < count; i++) {
+      tasks.add(() -> {
+        var random = ThreadLocalRandom.current();
+        var sender = random.nextInt(accountIds.length);
+        var paymentRequest = new PaymentRequest();
+        paymentRequest.setSenderAccountId(accountIds[sender]);
+        paymentRequest.setReceiverAccountId(
+            accountIds[(sender + 1 + random.nextInt(accountIds.length - 1)) % accountIds.length]);
+        paymentRequest.setAmount(new BigDecimal("0.01"));
+        var start = System.nanoTime();
+        try {
+          paymentService.makePayment(paymentRequest);
+        } catch (RequirementException e) {
+          // Not expected with these balances
+        }
+        latencyNanos.add(System.nanoTime() - start);
+        return null;
+      });
+    }
+    var executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * @return Number of rows of the table on each shard
+   */
+  private static long[] countPayments(AccountShards accountShards, String table) {
+    return accountShards.getShards().stream().mapToLong(shard -> shard.getJdbcTemplate()
+        .queryForObject("SELECT COUNT(*) FROM " + table, Long.class)).toArray();
+  }
+
+  private static long sum(long[] counts) {
+    var sum = 0L;
+    for (var count : counts) {
+      sum += count;
+    }
+    return sum;
+  }
+
+  /**
+   * Makes the transaction inserting a row wait for the log of its shard, which syncs one
+   * transaction at a time
+   */
+  public static class SyncedLog implements Trigger {
+
+    // Log of each shard database, by name
+    private static final Map<String, Object> LOGS = new ConcurrentHashMap<>();
+
+    private Object log;
+
+    @Override
+    public void init(Connection connection, String schemaName, String triggerName,
+        String tableName, boolean before, int type) throws SQLException {
+      try (var statement = connection.createStatement();
+          var database = statement.executeQuery("SELECT DATABASE()")) {
+        database.next();
+        log = LOGS.computeIfAbsent(database.getString(1), name -> new Object());
+      }
+    }
+
+    @Override
+    public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+      synchronized (log) {
+        try {
+          TimeUnit.MICROSECONDS.sleep(SYNC_MICROS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SQLException(e);
+        }
+      }
+    }
+  }
+}
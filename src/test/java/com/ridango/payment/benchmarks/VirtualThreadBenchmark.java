@@ -0,0 +1,154 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.entities.Account;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.repositories.AccountRepository;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+
+/**
+ * Compares Tomcat request execution on platform threads and on virtual threads with 10 000
+ * concurrent connections, each sending a mix of account reads and payments over HTTP, and counts
+ * the times a virtual thread was pinned to its carrier while blocked. Run with 'gradle benchmark',
+ * which also prints the stack of each pinned thread.
+ */
+@Tag("benchmark")
+class VirtualThreadBenchmark {
+
+  private static final int ACCOUNTS = 1_000;
+  private static final int CONNECTIONS = 10_000;
+  private static final int REQUESTS_PER_CONNECTION = 5;
+  private static final int READ_PERCENT = 80;
+
+  @Test
+  void comparePlatformAndVirtualThreads() throws Exception {
+    System.out.printf("%-9s %12s %12s %12s %8s %8s%n", "threads", "requests/s", "p50 (ms)",
+        "p99 (ms)", "errors", "pinned");
+    for (var virtual : List.of(false, true)) {
+      run(virtual);
+    }
+  }
+
+  private void run(boolean virtual) throws Exception {
+    try (var pinnedEvents = new RecordingStream();
+        var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.SERVLET)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run("--spring.threads.virtual.enabled=" + virtual, "--server.port=0",
+            "--server.tomcat.max-connections=" + (CONNECTIONS + 1_000),
+            "--server.tomcat.accept-count=" + CONNECTIONS,
+            "--spring.datasource.url=jdbc:h2:mem:benchmark-virtual-threads-" + virtual)) {
+      var accounts = new ArrayList<Account>();
+      for (var i = 0; i < ACCOUNTS; i++) {
+        var account = new Account();
+        account.setName("Benchmark Account " + i);
+        account.setBalance(Money.of(new BigDecimal("1000000.00")));
+        accounts.add(account);
+      }
+      context.getBean(AccountRepository.class).saveAll(accounts);
+      var accountIds = accounts.stream().map(Account::getId).toArray(Long[]::new);
+      var baseUri = "http://localhost:"
+          + ((WebServerApplicationContext) context).getWebServer().getPort();
+
+      var pinned = new AtomicInteger();
+      pinnedEvents.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO);
+      pinnedEvents.onEvent("jdk.VirtualThreadPinned", event -> pinned.incrementAndGet());
+      pinnedEvents.startAsync();
+
+      var clientExecutor = Executors.newFixedThreadPool(4);
+      // Closing the client closes its connections, which the next run needs file descriptors for.
+      try (var client = HttpClient.newBuilder()
+          .version(HttpClient.Version.HTTP_1_1)
+          .connectTimeout(Duration.ofMinutes(1))
+          .executor(clientExecutor)
+          .build()) {
+        load(client, baseUri, accountIds, CONNECTIONS / 10); // Warm-up
+        var latencies = new long[CONNECTIONS * REQUESTS_PER_CONNECTION];
+        var start = System.nanoTime();
+        var errors = load(client, baseUri, accountIds, CONNECTIONS, latencies);
+        var seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-9s %12.0f %12.1f %12.1f %8d %8d%n", virtual ? "virtual" : "platform",
+            latencies.length / seconds, latencies[latencies.length / 2] / 1e6,
+            latencies[latencies.length * 99 / 100] / 1e6, errors, pinned.get());
+      } finally {
+        clientExecutor.shutdown();
+      }
+    }
+  }
+
+  private static int load(HttpClient client, String baseUri, Long[] accountIds, int connections) {
+    return load(client, baseUri, accountIds, connections,
+        new long[connections * REQUESTS_PER_CONNECTION]);
+  }
+
+  /**
+   * Keeps the given number of connections busy until each has sent its requests
+   * @return Number of requests which have failed
+   */
+  private static int load(HttpClient client, String baseUri, Long[] accountIds, int connectionCount,
+      long[] latencies) {
+    var completed = new AtomicInteger();
+    var errors = new AtomicInteger();
+    var connections = new ArrayList<CompletableFuture<Void>>(connectionCount);
+    for (var c = 0; c < connectionCount; c++) {
+      // Each chain sends its requests one after another, so it keeps one connection busy.
+      var chain = CompletableFuture.<Void>completedFuture(null);
+      for (var r = 0; r < REQUESTS_PER_CONNECTION; r++) {
+        chain = chain.thenCompose(ignored -> {
+          var requestStart = System.nanoTime();
+          return client.sendAsync(request(baseUri, accountIds),
+              HttpResponse.BodyHandlers.discarding())
+              .handle((response, failure) -> {
+                if (failure != null || response.statusCode() >= 500) {
+                  errors.incrementAndGet();
+                }
+                latencies[completed.getAndIncrement()] = System.nanoTime() - requestStart;
+                return null;
+              });
+        });
+      }
+      connections.add(chain);
+    }
+    CompletableFuture.allOf(connections.toArray(CompletableFuture[]::new)).join();
+    return errors.get();
+  }
+
+  private static HttpRequest request(String baseUri, Long[] accountIds) {
+    var random = ThreadLocalRandom.current();
+    var sender = random.nextInt(accountIds.length);
+    if (random.nextInt(100) < READ_PERCENT) {
+      return HttpRequest.newBuilder(URI.create(baseUri + "/account/" + accountIds[sender]))
+          .timeout(Duration.ofMinutes(5))
+          .GET()
+          .build();
+    }
+    var receiver = (sender + 1 + random.nextInt(accountIds.length - 1)) % accountIds.length;
+    var body = "{\"senderAccountId\":" + accountIds[sender] + ",\"receiverAccountId\":"
+        + accountIds[receiver] + ",\"amount\":0.01}";
+    return HttpRequest.newBuilder(URI.create(baseUri + "/payment"))
+        .timeout(Duration.ofMinutes(5))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body))
+        .build();
+  }
+}
@@ -0,0 +1,75 @@
+package com.ridango.payment.benchmarks;
+
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.money.Money;
+import com.rindago.payment.snapshot.AccountSnapshot;
+import com.rindago.payment.snapshot.AccountSnapshotService;
+import com.rindago.payment.snapshot.WarmStart;
+import java.io.BufferedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * Measures how fast the accounts of a snapshot are loaded at startup, with one thread and with
+ * several threads inserting them, and how fast a running instance writes them back to a snapshot.
+ * The in-memory database of 10 million accounts needs a heap of several GB, e.g. with maxHeapSize
+ * set on the benchmark task. Run with 'gradle benchmark'.
+ */
+@Tag("benchmark")
+class WarmStartBenchmark {
+
+  private static final int THREADS = Math.max(Runtime.getRuntime().availableProcessors(), 4);
+
+  @Test
+  void measureLoadAndWrite() throws Exception {
+    System.out.printf("%-10s %8s %14s %9s %12s %10s %12s%n", "accounts", "threads",
+        "snapshot (MB)", "load (s)", "loaded/s", "write (s)", "written/s");
+    for (var accountCount : List.of(1_000_000, 10_000_000)) {
+      var snapshot = Files.createTempFile("benchmark-accounts", ".snapshot");
+      try {
+        try (var writer = AccountSnapshot.create(snapshot, 0)) {
+          for (var id = 1L; id <= accountCount; id++) {
+            writer.write(id, Money.ofCents(100_000 + id % 1000), "Benchmark Account " + id);
+          }
+          writer.commit();
+        }
+        for (var threads : List.of(1, THREADS)) {
+          run(snapshot, accountCount, threads);
+        }
+      } finally {
+        Files.delete(snapshot);
+      }
+    }
+  }
+
+  private void run(Path snapshot, int accountCount, int threads) throws Exception {
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run("--payment.warm-start.snapshot=" + snapshot,
+            "--payment.warm-start.threads=" + threads,
+            "--spring.datasource.hikari.maximum-pool-size=" + (threads + 2),
+            "--spring.datasource.url=jdbc:h2:mem:benchmark-warm-start-" + accountCount + "-"
+                + threads)) {
+      var loadSeconds = ((Number) context.getBean(WarmStart.class).health().getDetails()
+          .get("loadMillis")).longValue() / 1e3;
+
+      var written = Files.createTempFile("benchmark-written", ".snapshot");
+      try (var output = new BufferedOutputStream(Files.newOutputStream(written), 1 << 16)) {
+        var start = System.nanoTime();
+        context.getBean(AccountSnapshotService.class).write(output);
+        var writeSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-10d %8d %14.0f %9.1f %12.0f %10.1f %12.0f%n", accountCount, threads,
+            Files.size(snapshot) / 1e6, loadSeconds, accountCount / loadSeconds, writeSeconds,
+            accountCount / writeSeconds);
+      } finally {
+        Files.delete(written);
+      }
+    }
+  }
+}
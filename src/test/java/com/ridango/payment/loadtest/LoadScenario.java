@@ -0,0 +1,85 @@
+package com.ridango.payment.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * How the load generator picks the sender and the receiver of a payment among the seeded accounts
+ */
+enum LoadScenario {
+
+  /**
+   * Every account is equally likely to send and to receive
+   */
+  UNIFORM,
+
+  /**
+   * Senders and receivers both follow a Zipf distribution over the accounts, so a few accounts take
+   * part in most payments
+   */
+  ZIPF,
+
+  /**
+   * Every payment goes to the first account, e.g. the transit operator's collection account, from a
+   * uniformly picked sender
+   */
+  HOT_RECEIVER;
+
+  /**
+   * Picks the indexes of a payment's sender and receiver, which are always different
+   * @param random Random of the calling thread
+   * @param zipf Sampler over all accounts, used by {@link #ZIPF}
+   * @return Sender index and receiver index
+   */
+  int[] pick(Random random, ZipfSampler zipf) {
+    var accounts = zipf.size();
+    int sender;
+    int receiver;
+    switch (this) {
+      case ZIPF -> {
+        sender = zipf.next(random);
+        do {
+          receiver = zipf.next(random);
+        } while (receiver == sender);
+      }
+      case HOT_RECEIVER -> {
+        sender = 1 + random.nextInt(accounts - 1);
+        receiver = 0;
+      }
+      default -> {
+        sender = random.nextInt(accounts);
+        receiver = (sender + 1 + random.nextInt(accounts - 1)) % accounts;
+      }
+    }
+    return new int[] {sender, receiver};
+  }
+
+  /**
+   * Samples account indexes with a probability proportional to 1 / (index + 1)^exponent
+   */
+  static class ZipfSampler {
+
+    private final double[] cumulative;
+
+    ZipfSampler(int size, double exponent) {
+      cumulative = new double[size];
+      var sum = 0.0;
+      for (var i = 0; i < size; i++) {
+        sum += 1 / Math.pow(i + 1, exponent);
+        cumulative[i] = sum;
+      }
+      for (var i = 0; i < size; i++) {
+        cumulative[i] /= sum;
+      }
+    }
+
+    int size() {
+      return cumulative.length;
+    }
+
+    int next(Random random) {
+      var index = Arrays.binarySearch(cumulative, random.nextDouble());
+      return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+  }
+}
@@ -0,0 +1,335 @@
+package com.ridango.payment.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rindago.payment.PaymentApplication;
+import com.rindago.payment.dtos.AccountDto;
+import com.rindago.payment.dtos.AccountRequest;
+import com.rindago.payment.dtos.PaymentRequest;
+import com.rindago.payment.services.HotAccountProperties;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Boots PaymentApplication on a random port, seeds accounts through POST /account/, and drives
+ * POST /payment with one of the {@link LoadScenario}s. The load is either closed-loop, each of the
+ * 'concurrency' callers sending its next payment as soon as the previous one is answered, or
+ * open-loop at a fixed arrival rate. In the open-loop mode a payment's latency is measured from the
+ * time it was due, so a server which falls behind is not hidden by callers waiting for it. At the
+ * end, the sum of all balances is checked to be unchanged.
+ *
+ * <p>Run with 'gradle loadTest --args="--scenario=zipf --rate=2000"'. Options:
+ * <ul>
+ *   <li>--accounts: number of seeded accounts (1000)</li>
+ *   <li>--balance: initial balance of each account (1000.00)</li>
+ *   <li>--scenario: uniform, zipf or hot_receiver (uniform)</li>
+ *   <li>--zipf-exponent: skew of the zipf scenario (1.0)</li>
+ *   <li>--mark-hot: whether the hot_receiver scenario's receiver is a hot account (false)</li>
+ *   <li>--concurrency: number of callers, or most payments in flight (64)</li>
+ *   <li>--rate: payments per second, or 0 for closed-loop load (0)</li>
+ *   <li>--warmup, --duration: ISO-8601 durations of the unmeasured and the measured load
+ *   (PT5S, PT30S)</li>
+ *   <li>--histogram-file: file to write the full latency distribution to, in milliseconds</li>
+ * </ul>
+ * Any other '--' argument is passed to the application, e.g. '--payment.engine=ledger'.
+ */
+public class PaymentLoadGenerator {
+
+  private static final int SEED_BATCH_SIZE = 500;
+  private static final int MAX_AMOUNT_CENTS = 100;
+  private static final Duration BALANCE_CHECK_TIMEOUT = Duration.ofSeconds(30);
+
+  private final Options options;
+  private final List<String> applicationArgs;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final HttpClient client = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .connectTimeout(Duration.ofSeconds(10))
+      .build();
+  private String baseUri;
+
+  PaymentLoadGenerator(Options options, List<String> applicationArgs) {
+    this.options = options;
+    this.applicationArgs = applicationArgs;
+  }
+
+  public static void main(String[] args) throws Exception {
+    var options = new Options();
+    var applicationArgs = new ArrayList<String>();
+    for (var arg : args) {
+      if (!options.parse(arg)) {
+        applicationArgs.add(arg);
+      }
+    }
+    var balanceUnchanged = new PaymentLoadGenerator(options, applicationArgs).run();
+    System.exit(balanceUnchanged ? 0 : 1);
+  }
+
+  /**
+   * @return Whether the sum of all balances is unchanged
+   */
+  boolean run() throws Exception {
+    var args = new ArrayList<>(applicationArgs);
+    args.add("--server.port=0");
+    args.add("--spring.datasource.url=jdbc:h2:mem:load-test");
+    try (var context = new SpringApplicationBuilder(PaymentApplication.class)
+        .web(WebApplicationType.SERVLET)
+        .properties("logging.level.root=WARN", "spring.main.banner-mode=off")
+        .run(args.toArray(String[]::new))) {
+      baseUri = "http://localhost:"
+          + ((WebServerApplicationContext) context).getWebServer().getPort();
+      var accountIds = seedAccounts();
+      if (options.scenario == LoadScenario.HOT_RECEIVER && options.markHot) {
+        context.getBean(HotAccountProperties.class).getAccountIds().add(accountIds[0]);
+      }
+      var balanceBefore = balanceSum(context);
+
+      System.out.printf("%s, %d accounts, %d callers, %s for %s%n",
+          options.scenario.name().toLowerCase(), options.accounts, options.concurrency,
+          options.rate > 0 ? "open loop at " + options.rate + " payments/s" : "closed loop",
+          options.duration);
+      var result = drive(accountIds);
+      result.print(System.out, options.duration);
+      if (options.histogramFile != null) {
+        try (var out = new PrintStream(Files.newOutputStream(options.histogramFile))) {
+          result.latencies.outputPercentileDistribution(out, 1000.0); // In milliseconds
+        }
+      }
+
+      var balanceAfter = awaitBalanceSum(context, balanceBefore);
+      var unchanged = balanceAfter.compareTo(balanceBefore) == 0;
+      System.out.printf("Balance sum: %s before, %s after, %s%n", balanceBefore, balanceAfter,
+          unchanged ? "unchanged" : "CHANGED");
+      return unchanged;
+    }
+  }
+
+  private Long[] seedAccounts() throws IOException, InterruptedException {
+    var accountIds = new ArrayList<Long>(options.accounts);
+    for (var first = 0; first < options.accounts; first += SEED_BATCH_SIZE) {
+      var accountRequest = new AccountRequest();
+      accountRequest.setAccounts(new ArrayList<>());
+      for (var i = first; i < Math.min(first + SEED_BATCH_SIZE, options.accounts); i++) {
+        var account = new AccountDto();
+        account.setName("Load Account " + i);
+        account.setBalance(options.balance);
+        accountRequest.getAccounts().add(account);
+      }
+      var response = client.send(post("/account/", accountRequest),
+          HttpResponse.BodyHandlers.ofByteArray());
+      if (response.statusCode() != 200) {
+        throw new IllegalStateException("Seeding accounts failed: " + response.statusCode());
+      }
+      for (var account : objectMapper.readValue(response.body(), AccountDto[].class)) {
+        accountIds.add(account.getId());
+      }
+    }
+    return accountIds.toArray(Long[]::new);
+  }
+
+  private LoadResult drive(Long[] accountIds) throws Exception {
+    var zipf = new LoadScenario.ZipfSampler(accountIds.length, options.zipfExponent);
+    var start = System.nanoTime();
+    var measuredFrom = start + options.warmup.toNanos();
+    var end = measuredFrom + options.duration.toNanos();
+    var periodNanos = options.rate > 0 ? TimeUnit.SECONDS.toNanos(1) / options.rate : 0;
+    var nextSlot = new AtomicLong();
+
+    var callers = new ArrayList<Callable<LoadResult>>(options.concurrency);
+    for (var c = 0; c < options.concurrency; c++) {
+      callers.add(() -> {
+        var result = new LoadResult();
+        var random = ThreadLocalRandom.current();
+        while (true) {
+          long due;
+          if (periodNanos > 0) { // Open loop: the payment is due at its slot, however busy we are.
+            due = start + nextSlot.getAndIncrement() * periodNanos;
+            while (System.nanoTime() < due) {
+              LockSupport.parkNanos(due - System.nanoTime());
+            }
+          } else {
+            due = System.nanoTime();
+          }
+          if (due >= end) {
+            return result;
+          }
+
+          var accounts = options.scenario.pick(random, zipf);
+          var status = pay(accountIds[accounts[0]], accountIds[accounts[1]],
+              1 + random.nextInt(MAX_AMOUNT_CENTS));
+          if (due >= measuredFrom) {
+            result.record(status, System.nanoTime() - due);
+          }
+        }
+      });
+    }
+
+    var executor = Executors.newFixedThreadPool(options.concurrency);
+    try {
+      var total = new LoadResult();
+      for (var future : executor.invokeAll(callers)) {
+        total.add(future.get());
+      }
+      return total;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * @return Status code of the response, or 0 if no response has been received
+   */
+  private int pay(Long senderAccountId, Long receiverAccountId, int amountCents) {
+    var paymentRequest = new PaymentRequest();
+    paymentRequest.setSenderAccountId(senderAccountId);
+    paymentRequest.setReceiverAccountId(receiverAccountId);
+    paymentRequest.setAmount(BigDecimal.valueOf(amountCents, 2));
+    try {
+      return client.send(post("/payment", paymentRequest), HttpResponse.BodyHandlers.discarding())
+          .statusCode();
+    } catch (IOException e) {
+      return 0;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 0;
+    }
+  }
+
+  private HttpRequest post(String path, Object body) throws IOException {
+    return HttpRequest.newBuilder(URI.create(baseUri + path))
+        .header("Content-Type", "application/json")
+        .timeout(Duration.ofMinutes(1))
+        .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+        .build();
+  }
+
+  /**
+   * @return Sum of all balances, including the pending credits of hot accounts
+   */
+  private static BigDecimal balanceSum(ConfigurableApplicationContext context) {
+    return context.getBean(JdbcTemplate.class).queryForObject("SELECT "
+        + "(SELECT COALESCE(SUM(balance), 0) FROM account) "
+        + "+ (SELECT COALESCE(SUM(amount), 0) FROM account_balance_delta)", BigDecimal.class);
+  }
+
+  /**
+   * Waits for the sum of all balances to become the expected one, since the ledger engine persists
+   * payments after they have been answered
+   */
+  private static BigDecimal awaitBalanceSum(ConfigurableApplicationContext context,
+      BigDecimal expected) throws InterruptedException {
+    var deadline = System.nanoTime() + BALANCE_CHECK_TIMEOUT.toNanos();
+    var sum = balanceSum(context);
+    while (sum.compareTo(expected) != 0 && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(100);
+      sum = balanceSum(context);
+    }
+    return sum;
+  }
+
+  /**
+   * Latencies and response counts of the measured payments
+   */
+  private static class LoadResult {
+
+    private final Histogram latencies = new Histogram(3); // In microseconds, resized as needed
+    private long completed;
+    private long rejected;
+    private long errors;
+
+    void record(int status, long latencyNanos) {
+      latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+      if (status / 100 == 2) { // 202 Accepted with asynchronous payments
+        completed++;
+      } else if (status == 400) {
+        rejected++; // E.g. a skewed sender's balance would go negative.
+      } else {
+        errors++;
+      }
+    }
+
+    void add(LoadResult other) {
+      latencies.add(other.latencies);
+      completed += other.completed;
+      rejected += other.rejected;
+      errors += other.errors;
+    }
+
+    void print(PrintStream out, Duration duration) {
+      var seconds = duration.toNanos() / 1e9;
+      out.printf("%10s %10s %10s %8s %12s%n", "payments", "completed", "rejected", "errors",
+          "payments/s");
+      out.printf("%10d %10d %10d %8d %12.0f%n", latencies.getTotalCount(), completed, rejected,
+          errors, latencies.getTotalCount() / seconds);
+      out.printf("%10s %10s %10s %10s%n", "p50 (ms)", "p99 (ms)", "p999 (ms)", "max (ms)");
+      out.printf("%10.2f %10.2f %10.2f %10.2f%n", latencies.getValueAtPercentile(50) / 1e3,
+          latencies.getValueAtPercentile(99) / 1e3, latencies.getValueAtPercentile(99.9) / 1e3,
+          latencies.getMaxValue() / 1e3);
+    }
+  }
+
+  /**
+   * Options of the load generator, parsed from '--name=value' arguments
+   */
+  static class Options {
+
+    private int accounts = 1_000;
+    private BigDecimal balance = new BigDecimal("1000.00");
+    private LoadScenario scenario = LoadScenario.UNIFORM;
+    private double zipfExponent = 1.0;
+    private boolean markHot;
+    private int concurrency = 64;
+    private int rate;
+    private Duration warmup = Duration.ofSeconds(5);
+    private Duration duration = Duration.ofSeconds(30);
+    private Path histogramFile;
+
+    /**
+     * @return Whether the argument is an option of the load generator
+     */
+    boolean parse(String arg) {
+      var separator = arg.indexOf('=');
+      if (!arg.startsWith("--") || separator < 0) {
+        return false;
+      }
+      var value = arg.substring(separator + 1);
+      switch (arg.substring(2, separator)) {
+        case "accounts" -> accounts = Integer.parseInt(value);
+        case "balance" -> balance = new BigDecimal(value);
+        case "scenario" -> scenario = LoadScenario.valueOf(value.toUpperCase());
+        case "zipf-exponent" -> zipfExponent = Double.parseDouble(value);
+        case "mark-hot" -> markHot = Boolean.parseBoolean(value);
+        case "concurrency" -> concurrency = Integer.parseInt(value);
+        case "rate" -> rate = Integer.parseInt(value);
+        case "warmup" -> warmup = Duration.parse(value);
+        case "duration" -> duration = Duration.parse(value);
+        case "histogram-file" -> histogramFile = Path.of(value);
+        default -> {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}